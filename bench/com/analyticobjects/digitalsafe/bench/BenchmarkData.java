@@ -0,0 +1,77 @@
+package com.analyticobjects.digitalsafe.bench;
+
+import com.analyticobjects.digitalsafe.containers.DigitalSafe;
+import com.analyticobjects.digitalsafe.containers.Note;
+import com.analyticobjects.digitalsafe.containers.PasswordNote;
+import com.analyticobjects.digitalsafe.database.FileTable;
+import com.analyticobjects.digitalsafe.database.IndexedMapTable;
+import com.analyticobjects.digitalsafe.database.MapTable;
+import com.analyticobjects.digitalsafe.database.MasterIndex;
+import java.util.Random;
+
+/**
+ * Deterministic test data shared by the benchmarks.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+final class BenchmarkData {
+
+	static final String PASSPHRASE = "benchmark passphrase";
+	static final String NOTES = "NOTES";
+	static final String PASSWORDS = "PASSWORDS";
+	static final String FILES = "FILES";
+
+	static {
+		DigitalSafe.registerEntryTypes();
+	}
+
+	private BenchmarkData() {
+	} // static methods only.
+
+	/**
+	 * @param size Number of bytes.
+	 * @return Reproducible pseudo random bytes.
+	 */
+	static byte[] randomBytes(int size) {
+		byte[] bytes = new byte[size];
+		new Random(size).nextBytes(bytes);
+		return bytes;
+	}
+
+	/**
+	 * @param i A note number.
+	 * @return The title of note number i.
+	 */
+	static String noteTitle(int i) {
+		return "Note " + i;
+	}
+
+	/**
+	 * A master index laid out like a DigitalSafe one, holding noteCount notes and noteCount / 10 password notes.
+	 *
+	 * @param noteCount The number of notes.
+	 * @return The master index.
+	 */
+	static MasterIndex masterIndex(int noteCount) {
+		MasterIndex masterIndex = new MasterIndex();
+		IndexedMapTable<Note> notes = new IndexedMapTable<>(new MapTable<Note>(NOTES));
+		IndexedMapTable<PasswordNote> passwords = new IndexedMapTable<>(new MapTable<PasswordNote>(PASSWORDS));
+		for (int i = 0; i < noteCount; i++) {
+			Note note = new Note(noteTitle(i), "Benchmark note number " + i + ". Lorem ipsum dolor sit amet, consectetur.");
+			note.tagWithTagString("tag" + (i % 100) + ", benchmark");
+			notes.putEntry(note);
+			if (i % 10 == 0) {
+				PasswordNote passwordNote = new PasswordNote("Login " + i, "p4ssw0rd-" + i);
+				passwordNote.setUserName("user" + i);
+				passwordNote.setUrl("https://example.com/login/" + i);
+				passwords.putEntry(passwordNote);
+			}
+		}
+		masterIndex.putIndexedMapTable(notes);
+		masterIndex.putIndexedMapTable(passwords);
+		masterIndex.putFileTable(new FileTable(FILES));
+		return masterIndex;
+	}
+
+}
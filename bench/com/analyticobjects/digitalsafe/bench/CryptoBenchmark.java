@@ -0,0 +1,120 @@
+package com.analyticobjects.digitalsafe.bench;
+
+import com.analyticobjects.digitalsafe.crypto.ChunkCipher;
+import com.analyticobjects.digitalsafe.crypto.CipherSuite;
+import com.analyticobjects.digitalsafe.crypto.Passphrase;
+import com.analyticobjects.digitalsafe.crypto.TripleAES;
+import com.analyticobjects.digitalsafe.exceptions.InvalidPassphraseException;
+import com.analyticobjects.digitalsafe.exceptions.PassphraseExpiredException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.AEADBadTagException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whole-record 3-AES (the master index path), each cipher suite's records and sealed chunks (the file path), for
+ * in-memory payloads, e.g. -p suite=AES-256-GCM for one suite only. Larger payloads only go through the chunked
+ * file streams, see FileBenchmark.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CryptoBenchmark {
+
+	@Param({"1024", "65536", "1048576", "16777216"})
+	public int payloadSize;
+
+	private Passphrase passphrase;
+	private byte[] payload;
+	private byte[] encryptedPayload;
+
+	@Setup
+	public void setUp() throws InvalidPassphraseException, PassphraseExpiredException {
+		this.passphrase = new Passphrase(BenchmarkData.PASSPHRASE);
+		this.payload = BenchmarkData.randomBytes(this.payloadSize);
+		this.encryptedPayload = TripleAES.encrypt(this.passphrase, this.payload);
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.passphrase.clear();
+	}
+
+	@Benchmark
+	public byte[] tripleAESEncrypt() throws PassphraseExpiredException {
+		return TripleAES.encrypt(this.passphrase, this.payload);
+	}
+
+	@Benchmark
+	public byte[] tripleAESDecrypt() throws PassphraseExpiredException {
+		return TripleAES.decrypt(this.passphrase, this.encryptedPayload);
+	}
+
+	@Benchmark
+	public byte[] suiteEncrypt(SuiteState suiteState) throws PassphraseExpiredException {
+		return suiteState.cipherSuite.encrypt(this.passphrase, this.payload);
+	}
+
+	@Benchmark
+	public byte[] suiteDecrypt(SuiteState suiteState) throws PassphraseExpiredException, AEADBadTagException {
+		return suiteState.cipherSuite.decrypt(this.passphrase, null, ByteBuffer.wrap(suiteState.encryptedPayload));
+	}
+
+	@Benchmark
+	public byte[] chunkSeal(SuiteState suiteState) throws PassphraseExpiredException {
+		return ChunkCipher.seal(suiteState.cipherSuite, this.passphrase, "chunk.0", this.payload);
+	}
+
+	@Benchmark
+	public byte[] chunkOpen(SuiteState suiteState) throws PassphraseExpiredException, AEADBadTagException {
+		return ChunkCipher.open(this.passphrase, "chunk.0", suiteState.sealedChunk);
+	}
+
+	/**
+	 * The cipher suite under test, kept in its own state so the whole-record 3-AES benchmarks don't run once per
+	 * suite.
+	 */
+	@State(Scope.Benchmark)
+	public static class SuiteState {
+
+		@Param({"3-AES-128-CBC", "AES-256-GCM"})
+		public String suite;
+
+		private CipherSuite cipherSuite;
+		private byte[] encryptedPayload;
+		private byte[] sealedChunk;
+
+		@Setup
+		public void setUp(CryptoBenchmark benchmark) throws PassphraseExpiredException {
+			for (CipherSuite cipherSuite : new CipherSuite[]{CipherSuite.TRIPLE_AES, CipherSuite.AES_GCM}) {
+				if (cipherSuite.getName().equals(this.suite)) {
+					this.cipherSuite = cipherSuite;
+				}
+			}
+			if (this.cipherSuite == null) {
+				throw new IllegalArgumentException("Unknown cipher suite: " + this.suite);
+			}
+			this.encryptedPayload = this.cipherSuite.encrypt(benchmark.passphrase, benchmark.payload);
+			this.sealedChunk = ChunkCipher.seal(this.cipherSuite, benchmark.passphrase, "chunk.0", benchmark.payload);
+		}
+
+	}
+
+}
@@ -0,0 +1,82 @@
+package com.analyticobjects.digitalsafe.bench;
+
+import com.analyticobjects.digitalsafe.containers.Note;
+import com.analyticobjects.digitalsafe.database.IndexedMapTable;
+import com.analyticobjects.digitalsafe.database.MasterIndex;
+import com.analyticobjects.digitalsafe.database.SecureDatabase;
+import com.analyticobjects.digitalsafe.exceptions.InvalidPassphraseException;
+import com.analyticobjects.digitalsafe.exceptions.PassphraseExpiredException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Committing a note to, and looking notes up in, an unlocked safe on disk holding noteCount notes. The commit
+ * benchmark is what DigitalSafe.putNote costs; lookup is DigitalSafe.getNote.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DatabaseBenchmark {
+
+	@Param({"10", "1000", "100000", "1000000"})
+	public int noteCount;
+
+	private Path safePath;
+	private SecureDatabase secureDatabase;
+	private Random random;
+	private int commits;
+
+	@Setup
+	public void setUp() throws IOException, InvalidPassphraseException, PassphraseExpiredException {
+		this.safePath = Files.createTempFile("DatabaseBenchmark", ".safe");
+		Files.delete(this.safePath);
+		this.secureDatabase = new SecureDatabase(this.safePath);
+		this.secureDatabase.setPassphrase(BenchmarkData.PASSPHRASE);
+		this.secureDatabase.commitMasterIndex(BenchmarkData.masterIndex(this.noteCount));
+		this.random = new Random(42L);
+		this.commits = 0;
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		this.secureDatabase.lock();
+		Files.deleteIfExists(this.safePath);
+	}
+
+	@Benchmark
+	public MasterIndex commit() throws PassphraseExpiredException {
+		MasterIndex masterIndex = this.secureDatabase.getMasterIndex();
+		IndexedMapTable<Note> notes = masterIndex.getIndexedMapTable(BenchmarkData.NOTES);
+		notes.putEntry(new Note("Committed " + this.commits++, "A note committed by the benchmark."));
+		this.secureDatabase.commitMasterIndex(masterIndex);
+		return masterIndex;
+	}
+
+	@Benchmark
+	public Note lookup() throws PassphraseExpiredException {
+		IndexedMapTable<Note> notes = this.secureDatabase.getMasterIndex().getIndexedMapTable(BenchmarkData.NOTES);
+		return notes.getEntry(BenchmarkData.noteTitle(this.random.nextInt(this.noteCount)).toLowerCase());
+	}
+
+}
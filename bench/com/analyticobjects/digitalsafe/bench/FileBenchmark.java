@@ -0,0 +1,118 @@
+package com.analyticobjects.digitalsafe.bench;
+
+import com.analyticobjects.digitalsafe.database.FileTableEntry;
+import com.analyticobjects.digitalsafe.database.MasterIndex;
+import com.analyticobjects.digitalsafe.database.SecureDatabase;
+import com.analyticobjects.digitalsafe.exceptions.InvalidPassphraseException;
+import com.analyticobjects.digitalsafe.exceptions.PassphraseExpiredException;
+import com.analyticobjects.utility.ByteUtility;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Storing and reading back files through the encrypted chunk streams, up to 1 GB. Files are streamed, so the default
+ * heap is enough at every size. Each iteration starts from an empty safe.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileBenchmark {
+
+	@Param({"1024", "1048576", "67108864", "1073741824"})
+	public long fileSize;
+
+	private Path sourcePath;
+	private Path safePath;
+	private SecureDatabase secureDatabase;
+	private FileTableEntry storedEntry;
+
+	@Setup(Level.Trial)
+	public void setUpTrial() throws IOException, InvalidPassphraseException {
+		this.sourcePath = Files.createTempFile("FileBenchmark", ".bin");
+		byte[] block = BenchmarkData.randomBytes(1 << 20);
+		try (OutputStream out = Files.newOutputStream(this.sourcePath)) {
+			for (long written = 0L; written < this.fileSize; written += block.length) {
+				out.write(block, 0, (int) Math.min(block.length, this.fileSize - written));
+			}
+		}
+		this.safePath = Files.createTempFile("FileBenchmark", ".safe");
+		Files.delete(this.safePath);
+		this.secureDatabase = new SecureDatabase(this.safePath);
+		this.secureDatabase.setPassphrase(BenchmarkData.PASSPHRASE);
+	}
+
+	@Setup(Level.Iteration)
+	public void setUpIteration() throws IOException, PassphraseExpiredException {
+		this.secureDatabase.clear();
+		this.secureDatabase.commitMasterIndex(BenchmarkData.masterIndex(0));
+		this.storedEntry = store();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDownTrial() throws IOException {
+		this.secureDatabase.lock();
+		Files.deleteIfExists(this.safePath);
+		Files.deleteIfExists(this.sourcePath);
+	}
+
+	/**
+	 * Store the source file the way DigitalSafe.putFile does, the contents being streamed in on commit.
+	 */
+	private FileTableEntry store() throws PassphraseExpiredException {
+		MasterIndex masterIndex = this.secureDatabase.getMasterIndex();
+		FileTableEntry fileTableEntry = new FileTableEntry(this.sourcePath, "");
+		masterIndex.getFileTable(BenchmarkData.FILES).putEntry(fileTableEntry);
+		this.secureDatabase.commitMasterIndex(masterIndex);
+		return fileTableEntry;
+	}
+
+	@Benchmark
+	public FileTableEntry storeFile() throws PassphraseExpiredException {
+		return store();
+	}
+
+	@Benchmark
+	public long readFile() throws IOException, PassphraseExpiredException {
+		try (InputStream fileInStream = this.secureDatabase.openFileInputStream(this.storedEntry)) {
+			return ByteUtility.transfer(fileInStream, new NullOutputStream());
+		}
+	}
+
+	/**
+	 * Discards everything written to it.
+	 */
+	private static final class NullOutputStream extends OutputStream {
+
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) {
+		}
+	}
+
+}
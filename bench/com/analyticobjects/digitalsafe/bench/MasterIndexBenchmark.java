@@ -0,0 +1,68 @@
+package com.analyticobjects.digitalsafe.bench;
+
+import com.analyticobjects.digitalsafe.database.MasterIndex;
+import com.analyticobjects.digitalsafe.database.MasterIndexCodec;
+import com.analyticobjects.utility.SerializationUtility;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding and decoding the master index, against the Java serialization it replaced.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MasterIndexBenchmark {
+
+	@Param({"10", "1000", "100000", "1000000"})
+	public int noteCount;
+
+	private MasterIndex masterIndex;
+	private byte[] encoded;
+	private byte[] serialized;
+
+	@Setup
+	public void setUp() throws IOException {
+		this.masterIndex = BenchmarkData.masterIndex(this.noteCount);
+		this.encoded = MasterIndexCodec.encode(this.masterIndex);
+		this.serialized = SerializationUtility.deflate(this.masterIndex);
+	}
+
+	@Benchmark
+	public byte[] encode() throws IOException {
+		return MasterIndexCodec.encode(this.masterIndex);
+	}
+
+	@Benchmark
+	public MasterIndex decode() throws IOException {
+		return MasterIndexCodec.decode(this.encoded);
+	}
+
+	@Benchmark
+	public byte[] serialize() throws IOException {
+		return SerializationUtility.deflate(this.masterIndex);
+	}
+
+	@Benchmark
+	public MasterIndex deserialize() throws IOException, ClassNotFoundException {
+		return SerializationUtility.<MasterIndex>inflate(this.serialized);
+	}
+
+}
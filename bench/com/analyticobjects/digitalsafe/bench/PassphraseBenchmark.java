@@ -0,0 +1,65 @@
+package com.analyticobjects.digitalsafe.bench;
+
+import com.analyticobjects.digitalsafe.crypto.Passphrase;
+import com.analyticobjects.digitalsafe.exceptions.InvalidPassphraseException;
+import com.analyticobjects.utility.HashUtility;
+import java.io.UnsupportedEncodingException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Passphrase hashing and key derivation, the cost of unlocking a safe. These are deliberately slow, so they're timed
+ * per call in milliseconds.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PassphraseBenchmark {
+
+	private Passphrase passphrase;
+
+	@Setup
+	public void setUp() {
+		this.passphrase = new Passphrase();
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.passphrase.clear();
+	}
+
+	/**
+	 * The passphrase hash alone, with the iteration count Passphrase uses.
+	 */
+	@Benchmark
+	public byte[] hash512() throws NoSuchAlgorithmException, UnsupportedEncodingException {
+		return HashUtility.hash512(BenchmarkData.PASSPHRASE, "abcDEF1234!@#$", 20011);
+	}
+
+	/**
+	 * Hashing plus deriving the 3-AES key schedule.
+	 */
+	@Benchmark
+	public Passphrase setPassphrase() throws InvalidPassphraseException {
+		this.passphrase.setPassphrase(BenchmarkData.PASSPHRASE);
+		return this.passphrase;
+	}
+
+}
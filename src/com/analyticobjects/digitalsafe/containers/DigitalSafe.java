@@ -3,19 +3,32 @@ package com.analyticobjects.digitalsafe.containers;
 import com.analyticobjects.digitalsafe.database.FileTable;
 import com.analyticobjects.digitalsafe.database.FileTableEntry;
 import com.analyticobjects.digitalsafe.database.IndexedMapTable;
+import com.analyticobjects.digitalsafe.database.IndexedTableEntry;
 import com.analyticobjects.digitalsafe.database.MapTable;
 import com.analyticobjects.digitalsafe.database.MasterIndex;
+import com.analyticobjects.digitalsafe.database.MasterIndexCodec;
 import com.analyticobjects.digitalsafe.database.SecureDatabase;
+import com.analyticobjects.digitalsafe.database.TableChange;
 import com.analyticobjects.digitalsafe.exceptions.InvalidPassphraseException;
 import com.analyticobjects.digitalsafe.exceptions.PassphraseExpiredException;
 import com.analyticobjects.digitalsafe.net.Peer;
-import com.analyticobjects.utility.ByteUtility;
+import com.analyticobjects.utility.ProgressListener;
+import com.analyticobjects.utility.TimeUtility;
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,6 +46,24 @@ public class DigitalSafe {
 	private static final String PASSWORDS = "PASSWORDS";
 	private static final String FILES = "FILES";
 	private static final String PEERS = "PEERS";
+	private static final int NOTE_TYPE_ID = 16;
+	private static final int PASSWORD_NOTE_TYPE_ID = 17;
+	private static final int PEER_TYPE_ID = 18;
+	private static final int TITLE_MATCH_LIMIT = 20;
+
+	static {
+		registerEntryTypes();
+	}
+
+	/**
+	 * Register the entry types stored in a digital safe with the master index codec. Runs when this class loads; safe
+	 * to call again.
+	 */
+	public static void registerEntryTypes() {
+		MasterIndexCodec.registerEntryType(NOTE_TYPE_ID, Note.class, Note.DECODER);
+		MasterIndexCodec.registerEntryType(PASSWORD_NOTE_TYPE_ID, PasswordNote.class, PasswordNote.DECODER);
+		MasterIndexCodec.registerEntryType(PEER_TYPE_ID, Peer.class, Peer.DECODER);
+	}
 
 	public DigitalSafe() {
 		this(Paths.get(DEFAULT_FILE_NAME));
@@ -76,11 +107,20 @@ public class DigitalSafe {
 		this.init();
 	}
 
+	/**
+	 * Start collecting changes to commit together. Many puts committed as one batch cost a single commit of the
+	 * master index instead of one each.
+	 *
+	 * @return A new, empty batch.
+	 */
+	public Batch beginBatch() {
+		return new Batch();
+	}
+
 	public void putNote(Note noteToSave) throws PassphraseExpiredException {
-		MasterIndex masterIndex = this.secureDatabase.getMasterIndex();
-		IndexedMapTable<Note> noteTable = masterIndex.getIndexedMapTable(NOTES);
-		noteTable.putEntry(noteToSave);
-		this.secureDatabase.commitMasterIndex(masterIndex);
+		Batch batch = beginBatch();
+		batch.putNote(noteToSave);
+		batch.commit();
 	}
 
 	public Note getNote(String title) throws PassphraseExpiredException {
@@ -90,10 +130,40 @@ public class DigitalSafe {
 	}
 
 	public void putPasswordNote(PasswordNote noteToSave) throws PassphraseExpiredException {
+		Batch batch = beginBatch();
+		batch.putPasswordNote(noteToSave);
+		batch.commit();
+	}
+
+	/**
+	 * Import password notes from a CSV export of another password manager, committed as one batch.
+	 *
+	 * @param csvPath The CSV file, see PasswordImport for the columns read.
+	 * @return The number of password notes imported.
+	 * @throws PassphraseExpiredException
+	 * @throws IOException If the file can't be read or has no password column.
+	 */
+	public int importPasswordNotes(Path csvPath) throws PassphraseExpiredException, IOException {
+		List<PasswordNote> passwordNotes;
+		try (Reader csvReader = Files.newBufferedReader(csvPath, StandardCharsets.UTF_8)) {
+			passwordNotes = PasswordImport.readCsv(csvReader);
+		}
+		Batch batch = beginBatch();
+		for (PasswordNote passwordNote : passwordNotes) {
+			batch.putPasswordNote(passwordNote);
+		}
+		batch.commit();
+		return passwordNotes.size();
+	}
+
+	/**
+	 * @param title The title of the note to delete, in any case.
+	 * @return True if there was such a note.
+	 * @throws PassphraseExpiredException
+	 */
+	public boolean deleteNote(String title) throws PassphraseExpiredException {
 		MasterIndex masterIndex = this.secureDatabase.getMasterIndex();
-		IndexedMapTable<PasswordNote> passwordNoteTable = masterIndex.getIndexedMapTable(PASSWORDS);
-		passwordNoteTable.putEntry(noteToSave);
-		this.secureDatabase.commitMasterIndex(masterIndex);
+		return deleteEntry(masterIndex, NOTES, noteTable(masterIndex), title.trim().toLowerCase());
 	}
 
 	public PasswordNote getPasswordNote(String title) throws PassphraseExpiredException {
@@ -102,11 +172,176 @@ public class DigitalSafe {
 		return passwordNoteTable.getEntry(title);
 	}
 	
-	public void putPeer(Peer aPeer) throws PassphraseExpiredException {
+	/**
+	 * @param title The title of the password note to delete, in any case.
+	 * @return True if there was such a password note.
+	 * @throws PassphraseExpiredException
+	 */
+	public boolean deletePasswordNote(String title) throws PassphraseExpiredException {
 		MasterIndex masterIndex = this.secureDatabase.getMasterIndex();
-		IndexedMapTable<Peer> peerTable = masterIndex.getIndexedMapTable(PEERS);
-		peerTable.putEntry(aPeer);
-		this.secureDatabase.commitMasterIndex(masterIndex);
+		return deleteEntry(masterIndex, PASSWORDS, passwordNoteTable(masterIndex), title.trim().toLowerCase());
+	}
+
+	/**
+	 * Remove an entry by index id and commit, if there is such an entry. Entries of the file table are committed with
+	 * the master index, which removes their contents; others are journaled.
+	 */
+	private boolean deleteEntry(MasterIndex masterIndex, String tableName, IndexedMapTable<?> table, String indexId) throws PassphraseExpiredException {
+		Future<Void> commit;
+		synchronized (this.secureDatabase) {
+			IndexedTableEntry removed = table.removeEntry(indexId);
+			if (removed == null) {
+				return false;
+			}
+			if (FILES.equals(tableName)) {
+				this.secureDatabase.commitMasterIndex(masterIndex);
+				return true;
+			}
+			commit = this.secureDatabase.submitChanges(masterIndex, Collections.singletonList(TableChange.remove(tableName, removed.getId())));
+		}
+		this.secureDatabase.awaitCommit(commit);
+		return true;
+	}
+
+	/**
+	 * Find the notes and password notes containing all the words of a query in their title, tags or message (or user
+	 * name and url for password notes).
+	 *
+	 * @param query The words to find, in any order and case.
+	 * @return The matching notes, then the matching password notes.
+	 * @throws PassphraseExpiredException
+	 */
+	public List<Note> search(String query) throws PassphraseExpiredException {
+		MasterIndex masterIndex = this.secureDatabase.getMasterIndex();
+		List<Note> matches = new ArrayList<>();
+		matches.addAll(noteTable(masterIndex).search(query));
+		matches.addAll(passwordNoteTable(masterIndex).search(query));
+		return matches;
+	}
+	
+	/**
+	 * @param partialTitle The start of a note title, or a slightly mistyped one.
+	 * @return Matching lower cased note titles: completions first, then near misses.
+	 * @throws PassphraseExpiredException
+	 */
+	public List<String> findNoteTitles(String partialTitle) throws PassphraseExpiredException {
+		return findTitles(noteTable(this.secureDatabase.getMasterIndex()), partialTitle);
+	}
+
+	/**
+	 * @param partialTitle The start of a password note title, or a slightly mistyped one.
+	 * @return Matching lower cased password note titles: completions first, then near misses.
+	 * @throws PassphraseExpiredException
+	 */
+	public List<String> findPasswordNoteTitles(String partialTitle) throws PassphraseExpiredException {
+		return findTitles(passwordNoteTable(this.secureDatabase.getMasterIndex()), partialTitle);
+	}
+
+	/**
+	 * Complete a partial title, adding titles within a typo or two of it. Short titles allow one edit, longer ones two.
+	 */
+	private static List<String> findTitles(IndexedMapTable<? extends Note> table, String partialTitle) {
+		String title = partialTitle.trim().toLowerCase();
+		Set<String> titles = new LinkedHashSet<>(table.completeIndexId(title, TITLE_MATCH_LIMIT));
+		int maxDistance = (title.length() < 5) ? 1 : 2;
+		for (String similarTitle : table.findSimilarIndexIds(title, maxDistance, TITLE_MATCH_LIMIT)) {
+			if (titles.size() >= TITLE_MATCH_LIMIT) {
+				break;
+			}
+			titles.add(similarTitle);
+		}
+		return new ArrayList<>(titles);
+	}
+
+	/**
+	 * @param tag A tag, in any case.
+	 * @return The notes, then the password notes, with the tag.
+	 * @throws PassphraseExpiredException
+	 */
+	public List<Note> getNotesTagged(String tag) throws PassphraseExpiredException {
+		MasterIndex masterIndex = this.secureDatabase.getMasterIndex();
+		String tagKey = tag.trim().toLowerCase();
+		List<Note> notes = new ArrayList<>();
+		notes.addAll(noteTable(masterIndex).findBy(Note.TAG_INDEX, tagKey));
+		notes.addAll(passwordNoteTable(masterIndex).findBy(Note.TAG_INDEX, tagKey));
+		return notes;
+	}
+
+	/**
+	 * @param since A time.
+	 * @return The notes, then the password notes, updated at or after the time, each oldest update first.
+	 * @throws PassphraseExpiredException
+	 */
+	public List<Note> getNotesUpdatedSince(Date since) throws PassphraseExpiredException {
+		MasterIndex masterIndex = this.secureDatabase.getMasterIndex();
+		List<Note> notes = new ArrayList<>();
+		notes.addAll(noteTable(masterIndex).findRange(Note.UPDATE_TIME_INDEX, since, null));
+		notes.addAll(passwordNoteTable(masterIndex).findRange(Note.UPDATE_TIME_INDEX, since, null));
+		return notes;
+	}
+
+	/**
+	 * @param urlOrDomain A domain, e.g. example.com, or any url on it.
+	 * @return The password notes for the domain.
+	 * @throws PassphraseExpiredException
+	 */
+	public List<PasswordNote> getPasswordNotesForDomain(String urlOrDomain) throws PassphraseExpiredException {
+		String domain = PasswordNote.domainOf(urlOrDomain);
+		if (domain == null) {
+			return new ArrayList<>();
+		}
+		return passwordNoteTable(this.secureDatabase.getMasterIndex()).findBy(PasswordNote.DOMAIN_INDEX, domain);
+	}
+
+	/**
+	 * @param userName A user name, in any case.
+	 * @return The password notes for the user name.
+	 * @throws PassphraseExpiredException
+	 */
+	public List<PasswordNote> getPasswordNotesForUserName(String userName) throws PassphraseExpiredException {
+		String userNameKey = userName.trim().toLowerCase();
+		return passwordNoteTable(this.secureDatabase.getMasterIndex()).findBy(PasswordNote.USER_NAME_INDEX, userNameKey);
+	}
+
+	/**
+	 * @param days A number of days from now.
+	 * @return The password notes expiring within the days, including those already expired, soonest first.
+	 * @throws PassphraseExpiredException
+	 */
+	public List<PasswordNote> getPasswordNotesExpiringWithin(int days) throws PassphraseExpiredException {
+		Date until = TimeUtility.addDays(new Date(), days);
+		return passwordNoteTable(this.secureDatabase.getMasterIndex()).findRange(PasswordNote.EXPIRATION_INDEX, null, until);
+	}
+
+	/**
+	 * @param masterIndex The master index.
+	 * @return The notes table, with its secondary indexes.
+	 */
+	private static IndexedMapTable<Note> noteTable(MasterIndex masterIndex) {
+		IndexedMapTable<Note> noteTable = masterIndex.getIndexedMapTable(NOTES);
+		noteTable.addSecondaryIndex(Note.tagIndex());
+		noteTable.addSecondaryIndex(Note.updateTimeIndex());
+		return noteTable;
+	}
+
+	/**
+	 * @param masterIndex The master index.
+	 * @return The password notes table, with its secondary indexes.
+	 */
+	private static IndexedMapTable<PasswordNote> passwordNoteTable(MasterIndex masterIndex) {
+		IndexedMapTable<PasswordNote> passwordNoteTable = masterIndex.getIndexedMapTable(PASSWORDS);
+		passwordNoteTable.addSecondaryIndex(Note.tagIndex());
+		passwordNoteTable.addSecondaryIndex(Note.updateTimeIndex());
+		passwordNoteTable.addSecondaryIndex(PasswordNote.domainIndex());
+		passwordNoteTable.addSecondaryIndex(PasswordNote.userNameIndex());
+		passwordNoteTable.addSecondaryIndex(PasswordNote.expirationIndex());
+		return passwordNoteTable;
+	}
+
+	public void putPeer(Peer aPeer) throws PassphraseExpiredException {
+		Batch batch = beginBatch();
+		batch.putPeer(aPeer);
+		batch.commit();
 	}
 
 	public List<Peer> getPeers() throws PassphraseExpiredException {
@@ -116,20 +351,78 @@ public class DigitalSafe {
 	}
 
 	public void putFile(File selectedFile) throws PassphraseExpiredException {
+		putFile(selectedFile, null);
+	}
+
+	/**
+	 * Store a file, reporting progress. If the listener is a CancellableProgressListener that is cancelled, or the
+	 * thread is interrupted, while the file is stored, it is not.
+	 *
+	 * @param selectedFile The file to store.
+	 * @param progressListener Told the bytes stored so far, or null.
+	 * @throws PassphraseExpiredException
+	 */
+	public void putFile(File selectedFile, ProgressListener progressListener) throws PassphraseExpiredException {
+		Batch batch = beginBatch();
+		batch.putFile(selectedFile);
+		batch.commit(progressListener);
+	}
+
+	public void getFile(String fileName) throws PassphraseExpiredException, IOException {
 		MasterIndex masterIndex = this.secureDatabase.getMasterIndex();
 		FileTable fileTable = masterIndex.getFileTable(FILES);
-		fileTable.putEntry(new FileTableEntry(selectedFile.toPath(), ""));
-		this.secureDatabase.commitMasterIndex(masterIndex);
+		FileTableEntry fileEntry = fileTable.getEntry(fileName);
+		if (fileEntry != null) {
+			this.secureDatabase.exportFile(fileEntry, Paths.get(fileName));
+		}
 	}
 
-	public void getFile(String fileName) throws PassphraseExpiredException, IOException {
+	/**
+	 * Export a stored file to the working directory, reporting progress. If cancelled or interrupted the partly
+	 * exported file is deleted.
+	 *
+	 * @param fileName The stored file name.
+	 * @param progressListener Told the bytes exported so far.
+	 * @throws PassphraseExpiredException
+	 * @throws IOException
+	 */
+	public void getFile(String fileName, ProgressListener progressListener) throws PassphraseExpiredException, IOException {
+		MasterIndex masterIndex = this.secureDatabase.getMasterIndex();
+		FileTable fileTable = masterIndex.getFileTable(FILES);
+		FileTableEntry fileEntry = fileTable.getEntry(fileName);
+		if (fileEntry != null) {
+			this.secureDatabase.exportFile(fileEntry, Paths.get(fileName), progressListener);
+		}
+	}
+
+	/**
+	 * Delete a stored file. The space its contents take is reclaimed when the safe is next compacted.
+	 *
+	 * @param fileName The stored file name.
+	 * @return True if there was such a file.
+	 * @throws PassphraseExpiredException
+	 */
+	public boolean deleteFile(String fileName) throws PassphraseExpiredException {
+		MasterIndex masterIndex = this.secureDatabase.getMasterIndex();
+		return deleteEntry(masterIndex, FILES, masterIndex.getFileTable(FILES), fileName.toLowerCase());
+	}
+
+	/**
+	 * Open a stored file for random access reads, e.g. to read a header without decrypting the whole file.
+	 *
+	 * @param fileName The stored file name.
+	 * @return A read only seekable channel, or null if there is no such file.
+	 * @throws PassphraseExpiredException
+	 * @throws IOException
+	 */
+	public SeekableByteChannel openFile(String fileName) throws PassphraseExpiredException, IOException {
 		MasterIndex masterIndex = this.secureDatabase.getMasterIndex();
 		FileTable fileTable = masterIndex.getFileTable(FILES);
 		FileTableEntry fileEntry = fileTable.getEntry(fileName);
-		byte[] fileBytes = this.secureDatabase.loadFile(fileEntry);
-		if (fileBytes != null) {
-			ByteUtility.writeFully(Paths.get(fileName), fileBytes);
+		if (fileEntry == null) {
+			return null;
 		}
+		return this.secureDatabase.openFileChannel(fileEntry);
 	}
 
 	public List<String[]> listFiles() throws PassphraseExpiredException {
@@ -149,5 +442,265 @@ public class DigitalSafe {
 		}
 		return fileListing;
 	}
-	
+
+	/**
+	 * A change collected by a batch.
+	 */
+	private interface Change {
+
+		/**
+		 * @param masterIndex The master index to change.
+		 * @return The change to journal, or null if nothing changed or the change can't be journaled.
+		 */
+		TableChange apply(MasterIndex masterIndex);
+
+		/**
+		 * Take back an applied change.
+		 *
+		 * @param masterIndex The master index the change was applied to.
+		 */
+		void undo(MasterIndex masterIndex);
+	}
+
+	/**
+	 * Put an entry into a table, remembering the entries it replaces so it can be undone.
+	 */
+	private abstract static class PutChange<T extends IndexedTableEntry> implements Change {
+
+		private final String tableName;
+		private final T entry;
+		private Long entryId;
+		private T previous;
+		private T replaced;
+
+		/**
+		 * @param tableName The table name to journal the change under, or null to not journal it.
+		 * @param entry The entry to put.
+		 */
+		PutChange(String tableName, T entry) {
+			this.tableName = tableName;
+			this.entry = entry;
+		}
+
+		abstract IndexedMapTable<T> table(MasterIndex masterIndex);
+
+		T getEntry() {
+			return this.entry;
+		}
+
+		@Override
+		public TableChange apply(MasterIndex masterIndex) {
+			IndexedMapTable<T> table = table(masterIndex);
+			if (this.entry.getIndexId() == null) {
+				throw new NullPointerException("Entry must have a non-null index id.");
+			}
+			this.entryId = this.entry.getId();
+			this.previous = table.getEntry(this.entryId);
+			this.replaced = table.getEntry(this.entry.getIndexId().toLowerCase());
+			table.putEntry(this.entry);
+			return (this.tableName == null) ? null : TableChange.put(this.tableName, this.entry);
+		}
+
+		@Override
+		public void undo(MasterIndex masterIndex) {
+			IndexedMapTable<T> table = table(masterIndex);
+			if (table.getEntry(this.entry.getId()) == this.entry) {
+				table.removeEntry(this.entry.getId());
+			}
+			this.entry.setId(this.entryId);
+			if (this.previous != null) {
+				table.putEntry(this.previous);
+			}
+			if (this.replaced != null && this.replaced != this.previous) {
+				table.putEntry(this.replaced);
+			}
+		}
+	}
+
+	/**
+	 * Remove an entry from a table by index id, keeping it so it can be undone.
+	 */
+	private abstract static class RemoveChange<T extends IndexedTableEntry> implements Change {
+
+		private final String tableName;
+		private final String indexId;
+		private T removed;
+
+		/**
+		 * @param tableName The table name to journal the change under.
+		 * @param indexId The index id of the entry to remove.
+		 */
+		RemoveChange(String tableName, String indexId) {
+			this.tableName = tableName;
+			this.indexId = indexId;
+		}
+
+		abstract IndexedMapTable<T> table(MasterIndex masterIndex);
+
+		@Override
+		public TableChange apply(MasterIndex masterIndex) {
+			this.removed = table(masterIndex).removeEntry(this.indexId);
+			return (this.removed == null) ? null : TableChange.remove(this.tableName, this.removed.getId());
+		}
+
+		@Override
+		public void undo(MasterIndex masterIndex) {
+			if (this.removed != null) {
+				table(masterIndex).putEntry(this.removed);
+			}
+		}
+	}
+
+	/**
+	 * Changes to the safe committed together. Changes are only collected until commit, which applies them all to the
+	 * master index and journals them, or stores the master index if files changed; batches committed at the same time
+	 * take turns. A batch that is never committed changes nothing, and a batch whose changes can't all be applied
+	 * changes nothing either.
+	 */
+	public final class Batch {
+
+		private final List<Change> changes;
+		private final List<PutChange<FileTableEntry>> fileChanges;
+
+		private Batch() {
+			this.changes = new ArrayList<>();
+			this.fileChanges = new ArrayList<>();
+		}
+
+		public void putNote(Note noteToSave) {
+			this.changes.add(new PutChange<Note>(NOTES, noteToSave) {
+				@Override
+				IndexedMapTable<Note> table(MasterIndex masterIndex) {
+					return noteTable(masterIndex);
+				}
+			});
+		}
+
+		public void putPasswordNote(PasswordNote noteToSave) {
+			this.changes.add(new PutChange<PasswordNote>(PASSWORDS, noteToSave) {
+				@Override
+				IndexedMapTable<PasswordNote> table(MasterIndex masterIndex) {
+					return passwordNoteTable(masterIndex);
+				}
+			});
+		}
+
+		public void putPeer(Peer aPeer) {
+			this.changes.add(new PutChange<Peer>(PEERS, aPeer) {
+				@Override
+				@SuppressWarnings("unchecked")
+				IndexedMapTable<Peer> table(MasterIndex masterIndex) {
+					return masterIndex.getIndexedMapTable(PEERS);
+				}
+			});
+		}
+
+		/**
+		 * @param selectedFile A file to store; it is read when the batch is committed.
+		 */
+		public void putFile(File selectedFile) {
+			PutChange<FileTableEntry> fileChange = new PutChange<FileTableEntry>(null, new FileTableEntry(selectedFile.toPath(), "")) {
+				@Override
+				IndexedMapTable<FileTableEntry> table(MasterIndex masterIndex) {
+					return masterIndex.getFileTable(FILES);
+				}
+			};
+			this.fileChanges.add(fileChange);
+			this.changes.add(fileChange);
+		}
+
+		/**
+		 * @param title The title of a note to delete, in any case.
+		 */
+		public void deleteNote(String title) {
+			this.changes.add(new RemoveChange<Note>(NOTES, title.trim().toLowerCase()) {
+				@Override
+				IndexedMapTable<Note> table(MasterIndex masterIndex) {
+					return noteTable(masterIndex);
+				}
+			});
+		}
+
+		/**
+		 * @param title The title of a password note to delete, in any case.
+		 */
+		public void deletePasswordNote(String title) {
+			this.changes.add(new RemoveChange<PasswordNote>(PASSWORDS, title.trim().toLowerCase()) {
+				@Override
+				IndexedMapTable<PasswordNote> table(MasterIndex masterIndex) {
+					return passwordNoteTable(masterIndex);
+				}
+			});
+		}
+
+		/**
+		 * @return The number of changes collected.
+		 */
+		public int size() {
+			return this.changes.size();
+		}
+
+		/**
+		 * Apply the changes and commit them at once, returning when they are durable. Batches committed concurrently
+		 * from other threads are journaled together. The batch is empty afterwards and can be reused. Should a change
+		 * fail, e.g. a note without a title, the changes applied before it are undone and the batch keeps its changes.
+		 *
+		 * @throws PassphraseExpiredException
+		 */
+		public void commit() throws PassphraseExpiredException {
+			commit(null);
+		}
+
+		/**
+		 * Apply the changes and commit them at once, reporting the progress of storing files. Files not stored, e.g.
+		 * because the listener was cancelled, are taken out of the safe again, and the files they replaced put back.
+		 *
+		 * @param progressListener Told the file bytes stored so far, or null.
+		 * @throws PassphraseExpiredException
+		 */
+		public void commit(ProgressListener progressListener) throws PassphraseExpiredException {
+			SecureDatabase database = DigitalSafe.this.secureDatabase;
+			Future<Void> commit = null;
+			synchronized (database) {
+				MasterIndex masterIndex = database.getMasterIndex();
+				List<TableChange> tableChanges = new ArrayList<>(this.changes.size());
+				for (int i = 0; i < this.changes.size(); i++) {
+					try {
+						TableChange tableChange = this.changes.get(i).apply(masterIndex);
+						if (tableChange != null) {
+							tableChanges.add(tableChange);
+						}
+					} catch (RuntimeException ex) {
+						for (int applied = i - 1; applied >= 0; applied--) {
+							this.changes.get(applied).undo(masterIndex);
+						}
+						throw ex;
+					}
+				}
+				if (!this.fileChanges.isEmpty()) {
+					database.commitMasterIndex(masterIndex, progressListener);
+					for (PutChange<FileTableEntry> fileChange : this.fileChanges) {
+						if (fileChange.getEntry().isSourceAttached()) {
+							fileChange.undo(masterIndex);
+						}
+					}
+				} else {
+					commit = database.submitChanges(masterIndex, tableChanges);
+				}
+			}
+			discard();
+			if (commit != null) {
+				database.awaitCommit(commit); // outside the monitor, so concurrent batches join the group.
+			}
+		}
+
+		/**
+		 * Drop the changes collected so far.
+		 */
+		public void discard() {
+			this.changes.clear();
+			this.fileChanges.clear();
+		}
+	}
+
 }
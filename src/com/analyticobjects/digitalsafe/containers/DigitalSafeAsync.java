@@ -0,0 +1,382 @@
+package com.analyticobjects.digitalsafe.containers;
+
+import com.analyticobjects.utility.CancellableProgressListener;
+import com.analyticobjects.utility.ProgressListener;
+import com.analyticobjects.utility.ThreadUtility;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * An asynchronous facade to DigitalSafe, so a ui thread never waits on key derivation, encryption or disk. Every
+ * operation runs on one dedicated I/O thread, in the order submitted, so a get submitted after a put sees the put.
+ * Each returns a Future, and reports to an optional Callback, delivered by the callback executor given, e.g. one
+ * handing callbacks to the Swing event dispatch thread. Long operations report progress to a ProgressCallback.
+ * Cancelling an operation's future tells its callback at once; a file transfer then stops at its next buffer, and any
+ * other operation runs to its end. The I/O thread is never interrupted, as an interrupt during FileChannel I/O closes
+ * the safe's storage for good.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public final class DigitalSafeAsync {
+
+	private static final Executor SAME_THREAD = new Executor() {
+		@Override
+		public void execute(Runnable runnable) {
+			runnable.run();
+		}
+	};
+
+	private final DigitalSafe digitalSafe;
+	private final ExecutorService ioExecutor;
+	private final Executor callbackExecutor;
+
+	/**
+	 * Callbacks delivered on the I/O thread.
+	 *
+	 * @param digitalSafe The safe operated on.
+	 */
+	public DigitalSafeAsync(DigitalSafe digitalSafe) {
+		this(digitalSafe, SAME_THREAD);
+	}
+
+	/**
+	 * @param digitalSafe The safe operated on.
+	 * @param callbackExecutor Delivers callbacks, e.g. with EventQueue.invokeLater.
+	 */
+	public DigitalSafeAsync(DigitalSafe digitalSafe, Executor callbackExecutor) {
+		this.digitalSafe = digitalSafe;
+		this.ioExecutor = Executors.newSingleThreadExecutor(ThreadUtility.daemonThreadFactory("DigitalSafe-io"));
+		this.callbackExecutor = callbackExecutor;
+	}
+
+	/**
+	 * Told how an operation ended.
+	 *
+	 * @param <V> The operation result type.
+	 */
+	public interface Callback<V> {
+
+		void completed(V result);
+
+		/**
+		 * @param cause What the operation threw, e.g. a PassphraseExpiredException, or a CancellationException.
+		 */
+		void failed(Throwable cause);
+	}
+
+	/**
+	 * A callback also told how far along the operation is.
+	 *
+	 * @param <V> The operation result type.
+	 */
+	public interface ProgressCallback<V> extends Callback<V>, ProgressListener {
+	}
+
+	/**
+	 * @return The safe operated on, for what is cheap enough to do synchronously, e.g. lock.
+	 */
+	public DigitalSafe getDigitalSafe() {
+		return this.digitalSafe;
+	}
+
+	/**
+	 * Run any operation on the I/O thread.
+	 *
+	 * @param <V> The operation result type.
+	 * @param operation The operation.
+	 * @param callback Told the outcome, or null.
+	 * @return The operation result.
+	 */
+	public <V> Future<V> submit(Callable<V> operation, Callback<V> callback) {
+		return submit(operation, callback, null);
+	}
+
+	/**
+	 * @param <V> The operation result type.
+	 * @param operation The operation.
+	 * @param callback Told the outcome, or null.
+	 * @param progress The operation's progress listener, told which operation it belongs to, or null.
+	 * @return The operation result.
+	 */
+	private <V> Future<V> submit(Callable<V> operation, Callback<V> callback, Progress progress) {
+		Operation<V> asyncOperation = new Operation<>(operation, callback);
+		if (progress != null) {
+			progress.operation = asyncOperation;
+		}
+		this.ioExecutor.execute(asyncOperation);
+		return asyncOperation;
+	}
+
+	public Future<Void> setPassphrase(final String passphrase, Callback<Void> callback) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				DigitalSafeAsync.this.digitalSafe.setPassphrase(passphrase);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Lock the safe after the operations submitted before, e.g. to lock it again after cancelling an unlock.
+	 *
+	 * @param callback Told the outcome, or null.
+	 * @return Done when locked.
+	 */
+	public Future<Void> lock(Callback<Void> callback) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				DigitalSafeAsync.this.digitalSafe.lock();
+				return null;
+			}
+		}, callback);
+	}
+
+	public Future<Void> clear(Callback<Void> callback) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				DigitalSafeAsync.this.digitalSafe.clear();
+				return null;
+			}
+		}, callback);
+	}
+
+	public Future<Void> putNote(final Note noteToSave, Callback<Void> callback) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				DigitalSafeAsync.this.digitalSafe.putNote(noteToSave);
+				return null;
+			}
+		}, callback);
+	}
+
+	public Future<Note> getNote(final String title, Callback<Note> callback) {
+		return submit(new Callable<Note>() {
+			@Override
+			public Note call() throws Exception {
+				return DigitalSafeAsync.this.digitalSafe.getNote(title);
+			}
+		}, callback);
+	}
+
+	public Future<Boolean> deleteNote(final String title, Callback<Boolean> callback) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				return DigitalSafeAsync.this.digitalSafe.deleteNote(title);
+			}
+		}, callback);
+	}
+
+	public Future<Void> putPasswordNote(final PasswordNote noteToSave, Callback<Void> callback) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				DigitalSafeAsync.this.digitalSafe.putPasswordNote(noteToSave);
+				return null;
+			}
+		}, callback);
+	}
+
+	public Future<PasswordNote> getPasswordNote(final String title, Callback<PasswordNote> callback) {
+		return submit(new Callable<PasswordNote>() {
+			@Override
+			public PasswordNote call() throws Exception {
+				return DigitalSafeAsync.this.digitalSafe.getPasswordNote(title);
+			}
+		}, callback);
+	}
+
+	public Future<Boolean> deletePasswordNote(final String title, Callback<Boolean> callback) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				return DigitalSafeAsync.this.digitalSafe.deletePasswordNote(title);
+			}
+		}, callback);
+	}
+
+	public Future<Integer> importPasswordNotes(final Path csvPath, Callback<Integer> callback) {
+		return submit(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				return DigitalSafeAsync.this.digitalSafe.importPasswordNotes(csvPath);
+			}
+		}, callback);
+	}
+
+	public Future<List<Note>> search(final String query, Callback<List<Note>> callback) {
+		return submit(new Callable<List<Note>>() {
+			@Override
+			public List<Note> call() throws Exception {
+				return DigitalSafeAsync.this.digitalSafe.search(query);
+			}
+		}, callback);
+	}
+
+	public Future<List<String>> findNoteTitles(final String partialTitle, Callback<List<String>> callback) {
+		return submit(new Callable<List<String>>() {
+			@Override
+			public List<String> call() throws Exception {
+				return DigitalSafeAsync.this.digitalSafe.findNoteTitles(partialTitle);
+			}
+		}, callback);
+	}
+
+	public Future<List<String>> findPasswordNoteTitles(final String partialTitle, Callback<List<String>> callback) {
+		return submit(new Callable<List<String>>() {
+			@Override
+			public List<String> call() throws Exception {
+				return DigitalSafeAsync.this.digitalSafe.findPasswordNoteTitles(partialTitle);
+			}
+		}, callback);
+	}
+
+	public Future<Void> putFile(final File selectedFile, Callback<Void> callback) {
+		final Progress progress = new Progress(callback);
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				DigitalSafeAsync.this.digitalSafe.putFile(selectedFile, progress);
+				return null;
+			}
+		}, callback, progress);
+	}
+
+	public Future<Void> getFile(final String fileName, Callback<Void> callback) {
+		final Progress progress = new Progress(callback);
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				DigitalSafeAsync.this.digitalSafe.getFile(fileName, progress);
+				return null;
+			}
+		}, callback, progress);
+	}
+
+	public Future<Boolean> deleteFile(final String fileName, Callback<Boolean> callback) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				return DigitalSafeAsync.this.digitalSafe.deleteFile(fileName);
+			}
+		}, callback);
+	}
+
+	public Future<List<String[]>> listFiles(Callback<List<String[]>> callback) {
+		return submit(new Callable<List<String[]>>() {
+			@Override
+			public List<String[]> call() throws Exception {
+				return DigitalSafeAsync.this.digitalSafe.listFiles();
+			}
+		}, callback);
+	}
+
+	/**
+	 * The progress listener of a file transfer: hands progress to a progress callback through the callback executor,
+	 * once per percent so a ui thread isn't flooded, and stops the transfer once its operation is cancelled.
+	 */
+	private final class Progress implements CancellableProgressListener {
+
+		private final ProgressListener progressCallback;
+		private volatile Future<?> operation;
+		private long lastPercent = -1L;
+
+		/**
+		 * @param callback Any callback; progress is only handed to a progress callback.
+		 */
+		Progress(Callback<?> callback) {
+			this.progressCallback = (callback instanceof ProgressCallback) ? (ProgressCallback<?>) callback : null;
+		}
+
+		@Override
+		public void progressed(final long done, final long total) {
+			if (this.progressCallback == null) {
+				return;
+			}
+			long percent = (total > 0L) ? (100L * done / total) : -1L;
+			if (percent == this.lastPercent && total > 0L) {
+				return;
+			}
+			this.lastPercent = percent;
+			DigitalSafeAsync.this.callbackExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					Progress.this.progressCallback.progressed(done, total);
+				}
+			});
+		}
+
+		@Override
+		public boolean isCancelled() {
+			Future<?> cancellable = this.operation;
+			return (cancellable != null) && cancellable.isCancelled();
+		}
+	}
+
+	/**
+	 * An operation that reports its outcome to a callback when done.
+	 */
+	private final class Operation<V> extends FutureTask<V> {
+
+		private final Callback<V> callback;
+
+		Operation(Callable<V> operation, Callback<V> callback) {
+			super(operation);
+			this.callback = callback;
+		}
+
+		/**
+		 * Cancel without interrupting the I/O thread, whatever is asked.
+		 *
+		 * @param mayInterruptIfRunning Ignored.
+		 * @return False if the operation could not be cancelled, e.g. because it already ended.
+		 */
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return super.cancel(false);
+		}
+
+		@Override
+		protected void done() {
+			if (this.callback == null) {
+				return;
+			}
+			V result = null;
+			Throwable cause = null;
+			try {
+				result = get();
+			} catch (ExecutionException ex) {
+				cause = ex.getCause();
+			} catch (CancellationException | InterruptedException ex) {
+				cause = ex;
+			}
+			final V deliveredResult = result;
+			final Throwable deliveredCause = cause;
+			DigitalSafeAsync.this.callbackExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					if (deliveredCause == null) {
+						Operation.this.callback.completed(deliveredResult);
+					} else {
+						Operation.this.callback.failed(deliveredCause);
+					}
+				}
+			});
+		}
+	}
+
+}
@@ -1,9 +1,18 @@
 package com.analyticobjects.digitalsafe.containers;
 
-import com.analyticobjects.digitalsafe.database.IndexedTableEntry;
+import com.analyticobjects.digitalsafe.database.EntryDecoder;
+import com.analyticobjects.digitalsafe.database.HashIndex;
+import com.analyticobjects.digitalsafe.database.SearchableEntry;
+import com.analyticobjects.digitalsafe.database.SortedIndex;
+import com.analyticobjects.utility.BinaryReader;
+import com.analyticobjects.utility.BinaryWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -12,10 +21,12 @@ import java.util.Set;
  * @author Joel Bondurant
  * @since 2013.08
  */
-public class Note implements IndexedTableEntry {
+public class Note implements SearchableEntry {
 
 	private static final long serialVersionUID = 1L;
 	public static final String TAG_DELIMITER = ",";
+	public static final String TAG_INDEX = "tags";
+	public static final String UPDATE_TIME_INDEX = "updateTime";
 	private long id;
 	private String title;
 	private String message;
@@ -31,6 +42,75 @@ public class Note implements IndexedTableEntry {
 		this.updateTime = new Date();
 	}
 
+	/**
+	 * Decode a note written by encode.
+	 *
+	 * @param in The encoded fields.
+	 * @throws IOException
+	 */
+	protected Note(BinaryReader in) throws IOException {
+		this.id = in.readVarLong();
+		this.title = in.readString();
+		this.message = in.readString();
+		int tagCount = in.readVarInt();
+		this.tags = new HashSet<>();
+		for (int i = 0; i < tagCount; i++) {
+			this.tags.add(in.readString());
+		}
+		this.createTime = in.readDate();
+		this.updateTime = in.readDate();
+	}
+
+	public static final EntryDecoder<Note> DECODER = new EntryDecoder<Note>() {
+		@Override
+		public Note decode(BinaryReader in, int version) throws IOException {
+			return new Note(in);
+		}
+	};
+
+	/**
+	 * @return A new secondary index of notes by lower cased tag.
+	 */
+	public static HashIndex<Note, String> tagIndex() {
+		return new HashIndex<Note, String>(TAG_INDEX) {
+			@Override
+			protected Collection<String> keysOf(Note note) {
+				List<String> keys = new ArrayList<>(note.tags.size());
+				for (String tag : note.tags) {
+					if (!tag.isEmpty()) {
+						keys.add(tag.toLowerCase());
+					}
+				}
+				return keys;
+			}
+		};
+	}
+
+	/**
+	 * @return A new sorted secondary index of notes by update time.
+	 */
+	public static SortedIndex<Note, Date> updateTimeIndex() {
+		return new SortedIndex<Note, Date>(UPDATE_TIME_INDEX) {
+			@Override
+			protected Collection<Date> keysOf(Note note) {
+				return Collections.singletonList(note.getUpdateTime());
+			}
+		};
+	}
+
+	@Override
+	public void encode(BinaryWriter out) {
+		out.writeVarLong(this.id);
+		out.writeString(this.title);
+		out.writeString(this.message);
+		out.writeVarInt(this.tags.size());
+		for (String tag : this.tags) {
+			out.writeString(tag);
+		}
+		out.writeDate(this.createTime);
+		out.writeDate(this.updateTime);
+	}
+
 	public void setId(int id) {
 		updateTime();
 		this.id = id;
@@ -133,6 +213,20 @@ public class Note implements IndexedTableEntry {
 		return sb.toString();
 	}
 
+	/**
+	 * @return The title, tags and message, the words a note is found by.
+	 */
+	@Override
+	public String searchText() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(this.title);
+		sb.append(" ");
+		sb.append(this.getTagString());
+		sb.append(" ");
+		sb.append(this.message);
+		return sb.toString();
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (!(obj instanceof Note)) {
@@ -0,0 +1,148 @@
+package com.analyticobjects.digitalsafe.containers;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads password notes from the CSV exports of other password managers. The first row names the columns; the title,
+ * url, user name, password and notes columns are recognized by the names the common managers use, other columns are
+ * ignored. Fields may be quoted, with doubled quotes and line breaks inside quotes.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+final class PasswordImport {
+
+	private static final String TITLE = "title";
+	private static final String URL = "url";
+	private static final String USER_NAME = "userName";
+	private static final String PASSWORD = "password";
+	private static final String NOTES = "notes";
+	private static final Map<String, String> columnAliases = new HashMap<>();
+
+	static {
+		for (String alias : new String[]{"title", "name", "account"}) {
+			columnAliases.put(alias, TITLE);
+		}
+		for (String alias : new String[]{"url", "login_uri", "website", "web site", "site"}) {
+			columnAliases.put(alias, URL);
+		}
+		for (String alias : new String[]{"username", "user name", "login_username", "login", "user", "email"}) {
+			columnAliases.put(alias, USER_NAME);
+		}
+		for (String alias : new String[]{"password", "login_password", "pass"}) {
+			columnAliases.put(alias, PASSWORD);
+		}
+		for (String alias : new String[]{"notes", "note", "extra", "comments", "comment"}) {
+			columnAliases.put(alias, NOTES);
+		}
+	}
+
+	private PasswordImport() {
+	}
+
+	/**
+	 * Read password notes from CSV. Rows with neither a title nor a url are skipped; rows without a title are titled
+	 * by their url.
+	 *
+	 * @param csvReader The CSV text, from a reader supporting mark such as a BufferedReader.
+	 * @return The password notes, in row order.
+	 * @throws IOException If the CSV can't be read or has no password column.
+	 */
+	static List<PasswordNote> readCsv(Reader csvReader) throws IOException {
+		List<String> header = readRow(csvReader);
+		if (header == null) {
+			return new ArrayList<>();
+		}
+		Map<String, Integer> columns = new HashMap<>();
+		for (int i = 0; i < header.size(); i++) {
+			String column = columnAliases.get(header.get(i).trim().toLowerCase(Locale.ENGLISH));
+			if (column != null && !columns.containsKey(column)) {
+				columns.put(column, i);
+			}
+		}
+		if (!columns.containsKey(PASSWORD)) {
+			throw new IOException("No password column in: " + header);
+		}
+		List<PasswordNote> passwordNotes = new ArrayList<>();
+		for (List<String> row = readRow(csvReader); row != null; row = readRow(csvReader)) {
+			String title = field(row, columns, TITLE);
+			String url = field(row, columns, URL);
+			if (title.isEmpty()) {
+				title = url;
+			}
+			if (title.isEmpty()) {
+				continue;
+			}
+			PasswordNote passwordNote = new PasswordNote(title, field(row, columns, PASSWORD));
+			passwordNote.setUrl(url);
+			passwordNote.setUserName(field(row, columns, USER_NAME));
+			passwordNote.setMessage(field(row, columns, NOTES));
+			passwordNotes.add(passwordNote);
+		}
+		return passwordNotes;
+	}
+
+	private static String field(List<String> row, Map<String, Integer> columns, String column) {
+		Integer index = columns.get(column);
+		if (index == null || index >= row.size()) {
+			return "";
+		}
+		return row.get(index).trim();
+	}
+
+	/**
+	 * Read one CSV row.
+	 *
+	 * @param csvReader The CSV text, positioned at the start of a row.
+	 * @return The row fields, or null at the end of the text.
+	 * @throws IOException
+	 */
+	static List<String> readRow(Reader csvReader) throws IOException {
+		List<String> row = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		boolean rowStarted = false;
+		int c = csvReader.read();
+		while (c >= 0) {
+			rowStarted = true;
+			if (quoted) {
+				if (c == '"') {
+					csvReader.mark(1);
+					int next = csvReader.read();
+					if (next == '"') {
+						field.append('"');
+					} else {
+						quoted = false;
+						if (next >= 0) {
+							csvReader.reset();
+						}
+					}
+				} else {
+					field.append((char) c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				row.add(field.toString());
+				field.setLength(0);
+			} else if (c == '\n') {
+				break;
+			} else if (c != '\r') {
+				field.append((char) c);
+			}
+			c = csvReader.read();
+		}
+		if (!rowStarted) {
+			return null;
+		}
+		row.add(field.toString());
+		return row;
+	}
+
+}
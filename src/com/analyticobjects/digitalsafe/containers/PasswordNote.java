@@ -1,6 +1,14 @@
 package com.analyticobjects.digitalsafe.containers;
 
+import com.analyticobjects.digitalsafe.database.EntryDecoder;
+import com.analyticobjects.digitalsafe.database.HashIndex;
+import com.analyticobjects.digitalsafe.database.SortedIndex;
+import com.analyticobjects.utility.BinaryReader;
+import com.analyticobjects.utility.BinaryWriter;
 import com.analyticobjects.utility.TimeUtility;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 
 /**
@@ -13,6 +21,9 @@ public class PasswordNote extends Note {
 
 	private static final long serialVersionUID = 1L;
 	private static final int DAYS_TO_EXPIRATION = 180;
+	public static final String DOMAIN_INDEX = "domain";
+	public static final String USER_NAME_INDEX = "userName";
+	public static final String EXPIRATION_INDEX = "expiration";
 	private String userName;
 	private String password;
 	private String url;
@@ -26,6 +37,75 @@ public class PasswordNote extends Note {
 		this.updateExpiration();
 	}
 
+	/**
+	 * Decode a password note written by encode.
+	 *
+	 * @param in The encoded fields.
+	 * @throws IOException
+	 */
+	protected PasswordNote(BinaryReader in) throws IOException {
+		super(in);
+		this.userName = in.readString();
+		this.password = in.readString();
+		this.url = in.readString();
+		this.expirationTime = in.readDate();
+	}
+
+	public static final EntryDecoder<PasswordNote> DECODER = new EntryDecoder<PasswordNote>() {
+		@Override
+		public PasswordNote decode(BinaryReader in, int version) throws IOException {
+			return new PasswordNote(in);
+		}
+	};
+
+	/**
+	 * @return A new secondary index of password notes by url domain.
+	 */
+	public static HashIndex<PasswordNote, String> domainIndex() {
+		return new HashIndex<PasswordNote, String>(DOMAIN_INDEX) {
+			@Override
+			protected Collection<String> keysOf(PasswordNote passwordNote) {
+				return Collections.singletonList(passwordNote.getDomain());
+			}
+		};
+	}
+
+	/**
+	 * @return A new secondary index of password notes by lower cased user name.
+	 */
+	public static HashIndex<PasswordNote, String> userNameIndex() {
+		return new HashIndex<PasswordNote, String>(USER_NAME_INDEX) {
+			@Override
+			protected Collection<String> keysOf(PasswordNote passwordNote) {
+				if (passwordNote.userName == null || passwordNote.userName.isEmpty()) {
+					return null;
+				}
+				return Collections.singletonList(passwordNote.userName.toLowerCase());
+			}
+		};
+	}
+
+	/**
+	 * @return A new sorted secondary index of password notes by expiration time.
+	 */
+	public static SortedIndex<PasswordNote, Date> expirationIndex() {
+		return new SortedIndex<PasswordNote, Date>(EXPIRATION_INDEX) {
+			@Override
+			protected Collection<Date> keysOf(PasswordNote passwordNote) {
+				return Collections.singletonList(passwordNote.expirationTime);
+			}
+		};
+	}
+
+	@Override
+	public void encode(BinaryWriter out) {
+		super.encode(out);
+		out.writeString(this.userName);
+		out.writeString(this.password);
+		out.writeString(this.url);
+		out.writeDate(this.expirationTime);
+	}
+
 	private void updateExpiration() {
 		this.expirationTime = TimeUtility.addDays(new Date(), DAYS_TO_EXPIRATION);
 	}
@@ -58,10 +138,55 @@ public class PasswordNote extends Note {
 		this.url = url;
 	}
 
+	/**
+	 * @return The lower cased host of the url, without any leading www., or null if there is none.
+	 */
+	public String getDomain() {
+		return domainOf(this.url);
+	}
+
+	/**
+	 * @param url A url, with or without a scheme, e.g. https://www.example.com:8443/login or example.com.
+	 * @return The lower cased host of the url, without any leading www., or null if there is none.
+	 */
+	public static String domainOf(String url) {
+		if (url == null) {
+			return null;
+		}
+		String host = url.trim().toLowerCase();
+		int schemeEnd = host.indexOf("://");
+		if (schemeEnd >= 0) {
+			host = host.substring(schemeEnd + 3);
+		}
+		for (char authorityEnd : new char[]{'/', '?', '#'}) {
+			int end = host.indexOf(authorityEnd);
+			if (end >= 0) {
+				host = host.substring(0, end);
+			}
+		}
+		host = host.substring(host.lastIndexOf('@') + 1);
+		int portStart = host.indexOf(':');
+		if (portStart >= 0) {
+			host = host.substring(0, portStart);
+		}
+		if (host.startsWith("www.")) {
+			host = host.substring(4);
+		}
+		return host.isEmpty() ? null : host;
+	}
+
 	public Date getExpirationTime() {
 		return this.expirationTime;
 	}
 
+	/**
+	 * @return The note search text plus the user name and url, never the password.
+	 */
+	@Override
+	public String searchText() {
+		return super.searchText() + " " + this.userName + " " + this.url;
+	}
+
 	@Override
 	public String toXML() {
 		StringBuilder xmlSnip = new StringBuilder();
@@ -0,0 +1,149 @@
+package com.analyticobjects.digitalsafe.crypto;
+
+import com.analyticobjects.digitalsafe.exceptions.PassphraseExpiredException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * AES-256 in Galois/Counter mode: one pass over the data, which the JVM runs on the AES and carry-less multiply
+ * instructions of processors that have them, and a tag that detects any change to the record, its header or its
+ * associated data. Each record gets a random 96 bit nonce. The key is derived with the 3-AES keys, see TripleAES.
+ *
+ * AES-256 needs the unlimited strength policy on Java runtimes that still ship the limited one, and AES/GCM needs a
+ * provider offering it; without them the suite is unavailable and new safes use 3-AES.
+ *
+ * Encrypted record layout: suite header (4 bytes), nonce (12), ciphertext, tag (16).
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+final class AESGCMSuite extends CipherSuite {
+
+	private static final String AES_GCM = "AES/GCM/NoPadding";
+	private static final int KEY_LENGTH = 256;
+	static final int NONCE_SIZE = 12;
+	static final int TAG_SIZE = 16;
+	private static final Logger logger = Logger.getLogger(AESGCMSuite.class.getName());
+	private static final SecureRandom secureRandom = new SecureRandom();
+	private static final CipherPool cipherPool = new CipherPool(AES_GCM, 1);
+	private final boolean available;
+
+	AESGCMSuite() {
+		this.available = checkAvailable();
+	}
+
+	@Override
+	public byte getId() {
+		return 1;
+	}
+
+	@Override
+	public String getName() {
+		return "AES-256-GCM";
+	}
+
+	@Override
+	public boolean isAuthenticated() {
+		return true;
+	}
+
+	@Override
+	public boolean isAvailable() {
+		return this.available;
+	}
+
+	private static boolean checkAvailable() {
+		try {
+			Cipher.getInstance(AES_GCM);
+			return Cipher.getMaxAllowedKeyLength("AES") >= KEY_LENGTH;
+		} catch (NoSuchAlgorithmException | NoSuchPaddingException ex) {
+			logger.log(Level.INFO, "AES-GCM unavailable: {0}", ex.getLocalizedMessage());
+		}
+		return false;
+	}
+
+	@Override
+	public byte[] encrypt(Passphrase passphrase, byte[] associatedData, byte[] unencryptedData) throws PassphraseExpiredException {
+		byte[] header = header(this);
+		byte[] nonce = new byte[NONCE_SIZE];
+		secureRandom.nextBytes(nonce);
+		try {
+			Cipher cipher = cipher(passphrase.getKeySchedule(), Cipher.ENCRYPT_MODE, nonce, header, associatedData);
+			byte[] encryptedData = new byte[HEADER_SIZE + NONCE_SIZE + cipher.getOutputSize(unencryptedData.length)];
+			System.arraycopy(header, 0, encryptedData, 0, HEADER_SIZE);
+			System.arraycopy(nonce, 0, encryptedData, HEADER_SIZE, NONCE_SIZE);
+			cipher.doFinal(unencryptedData, 0, unencryptedData.length, encryptedData, HEADER_SIZE + NONCE_SIZE);
+			return encryptedData;
+		} catch (GeneralSecurityException ex) {
+			logger.log(Level.SEVERE, ex.getLocalizedMessage(), ex);
+		}
+		return null;
+	}
+
+	@Override
+	public byte[] decrypt(Passphrase passphrase, byte[] associatedData, ByteBuffer encryptedData) throws PassphraseExpiredException, AEADBadTagException {
+		if (encryptedData.remaining() < HEADER_SIZE + NONCE_SIZE + TAG_SIZE) {
+			throw new AEADBadTagException("Record too short.");
+		}
+		ByteBuffer recordReader = encryptedData.duplicate();
+		byte[] header = new byte[HEADER_SIZE];
+		recordReader.get(header);
+		byte[] nonce = new byte[NONCE_SIZE];
+		recordReader.get(nonce);
+		byte[] unencryptedData = new byte[recordReader.remaining() - TAG_SIZE];
+		try {
+			Cipher cipher = cipher(passphrase.getKeySchedule(), Cipher.DECRYPT_MODE, nonce, header, associatedData);
+			cipher.doFinal(recordReader, ByteBuffer.wrap(unencryptedData));
+			return unencryptedData;
+		} catch (AEADBadTagException ex) {
+			throw ex;
+		} catch (GeneralSecurityException ex) {
+			logger.log(Level.SEVERE, ex.getLocalizedMessage(), ex);
+		}
+		return null;
+	}
+
+	/**
+	 * The calling thread's pooled AES-GCM cipher, ready for the record's data, with the header and associated data already authenticated.
+	 *
+	 * @param keySchedule The cached keys for the passphrase.
+	 * @param mode Cipher.ENCRYPT_MODE | Cipher.DECRYPT_MODE
+	 * @param nonce The record nonce.
+	 * @param header The record's suite header.
+	 * @param associatedData The record's associated data, or null.
+	 * @return An initialized cipher.
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchPaddingException
+	 * @throws InvalidKeyException
+	 * @throws InvalidAlgorithmParameterException
+	 * @throws PassphraseExpiredException
+	 */
+	private static Cipher cipher(KeySchedule keySchedule, int mode, byte[] nonce, byte[] header, byte[] associatedData) throws NoSuchAlgorithmException,
+		NoSuchPaddingException, InvalidKeyException, InvalidAlgorithmParameterException, PassphraseExpiredException {
+		Cipher cipher = cipherPool.get(mode, 0);
+		try {
+			cipher.init(mode, keySchedule.aeadKey(), new GCMParameterSpec(8 * TAG_SIZE, nonce));
+		} catch (IllegalStateException ex) {
+			throw new PassphraseExpiredException();
+		}
+		if (keySchedule.isWiped()) { // cleared part way through, the key may be zeroed.
+			throw new PassphraseExpiredException();
+		}
+		cipher.updateAAD(header);
+		if (associatedData != null) {
+			cipher.updateAAD(associatedData);
+		}
+		return cipher;
+	}
+
+}
@@ -0,0 +1,144 @@
+package com.analyticobjects.digitalsafe.crypto;
+
+import com.analyticobjects.digitalsafe.exceptions.PassphraseExpiredException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Mac;
+
+/**
+ * Encrypts independent chunks of a larger stream. Every chunk is bound to its chunk key, so chunks can't be altered,
+ * reordered or swapped between files without detection. An authenticated cipher suite binds the chunk key as
+ * associated data. 3-AES chunks are encrypted with their own random nonce and carry an HMAC-SHA256 tag over the chunk
+ * key and ciphertext.
+ *
+ * 3-AES sealed chunk layout: nonce (16 bytes), 3-AES ciphertext, tag (32 bytes). Chunks sealed by other suites are
+ * laid out by the suite.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public final class ChunkCipher {
+
+	public static final int NONCE_SIZE = TripleAES.NONCE_SIZE;
+	public static final int TAG_SIZE = 32;
+	private static final String HMAC = "HmacSHA256";
+	private static final SecureRandom secureRandom = new SecureRandom();
+
+	private ChunkCipher() {
+	} // static methods only.
+
+	/**
+	 * Encrypt and authenticate a chunk.
+	 *
+	 * @param cipherSuite The suite to encrypt with.
+	 * @param passphrase The passphrase to encrypt with.
+	 * @param chunkKey A unique identifier of the chunk, e.g. its storage key.
+	 * @param chunk The raw chunk bytes.
+	 * @return The sealed chunk, or null if encryption failed.
+	 * @throws PassphraseExpiredException
+	 */
+	public static byte[] seal(CipherSuite cipherSuite, Passphrase passphrase, String chunkKey, byte[] chunk) throws PassphraseExpiredException {
+		if (cipherSuite.isAuthenticated()) {
+			return cipherSuite.encrypt(passphrase, chunkKey.getBytes(StandardCharsets.UTF_8), chunk);
+		}
+		byte[] nonce = new byte[NONCE_SIZE];
+		secureRandom.nextBytes(nonce);
+		byte[] encryptedChunk = TripleAES.encrypt(passphrase, nonce, chunk);
+		if (encryptedChunk == null) {
+			return null;
+		}
+		byte[] tag = tag(passphrase, chunkKey, nonce, ByteBuffer.wrap(encryptedChunk));
+		if (tag == null) {
+			return null;
+		}
+		byte[] sealedChunk = new byte[NONCE_SIZE + encryptedChunk.length + TAG_SIZE];
+		System.arraycopy(nonce, 0, sealedChunk, 0, NONCE_SIZE);
+		System.arraycopy(encryptedChunk, 0, sealedChunk, NONCE_SIZE, encryptedChunk.length);
+		System.arraycopy(tag, 0, sealedChunk, NONCE_SIZE + encryptedChunk.length, TAG_SIZE);
+		return sealedChunk;
+	}
+
+	/**
+	 * Authenticate and decrypt a chunk.
+	 *
+	 * @param passphrase The passphrase to decrypt with.
+	 * @param chunkKey The identifier the chunk was sealed with.
+	 * @param sealedChunk The sealed chunk.
+	 * @return The raw chunk bytes, or null if decryption failed.
+	 * @throws PassphraseExpiredException
+	 * @throws AEADBadTagException If the chunk is corrupt or not the chunk expected.
+	 */
+	public static byte[] open(Passphrase passphrase, String chunkKey, byte[] sealedChunk) throws PassphraseExpiredException, AEADBadTagException {
+		return open(passphrase, chunkKey, ByteBuffer.wrap(sealedChunk));
+	}
+
+	/**
+	 * Authenticate and decrypt a chunk straight out of a buffer, e.g. a memory mapped region of the safe file. The
+	 * position of the buffer is not changed.
+	 *
+	 * @param passphrase The passphrase to decrypt with.
+	 * @param chunkKey The identifier the chunk was sealed with.
+	 * @param sealedChunk The sealed chunk, from its position to its limit.
+	 * @return The raw chunk bytes, or null if decryption failed.
+	 * @throws PassphraseExpiredException
+	 * @throws AEADBadTagException If the chunk is corrupt or not the chunk expected.
+	 */
+	public static byte[] open(Passphrase passphrase, String chunkKey, ByteBuffer sealedChunk) throws PassphraseExpiredException, AEADBadTagException {
+		CipherSuite cipherSuite = CipherSuite.of(sealedChunk);
+		if (cipherSuite.isAuthenticated()) {
+			try {
+				return cipherSuite.decrypt(passphrase, chunkKey.getBytes(StandardCharsets.UTF_8), sealedChunk);
+			} catch (AEADBadTagException ex) {
+				// possibly a 3-AES chunk starting with a suite header by chance, which its HMAC settles.
+			}
+		}
+		if (sealedChunk.remaining() < NONCE_SIZE + TAG_SIZE) {
+			throw new AEADBadTagException("Chunk too short: " + chunkKey);
+		}
+		int encryptedLength = sealedChunk.remaining() - NONCE_SIZE - TAG_SIZE;
+		ByteBuffer chunkReader = sealedChunk.duplicate();
+		byte[] nonce = new byte[NONCE_SIZE];
+		chunkReader.get(nonce);
+		ByteBuffer encryptedChunk = chunkReader.slice();
+		encryptedChunk.limit(encryptedLength);
+		chunkReader.position(chunkReader.position() + encryptedLength);
+		byte[] tag = new byte[TAG_SIZE];
+		chunkReader.get(tag);
+		byte[] expectedTag = tag(passphrase, chunkKey, nonce, encryptedChunk);
+		if (expectedTag == null) {
+			return null;
+		}
+		if (!MessageDigest.isEqual(expectedTag, tag)) {
+			throw new AEADBadTagException("Chunk failed authentication: " + chunkKey);
+		}
+		return TripleAES.decrypt(passphrase, nonce, encryptedChunk);
+	}
+
+	/**
+	 * @return HMAC(chunkKey, nonce, encryptedChunk), or null on failure.
+	 */
+	private static byte[] tag(Passphrase passphrase, String chunkKey, byte[] nonce, ByteBuffer encryptedChunk) throws PassphraseExpiredException {
+		KeySchedule keySchedule = passphrase.getKeySchedule();
+		try {
+			Mac mac = Mac.getInstance(HMAC);
+			mac.init(keySchedule.macKey());
+			mac.update(chunkKey.getBytes(StandardCharsets.UTF_8));
+			mac.update(nonce);
+			mac.update(encryptedChunk.duplicate());
+			return mac.doFinal();
+		} catch (IllegalStateException ex) {
+			throw new PassphraseExpiredException();
+		} catch (NoSuchAlgorithmException | InvalidKeyException ex) {
+			Logger.getLogger(ChunkCipher.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.analyticobjects.digitalsafe.crypto;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+
+/**
+ * Cipher instances kept per thread and reused, so encrypting many small records, e.g. notes, doesn't pay for the
+ * provider lookup and object creation of Cipher.getInstance on every record. Each thread gets its own ciphers for
+ * each mode, as a Cipher is not thread safe. Callers init a cipher with the record's key and iv before every use;
+ * the JDK's AES keeps the expanded key of the last init, so initializing again with the same key is cheap.
+ *
+ * A pooled cipher holds the key it was last initialized with, so Passphrase.clear releases every thread's ciphers,
+ * leaving them to the garbage collector as discarded ciphers were before pooling.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+final class CipherPool {
+
+	private static final Set<Cipher[]> threadCiphers = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<Cipher[], Boolean>()));
+	private final String transformation;
+	private final int size;
+	private final ThreadLocal<Cipher[]> ciphers;
+
+	/**
+	 * @param transformation The Cipher.getInstance transformation, e.g. "AES/CBC/NoPadding".
+	 * @param size The number of ciphers each thread needs at once for each mode, e.g. three for 3-AES.
+	 */
+	CipherPool(String transformation, final int size) {
+		this.transformation = transformation;
+		this.size = size;
+		this.ciphers = new ThreadLocal<Cipher[]>() {
+			@Override
+			protected Cipher[] initialValue() {
+				Cipher[] pooledCiphers = new Cipher[2 * size];
+				threadCiphers.add(pooledCiphers);
+				return pooledCiphers;
+			}
+		};
+	}
+
+	/**
+	 * One of the calling thread's ciphers, created on first use. It must be initialized before use.
+	 *
+	 * @param mode Cipher.ENCRYPT_MODE | Cipher.DECRYPT_MODE
+	 * @param index Which of the thread's ciphers for the mode; [0,size)
+	 * @return The cipher.
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchPaddingException
+	 */
+	Cipher get(int mode, int index) throws NoSuchAlgorithmException, NoSuchPaddingException {
+		Cipher[] pooledCiphers = this.ciphers.get();
+		int slot = (mode == Cipher.DECRYPT_MODE) ? this.size + index : index;
+		Cipher cipher = pooledCiphers[slot];
+		if (cipher == null) {
+			cipher = Cipher.getInstance(this.transformation);
+			pooledCiphers[slot] = cipher;
+		}
+		return cipher;
+	}
+
+	/**
+	 * Drop every thread's pooled ciphers, and the key material they hold; they are created again on next use.
+	 */
+	static void releaseAll() {
+		synchronized (threadCiphers) {
+			for (Cipher[] pooledCiphers : threadCiphers) {
+				Arrays.fill(pooledCiphers, null);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,182 @@
+package com.analyticobjects.digitalsafe.crypto;
+
+import com.analyticobjects.digitalsafe.exceptions.PassphraseExpiredException;
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.crypto.AEADBadTagException;
+
+/**
+ * A way of encrypting records with the keys derived from a passphrase. Every suite but the legacy 3-AES one marks
+ * what it encrypts with a short header naming the suite, so a record is always decrypted with the suite that wrote it
+ * and a safe can hold records of several suites. 3-AES records, written before there were suites, have no header.
+ *
+ * Encrypted record layout, other than 3-AES: magic (3 bytes), suite id (1 byte), suite specific ciphertext.
+ *
+ * An abstract class rather than an interface, as Java 7 interfaces can't hold the static lookup methods.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public abstract class CipherSuite {
+
+	static final byte[] MAGIC = {'D', 'S', 'c'};
+	static final int HEADER_SIZE = MAGIC.length + 1;
+	private static final Logger logger = Logger.getLogger(CipherSuite.class.getName());
+
+	/**
+	 * Three cascaded AES-128-CBC passes, unauthenticated. Read for older safes.
+	 */
+	public static final CipherSuite TRIPLE_AES = new TripleAESSuite();
+
+	/**
+	 * One AES-256-GCM pass, authenticated.
+	 */
+	public static final CipherSuite AES_GCM = new AESGCMSuite();
+
+	private static final CipherSuite[] suites = {TRIPLE_AES, AES_GCM};
+
+	/**
+	 * @return The id recorded in the header of what this suite encrypts.
+	 */
+	public abstract byte getId();
+
+	/**
+	 * @return A short name for logs and benchmarks.
+	 */
+	public abstract String getName();
+
+	/**
+	 * @return True if decrypting detects any change to the encrypted data.
+	 */
+	public abstract boolean isAuthenticated();
+
+	/**
+	 * @return True if the Java runtime provides the algorithms this suite needs.
+	 */
+	public abstract boolean isAvailable();
+
+	/**
+	 * Encrypt a record.
+	 *
+	 * @param passphrase The passphrase to encrypt with.
+	 * @param associatedData Data the record is bound to without being encrypted, e.g. its storage key, or null. Only
+	 * authenticated suites bind it; the same associated data is needed to decrypt.
+	 * @param unencryptedData Raw data to encrypt.
+	 * @return The encrypted record, or null if encryption failed.
+	 * @throws PassphraseExpiredException
+	 */
+	public abstract byte[] encrypt(Passphrase passphrase, byte[] associatedData, byte[] unencryptedData) throws PassphraseExpiredException;
+
+	/**
+	 * Decrypt a record straight out of a buffer, without changing the buffer's position.
+	 *
+	 * @param passphrase The passphrase to decrypt with.
+	 * @param associatedData The associated data the record was encrypted with, or null.
+	 * @param encryptedData A record encrypted by this suite, from its position to its limit.
+	 * @return The raw data, or null if decryption failed.
+	 * @throws PassphraseExpiredException
+	 * @throws AEADBadTagException If the suite is authenticated and the record was changed, or the passphrase or
+	 * associated data is not the one it was encrypted with.
+	 */
+	public abstract byte[] decrypt(Passphrase passphrase, byte[] associatedData, ByteBuffer encryptedData) throws PassphraseExpiredException, AEADBadTagException;
+
+	public byte[] encrypt(Passphrase passphrase, byte[] unencryptedData) throws PassphraseExpiredException {
+		return encrypt(passphrase, null, unencryptedData);
+	}
+
+	@Override
+	public String toString() {
+		return getName();
+	}
+
+	/**
+	 * @param id A suite id.
+	 * @return The suite with the id, or null if there is none.
+	 */
+	public static CipherSuite forId(byte id) {
+		for (CipherSuite suite : suites) {
+			if (suite.getId() == id) {
+				return suite;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return The suite new safes are encrypted with: AES-GCM where the runtime provides it, 3-AES otherwise.
+	 */
+	public static CipherSuite preferred() {
+		return AES_GCM.isAvailable() ? AES_GCM : TRIPLE_AES;
+	}
+
+	/**
+	 * The suite that encrypted a record, by its header. A 3-AES record can start with a header by chance, so this is
+	 * only a first guess; decryptAny falls back to 3-AES if the suite named doesn't authenticate the record.
+	 *
+	 * @param encryptedData An encrypted record, from its position to its limit.
+	 * @return The suite named by the record's header, or TRIPLE_AES for a record without one.
+	 */
+	public static CipherSuite of(ByteBuffer encryptedData) {
+		if (encryptedData.remaining() < HEADER_SIZE) {
+			return TRIPLE_AES;
+		}
+		int position = encryptedData.position();
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (encryptedData.get(position + i) != MAGIC[i]) {
+				return TRIPLE_AES;
+			}
+		}
+		CipherSuite suite = forId(encryptedData.get(position + MAGIC.length));
+		return (suite == null) ? TRIPLE_AES : suite;
+	}
+
+	/**
+	 * Decrypt a record with whichever suite encrypted it.
+	 *
+	 * @param passphrase The passphrase to decrypt with.
+	 * @param encryptedData An encrypted record, from its position to its limit.
+	 * @return The raw data, or null if decryption or authentication failed.
+	 * @throws PassphraseExpiredException
+	 */
+	public static byte[] decryptAny(Passphrase passphrase, ByteBuffer encryptedData) throws PassphraseExpiredException {
+		return decryptAny(passphrase, null, encryptedData);
+	}
+
+	/**
+	 * Decrypt a record bound to associated data with whichever suite encrypted it.
+	 *
+	 * @param passphrase The passphrase to decrypt with.
+	 * @param associatedData The associated data the record was encrypted with, or null.
+	 * @param encryptedData An encrypted record, from its position to its limit.
+	 * @return The raw data, or null if decryption or authentication failed.
+	 * @throws PassphraseExpiredException
+	 */
+	public static byte[] decryptAny(Passphrase passphrase, byte[] associatedData, ByteBuffer encryptedData) throws PassphraseExpiredException {
+		CipherSuite suite = of(encryptedData);
+		try {
+			return suite.decrypt(passphrase, associatedData, encryptedData);
+		} catch (AEADBadTagException ex) {
+			if (TripleAESSuite.isPlausible(encryptedData)) {
+				byte[] legacyData = TripleAES.decrypt(passphrase, encryptedData);
+				if (legacyData != null) {
+					return legacyData;
+				}
+			}
+			logger.log(Level.SEVERE, "Record failed authentication: {0}", suite.getName());
+		}
+		return null;
+	}
+
+	/**
+	 * @param suite The suite writing the header.
+	 * @return The header marking a record encrypted by the suite.
+	 */
+	static byte[] header(CipherSuite suite) {
+		byte[] header = new byte[HEADER_SIZE];
+		System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+		header[MAGIC.length] = suite.getId();
+		return header;
+	}
+
+}
@@ -0,0 +1,129 @@
+package com.analyticobjects.digitalsafe.crypto;
+
+import java.util.Arrays;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The derived key material for the three layers of 3-AES. Deriving the keys costs three full PBKDF2 runs, so a
+ * schedule is computed once per passphrase and held by the Passphrase until it is cleared. Only raw key bytes are
+ * held so they can be wiped; key and iv objects are built on demand from them. A separate key authenticates
+ * encrypted chunks, and another keys the single pass AES-GCM cipher suite.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+final class KeySchedule {
+
+	private final byte[][] keys;
+	private final byte[][] ivs;
+	private final byte[] macKey;
+	private final byte[] aeadKey;
+	private volatile boolean wiped;
+
+	/**
+	 * @param keys Raw AES key bytes for each level of 3-AES.
+	 * @param ivs Initialization vector bytes for each level of 3-AES.
+	 * @param macKey HMAC key bytes.
+	 * @param aeadKey Raw 256 bit AES key bytes for authenticated encryption.
+	 */
+	KeySchedule(byte[][] keys, byte[][] ivs, byte[] macKey, byte[] aeadKey) {
+		this.keys = keys;
+		this.ivs = ivs;
+		this.macKey = macKey;
+		this.aeadKey = aeadKey;
+		this.wiped = false;
+	}
+
+	/**
+	 * @return The number of encryption levels in this schedule.
+	 */
+	int levels() {
+		return this.keys.length;
+	}
+
+	/**
+	 * @param level Encryption level (of 3-AES); [0,2]
+	 * @return The AES key for the level.
+	 * @throws IllegalStateException If the schedule was wiped.
+	 */
+	SecretKey key(int level) {
+		checkWiped();
+		return new SecretKeySpec(this.keys[level], "AES");
+	}
+
+	/**
+	 * @param level Encryption level (of 3-AES); [0,2]
+	 * @return The initialization vector for the level.
+	 * @throws IllegalStateException If the schedule was wiped.
+	 */
+	IvParameterSpec iv(int level) {
+		return iv(level, null);
+	}
+
+	/**
+	 * @param level Encryption level (of 3-AES); [0,2]
+	 * @param nonce A nonce to xor into the initialization vector, or null for none.
+	 * @return The initialization vector for the level.
+	 * @throws IllegalStateException If the schedule was wiped.
+	 */
+	IvParameterSpec iv(int level, byte[] nonce) {
+		checkWiped();
+		if (nonce == null) {
+			return new IvParameterSpec(this.ivs[level]);
+		}
+		byte[] iv = new byte[this.ivs[level].length];
+		for (int i = 0; i < iv.length; i++) {
+			iv[i] = (byte) (this.ivs[level][i] ^ nonce[i % nonce.length]);
+		}
+		return new IvParameterSpec(iv);
+	}
+
+	/**
+	 * @return The key for authenticating encrypted data.
+	 * @throws IllegalStateException If the schedule was wiped.
+	 */
+	SecretKey macKey() {
+		checkWiped();
+		return new SecretKeySpec(this.macKey, "HmacSHA256");
+	}
+
+	/**
+	 * @return The AES-256 key for authenticated encryption.
+	 * @throws IllegalStateException If the schedule was wiped.
+	 */
+	SecretKey aeadKey() {
+		checkWiped();
+		return new SecretKeySpec(this.aeadKey, "AES");
+	}
+
+	private void checkWiped() {
+		if (this.wiped) {
+			throw new IllegalStateException("Key schedule has been wiped.");
+		}
+	}
+
+	/**
+	 * @return True if the key material has been wiped.
+	 */
+	boolean isWiped() {
+		return this.wiped;
+	}
+
+	/**
+	 * Zero out all key material.
+	 */
+	void wipe() {
+		this.wiped = true;
+		for (byte[] key : this.keys) {
+			Arrays.fill(key, (byte) 0b00000000);
+		}
+		for (byte[] iv : this.ivs) {
+			Arrays.fill(iv, (byte) 0b00000000);
+		}
+		Arrays.fill(this.macKey, (byte) 0b00000000);
+		Arrays.fill(this.aeadKey, (byte) 0b00000000);
+	}
+
+}
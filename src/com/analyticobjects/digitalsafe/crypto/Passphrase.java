@@ -5,6 +5,7 @@ import com.analyticobjects.digitalsafe.exceptions.InvalidPassphraseException;
 import com.analyticobjects.digitalsafe.database.MasterIndex;
 import com.analyticobjects.digitalsafe.exceptions.PassphraseExpiredException;
 import java.io.UnsupportedEncodingException;
+import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.concurrent.Executors;
@@ -12,12 +13,14 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.crypto.Mac;
 
 /**
  * A class to store a passphrases. The supplied passphrase string is not stored, 
  * rather a highly hashed version of the passphrase is stored. The value is 
  * cleared from memory at a scheduled time after being set and object
- * finalization. Default passphrase cache time is 10 minutes.
+ * finalization. Default passphrase cache time is 10 minutes. The 3-AES key
+ * schedule derived from the hash is cached alongside it and cleared with it.
  *
  * @author Joel Bondurant
  * @since 2013.08
@@ -25,10 +28,12 @@ import java.util.logging.Logger;
 public final class Passphrase {
 	
 	private byte[] passphraseHash;
+	private volatile KeySchedule keySchedule;
 	private int secondsToCachePassphrase;
 	private final ScheduledExecutorService executor;
 	private static final String STATIC_SALT = "abcDEF1234!@#$";
-	private static final int PASSWORD_ITERATIONS = 20011;
+	public static final int PASSWORD_ITERATIONS = 20011;
+	public static final byte KEY_DERIVATION = 1; // iterated SHA-512, then the 3-AES PBKDF2 runs and salted digests.
 	public static final int MINIMUM_PASSPHRASE_LENGTH = 8;
 	public static final int DEFAULT_CACHE_TIME_IN_SECONDS = 10 * 60;
 
@@ -39,6 +44,7 @@ public final class Passphrase {
 		this.executor = Executors.newSingleThreadScheduledExecutor();
 		this.secondsToCachePassphrase = DEFAULT_CACHE_TIME_IN_SECONDS;
 		this.passphraseHash = null;
+		this.keySchedule = null;
 	}
 	
 	/**
@@ -88,7 +94,11 @@ public final class Passphrase {
 		validatePassphrase(passphrase);
 		this.executor.schedule(new ClearPassphraseTask(), secondsToCachePassphrase, TimeUnit.SECONDS);
 		try {
-			this.passphraseHash = HashUtility.hash512(passphrase, STATIC_SALT, PASSWORD_ITERATIONS);
+			byte[] newPassphraseHash = HashUtility.hash512(passphrase, STATIC_SALT, PASSWORD_ITERATIONS);
+			KeySchedule newKeySchedule = TripleAES.keySchedule(newPassphraseHash);
+			wipeKeySchedule();
+			this.passphraseHash = newPassphraseHash;
+			this.keySchedule = newKeySchedule;
 		} catch (NoSuchAlgorithmException | UnsupportedEncodingException ex) {
 			clear();
 			Logger.getLogger(MasterIndex.class.getName()).log(Level.SEVERE, ex.getMessage(), ex);
@@ -108,6 +118,41 @@ public final class Passphrase {
 		return this.passphraseHash;
 	}
 
+	/**
+	 * The 3-AES keys derived from the passphrase hash, computed once when the passphrase is set.
+	 *
+	 * @return The cached key schedule.
+	 * @throws PassphraseExpiredException
+	 */
+	KeySchedule getKeySchedule() throws PassphraseExpiredException {
+		KeySchedule schedule = this.keySchedule;
+		if (schedule == null || schedule.isWiped()) {
+			throw new PassphraseExpiredException();
+		}
+		return schedule;
+	}
+
+	/**
+	 * Authenticate data stored unencrypted, e.g. a file header.
+	 *
+	 * @param data The data.
+	 * @return An HMAC-SHA256 tag over the data, keyed by the passphrase, or null on failure.
+	 * @throws PassphraseExpiredException
+	 */
+	public byte[] tag(byte[] data) throws PassphraseExpiredException {
+		KeySchedule schedule = getKeySchedule();
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(schedule.macKey());
+			return mac.doFinal(data);
+		} catch (IllegalStateException ex) {
+			throw new PassphraseExpiredException();
+		} catch (NoSuchAlgorithmException | InvalidKeyException ex) {
+			Logger.getLogger(Passphrase.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
+		}
+		return null;
+	}
+
 	/**
 	 * Adjust how long the passphrase will be held in memory. Default is 5 minutes.
 	 *
@@ -121,13 +166,27 @@ public final class Passphrase {
 	 * Clear the passphrase from memory.
 	 */
 	public void clear() {
+		wipeKeySchedule();
 		if (this.passphraseHash != null) {
 			Arrays.fill(this.passphraseHash, (byte) 0b00000000);
 		}
 		this.passphraseHash = null;
+		CipherPool.releaseAll();
+		TripleAES.releaseScratch();
 		System.gc();
 	}
 	
+	/**
+	 * Zero out and drop the cached key schedule.
+	 */
+	private void wipeKeySchedule() {
+		KeySchedule schedule = this.keySchedule;
+		this.keySchedule = null;
+		if (schedule != null) {
+			schedule.wipe();
+		}
+	}
+	
 	/**
 	 * @return Quick check if passphrase is cleared.
 	 */
@@ -3,12 +3,18 @@ package com.analyticobjects.digitalsafe.crypto;
 import com.analyticobjects.digitalsafe.database.SecureDatabase;
 import com.analyticobjects.digitalsafe.exceptions.PassphraseExpiredException;
 import com.analyticobjects.utility.ByteUtility;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.crypto.BadPaddingException;
@@ -17,7 +23,7 @@ import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -38,6 +44,21 @@ public final class TripleAES {
 	private static final String AES = "AES/CBC/NoPadding";
 	private static final int AES_BLOCK_SIZE = 16; // 16 byte (128 bit) blocks.
 	private static final int AES_KEY_LENGTH = 128;
+	private static final String MAC_KEY_SALT = "saltyMAC#9q!Zr2";
+	private static final String AEAD_KEY_SALT = "saltyGCM$4vX~e8";
+	public static final int NONCE_SIZE = AES_BLOCK_SIZE;
+	private static final CipherPool cipherPool = new CipherPool(AES, 3);
+	// a file chunk, encrypted; larger records get working buffers of their own, collected after the call.
+	private static final int MAX_RETAINED_SCRATCH = SecureDatabase.FILE_CHUNK_SIZE + 2 * AES_BLOCK_SIZE;
+	private static final Set<Scratch> threadScratches = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<Scratch, Boolean>()));
+	private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			Scratch threadScratch = new Scratch();
+			threadScratches.add(threadScratch);
+			return threadScratch;
+		}
+	};
 
 	/**
 	 * Decrypts DigitalSafe's custom 3-AES encrypted data.
@@ -48,23 +69,151 @@ public final class TripleAES {
 	 * @throws PassphraseExpiredException
 	 */
 	public static byte[] decrypt(Passphrase passphrase, byte[] encryptedData) throws PassphraseExpiredException {
-		if (encryptedData.length == 0) {
+		return decrypt(passphrase, null, encryptedData);
+	}
+
+	/**
+	 * Decrypts DigitalSafe's custom 3-AES encrypted data that was encrypted with a nonce.
+	 *
+	 * @param passphrase The passphrase to decrypt with.
+	 * @param nonce The 16 byte nonce the data was encrypted with, or null for none.
+	 * @param encryptedData The encrypted data to decrypt.
+	 * @return
+	 * @throws PassphraseExpiredException
+	 */
+	public static byte[] decrypt(Passphrase passphrase, byte[] nonce, byte[] encryptedData) throws PassphraseExpiredException {
+		return decrypt(passphrase, nonce, ByteBuffer.wrap(encryptedData));
+	}
+
+	/**
+	 * Decrypts 3-AES encrypted data straight out of a buffer, e.g. a memory mapped region of the safe file.
+	 *
+	 * @param passphrase The passphrase to decrypt with.
+	 * @param encryptedData The encrypted data to decrypt, from its position to its limit.
+	 * @return The raw unencrypted data, or null if decryption failed.
+	 * @throws PassphraseExpiredException
+	 */
+	public static byte[] decrypt(Passphrase passphrase, ByteBuffer encryptedData) throws PassphraseExpiredException {
+		return decrypt(passphrase, (byte[]) null, encryptedData);
+	}
+
+	/**
+	 * Decrypts 3-AES encrypted data straight out of a buffer, e.g. a memory mapped region of the safe file. All three
+	 * layers are decrypted in the calling thread's working buffers, which are wiped before returning. The position of
+	 * the encrypted data buffer is not changed.
+	 *
+	 * @param passphrase The passphrase to decrypt with.
+	 * @param nonce The 16 byte nonce the data was encrypted with, or null for none.
+	 * @param encryptedData The encrypted data to decrypt, from its position to its limit.
+	 * @return The raw unencrypted data, or null if decryption failed.
+	 * @throws PassphraseExpiredException
+	 */
+	public static byte[] decrypt(Passphrase passphrase, byte[] nonce, ByteBuffer encryptedData) throws PassphraseExpiredException {
+		if (!encryptedData.hasRemaining()) {
 			return new byte[0];
 		}
-		byte[] byteHolder1;
-		byte[] byteHolder2 = null;
+		Scratch threadScratch = scratch(encryptedData.remaining());
+		synchronized (threadScratch) {
+			int unencryptedSize = decryptLayers(passphrase, nonce, encryptedData.duplicate(), threadScratch);
+			if (unencryptedSize < 0) {
+				return null;
+			}
+			byte[] unencryptedData = Arrays.copyOf(threadScratch.output, unencryptedSize);
+			threadScratch.wipe(encryptedData.remaining());
+			return unencryptedData;
+		}
+	}
+
+	/**
+	 * Decrypts 3-AES encrypted data from one buffer into another, e.g. into a reused direct buffer for bulk reads,
+	 * allocating nothing per call once the calling thread's working buffers have grown to the record size. On success
+	 * the positions of both buffers advance past what was read and written, like Cipher.doFinal; on failure they are
+	 * left as they were.
+	 *
+	 * @param passphrase The passphrase to decrypt with.
+	 * @param encryptedData The encrypted data to decrypt, from its position to its limit.
+	 * @param unencryptedData Receives the raw data; room for as many bytes as there are encrypted is always enough.
+	 * @return The number of raw bytes written, or -1 if decryption failed.
+	 * @throws PassphraseExpiredException
+	 * @throws ShortBufferException If the raw data doesn't fit in the destination.
+	 */
+	public static int decrypt(Passphrase passphrase, ByteBuffer encryptedData, ByteBuffer unencryptedData) throws PassphraseExpiredException,
+		ShortBufferException {
+		return decrypt(passphrase, null, encryptedData, unencryptedData);
+	}
+
+	/**
+	 * Decrypts 3-AES encrypted data that was encrypted with a nonce from one buffer into another.
+	 *
+	 * @param passphrase The passphrase to decrypt with.
+	 * @param nonce The 16 byte nonce the data was encrypted with, or null for none.
+	 * @param encryptedData The encrypted data to decrypt, from its position to its limit.
+	 * @param unencryptedData Receives the raw data; room for as many bytes as there are encrypted is always enough.
+	 * @return The number of raw bytes written, or -1 if decryption failed.
+	 * @throws PassphraseExpiredException
+	 * @throws ShortBufferException If the raw data doesn't fit in the destination.
+	 * @see #decrypt(Passphrase, ByteBuffer, ByteBuffer)
+	 */
+	public static int decrypt(Passphrase passphrase, byte[] nonce, ByteBuffer encryptedData, ByteBuffer unencryptedData) throws PassphraseExpiredException,
+		ShortBufferException {
+		if (!encryptedData.hasRemaining()) {
+			return 0;
+		}
+		int encryptedPosition = encryptedData.position();
+		int length = encryptedData.remaining();
+		Scratch threadScratch = scratch(length);
+		synchronized (threadScratch) {
+			int unencryptedSize = decryptLayers(passphrase, nonce, encryptedData, threadScratch);
+			if (unencryptedSize < 0) {
+				return -1;
+			}
+			try {
+				if (unencryptedData.remaining() < unencryptedSize) {
+					encryptedData.position(encryptedPosition);
+					throw new ShortBufferException("Need " + unencryptedSize + " bytes to decrypt into, have " + unencryptedData.remaining());
+				}
+				unencryptedData.put(threadScratch.output, 0, unencryptedSize);
+			} finally {
+				threadScratch.wipe(length);
+			}
+			return unencryptedSize;
+		}
+	}
+
+	/**
+	 * Decrypt all three layers between the thread's working buffers, so the ciphers only ever see byte arrays; given a
+	 * direct buffer the JDK allocates temporary arrays the size of the data on every call.
+	 *
+	 * @param passphrase The passphrase to decrypt with.
+	 * @param nonce The 16 byte nonce the data was encrypted with, or null for none.
+	 * @param encryptedData The encrypted data, from its position to its limit; its position is moved to its limit only
+	 * on success.
+	 * @param threadScratch The calling thread's working buffers. On success the raw data is at the start of the output
+	 * buffer, for the caller to copy and then wipe.
+	 * @return The number of raw bytes, or -1 if decryption failed.
+	 * @throws PassphraseExpiredException
+	 */
+	private static int decryptLayers(Passphrase passphrase, byte[] nonce, ByteBuffer encryptedData, Scratch threadScratch) throws PassphraseExpiredException {
+		int length = encryptedData.remaining();
 		try {
-			List<Cipher> ciphers = cipherList(passphrase.getPassphraseHash(), Cipher.DECRYPT_MODE);
-			byteHolder1 = ciphers.get(2).doFinal(encryptedData);
-			byteHolder2 = ciphers.get(1).doFinal(byteHolder1);
-			byteHolder1 = ciphers.get(0).doFinal(byteHolder2);
-			byteHolder2 = unPad4AES(byteHolder1);
+			List<Cipher> ciphers = cipherList(passphrase.getKeySchedule(), Cipher.DECRYPT_MODE, nonce);
+			threadScratch.ensureCapacity(length);
+			byte[] input = threadScratch.input;
+			byte[] output = threadScratch.output;
+			encryptedData.duplicate().get(input, 0, length);
+			ciphers.get(2).doFinal(input, 0, length, output, 0);
+			ciphers.get(1).doFinal(output, 0, length, input, 0);
+			ciphers.get(0).doFinal(input, 0, length, output, 0);
+			int unencryptedSize = unPad4AES(output, length);
+			encryptedData.position(encryptedData.limit());
+			return unencryptedSize;
 		} catch (IllegalBlockSizeException | NoSuchPaddingException | BadPaddingException | InvalidKeyException ex) {
 			Logger.getLogger(SecureDatabase.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
-		} catch (InvalidAlgorithmParameterException | NoSuchAlgorithmException ex) {
+		} catch (InvalidAlgorithmParameterException | NoSuchAlgorithmException | ShortBufferException ex) {
 			Logger.getLogger(SecureDatabase.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
 		}
-		return byteHolder2;
+		threadScratch.wipe(Math.min(length, threadScratch.input.length));
+		return -1;
 	}
 
 	/**
@@ -79,82 +228,177 @@ public final class TripleAES {
 	 * @throws PassphraseExpiredException
 	 */
 	public static byte[] encrypt(Passphrase passphrase, byte[] unencryptedData) throws PassphraseExpiredException {
+		return encrypt(passphrase, null, unencryptedData);
+	}
+
+	/**
+	 * 3-AES encryption with a nonce mixed into the initialization vector of every layer, so equal plaintexts encrypted
+	 * with different nonces don't produce equal ciphertexts. The same nonce is needed to decrypt.
+	 *
+	 * @param passphrase The passphrase to encrypt with.
+	 * @param nonce A 16 byte nonce, or null for none.
+	 * @param unencryptedData Raw unpadded data to encrypt.
+	 * @return Heavily encrypted data.
+	 * @throws PassphraseExpiredException
+	 */
+	public static byte[] encrypt(Passphrase passphrase, byte[] nonce, byte[] unencryptedData) throws PassphraseExpiredException {
 		if (unencryptedData.length == 0) {
 			return new byte[0];
 		}
-		byte[] byteHolder1;
-		byte[] byteHolder2 = null;
+		Scratch threadScratch = scratch(encryptedSize(unencryptedData.length));
+		synchronized (threadScratch) {
+			int encryptedSize = encryptLayers(passphrase, nonce, ByteBuffer.wrap(unencryptedData), threadScratch);
+			return (encryptedSize < 0) ? null : Arrays.copyOf(threadScratch.output, encryptedSize);
+		}
+	}
+
+	/**
+	 * 3-AES encryption from one buffer into another, e.g. out of a reused direct buffer for bulk writes, allocating
+	 * nothing per call once the calling thread's working buffers have grown to the record size. On success the
+	 * positions of both buffers advance past what was read and written, like Cipher.doFinal; on failure they are left
+	 * as they were.
+	 *
+	 * @param passphrase The passphrase to encrypt with.
+	 * @param unencryptedData Raw unpadded data to encrypt, from its position to its limit.
+	 * @param encryptedData Receives the encrypted data; needs room for encryptedSize of the raw data.
+	 * @return The number of encrypted bytes written, or -1 if encryption failed.
+	 * @throws PassphraseExpiredException
+	 * @throws ShortBufferException If the destination has too little room.
+	 */
+	public static int encrypt(Passphrase passphrase, ByteBuffer unencryptedData, ByteBuffer encryptedData) throws PassphraseExpiredException,
+		ShortBufferException {
+		return encrypt(passphrase, null, unencryptedData, encryptedData);
+	}
+
+	/**
+	 * 3-AES encryption with a nonce from one buffer into another.
+	 *
+	 * @param passphrase The passphrase to encrypt with.
+	 * @param nonce A 16 byte nonce, or null for none.
+	 * @param unencryptedData Raw unpadded data to encrypt, from its position to its limit.
+	 * @param encryptedData Receives the encrypted data; needs room for encryptedSize of the raw data.
+	 * @return The number of encrypted bytes written, or -1 if encryption failed.
+	 * @throws PassphraseExpiredException
+	 * @throws ShortBufferException If the destination has too little room.
+	 * @see #encrypt(Passphrase, ByteBuffer, ByteBuffer)
+	 */
+	public static int encrypt(Passphrase passphrase, byte[] nonce, ByteBuffer unencryptedData, ByteBuffer encryptedData) throws PassphraseExpiredException,
+		ShortBufferException {
+		int size = encryptedSize(unencryptedData.remaining());
+		if (size == 0) {
+			return 0;
+		}
+		if (encryptedData.remaining() < size) {
+			throw new ShortBufferException("Need " + size + " bytes to encrypt into, have " + encryptedData.remaining());
+		}
+		Scratch threadScratch = scratch(size);
+		synchronized (threadScratch) {
+			int encryptedSize = encryptLayers(passphrase, nonce, unencryptedData, threadScratch);
+			if (encryptedSize >= 0) {
+				encryptedData.put(threadScratch.output, 0, encryptedSize);
+			}
+			return encryptedSize;
+		}
+	}
+
+	/**
+	 * Pad and encrypt all three layers between the thread's working buffers. The raw data is padded in place in the
+	 * input buffer, and overwritten there by the second layer.
+	 *
+	 * @param passphrase The passphrase to encrypt with.
+	 * @param nonce A 16 byte nonce, or null for none.
+	 * @param unencryptedData Raw unpadded data, from its position to its limit; its position is moved to its limit only
+	 * on success.
+	 * @param threadScratch The calling thread's working buffers. On success the encrypted data is at the start of the
+	 * output buffer.
+	 * @return The number of encrypted bytes, or -1 if encryption failed.
+	 * @throws PassphraseExpiredException
+	 */
+	private static int encryptLayers(Passphrase passphrase, byte[] nonce, ByteBuffer unencryptedData, Scratch threadScratch) throws PassphraseExpiredException {
+		int length = unencryptedData.remaining();
+		int size = encryptedSize(length);
 		try {
-			List<Cipher> ciphers = cipherList(passphrase.getPassphraseHash(), Cipher.ENCRYPT_MODE);
-			byteHolder1 = pad4AES(unencryptedData);
-			byteHolder2 = ciphers.get(0).doFinal(byteHolder1);
-			byteHolder1 = ciphers.get(1).doFinal(byteHolder2);
-			byteHolder2 = ciphers.get(2).doFinal(byteHolder1);
+			List<Cipher> ciphers = cipherList(passphrase.getKeySchedule(), Cipher.ENCRYPT_MODE, nonce);
+			threadScratch.ensureCapacity(size);
+			byte[] input = threadScratch.input;
+			byte[] output = threadScratch.output;
+			unencryptedData.duplicate().get(input, 0, length);
+			pad4AES(input, length);
+			ciphers.get(0).doFinal(input, 0, size, output, 0);
+			ciphers.get(1).doFinal(output, 0, size, input, 0);
+			ciphers.get(2).doFinal(input, 0, size, output, 0);
+			unencryptedData.position(unencryptedData.limit());
+			return size;
 		} catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException | BadPaddingException ex) {
 			Logger.getLogger(SecureDatabase.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
-		} catch (IllegalBlockSizeException | InvalidAlgorithmParameterException ex) {
+		} catch (IllegalBlockSizeException | InvalidAlgorithmParameterException | ShortBufferException ex) {
 			Logger.getLogger(SecureDatabase.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
 		}
-		return byteHolder2;
+		threadScratch.wipe(Math.min(size, threadScratch.input.length));
+		return -1;
+	}
+
+	/**
+	 * @param length The number of raw bytes to encrypt.
+	 * @return The number of bytes they encrypt to: padded to whole blocks, plus the padding count block.
+	 */
+	public static int encryptedSize(int length) {
+		if (length == 0) {
+			return 0;
+		}
+		return length - (length % AES_BLOCK_SIZE) + 2 * AES_BLOCK_SIZE;
 	}
 
 	/**
-	 * Removes my custom AES compatible padding from unencrypted data.
+	 * Checks my custom AES compatible padding on unencrypted data.
 	 *
-	 * @param paddedUnencryptedData Unencrypted data which has been padded.
-	 * @return Raw unencrypted unpadded data.
+	 * @param paddedUnencryptedData Unencrypted data which has been padded, at the start of the array.
+	 * @param length The length of the padded data.
+	 * @return The length of the raw unencrypted unpadded data.
 	 * @throws BadPaddingException
 	 */
-	private static byte[] unPad4AES(byte[] paddedUnencryptedData) throws BadPaddingException {
-		if (paddedUnencryptedData.length == 0) {
+	private static int unPad4AES(byte[] paddedUnencryptedData, int length) throws BadPaddingException {
+		if (length < 2 * AES_BLOCK_SIZE) {
 			throw new BadPaddingException();
 		}
-		if ((paddedUnencryptedData.length % AES_BLOCK_SIZE) != 0) {
+		if ((length % AES_BLOCK_SIZE) != 0) {
 			throw new BadPaddingException();
 		}
-		byte lastByte = paddedUnencryptedData[paddedUnencryptedData.length - 1];
-		if ((lastByte < 0) || (lastByte >= AES_BLOCK_SIZE)) {
+		byte lastByte = paddedUnencryptedData[length - 1];
+		if ((lastByte < 1) || (lastByte > AES_BLOCK_SIZE)) {
 			throw new BadPaddingException();
 		}
 		for (int i = 1; i <= (lastByte + AES_BLOCK_SIZE); i++) {
-			byte aByte = paddedUnencryptedData[paddedUnencryptedData.length - i];
+			byte aByte = paddedUnencryptedData[length - i];
 			if (aByte != lastByte) {
 				throw new BadPaddingException();
 			}
 		}
-		int unencryptedSize = paddedUnencryptedData.length - lastByte - AES_BLOCK_SIZE;
-		byte[] unencryptedData = new byte[unencryptedSize];
-		System.arraycopy(paddedUnencryptedData, 0, unencryptedData, 0, unencryptedSize);
-		return unencryptedData;
+		return length - lastByte - AES_BLOCK_SIZE;
 	}
 
 	/**
-	 * Pad unencrypted data for 16 byte block ciphers. For some reason javax.crypto has PKCS5Padding mentioned for use
-	 * with AES, despite it requiring at least PKCS7Padding. This mathod is basically PKCS7Padding with an extra count
-	 * block to make clear and unambiguous padding.
+	 * Pad unencrypted data for 16 byte block ciphers, in place. For some reason javax.crypto has PKCS5Padding mentioned
+	 * for use with AES, despite it requiring at least PKCS7Padding. This mathod is basically PKCS7Padding with an extra
+	 * count block to make clear and unambiguous padding.
 	 *
-	 * @param unencryptedData Raw unencrypted binary to encrypt, of no particular size.
-	 * @return Unencrypted binary padded for AES block size. (and Blowfish)
+	 * @param unencryptedData Raw unencrypted binary to encrypt at the start of the array, with room for the padding.
+	 * @param length The length of the raw data, of no particular size.
 	 */
-	private static byte[] pad4AES(byte[] unencryptedData) {
-		int bytesToPad = AES_BLOCK_SIZE - (unencryptedData.length % AES_BLOCK_SIZE);
+	private static void pad4AES(byte[] unencryptedData, int length) {
+		int bytesToPad = AES_BLOCK_SIZE - (length % AES_BLOCK_SIZE);
 		byte bytesToPadValue = Integer.valueOf(bytesToPad).byteValue();
-		int totalBytes = unencryptedData.length + bytesToPad + AES_BLOCK_SIZE;
-		byte[] paddedUnencryptedData = new byte[totalBytes];
-		System.arraycopy(unencryptedData, 0, paddedUnencryptedData, 0, unencryptedData.length);
-		Arrays.fill(paddedUnencryptedData, unencryptedData.length, totalBytes, bytesToPadValue);
-		return paddedUnencryptedData;
+		Arrays.fill(unencryptedData, length, encryptedSize(length), bytesToPadValue);
 	}
 
 	/**
 	 * Generates independent cipher initialization vectors.
 	 *
-	 * @param passwordBytes The password bytes.
+	 * @param salt The password bytes.
 	 * @param level Encryption level (of 3-AES); [1,2,3]
 	 * @return An encryption initialization vector.
-	 * @throws PassphraseExpiredException
 	 */
-	private static IvParameterSpec ivParameterSpec16(byte[] salt, int level) throws PassphraseExpiredException {
+	private static byte[] iv16(byte[] salt, int level) {
 		byte[] iv = {1, 1, 30, 1, 99, 2, 90, 1, 0, 2, 13, 32, 20, 3, 1, 70};
 		iv[level] = salt[0]; // swizzleness...
 		iv[level + 1] = salt[10 * level];
@@ -163,14 +407,51 @@ public final class TripleAES {
 		iv[level + 7] = salt[17 * level];
 		iv[level + 10] = salt[20 * level];
 		iv[level + 11] = (byte) (0xff & (salt[13 * level] ^ salt[7 - level]));
-		return new IvParameterSpec(iv);
+		return iv;
+	}
+
+	/**
+	 * Derive the keys and initialization vectors for all three layers of 3-AES, and the keys shared with the other
+	 * cipher suites. This is the expensive part of encryption (three PBKDF2 runs), so Passphrase computes it once and
+	 * caches the result until cleared.
+	 *
+	 * @param passphraseBytes The password bytes.
+	 * @return The key schedule for the passphrase.
+	 */
+	static KeySchedule keySchedule(byte[] passphraseBytes) {
+		byte[][] keys = {
+			keyGenAES(passphraseBytes, "saltyN3SS&Whate", 18913).getEncoded(),
+			keyGenAES(passphraseBytes, "saltyN74G@337q8", 23944).getEncoded(),
+			keyGenAES(passphraseBytes, "saltyN99!14Ra12", 19781).getEncoded()};
+		byte[][] ivs = {iv16(passphraseBytes, 1), iv16(passphraseBytes, 2), iv16(passphraseBytes, 3)};
+		return new KeySchedule(keys, ivs, derivedKey(MAC_KEY_SALT, passphraseBytes), derivedKey(AEAD_KEY_SALT, passphraseBytes));
 	}
 
 	/**
-	 * A list of three independent AES ciphers.
+	 * Derive a key independent of the 3-AES keys, e.g. for authenticating encrypted data. The passphrase bytes are
+	 * already a slow iterated hash, so one salted digest is enough to separate the keys.
 	 *
+	 * @param salt A salt unique to the key's use.
 	 * @param passphraseBytes The password bytes.
+	 * @return A 256 bit key.
+	 */
+	private static byte[] derivedKey(String salt, byte[] passphraseBytes) {
+		try {
+			MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+			sha256.update(salt.getBytes(StandardCharsets.US_ASCII));
+			return sha256.digest(passphraseBytes);
+		} catch (NoSuchAlgorithmException ex) {
+			Logger.getLogger(SecureDatabase.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
+		}
+		return null;
+	}
+
+	/**
+	 * A list of three independent AES ciphers, the calling thread's pooled ones initialized for the passphrase.
+	 *
+	 * @param keySchedule The cached keys for the passphrase.
 	 * @param mode Cipher.DECRYPT_MODE | Cipher.UNENCRYPT_MODE
+	 * @param nonce A 16 byte nonce to mix into the initialization vectors, or null for none.
 	 * @return A list of three independent AES ciphers.
 	 * @throws NoSuchAlgorithmException
 	 * @throws NoSuchPaddingException
@@ -178,14 +459,21 @@ public final class TripleAES {
 	 * @throws InvalidAlgorithmParameterException
 	 * @throws PassphraseExpiredException
 	 */
-	private static List<Cipher> cipherList(byte[] passphraseBytes, int mode) throws NoSuchAlgorithmException, NoSuchPaddingException,
+	private static List<Cipher> cipherList(KeySchedule keySchedule, int mode, byte[] nonce) throws NoSuchAlgorithmException, NoSuchPaddingException,
 		InvalidKeyException, InvalidAlgorithmParameterException, PassphraseExpiredException {
-		Cipher aes1 = Cipher.getInstance(AES);
-		Cipher aes2 = Cipher.getInstance(AES);
-		Cipher aes3 = Cipher.getInstance(AES);
-		aes1.init(mode, keyGenAES(passphraseBytes, "saltyN3SS&Whate", 18913), ivParameterSpec16(passphraseBytes, 1));
-		aes2.init(mode, keyGenAES(passphraseBytes, "saltyN74G@337q8", 23944), ivParameterSpec16(passphraseBytes, 2));
-		aes3.init(mode, keyGenAES(passphraseBytes, "saltyN99!14Ra12", 19781), ivParameterSpec16(passphraseBytes, 3));
+		Cipher aes1 = cipherPool.get(mode, 0);
+		Cipher aes2 = cipherPool.get(mode, 1);
+		Cipher aes3 = cipherPool.get(mode, 2);
+		try {
+			aes1.init(mode, keySchedule.key(0), keySchedule.iv(0, nonce));
+			aes2.init(mode, keySchedule.key(1), keySchedule.iv(1, nonce));
+			aes3.init(mode, keySchedule.key(2), keySchedule.iv(2, nonce));
+		} catch (IllegalStateException ex) {
+			throw new PassphraseExpiredException();
+		}
+		if (keySchedule.isWiped()) { // cleared part way through, the keys may be zeroed.
+			throw new PassphraseExpiredException();
+		}
 		return Arrays.asList(aes1, aes2, aes3);
 	}
 
@@ -196,9 +484,8 @@ public final class TripleAES {
 	 * @param saltString Give the algorithms some salty mc entropy biscuits.
 	 * @param iterations Expand effective key space with iterative frizzle dizzling.
 	 * @return Can't tell you, it's a secret.
-	 * @throws PassphraseExpiredException
 	 */
-	private static SecretKey keyGenAES(byte[] passphraseBytes, String saltString, int iterations) throws PassphraseExpiredException {
+	private static SecretKey keyGenAES(byte[] passphraseBytes, String saltString, int iterations) {
 		SecretKey key = null;
 		try {
 			SecretKeyFactory keyFactory = SecretKeyFactory.getInstance(KEYGEN);
@@ -214,4 +501,62 @@ public final class TripleAES {
 		}
 		return key;
 	}
+
+	/**
+	 * @param size The bytes the record needs in each working buffer.
+	 * @return The calling thread's working buffers, or new ones for a record larger than a file chunk, so no thread
+	 * holds on to buffers the size of the largest record it ever saw. Use them holding their monitor.
+	 */
+	private static Scratch scratch(int size) {
+		return (size > MAX_RETAINED_SCRATCH) ? new Scratch() : scratch.get();
+	}
+
+	/**
+	 * Drop every thread's working buffers; they grow again on next use.
+	 */
+	static void releaseScratch() {
+		synchronized (threadScratches) {
+			for (Scratch threadScratch : threadScratches) {
+				synchronized (threadScratch) {
+					threadScratch.release();
+				}
+			}
+		}
+	}
+
+	/**
+	 * The working buffers a thread reuses for the three layers, grown to the largest record it has seen up to a file
+	 * chunk, so steady state encryption allocates nothing for the data. They hold raw data part of the time, so they
+	 * are wiped once done with it. Released from other threads, so used holding the monitor.
+	 */
+	private static final class Scratch {
+
+		private byte[] input = new byte[0];
+		private byte[] output = new byte[0];
+
+		/**
+		 * @param size The bytes needed in each buffer.
+		 */
+		void ensureCapacity(int size) {
+			if (this.input.length < size) {
+				this.input = new byte[size];
+				this.output = new byte[size];
+			}
+		}
+
+		void release() {
+			this.input = new byte[0];
+			this.output = new byte[0];
+		}
+
+		/**
+		 * Zero out the start of both buffers.
+		 *
+		 * @param length The bytes used.
+		 */
+		void wipe(int length) {
+			Arrays.fill(this.input, 0, length, (byte) 0b00000000);
+			Arrays.fill(this.output, 0, length, (byte) 0b00000000);
+		}
+	}
 }
@@ -0,0 +1,57 @@
+package com.analyticobjects.digitalsafe.crypto;
+
+import com.analyticobjects.digitalsafe.exceptions.PassphraseExpiredException;
+import java.nio.ByteBuffer;
+
+/**
+ * The original DigitalSafe encryption, three cascaded AES-128-CBC passes with custom padding, kept to read the
+ * records of older safes. Its records have no suite header and it authenticates nothing, so associated data is
+ * ignored; ChunkCipher adds an HMAC to the 3-AES chunks it seals.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+final class TripleAESSuite extends CipherSuite {
+
+	private static final int AES_BLOCK_SIZE = 16;
+
+	@Override
+	public byte getId() {
+		return 0;
+	}
+
+	@Override
+	public String getName() {
+		return "3-AES-128-CBC";
+	}
+
+	@Override
+	public boolean isAuthenticated() {
+		return false;
+	}
+
+	@Override
+	public boolean isAvailable() {
+		return true;
+	}
+
+	@Override
+	public byte[] encrypt(Passphrase passphrase, byte[] associatedData, byte[] unencryptedData) throws PassphraseExpiredException {
+		return TripleAES.encrypt(passphrase, unencryptedData);
+	}
+
+	@Override
+	public byte[] decrypt(Passphrase passphrase, byte[] associatedData, ByteBuffer encryptedData) throws PassphraseExpiredException {
+		return TripleAES.decrypt(passphrase, encryptedData);
+	}
+
+	/**
+	 * @param encryptedData Any encrypted record.
+	 * @return True if the record is the size of a 3-AES record: whole blocks, with at least the padding block.
+	 */
+	static boolean isPlausible(ByteBuffer encryptedData) {
+		int length = encryptedData.remaining();
+		return length >= 2 * AES_BLOCK_SIZE && (length % AES_BLOCK_SIZE) == 0;
+	}
+
+}
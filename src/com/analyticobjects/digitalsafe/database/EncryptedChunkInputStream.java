@@ -0,0 +1,176 @@
+package com.analyticobjects.digitalsafe.database;
+
+import com.analyticobjects.digitalsafe.crypto.ChunkCipher;
+import com.analyticobjects.digitalsafe.crypto.Passphrase;
+import com.analyticobjects.digitalsafe.exceptions.PassphraseExpiredException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javax.crypto.AEADBadTagException;
+
+/**
+ * Reads chunked file contents back out of storage. Upcoming chunks are read and decrypted ahead on the executor, up
+ * to chunksInFlight at a time, and handed out in order.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+class EncryptedChunkInputStream extends InputStream {
+
+	private final Storage storage;
+	private final Passphrase passphrase;
+	private final FileTableEntry fileTableEntry;
+	private final ExecutorService executor;
+	private final int chunksInFlight;
+	private final Deque<Future<byte[]>> prefetchedChunks;
+	private byte[] chunk;
+	private int chunkPosition;
+	private long nextChunkToFetch;
+
+	/**
+	 * @param storage The storage holding the chunks.
+	 * @param passphrase The passphrase to decrypt with.
+	 * @param fileTableEntry The entry to read the contents of.
+	 * @param executor The executor to decrypt chunks on.
+	 * @param chunksInFlight The most chunks to decrypt ahead.
+	 */
+	EncryptedChunkInputStream(Storage storage, Passphrase passphrase, FileTableEntry fileTableEntry,
+		ExecutorService executor, int chunksInFlight) {
+		this.storage = storage;
+		this.passphrase = passphrase;
+		this.fileTableEntry = fileTableEntry;
+		this.executor = executor;
+		this.chunksInFlight = Math.max(1, chunksInFlight);
+		this.prefetchedChunks = new ArrayDeque<>();
+		this.chunk = new byte[0];
+		this.chunkPosition = 0;
+		this.nextChunkToFetch = 0L;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] oneByte = new byte[1];
+		int bytesRead = read(oneByte, 0, 1);
+		return (bytesRead < 0) ? -1 : (oneByte[0] & 0xff);
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) throws IOException {
+		if (length == 0) {
+			return 0;
+		}
+		while (this.chunkPosition >= this.chunk.length) {
+			if (!nextChunk()) {
+				return -1;
+			}
+		}
+		int bytesToCopy = Math.min(length, this.chunk.length - this.chunkPosition);
+		System.arraycopy(this.chunk, this.chunkPosition, bytes, offset, bytesToCopy);
+		this.chunkPosition += bytesToCopy;
+		return bytesToCopy;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return this.chunk.length - this.chunkPosition;
+	}
+
+	/**
+	 * Replace the current chunk with the next one, topping up the chunks being decrypted ahead.
+	 *
+	 * @return False at the end of the file.
+	 * @throws IOException If a chunk is missing, corrupt or can't be decrypted.
+	 */
+	private boolean nextChunk() throws IOException {
+		while (this.prefetchedChunks.size() < this.chunksInFlight && this.nextChunkToFetch < this.fileTableEntry.getChunkCount()) {
+			String chunkKey = this.fileTableEntry.getChunkKey(this.nextChunkToFetch);
+			this.prefetchedChunks.add(this.executor.submit(new OpenChunkTask(this.storage, this.passphrase, chunkKey)));
+			this.nextChunkToFetch++;
+		}
+		Future<byte[]> nextChunk = this.prefetchedChunks.poll();
+		if (nextChunk == null) {
+			return false;
+		}
+		byte[] chunkBytes;
+		try {
+			chunkBytes = nextChunk.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted reading chunk.");
+		} catch (ExecutionException ex) {
+			throw new IOException(ex.getCause().getLocalizedMessage(), ex.getCause());
+		}
+		Arrays.fill(this.chunk, (byte) 0b00000000);
+		this.chunk = chunkBytes;
+		this.chunkPosition = 0;
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (Future<byte[]> prefetchedChunk : this.prefetchedChunks) {
+			prefetchedChunk.cancel(true);
+		}
+		this.prefetchedChunks.clear();
+		Arrays.fill(this.chunk, (byte) 0b00000000);
+		this.chunk = new byte[0];
+		this.chunkPosition = 0;
+		this.nextChunkToFetch = this.fileTableEntry.getChunkCount();
+	}
+
+	/**
+	 * Reads and decrypts one chunk.
+	 */
+	private static final class OpenChunkTask implements Callable<byte[]> {
+
+		private final Storage storage;
+		private final Passphrase passphrase;
+		private final String chunkKey;
+
+		OpenChunkTask(Storage storage, Passphrase passphrase, String chunkKey) {
+			this.storage = storage;
+			this.passphrase = passphrase;
+			this.chunkKey = chunkKey;
+		}
+
+		@Override
+		public byte[] call() throws Exception {
+			return readChunk(this.storage, this.passphrase, this.chunkKey);
+		}
+	}
+
+	/**
+	 * Read and decrypt one chunk.
+	 *
+	 * @param storage The storage holding the chunk.
+	 * @param passphrase The passphrase to decrypt with.
+	 * @param chunkKey The chunk storage key.
+	 * @return The raw chunk bytes.
+	 * @throws IOException If the chunk is missing, corrupt or can't be decrypted.
+	 */
+	static byte[] readChunk(Storage storage, Passphrase passphrase, String chunkKey) throws IOException {
+		ByteBuffer sealedChunk = storage.readBuffer(chunkKey);
+		if (sealedChunk == null) {
+			throw new IOException("Missing chunk: " + chunkKey);
+		}
+		byte[] chunkBytes;
+		try {
+			chunkBytes = ChunkCipher.open(passphrase, chunkKey, sealedChunk);
+		} catch (PassphraseExpiredException | AEADBadTagException ex) {
+			throw new IOException(ex.getLocalizedMessage(), ex);
+		}
+		if (chunkBytes == null) {
+			throw new IOException("Chunk decryption failed: " + chunkKey);
+		}
+		return chunkBytes;
+	}
+
+}
@@ -0,0 +1,255 @@
+package com.analyticobjects.digitalsafe.database;
+
+import com.analyticobjects.digitalsafe.crypto.ChunkCipher;
+import com.analyticobjects.digitalsafe.crypto.CipherSuite;
+import com.analyticobjects.digitalsafe.crypto.Passphrase;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Writes file contents to storage as a sequence of sealed chunks. Chunks are independent, so several are sealed at
+ * once on the executor while the writer keeps filling the next one; sealed chunks are written back to storage in
+ * order. At most chunksInFlight chunks are held in memory, whatever the size of the file. The chunks are staged in
+ * storage and become visible with the next storage commit; the chunk layout is recorded on the file table entry when
+ * the stream is closed. A stream aborted, by a failed write or by abort, writes nothing more when closed, and closing
+ * it discards the chunks it staged, so the next storage commit doesn't make them live.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+class EncryptedChunkOutputStream extends OutputStream {
+
+	private final Storage storage;
+	private final CipherSuite cipherSuite;
+	private final Passphrase passphrase;
+	private final FileTableEntry fileTableEntry;
+	private final ExecutorService executor;
+	private final int chunksInFlight;
+	private final int chunkSize;
+	private final Deque<PendingChunk> pendingChunks;
+	private final Deque<byte[]> freeBuffers;
+	private final List<String> stagedChunkKeys;
+	private byte[] chunk;
+	private int chunkLength;
+	private long chunkIndex;
+	private long bytesWritten;
+	private boolean closed;
+	private boolean aborted;
+
+	/**
+	 * @param storage The storage to stage chunks in.
+	 * @param cipherSuite The suite to encrypt with.
+	 * @param passphrase The passphrase to encrypt with.
+	 * @param fileTableEntry The entry the contents belong to.
+	 * @param chunkSize Bytes of file content per chunk.
+	 * @param executor The executor to seal chunks on.
+	 * @param chunksInFlight The most chunks to seal at once.
+	 */
+	EncryptedChunkOutputStream(Storage storage, CipherSuite cipherSuite, Passphrase passphrase, FileTableEntry fileTableEntry, int chunkSize,
+		ExecutorService executor, int chunksInFlight) {
+		this.storage = storage;
+		this.cipherSuite = cipherSuite;
+		this.passphrase = passphrase;
+		this.fileTableEntry = fileTableEntry;
+		this.executor = executor;
+		this.chunksInFlight = Math.max(1, chunksInFlight);
+		this.chunkSize = chunkSize;
+		this.pendingChunks = new ArrayDeque<>();
+		this.freeBuffers = new ArrayDeque<>();
+		this.stagedChunkKeys = new ArrayList<>();
+		this.chunk = new byte[chunkSize];
+		this.chunkLength = 0;
+		this.chunkIndex = 0L;
+		this.bytesWritten = 0L;
+		this.closed = false;
+		this.aborted = false;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[]{(byte) b}, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		ensureOpen();
+		int written = 0;
+		while (written < length) {
+			int bytesToCopy = Math.min(length - written, this.chunkSize - this.chunkLength);
+			System.arraycopy(bytes, offset + written, this.chunk, this.chunkLength, bytesToCopy);
+			this.chunkLength += bytesToCopy;
+			written += bytesToCopy;
+			if (this.chunkLength == this.chunkSize) {
+				submitChunk();
+			}
+		}
+	}
+
+	/**
+	 * Hand the buffered chunk off to be sealed and start a new one.
+	 *
+	 * @throws IOException
+	 */
+	private void submitChunk() throws IOException {
+		byte[] chunkBytes = (this.chunkLength == this.chunkSize) ? this.chunk : Arrays.copyOf(this.chunk, this.chunkLength);
+		String chunkKey = this.fileTableEntry.getChunkKey(this.chunkIndex);
+		Future<byte[]> sealedChunk = this.executor.submit(new SealChunkTask(this.cipherSuite, this.passphrase, chunkKey, chunkBytes));
+		this.pendingChunks.add(new PendingChunk(chunkKey, chunkBytes, this.chunkLength, sealedChunk));
+		this.chunk = this.freeBuffers.isEmpty() ? new byte[this.chunkSize] : this.freeBuffers.poll();
+		this.chunkLength = 0;
+		this.chunkIndex++;
+		while (this.pendingChunks.size() >= this.chunksInFlight) {
+			writePendingChunk();
+		}
+	}
+
+	/**
+	 * Wait for the oldest pending chunk to be sealed and stage it in storage.
+	 *
+	 * @throws IOException
+	 */
+	private void writePendingChunk() throws IOException {
+		PendingChunk pendingChunk = this.pendingChunks.poll();
+		byte[] sealedChunk;
+		try {
+			sealedChunk = pendingChunk.sealedChunk.get();
+		} catch (InterruptedException ex) {
+			this.aborted = true;
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted sealing chunk: " + pendingChunk.chunkKey);
+		} catch (ExecutionException ex) {
+			this.aborted = true;
+			throw new IOException(ex.getCause().getLocalizedMessage(), ex.getCause());
+		}
+		if (sealedChunk == null) {
+			this.aborted = true;
+			throw new IOException("Chunk encryption failed: " + pendingChunk.chunkKey);
+		}
+		this.storage.put(pendingChunk.chunkKey, sealedChunk);
+		this.stagedChunkKeys.add(pendingChunk.chunkKey);
+		this.bytesWritten += pendingChunk.chunkLength;
+		Arrays.fill(pendingChunk.chunkBytes, (byte) 0b00000000);
+		if (pendingChunk.chunkBytes.length == this.chunkSize) {
+			this.freeBuffers.add(pendingChunk.chunkBytes);
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (this.closed) {
+			throw new IOException("Stream closed.");
+		}
+	}
+
+	/**
+	 * Give up on the contents, e.g. because the transfer into the stream was cancelled; close then only discards the
+	 * chunks staged and still pending.
+	 */
+	void abort() {
+		this.aborted = true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		try {
+			if (this.aborted) {
+				discardStagedChunks();
+				return;
+			}
+			if (Thread.currentThread().isInterrupted()) { // storage I/O now would close the storage channel.
+				this.aborted = true;
+				discardStagedChunks();
+				throw new InterruptedIOException("Interrupted before the last chunks were written.");
+			}
+			if (this.chunkLength > 0) {
+				submitChunk();
+			}
+			while (!this.pendingChunks.isEmpty()) {
+				writePendingChunk();
+			}
+			this.fileTableEntry.setChunks(this.chunkSize, this.chunkIndex, this.bytesWritten);
+		} finally {
+			for (PendingChunk pendingChunk : this.pendingChunks) {
+				pendingChunk.sealedChunk.cancel(true);
+			}
+			this.pendingChunks.clear();
+			Arrays.fill(this.chunk, (byte) 0b00000000);
+			this.freeBuffers.clear();
+		}
+	}
+
+	/**
+	 * Take the chunks written so far back out of storage. The interrupt, if any, is held back meanwhile, as storage
+	 * I/O on an interrupted thread would close the storage channel.
+	 *
+	 * @throws IOException
+	 */
+	private void discardStagedChunks() throws IOException {
+		boolean interrupted = Thread.interrupted();
+		try {
+			for (String chunkKey : this.stagedChunkKeys) {
+				this.storage.discard(chunkKey);
+			}
+			this.stagedChunkKeys.clear();
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * A chunk submitted for sealing but not yet written.
+	 */
+	private static final class PendingChunk {
+
+		final String chunkKey;
+		final byte[] chunkBytes;
+		final int chunkLength;
+		final Future<byte[]> sealedChunk;
+
+		PendingChunk(String chunkKey, byte[] chunkBytes, int chunkLength, Future<byte[]> sealedChunk) {
+			this.chunkKey = chunkKey;
+			this.chunkBytes = chunkBytes;
+			this.chunkLength = chunkLength;
+			this.sealedChunk = sealedChunk;
+		}
+	}
+
+	/**
+	 * Seals one chunk.
+	 */
+	private static final class SealChunkTask implements Callable<byte[]> {
+
+		private final CipherSuite cipherSuite;
+		private final Passphrase passphrase;
+		private final String chunkKey;
+		private final byte[] chunkBytes;
+
+		SealChunkTask(CipherSuite cipherSuite, Passphrase passphrase, String chunkKey, byte[] chunkBytes) {
+			this.cipherSuite = cipherSuite;
+			this.passphrase = passphrase;
+			this.chunkKey = chunkKey;
+			this.chunkBytes = chunkBytes;
+		}
+
+		@Override
+		public byte[] call() throws Exception {
+			return ChunkCipher.seal(this.cipherSuite, this.passphrase, this.chunkKey, this.chunkBytes);
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+package com.analyticobjects.digitalsafe.database;
+
+import com.analyticobjects.digitalsafe.crypto.Passphrase;
+import com.analyticobjects.digitalsafe.crypto.CipherSuite;
+import com.analyticobjects.digitalsafe.exceptions.PassphraseExpiredException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+
+/**
+ * A read only channel over the contents of a stored file. Only the chunks covering the bytes actually read are
+ * decrypted, so reading a range costs the size of the range rather than the size of the file. The most recently
+ * decrypted chunk is kept for sequential reads within it. Files stored before chunking are decrypted whole, as a
+ * single chunk, on first read.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+class EncryptedFileChannel implements SeekableByteChannel {
+
+	private final Storage storage;
+	private final Passphrase passphrase;
+	private final FileTableEntry fileTableEntry;
+	private final long size;
+	private final long chunkSize;
+	private long position;
+	private long chunkIndex;
+	private byte[] chunk;
+	private boolean open;
+
+	EncryptedFileChannel(Storage storage, Passphrase passphrase, FileTableEntry fileTableEntry) {
+		this.storage = storage;
+		this.passphrase = passphrase;
+		this.fileTableEntry = fileTableEntry;
+		this.size = fileTableEntry.getSizeInBytes();
+		this.chunkSize = fileTableEntry.isChunked() ? fileTableEntry.getChunkSize() : Math.max(1L, this.size);
+		this.position = 0L;
+		this.chunkIndex = -1L;
+		this.chunk = new byte[0];
+		this.open = true;
+	}
+
+	@Override
+	public synchronized int read(ByteBuffer dst) throws IOException {
+		ensureOpen();
+		if (this.position >= this.size) {
+			return -1;
+		}
+		int bytesRead = 0;
+		while (dst.hasRemaining() && this.position < this.size) {
+			long wantedChunk = this.position / this.chunkSize;
+			if (wantedChunk != this.chunkIndex) {
+				loadChunk(wantedChunk);
+			}
+			int chunkOffset = (int) (this.position - wantedChunk * this.chunkSize);
+			if (chunkOffset >= this.chunk.length) {
+				break; // stored contents are shorter than the recorded size.
+			}
+			int bytesToCopy = Math.min(dst.remaining(), this.chunk.length - chunkOffset);
+			dst.put(this.chunk, chunkOffset, bytesToCopy);
+			this.position += bytesToCopy;
+			bytesRead += bytesToCopy;
+		}
+		return (bytesRead == 0) ? -1 : bytesRead;
+	}
+
+	/**
+	 * Decrypt a chunk, replacing the cached one.
+	 *
+	 * @param index The chunk number.
+	 * @throws IOException
+	 */
+	private void loadChunk(long index) throws IOException {
+		byte[] chunkBytes;
+		if (this.fileTableEntry.isChunked()) {
+			chunkBytes = EncryptedChunkInputStream.readChunk(this.storage, this.passphrase, this.fileTableEntry.getChunkKey(index));
+		} else {
+			ByteBuffer encryptedFile = this.storage.readBuffer(this.fileTableEntry.getFileNameHash());
+			if (encryptedFile == null) {
+				throw new IOException("File not found: " + this.fileTableEntry.getFileName());
+			}
+			try {
+				chunkBytes = CipherSuite.decryptAny(this.passphrase, encryptedFile);
+			} catch (PassphraseExpiredException ex) {
+				throw new IOException(ex.getLocalizedMessage(), ex);
+			}
+			if (chunkBytes == null) {
+				throw new IOException("File decryption failed: " + this.fileTableEntry.getFileName());
+			}
+		}
+		Arrays.fill(this.chunk, (byte) 0b00000000);
+		this.chunk = chunkBytes;
+		this.chunkIndex = index;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public synchronized long position() throws IOException {
+		ensureOpen();
+		return this.position;
+	}
+
+	@Override
+	public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+		ensureOpen();
+		if (newPosition < 0L) {
+			throw new IllegalArgumentException("Negative position: " + newPosition);
+		}
+		this.position = newPosition;
+		return this;
+	}
+
+	@Override
+	public long size() throws IOException {
+		ensureOpen();
+		return this.size;
+	}
+
+	@Override
+	public SeekableByteChannel truncate(long size) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public synchronized boolean isOpen() {
+		return this.open;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		this.open = false;
+		Arrays.fill(this.chunk, (byte) 0b00000000);
+		this.chunk = new byte[0];
+		this.chunkIndex = -1L;
+	}
+
+	private void ensureOpen() throws IOException {
+		if (!this.open) {
+			throw new ClosedChannelException();
+		}
+	}
+
+}
@@ -0,0 +1,24 @@
+package com.analyticobjects.digitalsafe.database;
+
+import com.analyticobjects.utility.BinaryReader;
+import java.io.IOException;
+
+/**
+ * Rebuilds a table entry from the fields it wrote with TableEntry.encode. Registered with MasterIndexCodec under a
+ * type id for each concrete entry class.
+ *
+ * @author Joel Bondurant
+ * @param <T> The entry type decoded.
+ * @since 2013.11
+ */
+public interface EntryDecoder<T extends TableEntry> {
+
+	/**
+	 * @param in The encoded entry fields.
+	 * @param version The codec schema version the entry was written with.
+	 * @return The decoded entry.
+	 * @throws IOException If the encoding is malformed.
+	 */
+	public T decode(BinaryReader in, int version) throws IOException;
+
+}
@@ -1,5 +1,8 @@
 package com.analyticobjects.digitalsafe.database;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -9,8 +12,12 @@ import java.util.UUID;
  * @since 2013.10
  */
 public class FileTable extends IndexedMapTable<FileTableEntry>  {
+
+	// Pinned to the formerly computed value so Java serialized indexes in older safes still load.
+	private static final long serialVersionUID = 8197513784243526040L;
 	
 	private final String crypticName;
+	private transient List<FileTableEntry> removedEntries; // contents still to be removed from storage.
 
 	/**
 	 * Create a new file table.
@@ -18,12 +25,92 @@ public class FileTable extends IndexedMapTable<FileTableEntry>  {
 	 * @param name The name identifier for the table.
 	 */
 	public FileTable(String name) {
-		super(new MapTable<FileTableEntry>(name));
-		this.crypticName = UUID.randomUUID().toString();
+		this(new MapTable<FileTableEntry>(name), UUID.randomUUID().toString());
+	}
+
+	/**
+	 * Rebuild a file table around decoded entries.
+	 *
+	 * @param backingMapTable The decoded entries.
+	 * @param crypticName The stored cryptic name.
+	 */
+	FileTable(MapTable<FileTableEntry> backingMapTable, String crypticName) {
+		super(backingMapTable);
+		this.crypticName = crypticName;
 	}
 
 	public String getCrypticName() {
 		return this.crypticName;
 	}
+
+	/**
+	 * Remove a file entry. Its contents are removed from storage with the next commit of the master index.
+	 *
+	 * @param id The id of the entry to remove.
+	 * @return The removed entry, or null if there was none.
+	 */
+	@Override
+	public FileTableEntry removeEntry(Long id) {
+		FileTableEntry removed = super.removeEntry(id);
+		if (removed != null) {
+			addRemovedEntry(removed);
+		}
+		return removed;
+	}
+
+	/**
+	 * Put a file entry. An entry put back after its removal, e.g. a file whose replacement could not be stored, keeps
+	 * its contents.
+	 *
+	 * @param entry The entry to put.
+	 */
+	@Override
+	public void putEntry(FileTableEntry entry) {
+		super.putEntry(entry);
+		synchronized (this) {
+			if (this.removedEntries != null) {
+				Iterator<FileTableEntry> removedIterator = this.removedEntries.iterator();
+				while (removedIterator.hasNext()) {
+					if (removedIterator.next().getFileNameHash().equals(entry.getFileNameHash())) {
+						removedIterator.remove();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A file put again under the same name replaces the stored one; the replaced contents are removed from storage
+	 * with the next commit of the master index, unless the new entry shares them.
+	 */
+	@Override
+	void entryReplaced(FileTableEntry previous, FileTableEntry entry) {
+		if (!previous.getFileNameHash().equals(entry.getFileNameHash())) {
+			addRemovedEntry(previous);
+		}
+	}
+
+	private synchronized void addRemovedEntry(FileTableEntry removed) {
+		if (this.removedEntries == null) {
+			this.removedEntries = new ArrayList<>(); // transient, so null after deserialization.
+		}
+		this.removedEntries.add(removed);
+	}
+
+	/**
+	 * @return The entries removed since their contents were last removed from storage.
+	 */
+	synchronized List<FileTableEntry> getRemovedEntries() {
+		return (this.removedEntries == null) ? new ArrayList<FileTableEntry>() : new ArrayList<>(this.removedEntries);
+	}
+
+	/**
+	 * @param storedRemovals Removed entries whose contents are now removed from storage.
+	 */
+	synchronized void forgetRemovedEntries(List<FileTableEntry> storedRemovals) {
+		if (this.removedEntries != null) {
+			this.removedEntries.removeAll(storedRemovals);
+		}
+	}
 	
 }
@@ -1,10 +1,15 @@
 package com.analyticobjects.digitalsafe.database;
 
+import com.analyticobjects.utility.BinaryReader;
+import com.analyticobjects.utility.BinaryWriter;
+import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.UUID;
 
 /**
- * A note type to store arbitrary files.
+ * A note type to store arbitrary files. File contents are stored as a sequence of separately encrypted chunks, one
+ * storage record per chunk. Entries stored before chunking have a chunk size of zero and one whole-file record.
  *
  * @author Joel Bondurant
  * @since 2013.09
@@ -19,6 +24,8 @@ public class FileTableEntry implements IndexedTableEntry {
 	private String fileName;
 	private long sizeInBytes;
 	private String message;
+	private int chunkSize;
+	private long chunkCount;
 
 	public FileTableEntry(Path sourceFilePath, String message) {
 		this.fileNameHash = UUID.randomUUID().toString();
@@ -28,6 +35,37 @@ public class FileTableEntry implements IndexedTableEntry {
 		this.message = message;
 	}
 
+	private FileTableEntry(BinaryReader in) throws IOException {
+		this.id = in.readVarLong();
+		this.fileNameHash = in.readString();
+		String sourceFile = in.readString();
+		this.sourceFilePath = (sourceFile == null) ? null : Paths.get(sourceFile);
+		this.fileName = in.readString();
+		this.sizeInBytes = in.readVarLong();
+		this.message = in.readString();
+		this.chunkSize = in.readVarInt();
+		this.chunkCount = in.readVarLong();
+	}
+
+	public static final EntryDecoder<FileTableEntry> DECODER = new EntryDecoder<FileTableEntry>() {
+		@Override
+		public FileTableEntry decode(BinaryReader in, int version) throws IOException {
+			return new FileTableEntry(in);
+		}
+	};
+
+	@Override
+	public void encode(BinaryWriter out) {
+		out.writeVarLong(this.id);
+		out.writeString(this.fileNameHash);
+		out.writeString((this.sourceFilePath == null) ? null : this.sourceFilePath.toString());
+		out.writeString(this.fileName);
+		out.writeVarLong(this.sizeInBytes);
+		out.writeString(this.message);
+		out.writeVarInt(this.chunkSize);
+		out.writeVarLong(this.chunkCount);
+	}
+
 	public String getFileName() {
 		return this.fileName;
 	}
@@ -44,6 +82,42 @@ public class FileTableEntry implements IndexedTableEntry {
 		return this.sizeInBytes;
 	}
 
+	/**
+	 * @return True if the contents are stored in chunks, false for a single whole-file record.
+	 */
+	public boolean isChunked() {
+		return this.chunkSize > 0;
+	}
+
+	public int getChunkSize() {
+		return this.chunkSize;
+	}
+
+	public long getChunkCount() {
+		return this.chunkCount;
+	}
+
+	/**
+	 * @param chunkIndex A zero based chunk number.
+	 * @return The storage key of the chunk.
+	 */
+	public String getChunkKey(long chunkIndex) {
+		return this.fileNameHash + "." + chunkIndex;
+	}
+
+	/**
+	 * Record the layout of the stored contents.
+	 *
+	 * @param chunkSize Bytes of file content per chunk.
+	 * @param chunkCount Number of chunks stored.
+	 * @param sizeInBytes Total bytes of file content stored.
+	 */
+	void setChunks(int chunkSize, long chunkCount, long sizeInBytes) {
+		this.chunkSize = chunkSize;
+		this.chunkCount = chunkCount;
+		this.sizeInBytes = sizeInBytes;
+	}
+
 	public boolean isSourceAttached() {
 		return !(this.sourceFilePath == null);
 	}
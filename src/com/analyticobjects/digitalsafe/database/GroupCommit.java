@@ -0,0 +1,124 @@
+package com.analyticobjects.digitalsafe.database;
+
+import com.analyticobjects.utility.ThreadUtility;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the changes committed by concurrent writers into groups, each flushed with one encryption and one
+ * journal force. A writer submits its changes and gets a future completed when its group is durable. The first
+ * submission after a flush schedules the next flush a short window later; everything submitted until it runs,
+ * including while the previous group is being forced, joins that group.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+final class GroupCommit {
+
+	private static final Runnable NOTHING = new Runnable() {
+		@Override
+		public void run() {
+		}
+	};
+
+	private final Runnable flush;
+	private final long windowMicros;
+	private List<PendingCommit> pending;
+	private boolean flushScheduled;
+	private int groupCount;
+	private ScheduledExecutorService flushExecutor;
+
+	/**
+	 * @param flush Drains and flushes the pending group, on the group commit thread.
+	 * @param windowMicros How long after the first submission of a group it is flushed.
+	 */
+	GroupCommit(Runnable flush, long windowMicros) {
+		this.flush = flush;
+		this.windowMicros = windowMicros;
+		this.pending = new ArrayList<>();
+		this.flushScheduled = false;
+		this.groupCount = 0;
+		this.flushExecutor = null;
+	}
+
+	/**
+	 * Add changes to the next group, scheduling its flush if this is the first.
+	 *
+	 * @param changes Changes already applied to the master index.
+	 * @return Completed when the group holding the changes is durable.
+	 */
+	synchronized Future<Void> submit(List<TableChange> changes) {
+		PendingCommit pendingCommit = new PendingCommit(changes);
+		this.pending.add(pendingCommit);
+		if (!this.flushScheduled) {
+			this.flushScheduled = true;
+			if (this.flushExecutor == null) {
+				this.flushExecutor = Executors.newSingleThreadScheduledExecutor(ThreadUtility.daemonThreadFactory("DigitalSafe-group-commit"));
+			}
+			this.flushExecutor.schedule(this.flush, this.windowMicros, TimeUnit.MICROSECONDS);
+		}
+		return pendingCommit;
+	}
+
+	/**
+	 * Take the pending group. Whoever drains it must complete every commit in it.
+	 *
+	 * @return The commits submitted since the last drain, oldest first.
+	 */
+	synchronized List<PendingCommit> drain() {
+		List<PendingCommit> group = this.pending;
+		this.pending = new ArrayList<>();
+		this.flushScheduled = false;
+		if (!group.isEmpty()) {
+			this.groupCount++;
+		}
+		return group;
+	}
+
+	/**
+	 * @return The number of non-empty groups drained, however many commits each held.
+	 */
+	synchronized int getGroupCount() {
+		return this.groupCount;
+	}
+
+	/**
+	 * @return A future for changes committed without waiting for a group.
+	 */
+	static Future<Void> committed() {
+		PendingCommit pendingCommit = new PendingCommit(new ArrayList<TableChange>(0));
+		pendingCommit.committed();
+		return pendingCommit;
+	}
+
+	/**
+	 * The changes of one writer and the future it waits on.
+	 */
+	static final class PendingCommit extends FutureTask<Void> {
+
+		private final List<TableChange> changes;
+
+		private PendingCommit(List<TableChange> changes) {
+			super(NOTHING, null);
+			this.changes = changes;
+		}
+
+		List<TableChange> getChanges() {
+			return this.changes;
+		}
+
+		void committed() {
+			set(null);
+		}
+
+		void failed(Throwable cause) {
+			setException(cause);
+		}
+	}
+
+}
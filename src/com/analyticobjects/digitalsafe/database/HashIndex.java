@@ -0,0 +1,22 @@
+package com.analyticobjects.digitalsafe.database;
+
+import java.util.HashMap;
+
+/**
+ * A secondary index for exact key lookups, e.g. all the notes with a tag.
+ *
+ * @author Joel Bondurant
+ * @param <T> The entry type.
+ * @param <K> The key type, with equals and hashCode.
+ * @since 2013.11
+ */
+public abstract class HashIndex<T extends TableEntry, K> extends SecondaryIndex<T, K> {
+
+	/**
+	 * @param name The index name, unique within its table.
+	 */
+	protected HashIndex(String name) {
+		super(name, new HashMap<K, SortedIds>());
+	}
+
+}
@@ -1,13 +1,18 @@
 package com.analyticobjects.digitalsafe.database;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * A decorator for adding String indexes to a MapTable.
- * 
- * TODO: Make sure to do whatever is needed to support multiple named indexes.
+ * A decorator for adding String indexes to a MapTable. Besides the index by index id, named secondary indexes can be
+ * added to find entries by other keys, see SecondaryIndex.
  *
  * @author Joel Bondurant
  * @param <T> A type parameter for an IndexedTableEntry.
@@ -16,32 +21,326 @@ import java.util.concurrent.ConcurrentHashMap;
 public class IndexedMapTable<T extends IndexedTableEntry> implements Table<T> {
 	
 	private static final long serialVersionUID = 1L;
-	private final Map<String, Long> tableEntryIndexMap;
-	private final MapTable<T> backingMapTable;
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("tableEntryIndexMap", Map.class),
+		new ObjectStreamField("backingMapTable", MapTable.class)
+	};
+	private static final long NO_ID = 0L; // ids start at 1.
+	private transient StringLongMap tableEntryIndexMap;
+	private transient MapTable<T> backingMapTable;
+	private transient volatile TextIndex textIndex;
+	private transient volatile KeyTrie keyTrie;
+	private transient Map<String, SecondaryIndex<? super T, ?>> secondaryIndexes;
 
 	public IndexedMapTable(MapTable<T> backingMapTable) {
 		this.backingMapTable = backingMapTable;
-		this.tableEntryIndexMap = new ConcurrentHashMap<>();
+		this.tableEntryIndexMap = new StringLongMap();
 	}
 	
 	public T getEntry(String strId) {
-		if (this.tableEntryIndexMap.containsKey(strId)) {
-			Long id = this.tableEntryIndexMap.get(strId);
-			if (id != null) {
-				return this.backingMapTable.getEntry(id);
-			}
+		long id = this.tableEntryIndexMap.get(strId, NO_ID);
+		if (id == NO_ID) {
+			return null;
 		}
-		return null;
+		return this.backingMapTable.getEntry(id);
 	}
 
+	/**
+	 * Put an entry. Writers share no lock while storing the entry and its index id; only the lazily built key trie
+	 * and secondary indexes are updated under the table monitor, which their builds also hold, so an entry is either
+	 * seen by a build or added to the built index afterwards. A new entry with the index id of a stored one, e.g. a
+	 * note saved again from the editor, takes over the stored entry's id and so replaces it everywhere. An entry
+	 * replacing another with the same id under a different index id takes over from it, the old index id no longer
+	 * finds anything, and an entry of its own moved onto a taken index id removes the entry it displaces.
+	 *
+	 * @param entry The entry to put.
+	 */
 	@Override
-	public synchronized void putEntry(T entry) {
-		String strId = entry.getIndexId().toLowerCase();
-		if (strId == null) {
+	public void putEntry(T entry) {
+		if (entry.getIndexId() == null) {
 			throw new NullPointerException("Entry must have a non-null index id.");
 		}
+		String strId = entry.getIndexId().toLowerCase();
+		long displacedId = this.tableEntryIndexMap.get(strId, NO_ID);
+		if (displacedId != NO_ID && (entry.getId() == null || entry.getId() == 0L)) {
+			entry.setId(displacedId);
+		}
+		Long previousId = entry.getId();
+		T previous = (previousId == null) ? null : this.backingMapTable.getEntry(previousId);
 		this.backingMapTable.putEntry(entry);
 		this.tableEntryIndexMap.put(entry.getIndexId(), entry.getId());
+		if (entry instanceof SearchableEntry) {
+			getTextIndex().put(entry.getId(), ((SearchableEntry) entry).searchText());
+		}
+		synchronized (this) {
+			if (previous != null && previous != entry && !previous.getIndexId().equals(entry.getIndexId())) {
+				removeIndexId(previous.getIndexId(), previous.getId());
+			}
+			if (this.keyTrie != null) {
+				this.keyTrie.add(entry.getIndexId());
+			}
+			for (SecondaryIndex<? super T, ?> secondaryIndex : secondaryIndexes().values()) {
+				if (secondaryIndex.isBuilt()) {
+					secondaryIndex.put(entry);
+				}
+			}
+		}
+		if (previous != null && previous != entry) {
+			entryReplaced(previous, entry);
+		}
+		if (displacedId != NO_ID && displacedId != entry.getId()) {
+			removeEntry(displacedId); // keeps the index id, now taken by the entry.
+		}
+	}
+
+	/**
+	 * Called when putEntry replaces an entry by another instance with the same id.
+	 *
+	 * @param previous The replaced entry.
+	 * @param entry The entry put.
+	 */
+	void entryReplaced(T previous, T entry) {
+	}
+
+	/**
+	 * Remove an entry, and its index id, text and secondary index keys.
+	 *
+	 * @param id The id of the entry to remove.
+	 * @return The removed entry, or null if there was none.
+	 */
+	@Override
+	public T removeEntry(Long id) {
+		T removed = this.backingMapTable.removeEntry(id);
+		if (removed == null) {
+			return null;
+		}
+		getTextIndex().remove(removed.getId());
+		synchronized (this) {
+			removeIndexId(removed.getIndexId(), removed.getId());
+			for (SecondaryIndex<? super T, ?> secondaryIndex : secondaryIndexes().values()) {
+				if (secondaryIndex.isBuilt()) {
+					secondaryIndex.remove(removed.getId());
+				}
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Remove an entry by its index id.
+	 *
+	 * @param strId The index id of the entry to remove.
+	 * @return The removed entry, or null if there was none.
+	 */
+	public T removeEntry(String strId) {
+		long id = this.tableEntryIndexMap.get(strId, NO_ID);
+		if (id == NO_ID) {
+			return null;
+		}
+		return removeEntry(id);
+	}
+
+	/**
+	 * Drop an index id, unless it has been taken over by another entry.
+	 */
+	private synchronized void removeIndexId(String strId, long id) {
+		if (this.tableEntryIndexMap.get(strId, NO_ID) != id) {
+			return;
+		}
+		this.tableEntryIndexMap.remove(strId);
+		if (this.keyTrie != null) {
+			this.keyTrie.remove(strId);
+		}
+	}
+
+	/**
+	 * Add a named secondary index. The index is built from the entries when first queried and maintained by
+	 * putEntry from then on. Adding an index under a name already in use is ignored, so tables can be given their
+	 * indexes every time they are opened.
+	 *
+	 * @param secondaryIndex The index to add.
+	 */
+	public synchronized void addSecondaryIndex(SecondaryIndex<? super T, ?> secondaryIndex) {
+		if (!secondaryIndexes().containsKey(secondaryIndex.getName())) {
+			secondaryIndexes().put(secondaryIndex.getName(), secondaryIndex);
+		}
+	}
+
+	/**
+	 * @param indexName A secondary index name.
+	 * @return True if the table has the secondary index.
+	 */
+	public synchronized boolean hasSecondaryIndex(String indexName) {
+		return secondaryIndexes().containsKey(indexName);
+	}
+
+	/**
+	 * Find entries by a secondary index key.
+	 *
+	 * @param <K> The index key type.
+	 * @param indexName The secondary index name.
+	 * @param key The key to find.
+	 * @return The entries with the key, in id order.
+	 * @throws IllegalArgumentException If there is no such index.
+	 */
+	@SuppressWarnings("unchecked")
+	public <K> List<T> findBy(String indexName, K key) {
+		SecondaryIndex<? super T, K> secondaryIndex = (SecondaryIndex<? super T, K>) builtSecondaryIndex(indexName);
+		return entries(secondaryIndex.find(key));
+	}
+
+	/**
+	 * Find entries by a range of sorted secondary index keys.
+	 *
+	 * @param <K> The index key type.
+	 * @param indexName The sorted secondary index name.
+	 * @param from The lowest key, inclusive, or null for no lower bound.
+	 * @param to The highest key, exclusive, or null for no upper bound.
+	 * @return The entries with a key in the range, in key order.
+	 * @throws IllegalArgumentException If there is no such sorted index.
+	 */
+	@SuppressWarnings("unchecked")
+	public <K extends Comparable<K>> List<T> findRange(String indexName, K from, K to) {
+		SecondaryIndex<? super T, ?> secondaryIndex = builtSecondaryIndex(indexName);
+		if (!(secondaryIndex instanceof SortedIndex)) {
+			throw new IllegalArgumentException("Not a sorted index: " + indexName);
+		}
+		return entries(((SortedIndex<? super T, K>) secondaryIndex).findRange(from, to));
+	}
+
+	/**
+	 * @param indexName A secondary index name.
+	 * @return The index, built.
+	 * @throws IllegalArgumentException If there is no such index.
+	 */
+	private synchronized SecondaryIndex<? super T, ?> builtSecondaryIndex(String indexName) {
+		SecondaryIndex<? super T, ?> secondaryIndex = secondaryIndexes().get(indexName);
+		if (secondaryIndex == null) {
+			throw new IllegalArgumentException("No such index: " + indexName);
+		}
+		if (!secondaryIndex.isBuilt()) {
+			secondaryIndex.build(this.backingMapTable.getAll());
+		}
+		return secondaryIndex;
+	}
+
+	private synchronized Map<String, SecondaryIndex<? super T, ?>> secondaryIndexes() {
+		if (this.secondaryIndexes == null) {
+			this.secondaryIndexes = new HashMap<>(); // transient, so null after deserialization.
+		}
+		return this.secondaryIndexes;
+	}
+
+	/**
+	 * @param ids Entry ids.
+	 * @return The entries, in the order of the ids.
+	 */
+	private List<T> entries(long[] ids) {
+		List<T> entries = new ArrayList<>(ids.length);
+		for (long id : ids) {
+			T entry = this.backingMapTable.getEntry(id);
+			if (entry != null) {
+				entries.add(entry);
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Find the entries containing all the words of a query, in their title, tags, message or whatever else they
+	 * expose as search text.
+	 *
+	 * @param query The words to find.
+	 * @return The matching entries, in id order.
+	 */
+	public List<T> search(String query) {
+		return entries(getTextIndex().search(query));
+	}
+
+	/**
+	 * Complete a partial index id, e.g. the first letters of a note title.
+	 *
+	 * @param prefix The start of an index id.
+	 * @param limit The most index ids to return.
+	 * @return The index ids starting with the prefix, in sorted order.
+	 */
+	public List<String> completeIndexId(String prefix, int limit) {
+		return getKeyTrie().complete(prefix, limit);
+	}
+
+	/**
+	 * Find the index ids close to a possibly mistyped one.
+	 *
+	 * @param indexId An index id.
+	 * @param maxDistance The most single character insertions, deletions or substitutions to allow.
+	 * @param limit The most index ids to return.
+	 * @return The index ids within the edit distance, in sorted order.
+	 */
+	public List<String> findSimilarIndexIds(String indexId, int maxDistance, int limit) {
+		return getKeyTrie().findWithin(indexId, maxDistance, limit);
+	}
+
+	/**
+	 * @return A trie of the index ids, built on first use.
+	 */
+	private KeyTrie getKeyTrie() {
+		KeyTrie currentKeyTrie = this.keyTrie;
+		if (currentKeyTrie == null) {
+			synchronized (this) {
+				currentKeyTrie = this.keyTrie;
+				if (currentKeyTrie == null) {
+					currentKeyTrie = new KeyTrie();
+					for (String indexId : this.tableEntryIndexMap.keys()) {
+						currentKeyTrie.add(indexId);
+					}
+					this.keyTrie = currentKeyTrie;
+				}
+			}
+		}
+		return currentKeyTrie;
+	}
+
+	/**
+	 * @return The text index of the searchable entries, rebuilt from the entries if it wasn't stored.
+	 */
+	TextIndex getTextIndex() {
+		TextIndex currentTextIndex = this.textIndex;
+		if (currentTextIndex == null) {
+			synchronized (this) {
+				currentTextIndex = this.textIndex;
+				if (currentTextIndex == null) {
+					currentTextIndex = new TextIndex();
+					for (T entry : this.backingMapTable.getAll()) {
+						if (entry instanceof SearchableEntry) {
+							currentTextIndex.put(entry.getId(), ((SearchableEntry) entry).searchText());
+						}
+					}
+					this.textIndex = currentTextIndex;
+				}
+			}
+		}
+		return currentTextIndex;
+	}
+
+	/**
+	 * @param textIndex A decoded text index of the entries.
+	 */
+	void setTextIndex(TextIndex textIndex) {
+		this.textIndex = textIndex;
+	}
+
+	/**
+	 * @return The index of entry ids by index id.
+	 */
+	StringLongMap getIndex() {
+		return this.tableEntryIndexMap;
+	}
+
+	/**
+	 * @return The table the entries are stored in.
+	 */
+	MapTable<T> getBackingMapTable() {
+		return this.backingMapTable;
 	}
 
 	@Override
@@ -59,5 +358,28 @@ public class IndexedMapTable<T extends IndexedTableEntry> implements Table<T> {
 		return this.backingMapTable.getName();
 	}
 
-	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		Map<String, Long> indexMap = new ConcurrentHashMap<>();
+		for (String indexId : this.tableEntryIndexMap.keys()) {
+			indexMap.put(indexId, this.tableEntryIndexMap.get(indexId, NO_ID));
+		}
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("tableEntryIndexMap", indexMap);
+		fields.put("backingMapTable", this.backingMapTable);
+		out.writeFields();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		this.backingMapTable = (MapTable<T>) fields.get("backingMapTable", null);
+		this.tableEntryIndexMap = new StringLongMap();
+		Map<String, Long> indexMap = (Map<String, Long>) fields.get("tableEntryIndexMap", null);
+		if (indexMap != null) {
+			for (Map.Entry<String, Long> indexEntry : indexMap.entrySet()) {
+				this.tableEntryIndexMap.put(indexEntry.getKey(), indexEntry.getValue());
+			}
+		}
+	}
+
 }
@@ -0,0 +1,183 @@
+package com.analyticobjects.digitalsafe.database;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead journal beside a safe. Each record is appended and forced to disk before append returns, so a change
+ * is durable once journaled, without storing the tables it changes. Records hold whatever the caller gives them,
+ * SecureDatabase gives them encrypted. A record torn by a crash is cut off the next time the journal is read.
+ *
+ * Layout: magic "DSAFEJNL", version (4 bytes), then records: length (4), bytes, CRC32 of the bytes (4).
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+final class Journal implements Closeable {
+
+	private static final Logger logger = Logger.getLogger(Journal.class.getName());
+	private static final byte[] MAGIC = "DSAFEJNL".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = MAGIC.length + 4;
+
+	private final Path journalPath;
+	private final FileChannel channel;
+	private long journalEnd;
+	private int recordCount;
+
+	/**
+	 * Open or create a journal.
+	 *
+	 * @param journalPath The journal file path.
+	 * @throws IOException If the file is not a journal or can't be read.
+	 */
+	Journal(Path journalPath) throws IOException {
+		this.journalPath = journalPath;
+		this.channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			if (this.channel.size() < HEADER_SIZE) {
+				clear();
+			} else {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				readFully(0L, header);
+				byte[] magic = new byte[MAGIC.length];
+				header.get(magic);
+				if (!Arrays.equals(magic, MAGIC)) {
+					throw new IOException("Not a DigitalSafe journal: " + journalPath);
+				}
+				int version = header.getInt();
+				if (version > VERSION) {
+					throw new IOException("Unsupported DigitalSafe journal version: " + version);
+				}
+				readAll(); // finds the end, cutting off any torn tail.
+			}
+		} catch (IOException ex) {
+			this.channel.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Read every complete record, cutting off a torn tail.
+	 *
+	 * @return The records, oldest first.
+	 * @throws IOException
+	 */
+	synchronized List<byte[]> readAll() throws IOException {
+		List<byte[]> records = new ArrayList<>();
+		long size = this.channel.size();
+		long position = HEADER_SIZE;
+		while (position + 8 <= size) {
+			ByteBuffer length = ByteBuffer.allocate(4);
+			readFully(position, length);
+			int recordLength = length.getInt(0);
+			if (recordLength < 0 || position + 8 + recordLength > size) {
+				break;
+			}
+			ByteBuffer record = ByteBuffer.allocate(recordLength + 4);
+			readFully(position + 4, record);
+			CRC32 crc = new CRC32();
+			crc.update(record.array(), 0, recordLength);
+			if (record.getInt(recordLength) != (int) crc.getValue()) {
+				break;
+			}
+			records.add(Arrays.copyOf(record.array(), recordLength));
+			position += 8 + recordLength;
+		}
+		if (position < size) {
+			logger.log(Level.WARNING, "Discarding {0} bytes of torn journal tail.", size - position);
+			this.channel.truncate(position);
+			this.channel.force(true);
+		}
+		this.journalEnd = position;
+		this.recordCount = records.size();
+		return records;
+	}
+
+	/**
+	 * Append a record and force it to disk.
+	 *
+	 * @param record The record bytes.
+	 * @throws IOException
+	 */
+	synchronized void append(byte[] record) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(record);
+		ByteBuffer buffer = ByteBuffer.allocate(8 + record.length);
+		buffer.putInt(record.length);
+		buffer.put(record);
+		buffer.putInt((int) crc.getValue());
+		buffer.flip();
+		writeFully(this.journalEnd, buffer);
+		this.channel.force(false);
+		this.journalEnd += 8 + record.length;
+		this.recordCount++;
+	}
+
+	/**
+	 * Drop every record, once what they changed is stored elsewhere.
+	 *
+	 * @throws IOException
+	 */
+	synchronized void clear() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.put(MAGIC);
+		header.putInt(VERSION);
+		header.flip();
+		this.channel.truncate(0L);
+		writeFully(0L, header);
+		this.channel.force(true);
+		this.journalEnd = HEADER_SIZE;
+		this.recordCount = 0;
+	}
+
+	/**
+	 * @return The number of records appended or read since the journal was last cleared.
+	 */
+	synchronized int getRecordCount() {
+		return this.recordCount;
+	}
+
+	/**
+	 * @return The journal file path.
+	 */
+	Path getPath() {
+		return this.journalPath;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		this.channel.close();
+	}
+
+	private void readFully(long position, ByteBuffer buffer) throws IOException {
+		long readPosition = position;
+		while (buffer.hasRemaining()) {
+			int bytesRead = this.channel.read(buffer, readPosition);
+			if (bytesRead < 0) {
+				throw new IOException("Unexpected end of journal.");
+			}
+			readPosition += bytesRead;
+		}
+		buffer.flip();
+	}
+
+	private void writeFully(long position, ByteBuffer buffer) throws IOException {
+		long writePosition = position;
+		while (buffer.hasRemaining()) {
+			writePosition += this.channel.write(buffer, writePosition);
+		}
+	}
+
+}
@@ -0,0 +1,186 @@
+package com.analyticobjects.digitalsafe.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A trie of index keys for completing partial keys and finding keys within a small edit distance of a mistyped one.
+ * Each node keeps its child edges as a sorted char array beside an array of children, so a node costs two small
+ * arrays rather than a map, and keys come out in sorted order.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+final class KeyTrie {
+
+	private final Node root;
+	private int size;
+
+	KeyTrie() {
+		this.root = new Node();
+		this.size = 0;
+	}
+
+	/**
+	 * @param key A key to add.
+	 */
+	synchronized void add(String key) {
+		Node node = this.root;
+		for (int i = 0; i < key.length(); i++) {
+			node = node.childOrNew(key.charAt(i));
+		}
+		if (!node.terminal) {
+			node.terminal = true;
+			this.size++;
+		}
+	}
+
+	/**
+	 * @param key A key to remove.
+	 * @return True if the key was present. Emptied nodes are left in place.
+	 */
+	synchronized boolean remove(String key) {
+		Node node = this.root;
+		for (int i = 0; i < key.length() && node != null; i++) {
+			node = node.child(key.charAt(i));
+		}
+		if (node == null || !node.terminal) {
+			return false;
+		}
+		node.terminal = false;
+		this.size--;
+		return true;
+	}
+
+	synchronized int size() {
+		return this.size;
+	}
+
+	/**
+	 * @param prefix A partial key.
+	 * @param limit The most keys to return.
+	 * @return The keys starting with the prefix, in sorted order.
+	 */
+	synchronized List<String> complete(String prefix, int limit) {
+		List<String> keys = new ArrayList<>();
+		Node node = this.root;
+		for (int i = 0; i < prefix.length() && node != null; i++) {
+			node = node.child(prefix.charAt(i));
+		}
+		if (node != null) {
+			collect(node, new StringBuilder(prefix), keys, limit);
+		}
+		return keys;
+	}
+
+	private static void collect(Node node, StringBuilder key, List<String> keys, int limit) {
+		if (keys.size() >= limit) {
+			return;
+		}
+		if (node.terminal) {
+			keys.add(key.toString());
+		}
+		for (int c = 0; c < node.childCount && keys.size() < limit; c++) {
+			key.append(node.edges[c]);
+			collect(node.children[c], key, keys, limit);
+			key.setLength(key.length() - 1);
+		}
+	}
+
+	/**
+	 * Find keys within an edit distance (insertions, deletions and substitutions) of a key. Subtrees are pruned as soon
+	 * as every prefix of the key is too far from the path to them, so only a thin slice of the trie is visited.
+	 *
+	 * @param key A possibly mistyped key.
+	 * @param maxDistance The largest edit distance to accept.
+	 * @param limit The most keys to return.
+	 * @return The keys within the distance, in sorted order.
+	 */
+	synchronized List<String> findWithin(String key, int maxDistance, int limit) {
+		List<String> keys = new ArrayList<>();
+		int[] firstRow = new int[key.length() + 1];
+		for (int i = 0; i < firstRow.length; i++) {
+			firstRow[i] = i;
+		}
+		if (this.root.terminal && key.length() <= maxDistance) {
+			keys.add("");
+		}
+		StringBuilder path = new StringBuilder();
+		for (int c = 0; c < this.root.childCount && keys.size() < limit; c++) {
+			path.append(this.root.edges[c]);
+			findWithin(this.root.children[c], this.root.edges[c], key, firstRow, maxDistance, path, keys, limit);
+			path.setLength(path.length() - 1);
+		}
+		return keys;
+	}
+
+	private static void findWithin(Node node, char edge, String key, int[] previousRow, int maxDistance,
+		StringBuilder path, List<String> keys, int limit) {
+		int[] row = new int[previousRow.length];
+		row[0] = previousRow[0] + 1;
+		int rowMinimum = row[0];
+		for (int i = 1; i < row.length; i++) {
+			int substitution = previousRow[i - 1] + ((key.charAt(i - 1) == edge) ? 0 : 1);
+			row[i] = Math.min(Math.min(row[i - 1] + 1, previousRow[i] + 1), substitution);
+			rowMinimum = Math.min(rowMinimum, row[i]);
+		}
+		if (node.terminal && row[row.length - 1] <= maxDistance) {
+			keys.add(path.toString());
+		}
+		if (rowMinimum > maxDistance) {
+			return;
+		}
+		for (int c = 0; c < node.childCount && keys.size() < limit; c++) {
+			path.append(node.edges[c]);
+			findWithin(node.children[c], node.edges[c], key, row, maxDistance, path, keys, limit);
+			path.setLength(path.length() - 1);
+		}
+	}
+
+	/**
+	 * A trie node; edges[i] leads to children[i], edges sorted.
+	 */
+	private static final class Node {
+
+		private static final char[] NO_EDGES = new char[0];
+		private static final Node[] NO_CHILDREN = new Node[0];
+		private char[] edges;
+		private Node[] children;
+		private int childCount;
+		private boolean terminal;
+
+		Node() {
+			this.edges = NO_EDGES;
+			this.children = NO_CHILDREN;
+			this.childCount = 0;
+			this.terminal = false;
+		}
+
+		Node child(char edge) {
+			int position = Arrays.binarySearch(this.edges, 0, this.childCount, edge);
+			return (position >= 0) ? this.children[position] : null;
+		}
+
+		Node childOrNew(char edge) {
+			int position = Arrays.binarySearch(this.edges, 0, this.childCount, edge);
+			if (position >= 0) {
+				return this.children[position];
+			}
+			position = -position - 1;
+			if (this.childCount == this.edges.length) {
+				int capacity = (this.childCount < 4) ? this.childCount + 1 : this.childCount + (this.childCount >> 1);
+				this.edges = Arrays.copyOf(this.edges, capacity);
+				this.children = Arrays.copyOf(this.children, capacity);
+			}
+			System.arraycopy(this.edges, position, this.edges, position + 1, this.childCount - position);
+			System.arraycopy(this.children, position, this.children, position + 1, this.childCount - position);
+			Node child = new Node();
+			this.edges[position] = edge;
+			this.children[position] = child;
+			this.childCount++;
+			return child;
+		}
+	}
+
+}
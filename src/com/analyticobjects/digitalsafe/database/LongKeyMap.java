@@ -0,0 +1,233 @@
+package com.analyticobjects.digitalsafe.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A map from primitive long keys to objects, for table entries by id. Keys and values sit in parallel arrays with
+ * open addressing (linear probing), so there is no boxed key and no node per entry. The map is split into segments,
+ * each with its own lock, so concurrent readers and writers only contend when they hit the same segment.
+ *
+ * @author Joel Bondurant
+ * @param <V> The value type.
+ * @since 2013.11
+ */
+final class LongKeyMap<V> {
+
+	private static final int SEGMENT_BITS = 4;
+	private final Segment[] segments;
+
+	LongKeyMap() {
+		this.segments = new Segment[1 << SEGMENT_BITS];
+		for (int i = 0; i < this.segments.length; i++) {
+			this.segments[i] = new Segment();
+		}
+	}
+
+	/**
+	 * Spread the key bits, consecutive ids would otherwise fill runs of neighbouring slots. (MurmurHash3 finalizer.)
+	 */
+	static long mix(long key) {
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private Segment segmentFor(long hash) {
+		return this.segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+	}
+
+	/**
+	 * @param key A key.
+	 * @return The value for the key, or null.
+	 */
+	@SuppressWarnings("unchecked")
+	V get(long key) {
+		long hash = mix(key);
+		return (V) segmentFor(hash).get(key, hash);
+	}
+
+	/**
+	 * @param key A key.
+	 * @param value A value, not null.
+	 * @return The value replaced, or null.
+	 */
+	@SuppressWarnings("unchecked")
+	V put(long key, V value) {
+		if (value == null) {
+			throw new NullPointerException("Null value for key " + key);
+		}
+		long hash = mix(key);
+		return (V) segmentFor(hash).put(key, hash, value);
+	}
+
+	/**
+	 * @param key A key.
+	 * @return The value removed, or null.
+	 */
+	@SuppressWarnings("unchecked")
+	V remove(long key) {
+		long hash = mix(key);
+		return (V) segmentFor(hash).remove(key, hash);
+	}
+
+	int size() {
+		int size = 0;
+		for (Segment segment : this.segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return A snapshot of the keys, ascending.
+	 */
+	long[] keys() {
+		long[] keys = new long[0];
+		int keyCount = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				if (keys.length < keyCount + segment.size) {
+					keys = Arrays.copyOf(keys, keyCount + segment.size + (keyCount >> 2));
+				}
+				keyCount += segment.copyKeys(keys, keyCount);
+			}
+		}
+		keys = Arrays.copyOf(keys, keyCount);
+		Arrays.sort(keys);
+		return keys;
+	}
+
+	/**
+	 * @return A snapshot of the values, in key order.
+	 */
+	List<V> values() {
+		long[] keys = keys();
+		List<V> values = new ArrayList<>(keys.length);
+		for (long key : keys) {
+			V value = get(key);
+			if (value != null) { // removed since the keys were taken.
+				values.add(value);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * One lock's worth of the map: an open addressing table, kept at most three quarters full.
+	 */
+	private static final class Segment {
+
+		private long[] keys;
+		private Object[] values; // null marks an empty slot.
+		private int size;
+
+		Segment() {
+			this.keys = new long[8];
+			this.values = new Object[8];
+			this.size = 0;
+		}
+
+		synchronized int size() {
+			return this.size;
+		}
+
+		private int slot(long hash) {
+			return (int) hash & (this.keys.length - 1);
+		}
+
+		synchronized Object get(long key, long hash) {
+			int mask = this.keys.length - 1;
+			for (int i = slot(hash); this.values[i] != null; i = (i + 1) & mask) {
+				if (this.keys[i] == key) {
+					return this.values[i];
+				}
+			}
+			return null;
+		}
+
+		synchronized Object put(long key, long hash, Object value) {
+			int mask = this.keys.length - 1;
+			int i = slot(hash);
+			for (; this.values[i] != null; i = (i + 1) & mask) {
+				if (this.keys[i] == key) {
+					Object replaced = this.values[i];
+					this.values[i] = value;
+					return replaced;
+				}
+			}
+			this.keys[i] = key;
+			this.values[i] = value;
+			this.size++;
+			if (this.size * 4 > this.keys.length * 3) {
+				grow();
+			}
+			return null;
+		}
+
+		private void grow() {
+			long[] oldKeys = this.keys;
+			Object[] oldValues = this.values;
+			this.keys = new long[oldKeys.length * 2];
+			this.values = new Object[oldValues.length * 2];
+			int mask = this.keys.length - 1;
+			for (int j = 0; j < oldKeys.length; j++) {
+				if (oldValues[j] == null) {
+					continue;
+				}
+				int i = slot(mix(oldKeys[j]));
+				while (this.values[i] != null) {
+					i = (i + 1) & mask;
+				}
+				this.keys[i] = oldKeys[j];
+				this.values[i] = oldValues[j];
+			}
+		}
+
+		synchronized Object remove(long key, long hash) {
+			int mask = this.keys.length - 1;
+			int i = slot(hash);
+			while (this.values[i] != null && this.keys[i] != key) {
+				i = (i + 1) & mask;
+			}
+			Object removed = this.values[i];
+			if (removed == null) {
+				return null;
+			}
+			// Shift later entries of the probe run back into the gap, so lookups never stop short of them.
+			int gap = i;
+			for (int j = (gap + 1) & mask; this.values[j] != null; j = (j + 1) & mask) {
+				int home = slot(mix(this.keys[j]));
+				boolean homeBetweenGapAndJ = (gap <= j) ? (gap < home && home <= j) : (gap < home || home <= j);
+				if (!homeBetweenGapAndJ) {
+					this.keys[gap] = this.keys[j];
+					this.values[gap] = this.values[j];
+					gap = j;
+				}
+			}
+			this.keys[gap] = 0L;
+			this.values[gap] = null;
+			this.size--;
+			return removed;
+		}
+
+		/**
+		 * @return The number of keys copied.
+		 */
+		int copyKeys(long[] into, int offset) {
+			int copied = 0;
+			for (int i = 0; i < this.keys.length; i++) {
+				if (this.values[i] != null) {
+					into[offset + copied++] = this.keys[i];
+				}
+			}
+			return copied;
+		}
+	}
+
+}
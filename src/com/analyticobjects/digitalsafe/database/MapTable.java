@@ -1,12 +1,20 @@
 package com.analyticobjects.digitalsafe.database;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Stores a map of serializable objects.
+ * Stores a map of serializable objects. Entries are kept by primitive id in a LongKeyMap; the serialized form is
+ * still the map of boxed ids older safes were written with.
+ *
+ * New entries get their id from a sequence that only moves forward, so ids are never reused, and putEntry takes no
+ * table wide lock: the id is claimed with a compare and set, and the entry goes into a segment of the map.
  *
  * @author Joel Bondurant
  * @param <T> Type parameter for the object collection table.
@@ -15,35 +23,136 @@ import java.util.concurrent.ConcurrentHashMap;
 public class MapTable<T extends TableEntry> implements Table<T> {
 	
 	private static final long serialVersionUID = 1L;
-	private final Map<Long, T> tableEntryMap;
-	private final String name;
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("tableEntryMap", Map.class),
+		new ObjectStreamField("name", String.class)
+	};
+	private transient LongKeyMap<T> tableEntryMap;
+	private transient String name;
+	private transient AtomicLong idSequence;
+	private transient AtomicLong modificationCount;
+	private transient volatile long committedModificationCount;
+	private transient volatile String recordKey;
 
 	public MapTable(String name) {
-		this.tableEntryMap = new ConcurrentHashMap<>();
+		this.tableEntryMap = new LongKeyMap<>();
 		this.name = name;
+		this.idSequence = new AtomicLong();
+		this.modificationCount = new AtomicLong();
 	}
 
 	@Override
 	public T getEntry(Long id) {
-		if (this.tableEntryMap.containsKey(id)) {
-			return this.tableEntryMap.get(id);
+		if (id == null) {
+			return null;
 		}
-		return null;
+		return this.tableEntryMap.get(id);
+	}
+
+	/**
+	 * @param id An entry id.
+	 * @return The entry, or null.
+	 */
+	T getEntry(long id) {
+		return this.tableEntryMap.get(id);
 	}
 
 	@Override
-	public synchronized void putEntry(T entry) {
+	public void putEntry(T entry) {
 		Long id = entry.getId();
 		if (id == null || id == 0L) { // apparently Longs are never null, but jic.
-			id = this.tableEntryMap.size() + 1L;
+			id = this.idSequence.incrementAndGet();
 			entry.setId(id);
+		} else {
+			advanceIdSequence(id);
 		}
 		this.tableEntryMap.put(id, entry);
+		this.modificationCount.incrementAndGet();
+	}
+
+	@Override
+	public T removeEntry(Long id) {
+		if (id == null) {
+			return null;
+		}
+		T removed = this.tableEntryMap.remove(id);
+		if (removed != null) {
+			this.modificationCount.incrementAndGet();
+		}
+		return removed;
+	}
+
+	/**
+	 * Move the id sequence up to an id assigned elsewhere, e.g. by a peer or a decoded table, so it is not handed
+	 * out again.
+	 *
+	 * @param id An id in use.
+	 */
+	void advanceIdSequence(long id) {
+		long lastId = this.idSequence.get();
+		while (lastId < id && !this.idSequence.compareAndSet(lastId, id)) {
+			lastId = this.idSequence.get();
+		}
+	}
+
+	/**
+	 * @return The last id handed out, or the highest id put.
+	 */
+	long getLastId() {
+		return this.idSequence.get();
+	}
+
+	/**
+	 * Flag the table as changed, for entries modified in place rather than put again.
+	 */
+	void markDirty() {
+		this.modificationCount.incrementAndGet();
+	}
+
+	/**
+	 * @return A count of changes to the table, to hand back to markCommitted once the table is stored.
+	 */
+	long getModificationCount() {
+		return this.modificationCount.get();
+	}
+
+	/**
+	 * Record that the table as of a modification count is stored. Changes made since are still dirty.
+	 *
+	 * @param modificationCount The modification count the stored table was encoded at.
+	 */
+	void markCommitted(long modificationCount) {
+		this.committedModificationCount = modificationCount;
+	}
+
+	/**
+	 * @return True if the table has changed since it was last stored, or was never stored.
+	 */
+	boolean isDirty() {
+		return (this.recordKey == null) || (this.modificationCount.get() != this.committedModificationCount);
+	}
+
+	/**
+	 * @return The storage key of the table's own record, null if never stored.
+	 */
+	String getRecordKey() {
+		return this.recordKey;
+	}
+
+	void setRecordKey(String recordKey) {
+		this.recordKey = recordKey;
 	}
 
 	@Override
 	public List<T> getAll() {
-		return new ArrayList<>(this.tableEntryMap.values());
+		return this.tableEntryMap.values();
+	}
+
+	/**
+	 * @return The number of entries.
+	 */
+	int size() {
+		return this.tableEntryMap.size();
 	}
 
 	@Override
@@ -51,5 +160,31 @@ public class MapTable<T extends TableEntry> implements Table<T> {
 		return this.name;
 	}
 
-	
-}
\ No newline at end of file
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		Map<Long, T> entryMap = new ConcurrentHashMap<>();
+		for (T entry : this.tableEntryMap.values()) {
+			entryMap.put(entry.getId(), entry);
+		}
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("tableEntryMap", entryMap);
+		fields.put("name", this.name);
+		out.writeFields();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		this.name = (String) fields.get("name", null);
+		this.tableEntryMap = new LongKeyMap<>();
+		this.idSequence = new AtomicLong();
+		this.modificationCount = new AtomicLong();
+		Map<Long, T> entryMap = (Map<Long, T>) fields.get("tableEntryMap", null);
+		if (entryMap != null) {
+			for (Map.Entry<Long, T> mapEntry : entryMap.entrySet()) {
+				this.tableEntryMap.put(mapEntry.getKey(), mapEntry.getValue());
+				advanceIdSequence(mapEntry.getKey());
+			}
+		}
+	}
+
+}
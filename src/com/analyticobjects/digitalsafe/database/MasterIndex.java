@@ -2,6 +2,7 @@ package com.analyticobjects.digitalsafe.database;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -66,6 +67,45 @@ public class MasterIndex implements Serializable {
 		return null;
 	}
 
+	/**
+	 * @param name A table name.
+	 * @return The file, indexed map or map table of that name, or null.
+	 */
+	Table<?> getTable(String name) {
+		Table<?> table = this.indexedMapTables.get(name);
+		if (table == null) {
+			table = this.fileTables.get(name);
+		}
+		if (table == null) {
+			table = this.mapTables.get(name);
+		}
+		return table;
+	}
+
+	Collection<IndexedMapTable<?>> getIndexedMapTables() {
+		List<IndexedMapTable<?>> tables = new ArrayList<>(this.indexedMapTables.size());
+		for (IndexedMapTable<?> indexedMapTable : this.indexedMapTables.values()) {
+			tables.add(indexedMapTable);
+		}
+		return tables;
+	}
+
+	Collection<MapTable<?>> getMapTables() {
+		List<MapTable<?>> tables = new ArrayList<>(this.mapTables.size());
+		for (MapTable<?> mapTable : this.mapTables.values()) {
+			tables.add(mapTable);
+		}
+		return tables;
+	}
+
+	long getCommitCount() {
+		return this.commitCount;
+	}
+
+	void setCommitCount(long commitCount) {
+		this.commitCount = commitCount;
+	}
+
 	public void incrementCommitCount() {
 		synchronized (this) {
 			if (this.commitCount > Long.MAX_VALUE - 10000L) {
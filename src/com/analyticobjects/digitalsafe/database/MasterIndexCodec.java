@@ -0,0 +1,436 @@
+package com.analyticobjects.digitalsafe.database;
+
+import com.analyticobjects.utility.BinaryReader;
+import com.analyticobjects.utility.BinaryWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A hand written binary format for the master index, replacing Java serialization. No class descriptors or
+ * reflection are involved: tables write their own structure, and entries write their own fields (TableEntry.encode)
+ * after a small type id. Each concrete entry class is registered with a type id and an EntryDecoder before a master
+ * index holding it is encoded or decoded.
+ *
+ * Layout: magic "DSMI", schema version, commit count, then the file tables, indexed map tables and map tables, each
+ * as a count followed by the tables. A table is its name, from version 3 the last id it handed out, and its entries
+ * (type id, entry fields); an indexed table adds its index and, from version 2, its text index, and a file table its
+ * cryptic name. Integers are variable length, strings length prefixed UTF-8.
+ *
+ * A safe stores the master index split up: a directory record (magic "DSMD", commit count, then the kind, name and
+ * record key of every table) and one record per table (magic "DSMT", schema version, kind, table). Tables are then
+ * re-encoded and re-encrypted only when they change. The single record layout is still read from older safes.
+ *
+ * Journal records (magic "DSMJ", schema version, then a count of table changes, each a table name, a flag and either
+ * an entry or a removed id) carry single entry changes between commits of the tables.
+ *
+ * Changing what an entry writes means bumping VERSION and reading the old layout when decoding an older version.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public final class MasterIndexCodec {
+
+	private static final byte[] MAGIC = "DSMI".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] DIRECTORY_MAGIC = "DSMD".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] TABLE_MAGIC = "DSMT".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] CHANGES_MAGIC = "DSMJ".getBytes(StandardCharsets.US_ASCII);
+	public static final int VERSION = 3;
+	private static final int DIRECTORY_VERSION = 1;
+	private static final int FILE_TABLE_ENTRY = 1;
+	private static final int FILE_TABLE = 1;
+	private static final int INDEXED_MAP_TABLE = 2;
+	private static final int MAP_TABLE = 3;
+	private static final Map<Integer, EntryDecoder<?>> decoders = new ConcurrentHashMap<>();
+	private static final Map<Class<?>, Integer> typeIds = new ConcurrentHashMap<>();
+
+	static {
+		registerEntryType(FILE_TABLE_ENTRY, FileTableEntry.class, FileTableEntry.DECODER);
+	}
+
+	private MasterIndexCodec() {
+	} // static methods only.
+
+	/**
+	 * Register an entry class. Type ids are part of the stored format and must never be reused for another class;
+	 * ids below 16 are reserved for the database package.
+	 *
+	 * @param typeId The stored type id.
+	 * @param type The concrete entry class.
+	 * @param decoder The decoder for the class.
+	 * @throws IllegalArgumentException If the id or class is already registered differently.
+	 */
+	public static synchronized void registerEntryType(int typeId, Class<? extends TableEntry> type, EntryDecoder<?> decoder) {
+		Integer registeredId = typeIds.get(type);
+		EntryDecoder<?> registeredDecoder = decoders.get(typeId);
+		if (registeredId != null && registeredId == typeId && registeredDecoder == decoder) {
+			return; // already registered.
+		}
+		if (registeredId != null || registeredDecoder != null) {
+			throw new IllegalArgumentException("Entry type id conflict: " + typeId + ", " + type.getName());
+		}
+		decoders.put(typeId, decoder);
+		typeIds.put(type, typeId);
+	}
+
+	/**
+	 * Reads the table records a master index directory refers to.
+	 */
+	interface TableRecords {
+
+		/**
+		 * @param recordKey The storage key of a table record.
+		 * @return The decrypted table record, or null if missing.
+		 * @throws IOException
+		 */
+		byte[] read(String recordKey) throws IOException;
+	}
+
+	/**
+	 * @param bytes Decrypted master index bytes.
+	 * @return True if the bytes are in this format, false for a legacy serialized index.
+	 */
+	public static boolean isEncoded(byte[] bytes) {
+		return hasMagic(bytes, MAGIC);
+	}
+
+	/**
+	 * @param bytes Decrypted master index bytes.
+	 * @return True if the bytes are a directory of separately stored tables.
+	 */
+	static boolean isDirectory(byte[] bytes) {
+		return hasMagic(bytes, DIRECTORY_MAGIC);
+	}
+
+	private static boolean hasMagic(byte[] bytes, byte[] magic) {
+		return (bytes.length >= magic.length) && Arrays.equals(Arrays.copyOf(bytes, magic.length), magic);
+	}
+
+	private static BinaryWriter writer(byte[] magic) {
+		BinaryWriter out = new BinaryWriter(4096);
+		for (byte b : magic) {
+			out.writeByte(b);
+		}
+		return out;
+	}
+
+	private static BinaryReader reader(byte[] bytes, byte[] magic) throws IOException {
+		if (!hasMagic(bytes, magic)) {
+			throw new IOException("Not an encoded " + new String(magic, StandardCharsets.US_ASCII) + " record.");
+		}
+		return new BinaryReader(bytes, magic.length, bytes.length - magic.length);
+	}
+
+	private static int readVersion(BinaryReader in, int supportedVersion) throws IOException {
+		int version = in.readVarInt();
+		if (version > supportedVersion) {
+			throw new IOException("Unsupported master index version: " + version);
+		}
+		return version;
+	}
+
+	/**
+	 * The master index directory: every table's kind, name and record key. Each table must have a record key.
+	 *
+	 * @param masterIndex The master index.
+	 * @return The encoded directory.
+	 * @throws IOException If a table has no record key.
+	 */
+	static byte[] encodeDirectory(MasterIndex masterIndex) throws IOException {
+		BinaryWriter out = writer(DIRECTORY_MAGIC);
+		out.writeVarInt(DIRECTORY_VERSION);
+		out.writeVarLong(masterIndex.getCommitCount());
+		List<FileTable> fileTables = masterIndex.getFileTables();
+		Collection<IndexedMapTable<?>> indexedMapTables = masterIndex.getIndexedMapTables();
+		Collection<MapTable<?>> mapTables = masterIndex.getMapTables();
+		out.writeVarInt(fileTables.size() + indexedMapTables.size() + mapTables.size());
+		for (FileTable fileTable : fileTables) {
+			encodeDirectoryEntry(out, FILE_TABLE, fileTable.getBackingMapTable());
+		}
+		for (IndexedMapTable<?> indexedMapTable : indexedMapTables) {
+			encodeDirectoryEntry(out, INDEXED_MAP_TABLE, indexedMapTable.getBackingMapTable());
+		}
+		for (MapTable<?> mapTable : mapTables) {
+			encodeDirectoryEntry(out, MAP_TABLE, mapTable);
+		}
+		return out.toByteArray();
+	}
+
+	private static void encodeDirectoryEntry(BinaryWriter out, int kind, MapTable<?> mapTable) throws IOException {
+		if (mapTable.getRecordKey() == null) {
+			throw new IOException("Table not stored: " + mapTable.getName());
+		}
+		out.writeVarInt(kind);
+		out.writeString(mapTable.getName());
+		out.writeString(mapTable.getRecordKey());
+	}
+
+	/**
+	 * @param table A file table, indexed map table or map table.
+	 * @return The table encoded as its own record.
+	 * @throws IOException If an entry type isn't registered.
+	 */
+	static byte[] encodeTable(Table<?> table) throws IOException {
+		BinaryWriter out = writer(TABLE_MAGIC);
+		out.writeVarInt(VERSION);
+		if (table instanceof FileTable) {
+			out.writeVarInt(FILE_TABLE);
+			encodeFileTable(out, (FileTable) table);
+		} else if (table instanceof IndexedMapTable) {
+			out.writeVarInt(INDEXED_MAP_TABLE);
+			encodeIndexedMapTable(out, (IndexedMapTable<?>) table);
+		} else {
+			out.writeVarInt(MAP_TABLE);
+			encodeMapTable(out, (MapTable<?>) table);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decode a master index directory, reading in the tables it lists. The tables come back clean, keyed to the
+	 * records they were read from.
+	 *
+	 * @param bytes An encoded master index directory.
+	 * @param tableRecords The source of the table records.
+	 * @return The decoded master index.
+	 * @throws IOException If a record is missing or malformed.
+	 */
+	static MasterIndex decodeDirectory(byte[] bytes, TableRecords tableRecords) throws IOException {
+		BinaryReader in = reader(bytes, DIRECTORY_MAGIC);
+		readVersion(in, DIRECTORY_VERSION);
+		MasterIndex masterIndex = new MasterIndex();
+		masterIndex.setCommitCount(in.readVarLong());
+		int tableCount = in.readVarInt();
+		for (int i = 0; i < tableCount; i++) {
+			int kind = in.readVarInt();
+			String name = in.readString();
+			String recordKey = in.readString();
+			byte[] tableRecord = tableRecords.read(recordKey);
+			if (tableRecord == null) {
+				throw new IOException("Missing table record: " + name);
+			}
+			BinaryReader tableIn = reader(tableRecord, TABLE_MAGIC);
+			int version = readVersion(tableIn, VERSION);
+			if (tableIn.readVarInt() != kind) {
+				throw new IOException("Table record kind mismatch: " + name);
+			}
+			MapTable<?> mapTable;
+			switch (kind) {
+				case FILE_TABLE:
+					FileTable fileTable = decodeFileTable(tableIn, version);
+					masterIndex.putFileTable(fileTable);
+					mapTable = fileTable.getBackingMapTable();
+					break;
+				case INDEXED_MAP_TABLE:
+					IndexedMapTable<IndexedTableEntry> indexedMapTable = decodeIndexedMapTable(tableIn, version);
+					masterIndex.putIndexedMapTable(indexedMapTable);
+					mapTable = indexedMapTable.getBackingMapTable();
+					break;
+				case MAP_TABLE:
+					mapTable = MasterIndexCodec.<TableEntry>decodeMapTable(tableIn, version);
+					masterIndex.putMapTable(mapTable);
+					break;
+				default:
+					throw new IOException("Unknown table kind: " + kind);
+			}
+			if (tableIn.remaining() != 0) {
+				throw new IOException("Trailing bytes after table: " + name);
+			}
+			if (!name.equals(mapTable.getName())) {
+				throw new IOException("Table record name mismatch: " + name);
+			}
+			mapTable.setRecordKey(recordKey);
+			mapTable.markCommitted(mapTable.getModificationCount());
+		}
+		if (in.remaining() != 0) {
+			throw new IOException("Trailing bytes after master index directory.");
+		}
+		return masterIndex;
+	}
+
+	/**
+	 * @param masterIndex The master index to encode.
+	 * @return The encoded master index.
+	 * @throws IOException If an entry type isn't registered.
+	 */
+	public static byte[] encode(MasterIndex masterIndex) throws IOException {
+		BinaryWriter out = writer(MAGIC);
+		out.writeVarInt(VERSION);
+		out.writeVarLong(masterIndex.getCommitCount());
+		List<FileTable> fileTables = masterIndex.getFileTables();
+		out.writeVarInt(fileTables.size());
+		for (FileTable fileTable : fileTables) {
+			encodeFileTable(out, fileTable);
+		}
+		Collection<IndexedMapTable<?>> indexedMapTables = masterIndex.getIndexedMapTables();
+		out.writeVarInt(indexedMapTables.size());
+		for (IndexedMapTable<?> indexedMapTable : indexedMapTables) {
+			encodeIndexedMapTable(out, indexedMapTable);
+		}
+		Collection<MapTable<?>> mapTables = masterIndex.getMapTables();
+		out.writeVarInt(mapTables.size());
+		for (MapTable<?> mapTable : mapTables) {
+			encodeMapTable(out, mapTable);
+		}
+		return out.toByteArray();
+	}
+
+	private static void encodeFileTable(BinaryWriter out, FileTable fileTable) throws IOException {
+		out.writeString(fileTable.getCrypticName());
+		encodeIndexedMapTable(out, fileTable);
+	}
+
+	private static void encodeIndexedMapTable(BinaryWriter out, IndexedMapTable<?> indexedMapTable) throws IOException {
+		encodeMapTable(out, indexedMapTable.getBackingMapTable());
+		StringLongMap index = indexedMapTable.getIndex();
+		List<String> indexIds = index.keys();
+		out.writeVarInt(indexIds.size());
+		for (String indexId : indexIds) {
+			out.writeString(indexId);
+			out.writeVarLong(index.get(indexId, 0L));
+		}
+		indexedMapTable.getTextIndex().encode(out);
+	}
+
+	private static void encodeMapTable(BinaryWriter out, MapTable<?> mapTable) throws IOException {
+		List<? extends TableEntry> entries = mapTable.getAll();
+		out.writeString(mapTable.getName());
+		out.writeVarLong(mapTable.getLastId());
+		out.writeVarInt(entries.size());
+		for (TableEntry entry : entries) {
+			encodeEntry(out, entry);
+		}
+	}
+
+	private static void encodeEntry(BinaryWriter out, TableEntry entry) throws IOException {
+		Integer typeId = typeIds.get(entry.getClass());
+		if (typeId == null) {
+			throw new IOException("Unregistered entry type: " + entry.getClass().getName());
+		}
+		out.writeVarInt(typeId);
+		entry.encode(out);
+	}
+
+	private static TableEntry decodeEntry(BinaryReader in, int version) throws IOException {
+		int typeId = in.readVarInt();
+		EntryDecoder<?> decoder = decoders.get(typeId);
+		if (decoder == null) {
+			throw new IOException("Unregistered entry type id: " + typeId);
+		}
+		return decoder.decode(in, version);
+	}
+
+	/**
+	 * @param changes Table changes to journal.
+	 * @return The encoded journal record.
+	 * @throws IOException If an entry type is unregistered.
+	 */
+	static byte[] encodeChanges(List<TableChange> changes) throws IOException {
+		BinaryWriter out = writer(CHANGES_MAGIC);
+		out.writeVarInt(VERSION);
+		out.writeVarInt(changes.size());
+		for (TableChange change : changes) {
+			out.writeString(change.getTableName());
+			if (change.getEntry() == null) {
+				out.writeBoolean(false);
+				out.writeVarLong(change.getRemovedId());
+			} else {
+				out.writeBoolean(true);
+				encodeEntry(out, change.getEntry());
+			}
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * @param bytes An encoded journal record.
+	 * @return The table changes.
+	 * @throws IOException If the bytes are malformed, from a newer version, or hold an unregistered entry type.
+	 */
+	static List<TableChange> decodeChanges(byte[] bytes) throws IOException {
+		BinaryReader in = reader(bytes, CHANGES_MAGIC);
+		int version = readVersion(in, VERSION);
+		int changeCount = in.readVarInt();
+		List<TableChange> changes = new ArrayList<>(changeCount);
+		for (int i = 0; i < changeCount; i++) {
+			String tableName = in.readString();
+			if (in.readBoolean()) {
+				changes.add(TableChange.put(tableName, decodeEntry(in, version)));
+			} else {
+				changes.add(TableChange.remove(tableName, in.readVarLong()));
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * @param bytes An encoded master index.
+	 * @return The decoded master index.
+	 * @throws IOException If the bytes are malformed, from a newer version, or hold an unregistered entry type.
+	 */
+	public static MasterIndex decode(byte[] bytes) throws IOException {
+		BinaryReader in = reader(bytes, MAGIC);
+		int version = readVersion(in, VERSION);
+		MasterIndex masterIndex = new MasterIndex();
+		masterIndex.setCommitCount(in.readVarLong());
+		int fileTableCount = in.readVarInt();
+		for (int i = 0; i < fileTableCount; i++) {
+			masterIndex.putFileTable(decodeFileTable(in, version));
+		}
+		int indexedMapTableCount = in.readVarInt();
+		for (int i = 0; i < indexedMapTableCount; i++) {
+			masterIndex.putIndexedMapTable(decodeIndexedMapTable(in, version));
+		}
+		int mapTableCount = in.readVarInt();
+		for (int i = 0; i < mapTableCount; i++) {
+			masterIndex.putMapTable(MasterIndexCodec.<TableEntry>decodeMapTable(in, version));
+		}
+		if (in.remaining() != 0) {
+			throw new IOException("Trailing bytes after master index.");
+		}
+		return masterIndex;
+	}
+
+	private static FileTable decodeFileTable(BinaryReader in, int version) throws IOException {
+		String crypticName = in.readString();
+		FileTable fileTable = new FileTable(MasterIndexCodec.<FileTableEntry>decodeMapTable(in, version), crypticName);
+		decodeIndex(in, fileTable, version);
+		return fileTable;
+	}
+
+	private static IndexedMapTable<IndexedTableEntry> decodeIndexedMapTable(BinaryReader in, int version) throws IOException {
+		IndexedMapTable<IndexedTableEntry> indexedMapTable = new IndexedMapTable<>(MasterIndexCodec.<IndexedTableEntry>decodeMapTable(in, version));
+		decodeIndex(in, indexedMapTable, version);
+		return indexedMapTable;
+	}
+
+	private static void decodeIndex(BinaryReader in, IndexedMapTable<?> indexedMapTable, int version) throws IOException {
+		StringLongMap index = indexedMapTable.getIndex();
+		int indexSize = in.readVarInt();
+		for (int i = 0; i < indexSize; i++) {
+			index.put(in.readString(), in.readVarLong());
+		}
+		if (version >= 2) {
+			indexedMapTable.setTextIndex(TextIndex.decode(in));
+		} // older versions have their text index rebuilt from the entries on first use.
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T extends TableEntry> MapTable<T> decodeMapTable(BinaryReader in, int version) throws IOException {
+		MapTable<T> mapTable = new MapTable<>(in.readString());
+		if (version >= 3) {
+			mapTable.advanceIdSequence(in.readVarLong());
+		} // older versions continue from the highest id, as putEntry leaves it.
+		int entryCount = in.readVarInt();
+		for (int i = 0; i < entryCount; i++) {
+			mapTable.putEntry((T) decodeEntry(in, version));
+		}
+		return mapTable;
+	}
+
+}
@@ -0,0 +1,138 @@
+package com.analyticobjects.digitalsafe.database;
+
+import com.analyticobjects.digitalsafe.crypto.CipherSuite;
+import com.analyticobjects.digitalsafe.crypto.Passphrase;
+import com.analyticobjects.digitalsafe.exceptions.PassphraseExpiredException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * What a safe needs to say about itself before any of it can be decrypted: the format version, how keys are derived
+ * from the passphrase and the cipher suite records are written with. Stored unencrypted as the HEADER record, but
+ * authenticated with a tag keyed by the passphrase, so it can't be altered, e.g. to downgrade the cipher suite,
+ * without detection. Safes written before there was a header have none; one is written with their next commit.
+ *
+ * Layout: magic (8 bytes), version (2), key derivation id (1), key derivation iterations (4), cipher suite id (1),
+ * flags (1), HMAC-SHA256 tag of all prior fields (32).
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+final class SafeHeader {
+
+	static final String RECORD_KEY = "HEADER";
+	private static final byte[] MAGIC = "DSAFEHDR".getBytes(StandardCharsets.US_ASCII);
+	private static final short VERSION = 1;
+	private static final int BODY_SIZE = MAGIC.length + 2 + 1 + 4 + 1 + 1;
+	private static final int TAG_SIZE = 32;
+	private static final byte REENCRYPTING = 1;
+
+	private final CipherSuite cipherSuite;
+	private final boolean reencrypting;
+
+	/**
+	 * A header for this version's key derivation.
+	 *
+	 * @param cipherSuite The suite records are written with.
+	 * @param reencrypting True while records of other suites are being re-encrypted with it.
+	 */
+	SafeHeader(CipherSuite cipherSuite, boolean reencrypting) {
+		this.cipherSuite = cipherSuite;
+		this.reencrypting = reencrypting;
+	}
+
+	CipherSuite getCipherSuite() {
+		return this.cipherSuite;
+	}
+
+	boolean isReencrypting() {
+		return this.reencrypting;
+	}
+
+	/**
+	 * @param passphrase The passphrase to authenticate with.
+	 * @return The header record.
+	 * @throws PassphraseExpiredException
+	 * @throws IOException If the header can't be authenticated.
+	 */
+	byte[] encode(Passphrase passphrase) throws PassphraseExpiredException, IOException {
+		ByteBuffer header = ByteBuffer.allocate(BODY_SIZE + TAG_SIZE);
+		header.put(MAGIC);
+		header.putShort(VERSION);
+		header.put(Passphrase.KEY_DERIVATION);
+		header.putInt(Passphrase.PASSWORD_ITERATIONS);
+		header.put(this.cipherSuite.getId());
+		header.put(this.reencrypting ? REENCRYPTING : 0);
+		byte[] tag = passphrase.tag(Arrays.copyOf(header.array(), BODY_SIZE));
+		if (tag == null) {
+			throw new IOException("Could not authenticate safe header.");
+		}
+		header.put(tag);
+		return header.array();
+	}
+
+	/**
+	 * Read and authenticate a header.
+	 *
+	 * @param record The header record.
+	 * @param passphrase The passphrase to authenticate with.
+	 * @return The header.
+	 * @throws PassphraseExpiredException
+	 * @throws IOException If the header is from a later version, derives keys differently, names an unknown cipher
+	 * suite or fails authentication, as it does for the wrong passphrase.
+	 */
+	static SafeHeader decode(ByteBuffer record, Passphrase passphrase) throws PassphraseExpiredException, IOException {
+		if (record.remaining() < BODY_SIZE + TAG_SIZE) {
+			throw new IOException("Safe header too short.");
+		}
+		ByteBuffer header = record.duplicate();
+		byte[] body = new byte[BODY_SIZE];
+		header.get(body);
+		byte[] tag = new byte[TAG_SIZE];
+		header.get(tag);
+		header = ByteBuffer.wrap(body);
+		byte[] magic = new byte[MAGIC.length];
+		header.get(magic);
+		if (!Arrays.equals(magic, MAGIC)) {
+			throw new IOException("Not a DigitalSafe header.");
+		}
+		short version = header.getShort();
+		if (version > VERSION) {
+			throw new IOException("Unsupported DigitalSafe version: " + version);
+		}
+		byte keyDerivation = header.get();
+		int iterations = header.getInt();
+		if (keyDerivation != Passphrase.KEY_DERIVATION || iterations != Passphrase.PASSWORD_ITERATIONS) {
+			throw new IOException("Unsupported key derivation: " + keyDerivation + "/" + iterations);
+		}
+		byte suiteId = header.get();
+		byte flags = header.get();
+		byte[] expectedTag = passphrase.tag(body);
+		if (expectedTag == null || !MessageDigest.isEqual(expectedTag, tag)) {
+			throw new IOException("Safe header failed authentication.");
+		}
+		CipherSuite cipherSuite = CipherSuite.forId(suiteId);
+		if (cipherSuite == null) {
+			throw new IOException("Unknown cipher suite: " + suiteId);
+		}
+		return new SafeHeader(cipherSuite, (flags & REENCRYPTING) != 0);
+	}
+
+	@Override
+	public boolean equals(Object object) {
+		if (!(object instanceof SafeHeader)) {
+			return false;
+		}
+		SafeHeader other = (SafeHeader) object;
+		return this.cipherSuite == other.cipherSuite && this.reencrypting == other.reencrypting;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * this.cipherSuite.getId() + (this.reencrypting ? 1 : 0);
+	}
+
+}
@@ -0,0 +1,17 @@
+package com.analyticobjects.digitalsafe.database;
+
+/**
+ * An indexed table entry that can be found by the words in it. IndexedMapTable keeps an inverted index of the search
+ * text of its searchable entries.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public interface SearchableEntry extends IndexedTableEntry {
+
+	/**
+	 * @return The text to index the entry by. Secrets such as passwords must be left out, the index is not.
+	 */
+	public String searchText();
+
+}
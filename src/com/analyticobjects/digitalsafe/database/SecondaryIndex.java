@@ -0,0 +1,127 @@
+package com.analyticobjects.digitalsafe.database;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A named index from keys derived from table entries to the ids of the entries, kept alongside an IndexedMapTable's
+ * own index. Subclasses say which keys an entry is found by; an entry may have any number of keys (e.g. its tags),
+ * null keys are skipped. Secondary indexes are derived data, held in memory only: the index is built from the table
+ * entries on first use and then maintained as entries are put.
+ *
+ * @author Joel Bondurant
+ * @param <T> The entry type.
+ * @param <K> The key type.
+ * @since 2013.11
+ */
+public abstract class SecondaryIndex<T extends TableEntry, K> {
+
+	private final String name;
+	private final Map<K, SortedIds> idsByKey;
+	private final Map<Long, List<K>> keysByEntry;
+	private boolean built;
+
+	SecondaryIndex(String name, Map<K, SortedIds> idsByKey) {
+		this.name = name;
+		this.idsByKey = idsByKey;
+		this.keysByEntry = new HashMap<>();
+		this.built = false;
+	}
+
+	/**
+	 * @return The index name.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * @param entry A table entry.
+	 * @return The keys to find the entry by, empty or null for none.
+	 */
+	protected abstract Collection<K> keysOf(T entry);
+
+	/**
+	 * @return The index postings, for subclasses answering range queries. Guarded by this.
+	 */
+	Map<K, SortedIds> getIdsByKey() {
+		return this.idsByKey;
+	}
+
+	synchronized boolean isBuilt() {
+		return this.built;
+	}
+
+	/**
+	 * Index all the entries of a table, replacing whatever was indexed.
+	 *
+	 * @param entries The table entries.
+	 */
+	synchronized void build(Collection<? extends T> entries) {
+		this.idsByKey.clear();
+		this.keysByEntry.clear();
+		for (T entry : entries) {
+			put(entry);
+		}
+		this.built = true;
+	}
+
+	/**
+	 * Index an entry, replacing the keys it was indexed under before.
+	 *
+	 * @param entry The entry.
+	 */
+	synchronized void put(T entry) {
+		long id = entry.getId();
+		remove(id);
+		Collection<K> keys = keysOf(entry);
+		if (keys == null || keys.isEmpty()) {
+			return;
+		}
+		List<K> entryKeys = new ArrayList<>(keys.size());
+		for (K key : keys) {
+			if (key == null) {
+				continue;
+			}
+			SortedIds ids = this.idsByKey.get(key);
+			if (ids == null) {
+				ids = new SortedIds();
+				this.idsByKey.put(key, ids);
+			}
+			ids.add(id);
+			entryKeys.add(key);
+		}
+		this.keysByEntry.put(id, entryKeys);
+	}
+
+	/**
+	 * Drop an entry from the index.
+	 *
+	 * @param id The entry id.
+	 */
+	synchronized void remove(long id) {
+		List<K> entryKeys = this.keysByEntry.remove(id);
+		if (entryKeys == null) {
+			return;
+		}
+		for (K key : entryKeys) {
+			SortedIds ids = this.idsByKey.get(key);
+			if (ids != null && ids.remove(id) && ids.size == 0) {
+				this.idsByKey.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * @param key A key.
+	 * @return The ids of the entries with the key, ascending.
+	 */
+	synchronized long[] find(K key) {
+		SortedIds ids = this.idsByKey.get(key);
+		return (ids == null) ? new long[0] : ids.toArray();
+	}
+
+}
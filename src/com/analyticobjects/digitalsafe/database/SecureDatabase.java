@@ -1,25 +1,44 @@
 package com.analyticobjects.digitalsafe.database;
 
 import com.analyticobjects.utility.ByteUtility;
+import com.analyticobjects.utility.CancellableProgressListener;
+import com.analyticobjects.utility.ProgressListener;
 import com.analyticobjects.digitalsafe.exceptions.PassphraseExpiredException;
+import com.analyticobjects.digitalsafe.crypto.ChunkCipher;
+import com.analyticobjects.digitalsafe.crypto.CipherSuite;
 import com.analyticobjects.digitalsafe.crypto.Passphrase;
-import com.analyticobjects.digitalsafe.crypto.TripleAES;
 import com.analyticobjects.digitalsafe.exceptions.InvalidPassphraseException;
 import com.analyticobjects.utility.SerializationUtility;
-import java.io.BufferedOutputStream;
+import com.analyticobjects.utility.ThreadUtility;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
+import javax.crypto.AEADBadTagException;
 
 /**
  * Manage secure data persistence. The goal of this class is to securely store user data as concisely as possible to
@@ -29,6 +48,26 @@ import java.util.zip.ZipOutputStream;
  * computers (aka phones) have multiGB multiGhz quad-core power and local storage is the best way to store data. Person
  * specific data should follow data gravity and stick with the person it is related to.
  *
+ * Records are kept in an append-only SegmentLogStorage, so a commit only writes what changed. Safes in the original
+ * zip format are migrated to the log the first time they are opened. Files are streamed in and out in encrypted
+ * chunks, so memory use is bounded by the chunk size rather than the file size. Chunks are encrypted and decrypted in
+ * parallel on the crypto executor, one thread per core by default. The master index is stored in the compact
+ * MasterIndexCodec format, each table as its own encrypted record, so a commit re-encrypts only the tables that
+ * changed; single record and Java serialized indexes from older safes are still read. The contents of removed files
+ * are removed from storage with the commit that drops their entries, and once most of the log is dead records it is
+ * compacted on a background thread.
+ *
+ * Small changes, e.g. saving one note, are committed to an encrypted write-ahead journal beside the safe instead:
+ * the changed entries are appended and forced to disk, which is fast however large their tables are. The journal is
+ * checkpointed in the background, storing the changed tables and emptying the journal, and replayed onto the master
+ * index when the safe is opened, so a crash before a checkpoint loses nothing.
+ *
+ * Each safe is encrypted with one CipherSuite, named in its authenticated SafeHeader, or for safes older than the
+ * header the one its master index was written with; new safes use AES-GCM where the runtime has it. Every record is
+ * decrypted with the suite that wrote it, so safes written with the legacy 3-AES suite stay readable. A safe is moved
+ * to another suite by re-encrypting it in the background, resumed on unlock if interrupted; safes from before the
+ * header are moved to the preferred suite this way when first unlocked.
+ *
  * TODO: Automate distributed p2p or f2f backup and synchronization with untrustworthy/cloud storage providers.
  *
  * @author Joel Bondurant
@@ -38,7 +77,31 @@ public final class SecureDatabase {
 	
 	private final Passphrase passphrase;
 	private final Path dbPath;
+	private volatile MasterIndex masterIndex;
+	private volatile CipherSuite cipherSuite;
+	private volatile SafeHeader safeHeader; // as last stored, null if none or not yet read.
+	private volatile boolean reencrypting;
+	private Reencryption reencryption;
+	private Future<Integer> reencryptionFuture;
+	private Storage storage;
+	private ExecutorService cryptoExecutor;
+	private ScheduledExecutorService backgroundExecutor;
+	private Journal journal;
+	private final AtomicBoolean checkpointScheduled;
+	private final GroupCommit groupCommit;
 	private static final String MASTER_INDEX = "MASTER_INDEX";
+	private static final String TABLE_RECORD_PREFIX = "TABLE.";
+	private static final String MIGRATION_SUFFIX = ".migrating";
+	private static final String JOURNAL_SUFFIX = ".journal";
+	public static final int FILE_CHUNK_SIZE = 1 << 20; // 1 MiB
+	private static final int CHUNKS_IN_FLIGHT_PER_CORE = 2;
+	private static final double COMPACTION_GARBAGE_RATIO = 0.5;
+	private static final long COMPACTION_MIN_LOG_SIZE = 4L * FILE_CHUNK_SIZE;
+	private static final int MAX_JOURNALED_CHANGES = 256; // more are cheaper to store as tables.
+	private static final int JOURNAL_CHECKPOINT_RECORDS = 128;
+	private static final long JOURNAL_CHECKPOINT_DELAY_MS = 2000L;
+	private static final long GROUP_COMMIT_WINDOW_MICROS = 50L;
+	private static final long REENCRYPTION_BATCH_BYTES = 4L * FILE_CHUNK_SIZE; // re-encrypted per storage commit.
 
 	/**
 	 * Constructs a new connection to a secure database at the path supplied.
@@ -48,6 +111,23 @@ public final class SecureDatabase {
 	public SecureDatabase(Path dbPath) {
 		this.dbPath = Paths.get(dbPath.toUri());
 		this.passphrase = new Passphrase();
+		this.masterIndex = null;
+		this.cipherSuite = null;
+		this.safeHeader = null;
+		this.reencrypting = false;
+		this.reencryption = null;
+		this.reencryptionFuture = null;
+		this.storage = null;
+		this.cryptoExecutor = null;
+		this.backgroundExecutor = null;
+		this.journal = null;
+		this.checkpointScheduled = new AtomicBoolean();
+		this.groupCommit = new GroupCommit(new Runnable() {
+			@Override
+			public void run() {
+				flushPendingChanges();
+			}
+		}, GROUP_COMMIT_WINDOW_MICROS);
 		this.ensureFile();
 	}
 
@@ -65,19 +145,224 @@ public final class SecureDatabase {
 		}
 	}
 
+	/**
+	 * The storage backing the database, opened on first use.
+	 *
+	 * @return The open storage.
+	 * @throws IOException
+	 */
+	private synchronized Storage storage() throws IOException {
+		if (this.storage == null) {
+			ensureFile();
+			if (ZipStorage.isZipFile(this.dbPath)) {
+				migrateZipStorage();
+			}
+			this.storage = new SegmentLogStorage(this.dbPath, this.passphrase);
+		}
+		return this.storage;
+	}
+
+	/**
+	 * The cipher suite records are written with: the one chosen with setCipherSuite, else the one named by the safe
+	 * header, else the one the stored master index was written with, else, for a new safe, the preferred one.
+	 *
+	 * @return The safe's cipher suite.
+	 * @throws IOException
+	 */
+	public CipherSuite getCipherSuite() throws IOException {
+		CipherSuite suite = this.cipherSuite;
+		if (suite == null) {
+			ByteBuffer encryptedMasterIndex = storage().readBuffer(MASTER_INDEX);
+			suite = (encryptedMasterIndex == null) ? CipherSuite.preferred() : CipherSuite.of(encryptedMasterIndex);
+			this.cipherSuite = suite;
+		}
+		return suite;
+	}
+
+	/**
+	 * Choose the cipher suite records are written with from now on, e.g. to keep a new safe in 3-AES. The choice is
+	 * kept in the safe header once the master index is next committed. Records already stored stay in the suite that
+	 * wrote them, and are read with it, until they are rewritten; use reencrypt to rewrite them all.
+	 *
+	 * @param cipherSuite An available cipher suite.
+	 */
+	public void setCipherSuite(CipherSuite cipherSuite) {
+		if (!cipherSuite.isAvailable()) {
+			throw new IllegalArgumentException("Cipher suite unavailable: " + cipherSuite.getName());
+		}
+		this.cipherSuite = cipherSuite;
+	}
+
+	/**
+	 * The executor file chunks are encrypted and decrypted on, created on first use.
+	 *
+	 * @return The crypto executor.
+	 */
+	private synchronized ExecutorService cryptoExecutor() {
+		if (this.cryptoExecutor == null) {
+			this.cryptoExecutor = ThreadUtility.allAvailableProcessors("DigitalSafe-crypto");
+		}
+		return this.cryptoExecutor;
+	}
+
+	/**
+	 * The single background thread logs are compacted and journals checkpointed on, created on first use.
+	 *
+	 * @return The background executor.
+	 */
+	private synchronized ScheduledExecutorService backgroundExecutor() {
+		if (this.backgroundExecutor == null) {
+			this.backgroundExecutor = Executors.newSingleThreadScheduledExecutor(ThreadUtility.daemonThreadFactory("DigitalSafe-background"));
+		}
+		return this.backgroundExecutor;
+	}
+
+	/**
+	 * The write-ahead journal beside the safe file, opened on first use.
+	 *
+	 * @return The open journal.
+	 * @throws IOException
+	 */
+	private synchronized Journal journal() throws IOException {
+		if (this.journal == null) {
+			this.journal = new Journal(journalPath());
+		}
+		return this.journal;
+	}
+
+	private Path journalPath() {
+		return this.dbPath.resolveSibling(this.dbPath.getFileName() + JOURNAL_SUFFIX);
+	}
+
+	/**
+	 * Empty the journal, if there is one.
+	 *
+	 * @throws IOException
+	 */
+	private synchronized void clearJournal() throws IOException {
+		if (this.journal != null || Files.exists(journalPath())) {
+			journal().clear();
+		}
+	}
+
+	/**
+	 * Compact the storage on the background thread, reclaiming the space of removed and replaced records. Readers
+	 * and writers carry on while it runs.
+	 *
+	 * @return The result of the compaction: true if the storage was compacted.
+	 */
+	Future<Boolean> compactStorage() {
+		return backgroundExecutor().submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				try {
+					Storage openStorage = storage();
+					return (openStorage instanceof SegmentLogStorage) && ((SegmentLogStorage) openStorage).compact();
+				} catch (IOException ex) {
+					Logger.getLogger(SecureDatabase.class.getName()).log(Level.WARNING, ex.getLocalizedMessage(), ex);
+				}
+				return false;
+			}
+		});
+	}
+
+	/**
+	 * Start a background compaction if most of a sizeable log is dead records.
+	 *
+	 * @param openStorage The storage just committed to.
+	 */
+	private void compactStorageIfWasteful(Storage openStorage) {
+		if (!(openStorage instanceof SegmentLogStorage)) {
+			return;
+		}
+		SegmentLogStorage logStorage = (SegmentLogStorage) openStorage;
+		if (logStorage.size() >= COMPACTION_MIN_LOG_SIZE && logStorage.garbageRatio() >= COMPACTION_GARBAGE_RATIO) {
+			compactStorage();
+		}
+	}
+
+	/**
+	 * Replace the executor file chunks are encrypted and decrypted on, e.g. with a shared ForkJoinPool. The caller
+	 * owns the executor and is responsible for shutting it down.
+	 *
+	 * @param cryptoExecutor An executor for chunk encryption.
+	 */
+	public synchronized void setCryptoExecutor(ExecutorService cryptoExecutor) {
+		this.cryptoExecutor = cryptoExecutor;
+	}
+
+	/**
+	 * @return How many chunks to encrypt or decrypt at once.
+	 */
+	private static int chunksInFlight() {
+		return CHUNKS_IN_FLIGHT_PER_CORE * Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Copy every record of a legacy zip safe into a new log and swap the log in place of the zip.
+	 *
+	 * @throws IOException
+	 */
+	private void migrateZipStorage() throws IOException {
+		Logger.getLogger(SecureDatabase.class.getName()).log(Level.INFO, "Migrating zip safe: {0}", this.dbPath);
+		Path migrationPath = this.dbPath.resolveSibling(this.dbPath.getFileName() + MIGRATION_SUFFIX);
+		Files.deleteIfExists(migrationPath);
+		try (
+			ZipStorage zipStorage = new ZipStorage(this.dbPath);
+			SegmentLogStorage logStorage = new SegmentLogStorage(migrationPath, this.passphrase);) {
+			for (String key : zipStorage.keys()) {
+				logStorage.put(key, zipStorage.read(key));
+			}
+			logStorage.commit();
+		}
+		Files.move(migrationPath, this.dbPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
 	/**
 	 * Resets the database.
 	 */
 	public void clear() {
-		File dbFile = this.dbFile();
-		if (dbFile.exists()) {
-			dbFile.delete();
+		this.masterIndex = null;
+		this.cipherSuite = null;
+		this.safeHeader = null;
+		this.reencrypting = false;
+		try {
+			storage().clear();
+			clearJournal();
+		} catch (IOException ex) {
+			Logger.getLogger(SecureDatabase.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
 		}
-		ensureFile();
 	}
 	
+	/**
+	 * Drop the in-memory master index, forget the passphrase and close the storage, releasing its mapping of the safe
+	 * file. The storage is reopened on next use.
+	 */
 	public void lock() {
+		flushPendingChanges();
+		checkpointJournal();
+		this.masterIndex = null;
+		this.safeHeader = null;
 		this.passphrase.clear();
+		closeStorage();
+	}
+
+	/**
+	 * Close the storage and journal if open.
+	 */
+	private synchronized void closeStorage() {
+		try {
+			if (this.journal != null) {
+				this.journal.close();
+			}
+			if (this.storage != null) {
+				this.storage.close();
+			}
+		} catch (IOException ex) {
+			Logger.getLogger(SecureDatabase.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
+		}
+		this.journal = null;
+		this.storage = null;
 	}
 	
 	public boolean isLocked() {
@@ -85,84 +370,336 @@ public final class SecureDatabase {
 	}
 	
 	public void setPassphrase(String passphrase) throws InvalidPassphraseException {
+		this.masterIndex = null;
 		this.passphrase.setPassphrase(passphrase);
-		if (dbFile().length() == 0) {
+		if (isEmpty()) {
 			return; // accept any passphrase for an empty database.
 		}
 		try {
-			this.getMasterIndex();
+			if (this.getMasterIndex() != null && this.safeHeader == null && getCipherSuite() != CipherSuite.preferred()) {
+				reencrypt(CipherSuite.preferred()); // a safe from before cipher suites, which never chose one.
+			}
 		} catch (PassphraseExpiredException ex) {
 			lock();
 			Logger.getLogger(SecureDatabase.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
+		} catch (IOException ex) {
+			Logger.getLogger(SecureDatabase.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
+		}
+	}
+	
+	/**
+	 * @return True if empty, false ow.
+	 */
+	public boolean isEmpty() {
+		try {
+			return storage().isEmpty();
+		} catch (IOException ex) {
+			Logger.getLogger(SecureDatabase.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
 		}
+		return false; // never report an unreadable safe as empty, it would get initialized over.
 	}
 
 	/**
-	 * A File object representation of the database.
+	 * Get the master index. The index is decrypted from persistent storage once per unlocked session and then held in
+	 * memory until the database is locked or the passphrase expires.
 	 *
-	 * @return A File object representation of the database.
+	 * @return The volatile memory version of the master index.
+	 * @throws PassphraseExpiredException
 	 */
-	private File dbFile() {
-		ensureFile();
-		return this.dbPath.toFile();
+	public MasterIndex getMasterIndex() throws PassphraseExpiredException {
+		if (isLocked()) {
+			this.masterIndex = null;
+			throw new PassphraseExpiredException();
+		}
+		MasterIndex cachedMasterIndex = this.masterIndex;
+		if (cachedMasterIndex == null) {
+			synchronized (this) {
+				cachedMasterIndex = this.masterIndex;
+				if (cachedMasterIndex == null) {
+					cachedMasterIndex = loadMasterIndex();
+					this.masterIndex = cachedMasterIndex;
+				}
+			}
+		}
+		return cachedMasterIndex;
 	}
 
 	/**
-	 * Gets a ZipOutputStream object representing the outer database wrapper.
+	 * Read the master index from encrypted persistent storage.
 	 *
-	 * @return A zip file output stream for the Passphrase database.
-	 * @throws FileNotFoundException
+	 * @return A volatile memory version of the master index.
+	 * @throws PassphraseExpiredException
 	 */
-	private ZipOutputStream outZip() throws FileNotFoundException {
-		return new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(dbFile())));
+	private MasterIndex loadMasterIndex() throws PassphraseExpiredException {
+		try {
+			ByteBuffer headerRecord = storage().readBuffer(SafeHeader.RECORD_KEY);
+			if (headerRecord != null) {
+				SafeHeader header = SafeHeader.decode(headerRecord, this.passphrase);
+				this.safeHeader = header;
+				this.cipherSuite = header.getCipherSuite();
+				this.reencrypting = header.isReencrypting();
+			}
+			ByteBuffer encryptedMasterIndex = storage().readBuffer(MASTER_INDEX);
+			if (encryptedMasterIndex == null) {
+				return null;
+			}
+			byte[] decryptedMasterIndex = CipherSuite.decryptAny(this.passphrase, encryptedMasterIndex);
+			if (decryptedMasterIndex == null) {
+				return null;
+			}
+			MasterIndex loadedMasterIndex;
+			if (MasterIndexCodec.isDirectory(decryptedMasterIndex)) {
+				loadedMasterIndex = MasterIndexCodec.decodeDirectory(decryptedMasterIndex, new StoredTableRecords(storage()));
+			} else if (MasterIndexCodec.isEncoded(decryptedMasterIndex)) {
+				loadedMasterIndex = MasterIndexCodec.decode(decryptedMasterIndex);
+			} else {
+				// Safes written before MasterIndexCodec hold a serialized index, rewritten encoded on the next commit.
+				loadedMasterIndex = SerializationUtility.<MasterIndex>inflate(decryptedMasterIndex);
+			}
+			replayJournal(loadedMasterIndex);
+			if (this.reencrypting) {
+				scheduleReencryption(); // runs once the loaded index is in place.
+			}
+			return loadedMasterIndex;
+		} catch (IOException | ClassNotFoundException ex) {
+			Logger.getLogger(SecureDatabase.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
+		}
+		return null;
 	}
 
 	/**
-	 * Gets a ZipFile object representing the outer Passphrase database wrapper.
+	 * Apply the changes journaled since the last checkpoint to a freshly loaded master index. The journal is kept
+	 * until the changes are checkpointed; replaying it again gives the same tables.
 	 *
-	 * @return A zip file archive object for the Passphrase database.
-	 * @throws IOException
+	 * @param loadedMasterIndex The master index as last stored.
+	 * @throws IOException If a journal record can't be decrypted or decoded.
+	 * @throws PassphraseExpiredException
 	 */
-	private ZipFile zipDbFile() throws IOException {
-		return new ZipFile(dbFile());
+	private void replayJournal(MasterIndex loadedMasterIndex) throws IOException, PassphraseExpiredException {
+		if (this.journal == null && !Files.exists(journalPath())) {
+			return;
+		}
+		List<byte[]> records = journal().readAll();
+		if (records.isEmpty()) {
+			return;
+		}
+		int changeCount = 0;
+		for (byte[] record : records) {
+			byte[] decryptedRecord = CipherSuite.decryptAny(this.passphrase, ByteBuffer.wrap(record));
+			if (decryptedRecord == null) {
+				throw new IOException("Unreadable journal record: " + journal().getPath());
+			}
+			for (TableChange change : MasterIndexCodec.decodeChanges(decryptedRecord)) {
+				if (!change.applyTo(loadedMasterIndex)) {
+					Logger.getLogger(SecureDatabase.class.getName()).log(Level.WARNING, "Journaled change to a missing table: {0}", change.getTableName());
+				}
+				changeCount++;
+			}
+		}
+		Logger.getLogger(SecureDatabase.class.getName()).log(Level.INFO, "Replayed {0} journaled changes.", changeCount);
+		scheduleCheckpoint();
 	}
-	
+
 	/**
-	 * @return True if empty, false ow.
+	 * Reads and decrypts table records from storage.
 	 */
-	public boolean isEmpty() {
-		return (dbFile().length() < 1L);
+	private final class StoredTableRecords implements MasterIndexCodec.TableRecords {
+
+		private final Storage openStorage;
+
+		StoredTableRecords(Storage openStorage) {
+			this.openStorage = openStorage;
+		}
+
+		@Override
+		public byte[] read(String recordKey) throws IOException {
+			ByteBuffer encryptedTable = this.openStorage.readBuffer(recordKey);
+			if (encryptedTable == null) {
+				return null;
+			}
+			try {
+				return CipherSuite.decryptAny(SecureDatabase.this.passphrase, encryptedTable);
+			} catch (PassphraseExpiredException ex) {
+				throw new IOException(ex.getLocalizedMessage(), ex);
+			}
+		}
 	}
 
 	/**
-	 * Get the master index from encrypted persistent storage.
+	 * Commit changes already applied to the master index by journaling them, then checkpoint the journal in the
+	 * background. Changes submitted by concurrent writers within a short window are journaled together, with one
+	 * encryption and one force; the future completes when the changes are durable. Wait on it without holding this
+	 * database's monitor, which the flush takes. Many changes at once are committed as tables instead, before this
+	 * returns. Changes to files must be committed with commitMasterIndex, which stores their contents.
 	 *
-	 * @return A volatile memory version of the master index.
+	 * @param masterIndex The volatile memory master index, with the changes applied.
+	 * @param changes The changes, in the order applied.
+	 * @return Completed when the changes are durable, or failed with the PassphraseExpiredException or IOException
+	 * that kept them from being.
 	 * @throws PassphraseExpiredException
 	 */
-	public MasterIndex getMasterIndex() throws PassphraseExpiredException {
-		try (
-			ZipFile zipFile = zipDbFile();
-			InputStream masterIndexInStream = zipFile.getInputStream(zipFile.getEntry(MASTER_INDEX));) {
-			byte[] encryptedMasterIndex = ByteUtility.readFully(masterIndexInStream);
-			byte[] decryptedMasterIndex = TripleAES.decrypt(this.passphrase, encryptedMasterIndex);
-			return SerializationUtility.<MasterIndex>inflate(decryptedMasterIndex);
-		} catch (IOException | ClassNotFoundException ex) {
+	public synchronized Future<Void> submitChanges(MasterIndex masterIndex, List<TableChange> changes) throws PassphraseExpiredException {
+		if (changes.isEmpty()) {
+			return GroupCommit.committed();
+		}
+		this.masterIndex = masterIndex;
+		if (changes.size() > MAX_JOURNALED_CHANGES) {
+			commitMasterIndex(masterIndex);
+			return GroupCommit.committed();
+		}
+		return this.groupCommit.submit(changes);
+	}
+
+	/**
+	 * Commit changes already applied to the master index, waiting until they are durable. See submitChanges.
+	 *
+	 * @param masterIndex The volatile memory master index, with the changes applied.
+	 * @param changes The changes, in the order applied.
+	 * @throws PassphraseExpiredException
+	 */
+	public void commitChanges(MasterIndex masterIndex, List<TableChange> changes) throws PassphraseExpiredException {
+		Future<Void> commit = submitChanges(masterIndex, changes);
+		if (Thread.holdsLock(this)) {
+			flushPendingChanges(); // the group commit thread would wait for this monitor.
+		}
+		awaitCommit(commit);
+	}
+
+	/**
+	 * Wait for submitted changes to be durable.
+	 *
+	 * @param commit A future from submitChanges.
+	 * @throws PassphraseExpiredException If the database was locked before the changes were journaled.
+	 */
+	public void awaitCommit(Future<Void> commit) throws PassphraseExpiredException {
+		try {
+			commit.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			Logger.getLogger(SecureDatabase.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof PassphraseExpiredException) {
+				throw (PassphraseExpiredException) ex.getCause();
+			}
 			Logger.getLogger(SecureDatabase.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
 		}
-		return null;
 	}
 
 	/**
-	 * Persist the master index to non-volatile storage.
+	 * Journal the pending group of submitted changes as one record. Should journaling fail, the master index, which
+	 * holds the changes, is committed instead.
+	 */
+	synchronized void flushPendingChanges() {
+		List<GroupCommit.PendingCommit> group = this.groupCommit.drain();
+		if (group.isEmpty()) {
+			return;
+		}
+		try {
+			if (this.masterIndex == null || isLocked()) {
+				throw new PassphraseExpiredException();
+			}
+			List<TableChange> changes = new ArrayList<>();
+			for (GroupCommit.PendingCommit pendingCommit : group) {
+				changes.addAll(pendingCommit.getChanges());
+			}
+			try {
+				byte[] encryptedChanges = getCipherSuite().encrypt(this.passphrase, MasterIndexCodec.encodeChanges(changes));
+				if (encryptedChanges == null) {
+					throw new IOException("Could not encrypt journal record.");
+				}
+				Journal openJournal = journal();
+				openJournal.append(encryptedChanges);
+				if (openJournal.getRecordCount() >= JOURNAL_CHECKPOINT_RECORDS) {
+					commitMasterIndex(this.masterIndex);
+				} else {
+					scheduleCheckpoint();
+				}
+			} catch (IOException ex) {
+				Logger.getLogger(SecureDatabase.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
+				commitMasterIndex(this.masterIndex);
+			}
+			for (GroupCommit.PendingCommit pendingCommit : group) {
+				pendingCommit.committed();
+			}
+		} catch (PassphraseExpiredException | RuntimeException ex) {
+			for (GroupCommit.PendingCommit pendingCommit : group) {
+				pendingCommit.failed(ex);
+			}
+		}
+	}
+
+	/**
+	 * @return The number of groups submitted changes have been committed in, at most one per submission.
+	 */
+	int getCommitGroupCount() {
+		return this.groupCommit.getGroupCount();
+	}
+
+	/**
+	 * Checkpoint the journal shortly, once per burst of changes.
+	 */
+	private void scheduleCheckpoint() {
+		if (!this.checkpointScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		backgroundExecutor().schedule(new Runnable() {
+			@Override
+			public void run() {
+				SecureDatabase.this.checkpointScheduled.set(false);
+				checkpointJournal();
+			}
+		}, JOURNAL_CHECKPOINT_DELAY_MS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Store the tables changed by journaled changes, emptying the journal. Does nothing if the journal is empty or
+	 * the database locked.
+	 */
+	synchronized void checkpointJournal() {
+		if (this.journal == null || this.journal.getRecordCount() == 0 || this.masterIndex == null || isLocked()) {
+			return;
+		}
+		try {
+			commitMasterIndex(this.masterIndex);
+		} catch (PassphraseExpiredException ex) {
+			Logger.getLogger(SecureDatabase.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
+		}
+	}
+
+	/**
+	 * Persist the master index to non-volatile storage. Newly attached files, the tables changed since they were last
+	 * stored and the master index directory are appended to the storage, records already committed are left as they
+	 * are, and the contents of removed files are removed. The committed index becomes the in-memory index, and the
+	 * journal is emptied.
 	 *
 	 * @param masterIndex The volatile memory master index.
 	 * @throws PassphraseExpiredException
 	 */
 	public void commitMasterIndex(MasterIndex masterIndex) throws PassphraseExpiredException {
-		
-		try (ZipOutputStream zipOut = outZip();) {
-			// should only be one unmodified file per call, but may need multithreading in future.
+		commitMasterIndex(masterIndex, null);
+	}
+
+	/**
+	 * Persist the master index to non-volatile storage, reporting the progress of storing newly attached files. If
+	 * the listener is a CancellableProgressListener that is cancelled, or the thread is interrupted, while files are
+	 * stored, nothing is committed; files not stored stay attached.
+	 *
+	 * @param masterIndex The volatile memory master index.
+	 * @param progressListener Told the attached file bytes stored so far, or null.
+	 * @throws PassphraseExpiredException
+	 */
+	public synchronized void commitMasterIndex(MasterIndex masterIndex, final ProgressListener progressListener) throws PassphraseExpiredException {
+		List<GroupCommit.PendingCommit> group = this.groupCommit.drain(); // their changes are in the tables stored.
+		try {
+			Storage openStorage = storage();
+			Map<FileTable, List<FileTableEntry>> removedFiles = new IdentityHashMap<>();
+			long attachedBytes = 0L;
+			for (FileTable fileTable : masterIndex.getFileTables()) {
+				for (FileTableEntry fileTableEntry : fileTable.getAll()) {
+					attachedBytes += fileTableEntry.isSourceAttached() ? fileTableEntry.getSizeInBytes() : 0L;
+				}
+			}
+			long storedBytes = 0L;
 			for (FileTable fileTable : masterIndex.getFileTables()) {
 				Logger.getLogger(SecureDatabase.class.getName()).log(Level.FINE, "Committing File Table: {0}", fileTable.getName());
 				for (FileTableEntry fileTableEntry : fileTable.getAll()) {
@@ -170,29 +707,411 @@ public final class SecureDatabase {
 						continue;
 					}
 					Logger.getLogger(SecureDatabase.class.getName()).log(Level.FINE, "Committing File: {0}", fileTableEntry.getFileName());
-					zipOut.putNextEntry(new ZipEntry(fileTableEntry.getFileNameHash()));
-					Path sourceFilePath = fileTableEntry.getSourceFilePath();
-					byte[] fileBytes = ByteUtility.readFully(sourceFilePath);
-					zipOut.write(TripleAES.encrypt(this.passphrase, fileBytes));
-					zipOut.flush();
-					zipOut.closeEntry();
+					try (
+						InputStream sourceInStream = Files.newInputStream(fileTableEntry.getSourceFilePath());
+						EncryptedChunkOutputStream fileOutStream = newFileOutputStream(fileTableEntry);) {
+						try {
+							if (progressListener == null) {
+								ByteUtility.transfer(sourceInStream, fileOutStream);
+							} else {
+								final long bytesBefore = storedBytes;
+								final long bytesInAll = attachedBytes;
+								ByteUtility.transfer(sourceInStream, fileOutStream, fileTableEntry.getSizeInBytes(), new CancellableProgressListener() {
+									@Override
+									public void progressed(long done, long total) {
+										progressListener.progressed(bytesBefore + done, bytesInAll);
+									}
+
+									@Override
+									public boolean isCancelled() {
+										return (progressListener instanceof CancellableProgressListener)
+											&& ((CancellableProgressListener) progressListener).isCancelled();
+									}
+								});
+							}
+						} catch (IOException ex) {
+							fileOutStream.abort(); // nothing is committed, so don't stage the rest of the file.
+							throw ex;
+						}
+					}
+					storedBytes += fileTableEntry.getSizeInBytes();
 					fileTableEntry.detachSource();
+					fileTable.getBackingMapTable().markDirty();
+				}
+			}
+			for (FileTable fileTable : masterIndex.getFileTables()) { // once files are stored, so a cancelled replace keeps the old.
+				List<FileTableEntry> removedEntries = fileTable.getRemovedEntries();
+				for (FileTableEntry removedEntry : removedEntries) {
+					removeFileContents(openStorage, removedEntry);
 				}
+				removedFiles.put(fileTable, removedEntries);
+			}
+			List<Table<?>> tables = new ArrayList<>();
+			tables.addAll(masterIndex.getFileTables());
+			tables.addAll(masterIndex.getIndexedMapTables());
+			tables.addAll(masterIndex.getMapTables());
+			Map<MapTable<?>, Long> storedTables = new IdentityHashMap<>();
+			CipherSuite suite = getCipherSuite();
+			for (Table<?> table : tables) {
+				MapTable<?> mapTable = (table instanceof IndexedMapTable) ? ((IndexedMapTable<?>) table).getBackingMapTable() : (MapTable<?>) table;
+				if (!mapTable.isDirty() && isStoredIn(openStorage, mapTable.getRecordKey(), suite)) {
+					continue;
+				}
+				Logger.getLogger(SecureDatabase.class.getName()).log(Level.FINE, "Committing Table: {0}", table.getName());
+				long modificationCount = mapTable.getModificationCount();
+				byte[] encryptedTable = suite.encrypt(this.passphrase, MasterIndexCodec.encodeTable(table));
+				if (mapTable.getRecordKey() == null) {
+					mapTable.setRecordKey(TABLE_RECORD_PREFIX + UUID.randomUUID().toString());
+				}
+				openStorage.put(mapTable.getRecordKey(), encryptedTable);
+				storedTables.put(mapTable, modificationCount);
+			}
+			SafeHeader header = new SafeHeader(suite, this.reencrypting);
+			if (!header.equals(this.safeHeader)) {
+				openStorage.put(SafeHeader.RECORD_KEY, header.encode(this.passphrase));
 			}
 			masterIndex.incrementCommitCount();
-			byte[] encryptedMasterIndex = TripleAES.encrypt(this.passphrase, SerializationUtility.<MasterIndex>deflate(masterIndex));
-			zipOut.putNextEntry(new ZipEntry(MASTER_INDEX));
-			zipOut.write(encryptedMasterIndex);
-			zipOut.flush();
-			zipOut.closeEntry();
-			zipOut.close();
+			byte[] encryptedMasterIndex = suite.encrypt(this.passphrase, MasterIndexCodec.encodeDirectory(masterIndex));
+			openStorage.put(MASTER_INDEX, encryptedMasterIndex);
+			openStorage.commit();
+			this.safeHeader = header;
+			for (Map.Entry<MapTable<?>, Long> storedTable : storedTables.entrySet()) {
+				storedTable.getKey().markCommitted(storedTable.getValue());
+			}
+			for (Map.Entry<FileTable, List<FileTableEntry>> removedFile : removedFiles.entrySet()) {
+				removedFile.getKey().forgetRemovedEntries(removedFile.getValue());
+			}
+			this.masterIndex = masterIndex;
+			clearJournal();
+			for (GroupCommit.PendingCommit pendingCommit : group) {
+				pendingCommit.committed();
+			}
+			compactStorageIfWasteful(openStorage);
+		} catch (InterruptedIOException ex) {
+			Logger.getLogger(SecureDatabase.class.getName()).log(Level.INFO, "Commit interrupted: {0}", ex.getLocalizedMessage());
+			for (GroupCommit.PendingCommit pendingCommit : group) {
+				pendingCommit.failed(ex);
+			}
 		} catch (IOException ex) {
-			Logger.getLogger(SecureDatabase.class.getName()).log(Level.FINEST, ex.getLocalizedMessage(), ex);
+			Logger.getLogger(SecureDatabase.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
+			for (GroupCommit.PendingCommit pendingCommit : group) {
+				pendingCommit.failed(ex);
+			}
+		} catch (PassphraseExpiredException | RuntimeException ex) {
+			for (GroupCommit.PendingCommit pendingCommit : group) {
+				pendingCommit.failed(ex);
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * @param openStorage The storage.
+	 * @param recordKey A record key, or null.
+	 * @param suite A cipher suite.
+	 * @return True if a record is stored for the key, encrypted with the suite.
+	 * @throws IOException
+	 */
+	private static boolean isStoredIn(Storage openStorage, String recordKey, CipherSuite suite) throws IOException {
+		if (recordKey == null) {
+			return false;
+		}
+		ByteBuffer record = openStorage.readBuffer(recordKey);
+		return record != null && CipherSuite.of(record) == suite;
+	}
+
+	/**
+	 * Move the safe to another cipher suite. New records are written with the suite at once and the tables are
+	 * re-encrypted by the first commit. Stored files are then re-encrypted on the background thread, record by
+	 * record, committing every few MiB and letting other operations in between, so the safe stays usable and memory
+	 * use is bounded whatever its size. The safe header records that re-encryption is under way, so after a lock or
+	 * crash it resumes when the safe is next unlocked, skipping the records already in the suite. Once done the log
+	 * is compacted, dropping the records of the old suite.
+	 *
+	 * @param cipherSuite An available cipher suite.
+	 * @return The number of file records re-encrypted, once done; fewer, or stopped early, if the safe is locked.
+	 * @throws PassphraseExpiredException
+	 */
+	public synchronized Future<Integer> reencrypt(CipherSuite cipherSuite) throws PassphraseExpiredException {
+		setCipherSuite(cipherSuite);
+		this.reencrypting = true;
+		MasterIndex currentMasterIndex = getMasterIndex();
+		if (currentMasterIndex != null) {
+			commitMasterIndex(currentMasterIndex);
+		}
+		return scheduleReencryption();
+	}
+
+	/**
+	 * @return The running or last re-encryption, including one resumed on unlock, or null if none was started.
+	 */
+	synchronized Future<Integer> getReencryption() {
+		return this.reencryptionFuture;
+	}
+
+	/**
+	 * Start re-encrypting on the background thread, or have a re-encryption already running start over with the
+	 * current suite.
+	 *
+	 * @return The re-encryption.
+	 */
+	private synchronized Future<Integer> scheduleReencryption() {
+		if (this.reencryptionFuture != null && !this.reencryptionFuture.isDone()) {
+			this.reencryption.restart();
+			return this.reencryptionFuture;
+		}
+		this.reencryption = new Reencryption();
+		this.reencryptionFuture = backgroundExecutor().submit(this.reencryption);
+		return this.reencryptionFuture;
+	}
+
+	/**
+	 * Re-encrypts the records of stored files into the safe's cipher suite, a batch at a time. The files to visit
+	 * are listed when it starts; files added since are written in the new suite anyway.
+	 */
+	private final class Reencryption implements Callable<Integer> {
+
+		private List<FileTable> fileTables;
+		private List<FileTableEntry> fileTableEntries;
+		private int entryIndex;
+		private long recordIndex;
+		private int reencryptedCount;
+
+		/**
+		 * Visit every file again, e.g. after the target suite changed. Called holding the database monitor.
+		 */
+		void restart() {
+			this.fileTables = null;
+			this.fileTableEntries = null;
+		}
+
+		@Override
+		public Integer call() {
+			try {
+				while (reencryptBatch()) {
+					Thread.yield(); // let waiting readers and writers at the monitor.
+				}
+			} catch (PassphraseExpiredException ex) {
+				Logger.getLogger(SecureDatabase.class.getName()).log(Level.INFO, "Re-encryption paused until the safe is unlocked.");
+			} catch (IOException ex) {
+				Logger.getLogger(SecureDatabase.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
+			}
+			return this.reencryptedCount;
+		}
+
+		/**
+		 * Re-encrypt records until a batch is full or all are done.
+		 *
+		 * @return True if there are more records to visit.
+		 * @throws PassphraseExpiredException If the safe was locked.
+		 * @throws IOException
+		 */
+		private boolean reencryptBatch() throws PassphraseExpiredException, IOException {
+			synchronized (SecureDatabase.this) {
+				MasterIndex currentMasterIndex = getMasterIndex();
+				if (currentMasterIndex == null) {
+					SecureDatabase.this.reencrypting = false;
+					return false;
+				}
+				if (this.fileTableEntries == null) {
+					this.fileTables = new ArrayList<>();
+					this.fileTableEntries = new ArrayList<>();
+					for (FileTable fileTable : currentMasterIndex.getFileTables()) {
+						for (FileTableEntry fileTableEntry : fileTable.getAll()) {
+							this.fileTables.add(fileTable);
+							this.fileTableEntries.add(fileTableEntry);
+						}
+					}
+					this.entryIndex = 0;
+					this.recordIndex = 0L;
+				}
+				Storage openStorage = storage();
+				CipherSuite suite = getCipherSuite();
+				long batchBytes = 0L;
+				while (this.entryIndex < this.fileTableEntries.size()) {
+					FileTableEntry fileTableEntry = this.fileTableEntries.get(this.entryIndex);
+					boolean stored = this.fileTables.get(this.entryIndex).getEntry(fileTableEntry.getId()) == fileTableEntry && !fileTableEntry.isSourceAttached();
+					long recordCount = !stored ? 0L : (fileTableEntry.isChunked() ? fileTableEntry.getChunkCount() : 1L);
+					while (this.recordIndex < recordCount) {
+						String recordKey = fileTableEntry.isChunked() ? fileTableEntry.getChunkKey(this.recordIndex) : fileTableEntry.getFileNameHash();
+						this.recordIndex++;
+						batchBytes += reencryptRecord(openStorage, recordKey, fileTableEntry.isChunked(), suite);
+						if (batchBytes >= REENCRYPTION_BATCH_BYTES) {
+							openStorage.commit();
+							return true;
+						}
+					}
+					this.entryIndex++;
+					this.recordIndex = 0L;
+				}
+				SecureDatabase.this.reencrypting = false;
+				commitMasterIndex(currentMasterIndex); // clears the header flag, storing any tables still in another suite.
+			}
+			Logger.getLogger(SecureDatabase.class.getName()).log(Level.INFO, "Re-encrypted {0} records.", this.reencryptedCount);
+			compactStorage();
+			return false;
+		}
+
+		/**
+		 * Stage a record re-encrypted with a suite, unless it is already.
+		 *
+		 * @param openStorage The storage.
+		 * @param recordKey The record key.
+		 * @param chunk True for a sealed file chunk, bound to its key.
+		 * @param suite The suite to re-encrypt with.
+		 * @return The size of the re-encrypted record, or 0 if it was left as it was.
+		 * @throws PassphraseExpiredException
+		 * @throws IOException
+		 */
+		private long reencryptRecord(Storage openStorage, String recordKey, boolean chunk, CipherSuite suite) throws PassphraseExpiredException, IOException {
+			ByteBuffer record = openStorage.readBuffer(recordKey);
+			if (record == null || CipherSuite.of(record) == suite) {
+				return 0L;
+			}
+			byte[] recordBytes;
+			try {
+				recordBytes = chunk ? ChunkCipher.open(SecureDatabase.this.passphrase, recordKey, record) : CipherSuite.decryptAny(SecureDatabase.this.passphrase, record);
+			} catch (AEADBadTagException ex) {
+				recordBytes = null;
+			}
+			if (recordBytes == null) {
+				Logger.getLogger(SecureDatabase.class.getName()).log(Level.WARNING, "Unreadable record left as it was: {0}", recordKey);
+				return 0L;
+			}
+			byte[] reencryptedRecord = chunk ? ChunkCipher.seal(suite, SecureDatabase.this.passphrase, recordKey, recordBytes) : suite.encrypt(SecureDatabase.this.passphrase, recordBytes);
+			Arrays.fill(recordBytes, (byte) 0b00000000);
+			if (reencryptedRecord == null) {
+				throw new IOException("Could not re-encrypt record: " + recordKey);
+			}
+			openStorage.put(recordKey, reencryptedRecord);
+			this.reencryptedCount++;
+			return reencryptedRecord.length;
+		}
+	}
+
+	/**
+	 * Stage the removal of the records holding a file's contents.
+	 *
+	 * @param openStorage The storage.
+	 * @param fileTableEntry A removed file table entry.
+	 * @throws IOException
+	 */
+	private static void removeFileContents(Storage openStorage, FileTableEntry fileTableEntry) throws IOException {
+		if (fileTableEntry.isSourceAttached()) {
+			return; // never stored.
+		}
+		if (!fileTableEntry.isChunked()) {
+			openStorage.remove(fileTableEntry.getFileNameHash());
+			return;
+		}
+		for (long chunkIndex = 0; chunkIndex < fileTableEntry.getChunkCount(); chunkIndex++) {
+			openStorage.remove(fileTableEntry.getChunkKey(chunkIndex));
+		}
+	}
+
+	/**
+	 * Open a stream to store the contents of a file table entry. The contents are written in encrypted chunks, sealed
+	 * in parallel and written back in order, and become durable with the next commit of the master index, which should include the entry.
+	 *
+	 * @param fileTableEntry The file table entry the contents belong to.
+	 * @return An output stream for the file contents, which must be closed before committing.
+	 * @throws PassphraseExpiredException
+	 * @throws IOException If the entry's contents are already stored; a new version of a file is a new entry, with
+	 * chunk keys of its own, so storing it can't touch the stored version.
+	 */
+	public OutputStream openFileOutputStream(FileTableEntry fileTableEntry) throws PassphraseExpiredException, IOException {
+		if (isLocked()) {
+			throw new PassphraseExpiredException();
+		}
+		return newFileOutputStream(fileTableEntry);
+	}
+
+	private EncryptedChunkOutputStream newFileOutputStream(FileTableEntry fileTableEntry) throws PassphraseExpiredException, IOException {
+		if (fileTableEntry.isChunked() || !fileTableEntry.isSourceAttached()) { // its chunk keys hold the stored contents.
+			throw new IOException("Contents already stored, store the file as a new entry: " + fileTableEntry.getFileName());
 		}
+		return new EncryptedChunkOutputStream(storage(), getCipherSuite(), this.passphrase, fileTableEntry, FILE_CHUNK_SIZE, cryptoExecutor(), chunksInFlight());
 	}
 
 	/**
-	 * Load an encrypted file into volatile memory from the database.
+	 * Open a stream to read the decrypted contents of a file table entry.
+	 *
+	 * @param fileTableEntry A file table entry record to read.
+	 * @return An input stream of the raw unencrypted file bytes.
+	 * @throws PassphraseExpiredException
+	 * @throws IOException
+	 */
+	public InputStream openFileInputStream(FileTableEntry fileTableEntry) throws PassphraseExpiredException, IOException {
+		if (isLocked()) {
+			throw new PassphraseExpiredException();
+		}
+		if (fileTableEntry.isChunked()) {
+			return new EncryptedChunkInputStream(storage(), this.passphrase, fileTableEntry, cryptoExecutor(), chunksInFlight());
+		}
+		byte[] fileBytes = loadFile(fileTableEntry);
+		if (fileBytes == null) {
+			throw new IOException("File not found: " + fileTableEntry.getFileName());
+		}
+		return new ByteArrayInputStream(fileBytes);
+	}
+
+	/**
+	 * Open a read only, seekable channel over the decrypted contents of a file table entry. Only the chunks covering
+	 * the ranges read are decrypted.
+	 *
+	 * @param fileTableEntry A file table entry record to read.
+	 * @return A seekable channel of the raw unencrypted file bytes.
+	 * @throws PassphraseExpiredException
+	 * @throws IOException
+	 */
+	public SeekableByteChannel openFileChannel(FileTableEntry fileTableEntry) throws PassphraseExpiredException, IOException {
+		if (isLocked()) {
+			throw new PassphraseExpiredException();
+		}
+		return new EncryptedFileChannel(storage(), this.passphrase, fileTableEntry);
+	}
+
+	/**
+	 * Decrypt a file from the database to a path, streaming one chunk at a time.
+	 *
+	 * @param fileTableEntry A file table entry record to export.
+	 * @param targetPath The path to write the raw unencrypted file to.
+	 * @throws PassphraseExpiredException
+	 * @throws IOException
+	 */
+	public void exportFile(FileTableEntry fileTableEntry, Path targetPath) throws PassphraseExpiredException, IOException {
+		try (
+			InputStream fileInStream = openFileInputStream(fileTableEntry);
+			OutputStream targetOutStream = Files.newOutputStream(targetPath);) {
+			ByteUtility.transfer(fileInStream, targetOutStream);
+		}
+	}
+
+	/**
+	 * Decrypt a file from the database to a path, reporting progress. If the listener is a CancellableProgressListener
+	 * that is cancelled, or the thread is interrupted, the partly written target is deleted.
+	 *
+	 * @param fileTableEntry A file table entry record to export.
+	 * @param targetPath The path to write the raw unencrypted file to.
+	 * @param progressListener Told the bytes written so far.
+	 * @throws PassphraseExpiredException
+	 * @throws InterruptedIOException If cancelled or the thread was interrupted.
+	 * @throws IOException
+	 */
+	public void exportFile(FileTableEntry fileTableEntry, Path targetPath, ProgressListener progressListener) throws PassphraseExpiredException, IOException {
+		try (
+			InputStream fileInStream = openFileInputStream(fileTableEntry);
+			OutputStream targetOutStream = Files.newOutputStream(targetPath);) {
+			ByteUtility.transfer(fileInStream, targetOutStream, fileTableEntry.getSizeInBytes(), progressListener);
+		} catch (InterruptedIOException ex) {
+			Files.deleteIfExists(targetPath);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Load an encrypted file into volatile memory from the database. Prefer openFileInputStream or exportFile for
+	 * large files.
 	 *
 	 * @param fileTableEntry A file table entry record to export.
 	 * @return The raw unencrypted file bytes.
@@ -203,24 +1122,22 @@ public final class SecureDatabase {
 		if (fileTableEntry == null) {
 			return null;
 		}
-		byte[] fileBytes = null;
-		ensureFile();
-		try {
-			if (Files.size(dbFile().toPath()) < 1L) {
-				return fileBytes;
+		if (fileTableEntry.isChunked()) {
+			try (InputStream fileInStream = openFileInputStream(fileTableEntry)) {
+				return ByteUtility.readFully(fileInStream);
 			}
+		}
+		ByteBuffer encryptedFile;
+		try {
+			encryptedFile = storage().readBuffer(fileTableEntry.getFileNameHash());
 		} catch (IOException ex) {
 			Logger.getLogger(SecureDatabase.class.getName()).log(Level.FINEST, ex.getLocalizedMessage(), ex);
 			throw ex;
 		}
-		byte[] encryptedFile;
-		try (
-			ZipFile zipFile = zipDbFile();
-			InputStream fileInStream = zipFile.getInputStream(zipFile.getEntry(fileTableEntry.getFileNameHash()));) {
-			encryptedFile = ByteUtility.readFully(fileInStream);
+		if (encryptedFile == null) {
+			return null;
 		}
-		fileBytes = TripleAES.decrypt(this.passphrase, encryptedFile);
-		return fileBytes;
+		return CipherSuite.decryptAny(this.passphrase, encryptedFile);
 	}
 
 }
@@ -0,0 +1,706 @@
+package com.analyticobjects.digitalsafe.database;
+
+import com.analyticobjects.digitalsafe.crypto.Passphrase;
+import com.analyticobjects.digitalsafe.crypto.CipherSuite;
+import com.analyticobjects.digitalsafe.exceptions.PassphraseExpiredException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of records. Nothing already written is ever rewritten, so a commit costs the size of the records
+ * it adds rather than the size of the safe. Each commit appends a segment of data records closed by a commit record;
+ * a segment without its commit record (a crash mid-commit) is cut off the next time the log is opened.
+ *
+ * To keep opening fast the record index is periodically written as an encrypted checkpoint record, which the file
+ * header points at. Opening loads the latest checkpoint and only scans the records after it. If the checkpoint
+ * can't be read the whole log is scanned instead. Checkpoints are encrypted with the preferred cipher suite, whatever
+ * suite the records hold.
+ *
+ * Committed records are read through a read only memory mapping of the log, remapped as the log grows, so reading a
+ * record doesn't copy it onto the heap. Only the first 2 GiB of a log can be mapped; records past that are read with
+ * positional reads.
+ *
+ * Removing a record appends a tombstone record for its key. Discarding a staged record appends a discard record, so
+ * the data record already in the segment is not applied by the commit that closes it. Replaced and removed records stay in the log until it is
+ * compacted: the live records are copied to a new log while readers and writers carry on with the old one, then the
+ * new log is swapped in, holding readers off only for the swap.
+ *
+ * Record layout: type (1 byte), key length (2), UTF-8 key, value length (4), value, CRC32 of all prior fields (4).
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public final class SegmentLogStorage implements Storage {
+
+	private static final Logger logger = Logger.getLogger(SegmentLogStorage.class.getName());
+	private static final byte[] MAGIC = "DSAFELOG".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION = 1;
+	static final int HEADER_SIZE = 64;
+	private static final int CHECKPOINT_POINTER_POSITION = MAGIC.length + 4;
+	private static final int RECORD_OVERHEAD = 1 + 2 + 4 + 4;
+	private static final int COMMITS_PER_CHECKPOINT = 32;
+	private static final byte DATA = 1;
+	private static final byte COMMIT = 2;
+	private static final byte CHECKPOINT = 3;
+	private static final byte TOMBSTONE = 4;
+	private static final byte DISCARD = 5;
+	private static final RecordPointer REMOVED = new RecordPointer(-1L, 0); // a staged or pending tombstone.
+	private static final String COMPACTION_SUFFIX = ".compacting";
+	private static final String CLEARING_SUFFIX = ".clearing";
+
+	private final Path logPath;
+	private final Passphrase passphrase;
+	private final Map<String, RecordPointer> index;
+	private final Map<String, RecordPointer> staged;
+	private final ReadWriteLock swapLock; // read held while using the index and channel, write to swap them.
+	private final AtomicBoolean compacting;
+	private FileChannel channel;
+	private volatile MappedByteBuffer mapping;
+	private long logEnd;
+	private int commitsSinceCheckpoint;
+	private int generation; // bumped by clear, so a compaction started before it is abandoned.
+
+	/**
+	 * Open or create a log.
+	 *
+	 * @param logPath The log file path.
+	 * @param passphrase The passphrase used to encrypt index checkpoints.
+	 * @throws IOException If the file is not a log or can't be read.
+	 */
+	public SegmentLogStorage(Path logPath, Passphrase passphrase) throws IOException {
+		this.logPath = logPath;
+		this.passphrase = passphrase;
+		this.index = new ConcurrentHashMap<>();
+		this.staged = new HashMap<>();
+		this.swapLock = new ReentrantReadWriteLock();
+		this.compacting = new AtomicBoolean();
+		this.channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			open();
+		} catch (IOException ex) {
+			this.channel.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Read the header and rebuild the record index.
+	 *
+	 * @throws IOException
+	 */
+	private void open() throws IOException {
+		if (this.channel.size() == 0L) {
+			writeHeader();
+			return;
+		}
+		ByteBuffer header = readFully(0L, HEADER_SIZE);
+		byte[] magic = new byte[MAGIC.length];
+		header.get(magic);
+		if (!Arrays.equals(magic, MAGIC)) {
+			throw new IOException("Not a DigitalSafe log: " + this.logPath);
+		}
+		int version = header.getInt();
+		if (version > VERSION) {
+			throw new IOException("Unsupported DigitalSafe log version: " + version);
+		}
+		long checkpointPosition = header.getLong();
+		long scanFrom = HEADER_SIZE;
+		if (checkpointPosition >= HEADER_SIZE) {
+			long checkpointEnd = loadCheckpoint(checkpointPosition);
+			if (checkpointEnd > 0L) {
+				scanFrom = checkpointEnd;
+			}
+		}
+		scan(scanFrom);
+	}
+
+	/**
+	 * Write a fresh header with no checkpoint.
+	 *
+	 * @throws IOException
+	 */
+	private void writeHeader() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.put(MAGIC);
+		header.putInt(VERSION);
+		header.putLong(0L);
+		header.rewind();
+		writeFully(0L, header);
+		this.channel.force(true);
+		this.logEnd = HEADER_SIZE;
+		this.commitsSinceCheckpoint = 0;
+	}
+
+	/**
+	 * Scan committed segments from a position to the end of the log, cutting off any torn tail.
+	 *
+	 * @param from The position of the first record to scan.
+	 * @throws IOException
+	 */
+	private void scan(long from) throws IOException {
+		long size = this.channel.size();
+		long position = from;
+		long validEnd = from;
+		Map<String, RecordPointer> pending = new HashMap<>();
+		while (position < size) {
+			Record record = readRecord(position, size);
+			if (record == null) {
+				break;
+			}
+			if (record.type == DATA) {
+				pending.put(record.key, record.value);
+			} else if (record.type == TOMBSTONE) {
+				pending.put(record.key, REMOVED);
+			} else if (record.type == DISCARD) {
+				pending.remove(record.key);
+			} else if (record.type == COMMIT) {
+				apply(pending);
+				pending.clear();
+				this.commitsSinceCheckpoint++;
+				validEnd = record.end;
+			}
+			position = record.end;
+		}
+		if (validEnd < size) {
+			logger.log(Level.WARNING, "Discarding {0} bytes of uncommitted log tail.", size - validEnd);
+			this.channel.truncate(validEnd);
+			this.channel.force(true);
+		}
+		this.logEnd = validEnd;
+	}
+
+	/**
+	 * Apply committed changes to the record index.
+	 *
+	 * @param changes Record pointers by key, REMOVED for a removed record.
+	 */
+	private void apply(Map<String, RecordPointer> changes) {
+		for (Map.Entry<String, RecordPointer> change : changes.entrySet()) {
+			if (change.getValue() == REMOVED) {
+				this.index.remove(change.getKey());
+			} else {
+				this.index.put(change.getKey(), change.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Read and verify the record at a position.
+	 *
+	 * @param position The record position.
+	 * @param size The log size.
+	 * @return The record, or null if the record is incomplete or corrupt.
+	 * @throws IOException
+	 */
+	private Record readRecord(long position, long size) throws IOException {
+		if (position + RECORD_OVERHEAD > size) {
+			return null;
+		}
+		ByteBuffer prefix = readFully(position, 3);
+		byte type = prefix.get();
+		int keyLength = prefix.getShort() & 0xffff;
+		long valuePosition = position + 3 + keyLength + 4;
+		if (valuePosition + 4 > size) {
+			return null;
+		}
+		ByteBuffer keyAndLength = readFully(position + 3, keyLength + 4);
+		byte[] keyBytes = new byte[keyLength];
+		keyAndLength.get(keyBytes);
+		int valueLength = keyAndLength.getInt();
+		long end = valuePosition + valueLength + 4;
+		if (valueLength < 0 || end > size) {
+			return null;
+		}
+		CRC32 crc = new CRC32();
+		prefix.rewind();
+		keyAndLength.rewind();
+		crc.update(prefix.array());
+		crc.update(keyAndLength.array());
+		ByteBuffer buffer = ByteBuffer.allocate(65536);
+		long crcPosition = valuePosition;
+		while (crcPosition < valuePosition + valueLength) {
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), valuePosition + valueLength - crcPosition));
+			readFully(crcPosition, buffer);
+			crc.update(buffer.array(), 0, buffer.limit());
+			crcPosition += buffer.limit();
+		}
+		int storedCrc = readFully(valuePosition + valueLength, 4).getInt();
+		if (storedCrc != (int) crc.getValue()) {
+			return null;
+		}
+		return new Record(type, new String(keyBytes, StandardCharsets.UTF_8), new RecordPointer(valuePosition, valueLength), end);
+	}
+
+	/**
+	 * Load the record index from a checkpoint.
+	 *
+	 * @param position The checkpoint record position.
+	 * @return The position just past the checkpoint record, or 0 if the checkpoint couldn't be loaded.
+	 */
+	private long loadCheckpoint(long position) {
+		try {
+			Record record = readRecord(position, this.channel.size());
+			if (record == null || record.type != CHECKPOINT) {
+				return 0L;
+			}
+			byte[] checkpoint = CipherSuite.decryptAny(this.passphrase, ByteBuffer.wrap(readValue(record.value)));
+			if (checkpoint == null) {
+				return 0L;
+			}
+			Map<String, RecordPointer> checkpointIndex = new HashMap<>();
+			try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(checkpoint))) {
+				int count = in.readInt();
+				for (int i = 0; i < count; i++) {
+					String key = in.readUTF();
+					checkpointIndex.put(key, new RecordPointer(in.readLong(), in.readInt()));
+				}
+			}
+			this.index.putAll(checkpointIndex);
+			return record.end;
+		} catch (IOException | PassphraseExpiredException ex) {
+			logger.log(Level.FINE, "Checkpoint unavailable, scanning the full log.", ex);
+			this.index.clear();
+			return 0L;
+		}
+	}
+
+	/**
+	 * Append an encrypted snapshot of the record index and point the header at it.
+	 *
+	 * @throws IOException
+	 */
+	private void writeCheckpoint() throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bos)) {
+			out.writeInt(this.index.size());
+			for (Map.Entry<String, RecordPointer> entry : this.index.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeLong(entry.getValue().position);
+				out.writeInt(entry.getValue().length);
+			}
+		}
+		byte[] encryptedCheckpoint;
+		try {
+			encryptedCheckpoint = CipherSuite.preferred().encrypt(this.passphrase, bos.toByteArray());
+		} catch (PassphraseExpiredException ex) {
+			return; // try again on a later commit.
+		}
+		if (encryptedCheckpoint == null) {
+			return;
+		}
+		long checkpointPosition = this.logEnd;
+		appendRecord(CHECKPOINT, "", encryptedCheckpoint);
+		appendRecord(COMMIT, "", new byte[0]);
+		this.channel.force(true);
+		ByteBuffer pointer = ByteBuffer.allocate(8);
+		pointer.putLong(checkpointPosition);
+		pointer.rewind();
+		writeFully(CHECKPOINT_POINTER_POSITION, pointer);
+		this.channel.force(true);
+		this.commitsSinceCheckpoint = 0;
+	}
+
+	/**
+	 * Append a record to the end of the log.
+	 *
+	 * @param type The record type.
+	 * @param key The record key.
+	 * @param value The record value.
+	 * @return A pointer to the record value.
+	 * @throws IOException
+	 */
+	private RecordPointer appendRecord(byte type, String key, byte[] value) throws IOException {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		if (keyBytes.length > 0xffff) {
+			throw new IOException("Record key too long.");
+		}
+		ByteBuffer header = ByteBuffer.allocate(3 + keyBytes.length + 4);
+		header.put(type);
+		header.putShort((short) keyBytes.length);
+		header.put(keyBytes);
+		header.putInt(value.length);
+		CRC32 crc = new CRC32();
+		crc.update(header.array());
+		crc.update(value);
+		ByteBuffer trailer = ByteBuffer.allocate(4);
+		trailer.putInt((int) crc.getValue());
+		header.rewind();
+		trailer.rewind();
+		long position = this.logEnd;
+		writeFully(position, header);
+		writeFully(position + header.capacity(), ByteBuffer.wrap(value));
+		writeFully(position + header.capacity() + value.length, trailer);
+		this.logEnd = position + header.capacity() + value.length + 4;
+		return new RecordPointer(position + header.capacity(), value.length);
+	}
+
+	@Override
+	public boolean isEmpty() throws IOException {
+		this.swapLock.readLock().lock();
+		try {
+			return this.index.isEmpty();
+		} finally {
+			this.swapLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean contains(String key) throws IOException {
+		this.swapLock.readLock().lock();
+		try {
+			return this.index.containsKey(key);
+		} finally {
+			this.swapLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public Set<String> keys() throws IOException {
+		this.swapLock.readLock().lock();
+		try {
+			return Collections.unmodifiableSet(new HashSet<>(this.index.keySet()));
+		} finally {
+			this.swapLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public byte[] read(String key) throws IOException {
+		this.swapLock.readLock().lock();
+		try {
+			RecordPointer pointer = this.index.get(key);
+			if (pointer == null) {
+				return null;
+			}
+			return readValue(pointer);
+		} finally {
+			this.swapLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc} The buffer maps the log as it was when read, and stays valid if the log is compacted or cleared
+	 * meanwhile.
+	 */
+	@Override
+	public ByteBuffer readBuffer(String key) throws IOException {
+		this.swapLock.readLock().lock();
+		try {
+			RecordPointer pointer = this.index.get(key);
+			if (pointer == null) {
+				return null;
+			}
+			long end = pointer.position + pointer.length;
+			if (end > Integer.MAX_VALUE) {
+				return ByteBuffer.wrap(readValue(pointer)).asReadOnlyBuffer();
+			}
+			MappedByteBuffer currentMapping = this.mapping;
+			if (currentMapping == null || currentMapping.capacity() < end) {
+				currentMapping = remap();
+			}
+			ByteBuffer value = currentMapping.duplicate();
+			value.limit((int) end);
+			value.position((int) pointer.position);
+			return value.slice();
+		} finally {
+			this.swapLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Map the log up to its current end, replacing any smaller mapping.
+	 *
+	 * @return The new mapping.
+	 * @throws IOException
+	 */
+	private synchronized MappedByteBuffer remap() throws IOException {
+		long mappingSize = Math.min(this.logEnd, Integer.MAX_VALUE);
+		if (this.mapping == null || this.mapping.capacity() < mappingSize) {
+			this.mapping = this.channel.map(FileChannel.MapMode.READ_ONLY, 0L, mappingSize);
+		}
+		return this.mapping;
+	}
+
+	@Override
+	public synchronized void put(String key, byte[] value) throws IOException {
+		this.staged.put(key, appendRecord(DATA, key, value));
+	}
+
+	@Override
+	public synchronized void remove(String key) throws IOException {
+		appendRecord(TOMBSTONE, key, new byte[0]);
+		this.staged.put(key, REMOVED);
+	}
+
+	@Override
+	public synchronized void discard(String key) throws IOException {
+		if (this.staged.remove(key) != null) {
+			appendRecord(DISCARD, key, new byte[0]);
+		}
+	}
+
+	@Override
+	public synchronized void commit() throws IOException {
+		if (this.staged.isEmpty()) {
+			return;
+		}
+		appendRecord(COMMIT, "", new byte[0]);
+		this.channel.force(false);
+		apply(this.staged);
+		this.staged.clear();
+		this.commitsSinceCheckpoint++;
+		if (this.commitsSinceCheckpoint >= COMMITS_PER_CHECKPOINT) {
+			writeCheckpoint();
+		}
+	}
+
+	/**
+	 * {@inheritDoc} An empty log is swapped in for the old one rather than truncating it, so buffers already read out
+	 * of the old mapping stay valid.
+	 */
+	@Override
+	public void clear() throws IOException {
+		Path clearedPath = this.logPath.resolveSibling(this.logPath.getFileName() + CLEARING_SUFFIX);
+		this.swapLock.writeLock().lock();
+		try {
+			synchronized (this) {
+				if (!this.channel.isOpen()) {
+					throw new ClosedChannelException();
+				}
+				Files.deleteIfExists(clearedPath);
+				SegmentLogStorage cleared = new SegmentLogStorage(clearedPath, this.passphrase);
+				try {
+					Files.move(clearedPath, this.logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} catch (IOException ex) {
+					cleared.close();
+					Files.deleteIfExists(clearedPath);
+					throw ex;
+				}
+				this.channel.close(); // mappings already handed out stay valid.
+				this.channel = cleared.channel;
+				this.mapping = null;
+				this.index.clear();
+				this.staged.clear();
+				this.logEnd = cleared.logEnd;
+				this.commitsSinceCheckpoint = cleared.commitsSinceCheckpoint;
+				this.generation++;
+			}
+		} finally {
+			this.swapLock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		this.mapping = null;
+		this.channel.close();
+	}
+
+	/**
+	 * @return The current size of the log in bytes.
+	 */
+	public synchronized long size() {
+		return this.logEnd;
+	}
+
+	/**
+	 * @return The fraction of the log not holding live records: replaced and removed records, tombstones, commit and
+	 * checkpoint records.
+	 */
+	public double garbageRatio() {
+		this.swapLock.readLock().lock();
+		try {
+			long liveBytes = HEADER_SIZE;
+			for (Map.Entry<String, RecordPointer> entry : this.index.entrySet()) {
+				liveBytes += RECORD_OVERHEAD + entry.getKey().getBytes(StandardCharsets.UTF_8).length + entry.getValue().length;
+			}
+			long size = size();
+			return (size <= liveBytes) ? 0.0 : (size - liveBytes) / (double) size;
+		} finally {
+			this.swapLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Rewrite the log with only its live records, reclaiming the space of replaced and removed records. The records
+	 * committed when compaction starts are copied without holding up readers or writers; what they commit meanwhile
+	 * is copied, and the new log swapped in, while they are held off. Nothing is done if a compaction is already
+	 * running, and the compaction is abandoned if the log is closed or cleared while it runs.
+	 *
+	 * @return True if the log was compacted.
+	 * @throws IOException
+	 */
+	public boolean compact() throws IOException {
+		if (!this.compacting.compareAndSet(false, true)) {
+			return false;
+		}
+		Path compactionPath = this.logPath.resolveSibling(this.logPath.getFileName() + COMPACTION_SUFFIX);
+		SegmentLogStorage compacted = null;
+		boolean swapped = false;
+		try {
+			Map<String, RecordPointer> snapshot;
+			FileChannel snapshotChannel;
+			int snapshotGeneration;
+			synchronized (this) {
+				snapshot = new HashMap<>(this.index);
+				snapshotChannel = this.channel;
+				snapshotGeneration = this.generation;
+			}
+			Files.deleteIfExists(compactionPath);
+			compacted = new SegmentLogStorage(compactionPath, this.passphrase);
+			for (Map.Entry<String, RecordPointer> entry : snapshot.entrySet()) {
+				compacted.put(entry.getKey(), readValue(snapshotChannel, entry.getValue()));
+			}
+			compacted.commit();
+			this.swapLock.writeLock().lock();
+			try {
+				synchronized (this) {
+					if (this.generation != snapshotGeneration || !this.channel.isOpen()) {
+						return false;
+					}
+					for (Map.Entry<String, RecordPointer> entry : this.index.entrySet()) {
+						if (snapshot.get(entry.getKey()) != entry.getValue()) {
+							compacted.put(entry.getKey(), readValue(entry.getValue()));
+						}
+					}
+					for (String key : snapshot.keySet()) {
+						if (!this.index.containsKey(key)) {
+							compacted.remove(key);
+						}
+					}
+					compacted.commit();
+					compacted.writeCheckpoint();
+					for (Map.Entry<String, RecordPointer> entry : this.staged.entrySet()) { // still to be committed.
+						if (entry.getValue() == REMOVED) {
+							compacted.remove(entry.getKey());
+						} else {
+							compacted.put(entry.getKey(), readValue(entry.getValue()));
+						}
+					}
+					compacted.channel.force(true);
+					Files.move(compactionPath, this.logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					logger.log(Level.INFO, "Compacted log from {0} to {1} bytes.", new Object[]{this.logEnd, compacted.logEnd});
+					this.channel.close(); // mappings already handed out stay valid.
+					this.channel = compacted.channel;
+					this.mapping = null;
+					this.index.clear();
+					this.index.putAll(compacted.index);
+					this.staged.clear();
+					this.staged.putAll(compacted.staged);
+					this.logEnd = compacted.logEnd;
+					this.commitsSinceCheckpoint = compacted.commitsSinceCheckpoint;
+					swapped = true;
+					return true;
+				}
+			} finally {
+				this.swapLock.writeLock().unlock();
+			}
+		} finally {
+			if (!swapped) {
+				if (compacted != null) {
+					compacted.close();
+				}
+				Files.deleteIfExists(compactionPath);
+			}
+			this.compacting.set(false);
+		}
+	}
+
+	private byte[] readValue(RecordPointer pointer) throws IOException {
+		return readValue(this.channel, pointer);
+	}
+
+	private static byte[] readValue(FileChannel fromChannel, RecordPointer pointer) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(pointer.length);
+		readFully(fromChannel, pointer.position, buffer);
+		return buffer.array();
+	}
+
+	private ByteBuffer readFully(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		readFully(position, buffer);
+		buffer.rewind();
+		return buffer;
+	}
+
+	private void readFully(long position, ByteBuffer buffer) throws IOException {
+		readFully(this.channel, position, buffer);
+	}
+
+	private static void readFully(FileChannel fromChannel, long position, ByteBuffer buffer) throws IOException {
+		long readPosition = position;
+		while (buffer.hasRemaining()) {
+			int bytesRead = fromChannel.read(buffer, readPosition);
+			if (bytesRead < 0) {
+				throw new IOException("Unexpected end of log.");
+			}
+			readPosition += bytesRead;
+		}
+	}
+
+	private void writeFully(long position, ByteBuffer buffer) throws IOException {
+		long writePosition = position;
+		while (buffer.hasRemaining()) {
+			writePosition += this.channel.write(buffer, writePosition);
+		}
+	}
+
+	/**
+	 * Location of a record value in the log.
+	 */
+	private static final class RecordPointer {
+
+		final long position;
+		final int length;
+
+		RecordPointer(long position, int length) {
+			this.position = position;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * A record read back from the log.
+	 */
+	private static final class Record {
+
+		final byte type;
+		final String key;
+		final RecordPointer value;
+		final long end;
+
+		Record(byte type, String key, RecordPointer value, long end) {
+			this.type = type;
+			this.key = key;
+			this.value = value;
+			this.end = end;
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+package com.analyticobjects.digitalsafe.database;
+
+import java.util.Arrays;
+
+/**
+ * A growable, sorted set of entry ids in a long array, for the postings of the table indexes. Ids are mostly handed
+ * out in increasing order, so adding one is usually an append.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+class SortedIds {
+
+	long[] ids;
+	int size;
+
+	SortedIds() {
+		this.ids = new long[1];
+		this.size = 0;
+	}
+
+	/**
+	 * @param id An id to add, if not already present.
+	 */
+	void add(long id) {
+		if (this.size > 0 && id <= this.ids[this.size - 1]) {
+			int position = Arrays.binarySearch(this.ids, 0, this.size, id);
+			if (position >= 0) {
+				return;
+			}
+			insert(-position - 1, id);
+			return;
+		}
+		insert(this.size, id);
+	}
+
+	private void insert(int position, long id) {
+		if (this.size == this.ids.length) {
+			this.ids = Arrays.copyOf(this.ids, this.size + (this.size >> 1) + 1);
+		}
+		System.arraycopy(this.ids, position, this.ids, position + 1, this.size - position);
+		this.ids[position] = id;
+		this.size++;
+	}
+
+	/**
+	 * @param id An id to remove.
+	 * @return True if the id was present.
+	 */
+	boolean remove(long id) {
+		int position = Arrays.binarySearch(this.ids, 0, this.size, id);
+		if (position < 0) {
+			return false;
+		}
+		System.arraycopy(this.ids, position + 1, this.ids, position, this.size - position - 1);
+		this.size--;
+		return true;
+	}
+
+	/**
+	 * @return A copy of the ids, ascending.
+	 */
+	long[] toArray() {
+		return Arrays.copyOf(this.ids, this.size);
+	}
+
+	/**
+	 * Keep only the candidate ids also in this set.
+	 *
+	 * @param candidates Sorted candidate ids, overwritten with the survivors.
+	 * @param candidateCount The number of candidates.
+	 * @return The number of survivors.
+	 */
+	int retainAll(long[] candidates, int candidateCount) {
+		int kept = 0;
+		int i = 0;
+		for (int c = 0; c < candidateCount; c++) {
+			long candidate = candidates[c];
+			while (i < this.size && this.ids[i] < candidate) {
+				i++;
+			}
+			if (i == this.size) {
+				break;
+			}
+			if (this.ids[i] == candidate) {
+				candidates[kept++] = candidate;
+			}
+		}
+		return kept;
+	}
+
+}
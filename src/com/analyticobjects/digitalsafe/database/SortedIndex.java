@@ -0,0 +1,55 @@
+package com.analyticobjects.digitalsafe.database;
+
+import java.util.LinkedHashSet;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A secondary index that also answers range queries, e.g. all the passwords expiring before a date.
+ *
+ * @author Joel Bondurant
+ * @param <T> The entry type.
+ * @param <K> The key type.
+ * @since 2013.11
+ */
+public abstract class SortedIndex<T extends TableEntry, K extends Comparable<K>> extends SecondaryIndex<T, K> {
+
+	/**
+	 * @param name The index name, unique within its table.
+	 */
+	protected SortedIndex(String name) {
+		super(name, new TreeMap<K, SortedIds>());
+	}
+
+	/**
+	 * @param from The lowest key, inclusive, or null for no lower bound.
+	 * @param to The highest key, exclusive, or null for no upper bound.
+	 * @return The ids of the entries with a key in the range, in key order.
+	 */
+	synchronized long[] findRange(K from, K to) {
+		NavigableMap<K, SortedIds> idsByKey = (NavigableMap<K, SortedIds>) getIdsByKey();
+		if (from != null && to != null && from.compareTo(to) >= 0) {
+			return new long[0];
+		}
+		if (from != null) {
+			idsByKey = idsByKey.tailMap(from, true);
+		}
+		if (to != null) {
+			idsByKey = idsByKey.headMap(to, false);
+		}
+		Set<Long> rangeIds = new LinkedHashSet<>();
+		for (SortedIds ids : idsByKey.values()) {
+			for (int i = 0; i < ids.size; i++) {
+				rangeIds.add(ids.ids[i]);
+			}
+		}
+		long[] orderedIds = new long[rangeIds.size()];
+		int i = 0;
+		for (Long id : rangeIds) {
+			orderedIds[i++] = id;
+		}
+		return orderedIds;
+	}
+
+}
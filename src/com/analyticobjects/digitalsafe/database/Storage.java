@@ -0,0 +1,95 @@
+package com.analyticobjects.digitalsafe.database;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+/**
+ * The persistence layer under SecureDatabase. A storage is a flat map of keys to opaque (already encrypted) byte
+ * records. Records written with put become visible to readers atomically on commit.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public interface Storage extends Closeable {
+
+	/**
+	 * @return True if no records are stored.
+	 * @throws IOException
+	 */
+	public boolean isEmpty() throws IOException;
+
+	/**
+	 * @param key A record key.
+	 * @return True if a committed record exists for the key.
+	 * @throws IOException
+	 */
+	public boolean contains(String key) throws IOException;
+
+	/**
+	 * @return The keys of all committed records.
+	 * @throws IOException
+	 */
+	public Set<String> keys() throws IOException;
+
+	/**
+	 * Read a committed record.
+	 *
+	 * @param key A record key.
+	 * @return The record bytes, or null if there is no such record.
+	 * @throws IOException
+	 */
+	public byte[] read(String key) throws IOException;
+
+	/**
+	 * Read a committed record without copying it where the storage allows, e.g. straight out of a memory mapping.
+	 * The buffer is read only, and keeps the record as read even if the storage is cleared meanwhile.
+	 *
+	 * @param key A record key.
+	 * @return A buffer over the record bytes, or null if there is no such record.
+	 * @throws IOException
+	 */
+	public ByteBuffer readBuffer(String key) throws IOException;
+
+	/**
+	 * Stage a record to be written on the next commit, replacing any record with the same key.
+	 *
+	 * @param key A record key.
+	 * @param value The record bytes.
+	 * @throws IOException
+	 */
+	public void put(String key, byte[] value) throws IOException;
+
+	/**
+	 * Stage the removal of a record on the next commit. Until then the record can still be read.
+	 *
+	 * @param key A record key.
+	 * @throws IOException
+	 */
+	public void remove(String key) throws IOException;
+
+	/**
+	 * Drop a staged put or removal, e.g. of a chunk of a cancelled file transfer; the next commit leaves the committed
+	 * record, if any, as it is.
+	 *
+	 * @param key A record key.
+	 * @throws IOException
+	 */
+	public void discard(String key) throws IOException;
+
+	/**
+	 * Make all staged records durable and visible.
+	 *
+	 * @throws IOException
+	 */
+	public void commit() throws IOException;
+
+	/**
+	 * Remove all records.
+	 *
+	 * @throws IOException
+	 */
+	public void clear() throws IOException;
+
+}
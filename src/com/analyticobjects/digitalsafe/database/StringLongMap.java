@@ -0,0 +1,200 @@
+package com.analyticobjects.digitalsafe.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A map from strings to primitive longs, for index ids to entry ids. Like LongKeyMap: parallel arrays with open
+ * addressing in separately locked segments, no boxed values and no node per entry.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+final class StringLongMap {
+
+	private static final int SEGMENT_BITS = 4;
+	private final Segment[] segments;
+
+	StringLongMap() {
+		this.segments = new Segment[1 << SEGMENT_BITS];
+		for (int i = 0; i < this.segments.length; i++) {
+			this.segments[i] = new Segment();
+		}
+	}
+
+	private static long hash(String key) {
+		return LongKeyMap.mix(key.hashCode());
+	}
+
+	private Segment segmentFor(long hash) {
+		return this.segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+	}
+
+	/**
+	 * @param key A key.
+	 * @param missing The value to return if the key is absent.
+	 * @return The value for the key, or missing.
+	 */
+	long get(String key, long missing) {
+		long hash = hash(key);
+		return segmentFor(hash).get(key, hash, missing);
+	}
+
+	boolean containsKey(String key) {
+		long hash = hash(key);
+		return segmentFor(hash).contains(key, hash);
+	}
+
+	/**
+	 * @param key A key, not null.
+	 * @param value A value.
+	 */
+	void put(String key, long value) {
+		long hash = hash(key);
+		segmentFor(hash).put(key, hash, value);
+	}
+
+	/**
+	 * @param key A key.
+	 * @return True if the key was present.
+	 */
+	boolean remove(String key) {
+		long hash = hash(key);
+		return segmentFor(hash).remove(key, hash);
+	}
+
+	int size() {
+		int size = 0;
+		for (Segment segment : this.segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return A snapshot of the keys, sorted.
+	 */
+	List<String> keys() {
+		List<String> keys = new ArrayList<>();
+		for (Segment segment : this.segments) {
+			segment.copyKeys(keys);
+		}
+		Collections.sort(keys);
+		return keys;
+	}
+
+	/**
+	 * One lock's worth of the map: an open addressing table, kept at most three quarters full.
+	 */
+	private static final class Segment {
+
+		private String[] keys; // null marks an empty slot.
+		private long[] values;
+		private int size;
+
+		Segment() {
+			this.keys = new String[8];
+			this.values = new long[8];
+			this.size = 0;
+		}
+
+		synchronized int size() {
+			return this.size;
+		}
+
+		private int slot(long hash) {
+			return (int) hash & (this.keys.length - 1);
+		}
+
+		synchronized long get(String key, long hash, long missing) {
+			int mask = this.keys.length - 1;
+			for (int i = slot(hash); this.keys[i] != null; i = (i + 1) & mask) {
+				if (this.keys[i].equals(key)) {
+					return this.values[i];
+				}
+			}
+			return missing;
+		}
+
+		synchronized boolean contains(String key, long hash) {
+			int mask = this.keys.length - 1;
+			for (int i = slot(hash); this.keys[i] != null; i = (i + 1) & mask) {
+				if (this.keys[i].equals(key)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		synchronized void put(String key, long hash, long value) {
+			int mask = this.keys.length - 1;
+			int i = slot(hash);
+			for (; this.keys[i] != null; i = (i + 1) & mask) {
+				if (this.keys[i].equals(key)) {
+					this.values[i] = value;
+					return;
+				}
+			}
+			this.keys[i] = key;
+			this.values[i] = value;
+			this.size++;
+			if (this.size * 4 > this.keys.length * 3) {
+				grow();
+			}
+		}
+
+		private void grow() {
+			String[] oldKeys = this.keys;
+			long[] oldValues = this.values;
+			this.keys = new String[oldKeys.length * 2];
+			this.values = new long[oldValues.length * 2];
+			int mask = this.keys.length - 1;
+			for (int j = 0; j < oldKeys.length; j++) {
+				if (oldKeys[j] == null) {
+					continue;
+				}
+				int i = slot(hash(oldKeys[j]));
+				while (this.keys[i] != null) {
+					i = (i + 1) & mask;
+				}
+				this.keys[i] = oldKeys[j];
+				this.values[i] = oldValues[j];
+			}
+		}
+
+		synchronized boolean remove(String key, long hash) {
+			int mask = this.keys.length - 1;
+			int i = slot(hash);
+			while (this.keys[i] != null && !this.keys[i].equals(key)) {
+				i = (i + 1) & mask;
+			}
+			if (this.keys[i] == null) {
+				return false;
+			}
+			int gap = i; // see LongKeyMap.Segment.remove.
+			for (int j = (gap + 1) & mask; this.keys[j] != null; j = (j + 1) & mask) {
+				int home = slot(hash(this.keys[j]));
+				boolean homeBetweenGapAndJ = (gap <= j) ? (gap < home && home <= j) : (gap < home || home <= j);
+				if (!homeBetweenGapAndJ) {
+					this.keys[gap] = this.keys[j];
+					this.values[gap] = this.values[j];
+					gap = j;
+				}
+			}
+			this.keys[gap] = null;
+			this.values[gap] = 0L;
+			this.size--;
+			return true;
+		}
+
+		synchronized void copyKeys(List<String> into) {
+			for (String key : this.keys) {
+				if (key != null) {
+					into.add(key);
+				}
+			}
+		}
+	}
+
+}
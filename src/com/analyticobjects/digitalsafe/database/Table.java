@@ -26,6 +26,14 @@ public interface Table<T extends TableEntry> extends Serializable {
 	 * @param entry The entry to add.
 	 */
 	public void putEntry(T entry);
+
+	/**
+	 * Remove an entry from the table.
+	 *
+	 * @param id The unique primary identifier for the entry to remove.
+	 * @return The removed entry, or null if there was none.
+	 */
+	public T removeEntry(Long id);
 	
 	/**
 	 * @return A list of all entries in the table.
@@ -0,0 +1,78 @@
+package com.analyticobjects.digitalsafe.database;
+
+/**
+ * A put or removal of one table entry, as written to the journal. Changes are replayed onto the master index by table
+ * name, so replaying a change twice leaves the table as replaying it once.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public final class TableChange {
+
+	private final String tableName;
+	private final TableEntry entry;
+	private final long removedId;
+
+	private TableChange(String tableName, TableEntry entry, long removedId) {
+		this.tableName = tableName;
+		this.entry = entry;
+		this.removedId = removedId;
+	}
+
+	/**
+	 * @param tableName The name of the table the entry was put in.
+	 * @param entry The entry put, with its id assigned.
+	 * @return The change.
+	 */
+	public static TableChange put(String tableName, TableEntry entry) {
+		if (entry.getId() == null || entry.getId() == 0L) {
+			throw new IllegalArgumentException("Journal an entry after putting it, once it has an id.");
+		}
+		return new TableChange(tableName, entry, 0L);
+	}
+
+	/**
+	 * @param tableName The name of the table the entry was removed from.
+	 * @param id The id of the removed entry.
+	 * @return The change.
+	 */
+	public static TableChange remove(String tableName, long id) {
+		return new TableChange(tableName, null, id);
+	}
+
+	String getTableName() {
+		return this.tableName;
+	}
+
+	/**
+	 * @return The entry put, or null for a removal.
+	 */
+	TableEntry getEntry() {
+		return this.entry;
+	}
+
+	long getRemovedId() {
+		return this.removedId;
+	}
+
+	/**
+	 * Apply the change to the table of the same name.
+	 *
+	 * @param masterIndex A master index.
+	 * @return True if the master index has the table.
+	 */
+	@SuppressWarnings("unchecked")
+	boolean applyTo(MasterIndex masterIndex) {
+		Table<TableEntry> table = (Table<TableEntry>) masterIndex.getTable(this.tableName);
+		if (table == null) {
+			return false;
+		}
+		if (this.entry == null) {
+			table.removeEntry(this.removedId);
+		} else {
+			table.putEntry(this.entry);
+		}
+		return true;
+	}
+
+}
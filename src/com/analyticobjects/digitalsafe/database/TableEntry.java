@@ -1,5 +1,6 @@
 package com.analyticobjects.digitalsafe.database;
 
+import com.analyticobjects.utility.BinaryWriter;
 import java.io.Serializable;
 
 /**
@@ -12,5 +13,12 @@ public interface TableEntry extends Serializable {
 	
 	public Long getId();
 	public void setId(Long id);
+
+	/**
+	 * Write the entry fields for MasterIndexCodec; the registered EntryDecoder reads them back.
+	 *
+	 * @param out The encoder to write to.
+	 */
+	public void encode(BinaryWriter out);
 	
 }
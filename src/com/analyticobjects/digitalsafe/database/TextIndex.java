@@ -0,0 +1,210 @@
+package com.analyticobjects.digitalsafe.database;
+
+import com.analyticobjects.utility.BinaryReader;
+import com.analyticobjects.utility.BinaryWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An inverted index from words to the ids of the entries containing them. Words are runs of letters and digits,
+ * lower cased. Each word's postings are a sorted array of entry ids, so a query is an intersection of a few sorted
+ * arrays, and each entry's words are kept so it can be re-indexed when it changes. The index lives inside its table's
+ * encrypted record.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+final class TextIndex {
+
+	private final Map<String, Postings> postingsByTerm;
+	private final Map<Long, String[]> termsByEntry;
+
+	TextIndex() {
+		this.postingsByTerm = new TreeMap<>();
+		this.termsByEntry = new HashMap<>();
+	}
+
+	/**
+	 * @param text Some text.
+	 * @return The distinct lower cased words in the text, in order of appearance.
+	 */
+	static Set<String> tokenize(String text) {
+		Set<String> terms = new LinkedHashSet<>();
+		if (text == null) {
+			return terms;
+		}
+		StringBuilder term = new StringBuilder();
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (Character.isLetterOrDigit(c)) {
+				term.append(Character.toLowerCase(c));
+			} else if (term.length() > 0) {
+				terms.add(term.toString());
+				term.setLength(0);
+			}
+		}
+		if (term.length() > 0) {
+			terms.add(term.toString());
+		}
+		return terms;
+	}
+
+	/**
+	 * Index an entry, replacing whatever it was indexed under before.
+	 *
+	 * @param id The entry id.
+	 * @param text The entry search text.
+	 */
+	synchronized void put(long id, String text) {
+		remove(id);
+		Set<String> terms = tokenize(text);
+		String[] entryTerms = new String[terms.size()];
+		int i = 0;
+		for (String term : terms) {
+			Postings postings = this.postingsByTerm.get(term);
+			if (postings == null) {
+				postings = new Postings(term);
+				this.postingsByTerm.put(term, postings);
+			}
+			postings.add(id);
+			entryTerms[i++] = postings.term;
+		}
+		this.termsByEntry.put(id, entryTerms);
+	}
+
+	/**
+	 * Drop an entry from the index.
+	 *
+	 * @param id The entry id.
+	 */
+	synchronized void remove(long id) {
+		String[] entryTerms = this.termsByEntry.remove(id);
+		if (entryTerms == null) {
+			return;
+		}
+		for (String term : entryTerms) {
+			Postings postings = this.postingsByTerm.get(term);
+			if (postings != null && postings.remove(id) && postings.size == 0) {
+				this.postingsByTerm.remove(term);
+			}
+		}
+	}
+
+	/**
+	 * @param query Words to find.
+	 * @return The ids of the entries containing every word of the query, ascending. Empty for an empty query.
+	 */
+	synchronized long[] search(String query) {
+		Set<String> terms = tokenize(query);
+		List<Postings> matches = new ArrayList<>(terms.size());
+		for (String term : terms) {
+			Postings postings = this.postingsByTerm.get(term);
+			if (postings == null) {
+				return new long[0];
+			}
+			matches.add(postings);
+		}
+		if (matches.isEmpty()) {
+			return new long[0];
+		}
+		Collections.sort(matches, new Comparator<Postings>() {
+			@Override
+			public int compare(Postings a, Postings b) {
+				return Integer.compare(a.size, b.size);
+			}
+		});
+		long[] ids = matches.get(0).toArray();
+		int size = ids.length;
+		for (int m = 1; m < matches.size() && size > 0; m++) {
+			size = matches.get(m).retainAll(ids, size);
+		}
+		return Arrays.copyOf(ids, size);
+	}
+
+	/**
+	 * @return The number of distinct words indexed.
+	 */
+	synchronized int termCount() {
+		return this.postingsByTerm.size();
+	}
+
+	/**
+	 * Write the postings, word by word in sorted order, ids delta encoded.
+	 *
+	 * @param out The encoder to write to.
+	 */
+	synchronized void encode(BinaryWriter out) {
+		out.writeVarInt(this.postingsByTerm.size());
+		for (Postings postings : this.postingsByTerm.values()) {
+			out.writeString(postings.term);
+			out.writeVarInt(postings.size);
+			long previousId = 0L;
+			for (int i = 0; i < postings.size; i++) {
+				out.writeVarLong(postings.ids[i] - previousId);
+				previousId = postings.ids[i];
+			}
+		}
+	}
+
+	/**
+	 * Read an index written by encode, rebuilding each entry's word list from the postings.
+	 *
+	 * @param in The encoded index.
+	 * @return The decoded index.
+	 * @throws IOException If the index is malformed.
+	 */
+	static TextIndex decode(BinaryReader in) throws IOException {
+		TextIndex textIndex = new TextIndex();
+		Map<Long, List<String>> termLists = new HashMap<>();
+		int termCount = in.readVarInt();
+		for (int t = 0; t < termCount; t++) {
+			Postings postings = new Postings(in.readString());
+			int size = in.readVarInt();
+			postings.ids = new long[Math.max(1, size)];
+			long id = 0L;
+			for (int i = 0; i < size; i++) {
+				long delta = in.readVarLong();
+				if (delta <= 0L) {
+					throw new IOException("Unsorted postings: " + postings.term);
+				}
+				id += delta;
+				postings.ids[i] = id;
+				List<String> termList = termLists.get(id);
+				if (termList == null) {
+					termList = new ArrayList<>();
+					termLists.put(id, termList);
+				}
+				termList.add(postings.term);
+			}
+			postings.size = size;
+			textIndex.postingsByTerm.put(postings.term, postings);
+		}
+		for (Map.Entry<Long, List<String>> termList : termLists.entrySet()) {
+			textIndex.termsByEntry.put(termList.getKey(), termList.getValue().toArray(new String[termList.getValue().size()]));
+		}
+		return textIndex;
+	}
+
+	/**
+	 * The sorted ids of the entries containing a word.
+	 */
+	private static final class Postings extends SortedIds {
+
+		private final String term;
+
+		Postings(String term) {
+			super();
+			this.term = term;
+		}
+	}
+
+}
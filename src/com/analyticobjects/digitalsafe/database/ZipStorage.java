@@ -0,0 +1,115 @@
+package com.analyticobjects.digitalsafe.database;
+
+import com.analyticobjects.utility.ByteUtility;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Read only access to the original zip archive safe format, kept to migrate old safes to SegmentLogStorage.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public final class ZipStorage implements Storage {
+
+	private static final int ZIP_MAGIC = 0x504b0304; // PK\003\004
+	private final ZipFile zipFile;
+
+	/**
+	 * Open a legacy zip safe.
+	 *
+	 * @param zipPath The path of the zip archive.
+	 * @throws IOException
+	 */
+	public ZipStorage(Path zipPath) throws IOException {
+		this.zipFile = new ZipFile(zipPath.toFile());
+	}
+
+	/**
+	 * @param path A safe file path.
+	 * @return True if the file is in the legacy zip format.
+	 * @throws IOException
+	 */
+	public static boolean isZipFile(Path path) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+			return (file.length() >= 4) && (file.readInt() == ZIP_MAGIC);
+		}
+	}
+
+	@Override
+	public boolean isEmpty() throws IOException {
+		return this.zipFile.size() == 0;
+	}
+
+	@Override
+	public boolean contains(String key) throws IOException {
+		return this.zipFile.getEntry(key) != null;
+	}
+
+	@Override
+	public Set<String> keys() throws IOException {
+		Set<String> keys = new HashSet<>();
+		Enumeration<? extends ZipEntry> entries = this.zipFile.entries();
+		while (entries.hasMoreElements()) {
+			keys.add(entries.nextElement().getName());
+		}
+		return Collections.unmodifiableSet(keys);
+	}
+
+	@Override
+	public byte[] read(String key) throws IOException {
+		ZipEntry zipEntry = this.zipFile.getEntry(key);
+		if (zipEntry == null) {
+			return null;
+		}
+		try (InputStream entryInStream = this.zipFile.getInputStream(zipEntry)) {
+			return ByteUtility.readFully(entryInStream);
+		}
+	}
+
+	@Override
+	public ByteBuffer readBuffer(String key) throws IOException {
+		byte[] value = read(key);
+		return (value == null) ? null : ByteBuffer.wrap(value).asReadOnlyBuffer();
+	}
+
+	@Override
+	public void put(String key, byte[] value) throws IOException {
+		throw new UnsupportedOperationException("Zip safes are read only.");
+	}
+
+	@Override
+	public void remove(String key) throws IOException {
+		throw new UnsupportedOperationException("Zip safes are read only.");
+	}
+
+	@Override
+	public void discard(String key) throws IOException {
+		throw new UnsupportedOperationException("Zip safes are read only.");
+	}
+
+	@Override
+	public void commit() throws IOException {
+		throw new UnsupportedOperationException("Zip safes are read only.");
+	}
+
+	@Override
+	public void clear() throws IOException {
+		throw new UnsupportedOperationException("Zip safes are read only.");
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.zipFile.close();
+	}
+
+}
@@ -1,5 +1,8 @@
 package com.analyticobjects.digitalsafe.net;
 
+import com.analyticobjects.utility.BinaryReader;
+import com.analyticobjects.utility.BinaryWriter;
+import java.io.IOException;
 import java.io.Serializable;
 import java.net.InetAddress;
 
@@ -10,6 +13,8 @@ import java.net.InetAddress;
  * @since 2013.10
  */
 public class ConnectionEventStatistics implements Serializable, Comparable {
+
+	private static final long serialVersionUID = -3339947707712164423L;
 	
 	private final InetAddress iNetAddress;
 	private long startTime;
@@ -25,6 +30,34 @@ public class ConnectionEventStatistics implements Serializable, Comparable {
 		this.bytesReceived = 0L;
 	}
 	
+	/**
+	 * Write the stats for a peer encoding.
+	 *
+	 * @param out The encoder to write to.
+	 */
+	void encode(BinaryWriter out) {
+		out.writeBytes((this.iNetAddress == null) ? null : this.iNetAddress.getAddress());
+		out.writeSignedVarLong(this.startTime);
+		out.writeSignedVarLong(this.endTime);
+		out.writeVarLong(this.bytesSent);
+		out.writeVarLong(this.bytesReceived);
+	}
+
+	/**
+	 * @param in Stats written by encode.
+	 * @return The decoded stats.
+	 * @throws IOException
+	 */
+	static ConnectionEventStatistics decode(BinaryReader in) throws IOException {
+		byte[] address = in.readBytes();
+		ConnectionEventStatistics ces = new ConnectionEventStatistics((address == null) ? null : InetAddress.getByAddress(address));
+		ces.startTime = in.readSignedVarLong();
+		ces.endTime = in.readSignedVarLong();
+		ces.bytesSent = in.readVarLong();
+		ces.bytesReceived = in.readVarLong();
+		return ces;
+	}
+
 	public void startTime() {
 		this.startTime = System.nanoTime();
 	}
@@ -1,5 +1,8 @@
 package com.analyticobjects.digitalsafe.net;
 
+import com.analyticobjects.utility.BinaryReader;
+import com.analyticobjects.utility.BinaryWriter;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.LinkedList;
 import java.util.Deque;
@@ -12,6 +15,8 @@ import java.util.Deque;
  * @since 2013.10
  */
 public class ConnectionStatistics implements Serializable {
+
+	private static final long serialVersionUID = -1011789182731618609L;
 	
 	private static final int MAX_RECORDS = 1000;
 	private final Deque<ConnectionEventStatistics> connectionEventStats;
@@ -20,6 +25,32 @@ public class ConnectionStatistics implements Serializable {
 		this.connectionEventStats = new LinkedList<>();
 	}
 	
+	/**
+	 * Write the stats for a peer encoding.
+	 *
+	 * @param out The encoder to write to.
+	 */
+	void encode(BinaryWriter out) {
+		out.writeVarInt(this.connectionEventStats.size());
+		for (ConnectionEventStatistics ces : this.connectionEventStats) {
+			ces.encode(out);
+		}
+	}
+
+	/**
+	 * @param in Stats written by encode.
+	 * @return The decoded stats.
+	 * @throws IOException
+	 */
+	static ConnectionStatistics decode(BinaryReader in) throws IOException {
+		ConnectionStatistics connectionStatistics = new ConnectionStatistics();
+		int count = in.readVarInt();
+		for (int i = 0; i < count; i++) {
+			connectionStatistics.add(ConnectionEventStatistics.decode(in));
+		}
+		return connectionStatistics;
+	}
+
 	public void add(ConnectionEventStatistics ces) {
 		if (this.connectionEventStats.size() >= MAX_RECORDS) {
 			this.connectionEventStats.pollFirst();
@@ -15,6 +15,8 @@ import java.security.NoSuchAlgorithmException;
  */
 public final class DHTKey implements Comparable, Serializable {
 
+	private static final long serialVersionUID = -7540311063829846016L;
+
 	public static final int SIZE_IN_BITS = 256;
 	public static final int SIZE_IN_BYTES = 32;
 	public static final int BYTE_SIZE = 8;
@@ -56,6 +58,29 @@ public final class DHTKey implements Comparable, Serializable {
 		return dhtKey;
 	}
 
+	/**
+	 * @return A copy of the raw key bytes.
+	 */
+	public byte[] toBytes() {
+		return this.value.clone();
+	}
+
+	/**
+	 * Rebuild a key from its raw bytes.
+	 *
+	 * @param keyBytes Raw key bytes from toBytes.
+	 * @return The key.
+	 * @throws InvalidKeyException If the bytes are the wrong length.
+	 */
+	public static DHTKey fromBytes(byte[] keyBytes) throws InvalidKeyException {
+		if (keyBytes == null || keyBytes.length != SIZE_IN_BYTES) {
+			throw new InvalidKeyException("Key length verification failed.");
+		}
+		DHTKey dhtKey = new DHTKey();
+		dhtKey.value = keyBytes.clone();
+		return dhtKey;
+	}
+
 	/**
 	 * This DHTKey ordering is based on simple mapping to base two positive integers.
 	 *
@@ -1,12 +1,19 @@
 package com.analyticobjects.digitalsafe.net;
 
 import com.analyticobjects.utility.KeyPairUtility;
+import com.analyticobjects.digitalsafe.database.EntryDecoder;
 import com.analyticobjects.digitalsafe.database.IndexedTableEntry;
+import com.analyticobjects.utility.BinaryReader;
+import com.analyticobjects.utility.BinaryWriter;
+import java.io.IOException;
 import java.security.InvalidKeyException;
+import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
 import java.util.UUID;
 
 /**
@@ -17,6 +24,8 @@ import java.util.UUID;
  */
 public class Peer implements Node, IndexedTableEntry {
 
+	private static final long serialVersionUID = -5312114982962459804L;
+
 	private Long id;
 	private UUID guid;
 	private DHTKey dhtKey;
@@ -25,6 +34,56 @@ public class Peer implements Node, IndexedTableEntry {
 	private ConnectionStatistics connStats;
 	
 	public Peer() {}
+
+	/**
+	 * Decode a peer written by encode.
+	 *
+	 * @param in The encoded fields.
+	 * @throws IOException
+	 */
+	private Peer(BinaryReader in) throws IOException {
+		long encodedId = in.readVarLong();
+		this.id = (encodedId == 0L) ? null : encodedId;
+		this.guid = in.readUUID();
+		try {
+			byte[] dhtKeyBytes = in.readBytes();
+			this.dhtKey = (dhtKeyBytes == null) ? null : DHTKey.fromBytes(dhtKeyBytes);
+			String publicKeyAlgorithm = in.readString();
+			byte[] publicKeyBytes = in.readBytes();
+			if (publicKeyAlgorithm != null && publicKeyBytes != null) {
+				this.publicKey = KeyFactory.getInstance(publicKeyAlgorithm).generatePublic(new X509EncodedKeySpec(publicKeyBytes));
+			}
+		} catch (InvalidKeyException | NoSuchAlgorithmException | InvalidKeySpecException ex) {
+			throw new IOException(ex.getLocalizedMessage(), ex);
+		}
+		this.self = in.readNullableBoolean();
+		this.syncNode = in.readNullableBoolean();
+		this.backupNode = in.readNullableBoolean();
+		this.connStats = in.readBoolean() ? ConnectionStatistics.decode(in) : null;
+	}
+
+	public static final EntryDecoder<Peer> DECODER = new EntryDecoder<Peer>() {
+		@Override
+		public Peer decode(BinaryReader in, int version) throws IOException {
+			return new Peer(in);
+		}
+	};
+
+	@Override
+	public void encode(BinaryWriter out) {
+		out.writeVarLong((this.id == null) ? 0L : this.id);
+		out.writeUUID(this.guid);
+		out.writeBytes((this.dhtKey == null) ? null : this.dhtKey.toBytes());
+		out.writeString((this.publicKey == null) ? null : this.publicKey.getAlgorithm());
+		out.writeBytes((this.publicKey == null) ? null : this.publicKey.getEncoded());
+		out.writeNullableBoolean(this.self);
+		out.writeNullableBoolean(this.syncNode);
+		out.writeNullableBoolean(this.backupNode);
+		out.writeBoolean(this.connStats != null);
+		if (this.connStats != null) {
+			this.connStats.encode(out);
+		}
+	}
 	
 	public PrivateKey initSelf() throws NoSuchAlgorithmException, InterruptedException, InvalidKeyException {
 		this.guid = UUID.randomUUID();
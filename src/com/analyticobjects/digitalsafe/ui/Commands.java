@@ -1,29 +1,63 @@
 package com.analyticobjects.digitalsafe.ui;
 
 import com.analyticobjects.digitalsafe.containers.DigitalSafe;
+import com.analyticobjects.digitalsafe.containers.DigitalSafeAsync;
 import com.analyticobjects.digitalsafe.containers.Note;
 import com.analyticobjects.digitalsafe.containers.PasswordNote;
 import com.analyticobjects.digitalsafe.exceptions.PassphraseExpiredException;
 import com.analyticobjects.digitalsafe.ui.MainFrame.Context;
 import java.io.File;
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.concurrent.Future;
 import javax.swing.JFileChooser;
 
 /**
- * Commands.
+ * Commands. Commands that touch the safe run on its I/O thread through DigitalSafeAsync and update the ui from
+ * callbacks on the event dispatch thread, so the ui never waits on encryption or disk.
  *
  * @author Joel Bondurant
  * @since 2013.09
  */
 public class Commands {
 
-	static void execute(String command, Context context) throws PassphraseExpiredException {
+	/**
+	 * A callback that ends the main frame's progress indicator for its operation, and reports progress and failures
+	 * to the main frame.
+	 */
+	private abstract static class UiCallback<V> implements DigitalSafeAsync.ProgressCallback<V> {
+
+		@Override
+		public final void completed(V result) {
+			MainFrame.getInstance().taskEnded();
+			succeeded(result);
+		}
+
+		protected abstract void succeeded(V result);
+
+		@Override
+		public void failed(Throwable cause) {
+			MainFrame.getInstance().taskEnded();
+			MainFrame.getInstance().operationFailed(cause);
+		}
+
+		@Override
+		public void progressed(long done, long total) {
+			MainFrame.getInstance().taskProgressed(done, total);
+		}
+	}
+
+	/**
+	 * Show a running safe operation in the main frame until its callback ends it.
+	 */
+	private static void track(String description, Future<?> task) {
+		MainFrame.getInstance().taskStarted(description, task);
+	}
+
+	static void execute(String command, Context context) {
 		command = command.toLowerCase();
-		MainFrame mainFrame = MainFrame.getInstance();
-		DigitalSafe digitalSafe = mainFrame.getDigitalSafe();
+		final MainFrame mainFrame = MainFrame.getInstance();
+		DigitalSafeAsync digitalSafe = mainFrame.getDigitalSafeAsync();
 		// context independent commands.
 		switch (command) {
 			case "wipe":
@@ -31,8 +65,12 @@ public class Commands {
 			case "clean":
 			case "clear":
 			case "reset": {
-				digitalSafe.clear();
-				mainFrame.lock();
+				track("Resetting the safe", digitalSafe.clear(new UiCallback<Void>() {
+					@Override
+					protected void succeeded(Void result) {
+						mainFrame.lock();
+					}
+				}));
 				break;
 			}
 			case "q":
@@ -66,49 +104,193 @@ public class Commands {
 		}
 	}
 
-	private static void noteCommand(DigitalSafe digitalSafe, String command) throws PassphraseExpiredException {
+	private static void noteCommand(DigitalSafeAsync digitalSafe, String command) {
 		if (command.equals("new") || command.equals("add")) {
 			NotePanel notePanel = new NotePanel();
 			MainFrame.getInstance().setNotesPanel(notePanel);
 		} else if (command.equals("save")) {
 			Note noteToSave = MainFrame.getInstance().getNoteFromNotePanel();
-			digitalSafe.putNote(noteToSave);
-			MainFrame.getInstance().setNotesPanel(null);
+			track("Saving note", digitalSafe.putNote(noteToSave, new UiCallback<Void>() {
+				@Override
+				protected void succeeded(Void result) {
+					MainFrame.getInstance().setNotesPanel(null);
+				}
+			}));
 		} else if (command.startsWith("get ") || command.startsWith("load ") || command.startsWith("open ")) {
 			String title = command.substring(4).trim();
-			Note aNote = digitalSafe.getNote(title);
-			if (aNote == null) {
-				MainFrame.getInstance().setNotesPanel(null);
-				return;
-			}
-			NotePanel notePanel = new NotePanel();
-			notePanel.fromNote(aNote);
-			MainFrame.getInstance().setNotesPanel(notePanel);
+			track("Opening note", digitalSafe.getNote(title, new UiCallback<Note>() {
+				@Override
+				protected void succeeded(Note aNote) {
+					if (aNote == null) {
+						MainFrame.getInstance().setNotesPanel(null);
+						return;
+					}
+					NotePanel notePanel = new NotePanel();
+					notePanel.fromNote(aNote);
+					MainFrame.getInstance().setNotesPanel(notePanel);
+				}
+			}));
+		} else if (command.startsWith("delete ")) {
+			track("Deleting note", digitalSafe.deleteNote(command.substring(7).trim(), new UiCallback<Boolean>() {
+				@Override
+				protected void succeeded(Boolean deleted) {
+					MainFrame.getInstance().setNotesPanel(null);
+				}
+			}));
+		} else if (command.startsWith("find ")) {
+			track("Finding notes", digitalSafe.findNoteTitles(command.substring(5), new UiCallback<List<String>>() {
+				@Override
+				protected void succeeded(List<String> titles) {
+					MainFrame.getInstance().setNotesPanel(titleListing(titles));
+				}
+			}));
+		} else if (command.startsWith("search ")) {
+			String query = command.substring(7).trim();
+			track("Searching", digitalSafe.search(query, new UiCallback<List<Note>>() {
+				@Override
+				protected void succeeded(List<Note> notes) {
+					List<String[]> noteListing = new ArrayList<>();
+					for (Note aNote : notes) {
+						if (!(aNote instanceof PasswordNote)) {
+							noteListing.add(new String[]{aNote.getTitle()});
+						}
+					}
+					ListPanel listingPanel = new ListPanel();
+					listingPanel.setListing(noteListing);
+					MainFrame.getInstance().setNotesPanel(listingPanel);
+				}
+			}));
 		}
 	}
 
-	private static void passwordCommand(DigitalSafe digitalSafe, String command) throws PassphraseExpiredException {
+	private static void passwordCommand(DigitalSafeAsync digitalSafe, String command) {
 		if (command.equals("new") || command.equals("add")) {
 			PasswordNotePanel passwordNotePanel = new PasswordNotePanel();
 			MainFrame.getInstance().setPasswordNotesPanel(passwordNotePanel);
 		} else if (command.equals("save")) {
 			PasswordNote noteToSave = MainFrame.getInstance().getPasswordNoteFromPasswordNotePanel();
-			digitalSafe.putPasswordNote(noteToSave);
-			MainFrame.getInstance().setPasswordNotesPanel(null);
+			track("Saving password note", digitalSafe.putPasswordNote(noteToSave, new UiCallback<Void>() {
+				@Override
+				protected void succeeded(Void result) {
+					MainFrame.getInstance().setPasswordNotesPanel(null);
+				}
+			}));
 		} else if (command.startsWith("get ") || command.startsWith("load ") || command.startsWith("open ")) {
 			String title = command.substring(4).trim();
-			PasswordNote aNote = digitalSafe.getPasswordNote(title);
-			if (aNote == null) {
-				MainFrame.getInstance().setPasswordNotesPanel(null);
-				return;
+			track("Opening password note", digitalSafe.getPasswordNote(title, new UiCallback<PasswordNote>() {
+				@Override
+				protected void succeeded(PasswordNote aNote) {
+					if (aNote == null) {
+						MainFrame.getInstance().setPasswordNotesPanel(null);
+						return;
+					}
+					PasswordNotePanel passwordNotePanel = new PasswordNotePanel();
+					passwordNotePanel.fromPasswordNote(aNote);
+					MainFrame.getInstance().setPasswordNotesPanel(passwordNotePanel);
+				}
+			}));
+		} else if (command.startsWith("delete ")) {
+			track("Deleting password note", digitalSafe.deletePasswordNote(command.substring(7).trim(), new UiCallback<Boolean>() {
+				@Override
+				protected void succeeded(Boolean deleted) {
+					MainFrame.getInstance().setPasswordNotesPanel(null);
+				}
+			}));
+		} else if (command.equals("import")) {
+			JFileChooser jFileChooser = new JFileChooser();
+			if (jFileChooser.showOpenDialog(MainFrame.getInstance()) == JFileChooser.APPROVE_OPTION) {
+				track("Importing passwords", digitalSafe.importPasswordNotes(jFileChooser.getSelectedFile().toPath(), new UiCallback<Integer>() {
+					@Override
+					protected void succeeded(Integer importedCount) {
+						MainFrame.getInstance().setPasswordNotesPanel(null);
+					}
+				}));
 			}
-			PasswordNotePanel passwordNotePanel = new PasswordNotePanel();
-			passwordNotePanel.fromPasswordNote(aNote);
-			MainFrame.getInstance().setPasswordNotesPanel(passwordNotePanel);
+		} else if (command.startsWith("find ")) {
+			track("Finding password notes", digitalSafe.findPasswordNoteTitles(command.substring(5), new UiCallback<List<String>>() {
+				@Override
+				protected void succeeded(List<String> titles) {
+					MainFrame.getInstance().setPasswordNotesPanel(titleListing(titles));
+				}
+			}));
+		} else if (command.startsWith("search ")) {
+			String query = command.substring(7).trim();
+			track("Searching", digitalSafe.search(query, new UiCallback<List<Note>>() {
+				@Override
+				protected void succeeded(List<Note> notes) {
+					List<String[]> passwordNoteListing = new ArrayList<>();
+					for (Note aNote : notes) {
+						if (aNote instanceof PasswordNote) {
+							passwordNoteListing.add(new String[]{aNote.getTitle()});
+						}
+					}
+					ListPanel listingPanel = new ListPanel();
+					listingPanel.setListing(passwordNoteListing);
+					MainFrame.getInstance().setPasswordNotesPanel(listingPanel);
+				}
+			}));
 		}
 	}
 
-	private static void fileCommand(DigitalSafe digitalSafe, String command) throws PassphraseExpiredException {
+	private static ListPanel titleListing(List<String> titles) {
+		List<String[]> titleListing = new ArrayList<>();
+		for (String title : titles) {
+			titleListing.add(new String[]{title});
+		}
+		ListPanel listingPanel = new ListPanel();
+		listingPanel.setListing(titleListing);
+		return listingPanel;
+	}
+
+	/**
+	 * Autocomplete the title in a get, load or open command to the longest prefix shared by the matching titles.
+	 *
+	 * @param command A partially typed command.
+	 * @param context The tab the command is typed in.
+	 * @return The completed command, or the command as it was if there is nothing to complete.
+	 * @throws PassphraseExpiredException
+	 */
+	static String complete(String command, Context context) throws PassphraseExpiredException {
+		DigitalSafe digitalSafe = MainFrame.getInstance().getDigitalSafe();
+		for (String verb : new String[]{"get ", "load ", "open "}) {
+			if (!command.toLowerCase().startsWith(verb)) {
+				continue;
+			}
+			String partialTitle = command.substring(verb.length()).trim().toLowerCase();
+			List<String> titles;
+			switch (context) {
+				case Notes: {
+					titles = digitalSafe.findNoteTitles(partialTitle);
+					break;
+				}
+				case Passwords: {
+					titles = digitalSafe.findPasswordNoteTitles(partialTitle);
+					break;
+				}
+				default: {
+					return command;
+				}
+			}
+			String sharedPrefix = null;
+			for (String title : titles) {
+				if (!title.startsWith(partialTitle)) {
+					continue; // a near miss, not a completion.
+				}
+				if (sharedPrefix == null) {
+					sharedPrefix = title;
+				}
+				int length = 0;
+				while (length < sharedPrefix.length() && length < title.length() && sharedPrefix.charAt(length) == title.charAt(length)) {
+					length++;
+				}
+				sharedPrefix = sharedPrefix.substring(0, length);
+			}
+			return (sharedPrefix == null) ? command : command.substring(0, verb.length()) + sharedPrefix;
+		}
+		return command;
+	}
+
+	private static void fileCommand(DigitalSafeAsync digitalSafe, String command) {
 		if (command.equals("new") || command.equals("add")) {
 			JFileChooser jFileChooser = new JFileChooser();
 			jFileChooser.addActionListener(null);
@@ -116,23 +298,37 @@ public class Commands {
 			int returnVal = jFileChooser.showOpenDialog(mainFrame);
 			if (returnVal == JFileChooser.APPROVE_OPTION) {
 				File selectedFile = jFileChooser.getSelectedFile();
-				digitalSafe.putFile(selectedFile);
+				track("Storing file", digitalSafe.putFile(selectedFile, new UiCallback<Void>() {
+					@Override
+					protected void succeeded(Void result) {
+					}
+				}));
 			}
 		} else if (command.startsWith("get ") || command.startsWith("export ")) {
 			String fileName = command.substring(4).trim();
 			if (command.startsWith("export ")) {
 				fileName = command.substring(6).trim();
 			}
-			try {
-				digitalSafe.getFile(fileName);
-			} catch (IOException ex) {
-				Logger.getLogger(Commands.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
-			}
+			track("Exporting file", digitalSafe.getFile(fileName, new UiCallback<Void>() {
+				@Override
+				protected void succeeded(Void result) {
+				}
+			}));
+		} else if (command.startsWith("delete ")) {
+			track("Deleting file", digitalSafe.deleteFile(command.substring(7).trim(), new UiCallback<Boolean>() {
+				@Override
+				protected void succeeded(Boolean deleted) {
+				}
+			}));
 		} else if (command.equals("list") || command.equals("all") || command.equals("show")) {
-			List<String[]> fileListing = digitalSafe.listFiles();
-			ListPanel listingPanel = new ListPanel();
-			listingPanel.setListing(fileListing);
-			MainFrame.getInstance().setFilesPanel(listingPanel);
+			track("Listing files", digitalSafe.listFiles(new UiCallback<List<String[]>>() {
+				@Override
+				protected void succeeded(List<String[]> fileListing) {
+					ListPanel listingPanel = new ListPanel();
+					listingPanel.setListing(fileListing);
+					MainFrame.getInstance().setFilesPanel(listingPanel);
+				}
+			}));
 		}
 	}
 }
@@ -17,8 +17,13 @@ public class Help {
 		commandList.append("\te.g. get gmail.password\n");
 		commandList.append("PUT noteName noteMessage - Puts a new note in the database by exact name match.\n");
 		commandList.append("\te.g. put gmail.password S0m3thing!C@nn0tReca11\n");
-		commandList.append("FIND regex - Searches for notes (names and contents) matching the supplied regex.\n");
-		commandList.append("\te.g. find .+\n");
+		commandList.append("FIND partialName - Lists notes named starting with, or a typo or two away from, partialName.\n");
+		commandList.append("\te.g. find gmai (TAB after a partial GET name completes it)\n");
+		commandList.append("SEARCH words - Lists the notes whose title, tags or message contain all the words.\n");
+		commandList.append("\te.g. search bank login\n");
+		commandList.append("DELETE name - Deletes a note, password note or file by exact name match.\n");
+		commandList.append("\te.g. delete old.bank.password\n");
+		commandList.append("IMPORT - Imports the passwords in a CSV export of another password manager, on the passwords tab.\n");
 		commandList.append("RESET - Resets the database. All stored notes will be lost.\n");
 		commandList.append("Q, QUIT, EXIT - Exits TextSafe.\n");
 		COMMAND_LIST = commandList.toString();
@@ -1,16 +1,36 @@
 package com.analyticobjects.digitalsafe.ui;
 
 import com.analyticobjects.digitalsafe.containers.DigitalSafe;
+import com.analyticobjects.digitalsafe.containers.DigitalSafeAsync;
 import com.analyticobjects.digitalsafe.containers.Note;
 import com.analyticobjects.digitalsafe.containers.PasswordNote;
 import com.analyticobjects.digitalsafe.exceptions.InvalidPassphraseException;
 import com.analyticobjects.digitalsafe.exceptions.PassphraseExpiredException;
 import com.analyticobjects.digitalsafe.res.ResourceLoader;
 import com.analyticobjects.utility.LogUtility;
+import java.awt.BorderLayout;
 import java.awt.Component;
+import java.awt.EventQueue;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.swing.AbstractAction;
 import javax.swing.ImageIcon;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.KeyStroke;
+import javax.swing.Timer;
 
 /**
  * Some 1980's style ui.
@@ -22,18 +42,32 @@ public class MainFrame extends javax.swing.JFrame {
 
 	private static MainFrame singletonInstance;
 	private final DigitalSafe digitalSafe;
+	private final DigitalSafeAsync digitalSafeAsync;
+	private final List<Future<?>> runningTasks;
+	private JPanel taskPanel;
+	private JLabel taskLabel;
+	private JProgressBar taskProgressBar;
+	private Timer taskPanelTimer;
 	private static final Level LOGGING_LEVEL = Level.ALL;
+	private static final int TASK_PANEL_DELAY_MS = 300; // quick operations finish without flashing the panel.
 
 	/**
 	 * Creates new form MainFrame
 	 */
 	private MainFrame() {
 		this.digitalSafe = new DigitalSafe();
+		this.digitalSafeAsync = new DigitalSafeAsync(this.digitalSafe, new Executor() {
+			@Override
+			public void execute(Runnable callback) {
+				EventQueue.invokeLater(callback);
+			}
+		});
+		this.runningTasks = new ArrayList<>();
 		LogUtility.setLoggingLevelGlobally(LOGGING_LEVEL);
 		preInitComponents(); // lame structure needed due to short-cutting with automated form building...
 		initComponents();
 		postInitComponents();
-		lock();
+		showLocked(); // a new safe starts locked.
 	}
 
 	/**
@@ -59,6 +93,13 @@ public class MainFrame extends javax.swing.JFrame {
 		return this.digitalSafe;
 	}
 
+	/**
+	 * @return The safe, operated on off the event dispatch thread with callbacks on it.
+	 */
+	public DigitalSafeAsync getDigitalSafeAsync() {
+		return this.digitalSafeAsync;
+	}
+
 	/**
 	 * This method is called from within the constructor to initialize the form. WARNING: Do NOT modify this code. The
 	 * content of this method is always regenerated by the Form Editor.
@@ -245,10 +286,153 @@ public class MainFrame extends javax.swing.JFrame {
 
 	private void postInitComponents() {
 		setIconImage(new ImageIcon(ResourceLoader.class.getResource("safe.png")).getImage());
+		this.commandField.setFocusTraversalKeysEnabled(false); // tab completes titles instead of moving focus.
+		this.commandField.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_TAB, 0), "completeCommand");
+		this.commandField.getActionMap().put("completeCommand", new AbstractAction() {
+			@Override
+			public void actionPerformed(ActionEvent evt) {
+				completeCommand();
+			}
+		});
+		initTaskPanel();
+	}
+
+	/**
+	 * Add the panel showing running safe operations, below the generated form, with a progress bar and a button
+	 * cancelling them.
+	 */
+	private void initTaskPanel() {
+		this.taskLabel = new JLabel();
+		this.taskProgressBar = new JProgressBar(0, 100);
+		JButton cancelTaskButton = new JButton("Cancel");
+		cancelTaskButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent evt) {
+				cancelTasks();
+			}
+		});
+		this.taskPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+		this.taskPanel.add(this.taskLabel);
+		this.taskPanel.add(this.taskProgressBar);
+		this.taskPanel.add(cancelTaskButton);
+		this.taskPanel.setVisible(false);
+		JPanel contentPanel = new JPanel(new BorderLayout());
+		contentPanel.add(getContentPane(), BorderLayout.CENTER);
+		contentPanel.add(this.taskPanel, BorderLayout.SOUTH);
+		setContentPane(contentPanel);
+		this.taskPanelTimer = new Timer(TASK_PANEL_DELAY_MS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent evt) {
+				if (!MainFrame.this.runningTasks.isEmpty()) {
+					MainFrame.this.taskPanel.setVisible(true);
+					MainFrame.this.revalidate();
+				}
+			}
+		});
+		this.taskPanelTimer.setRepeats(false);
+	}
+
+	/**
+	 * Show a safe operation running, once it has run a moment. Call on the event dispatch thread.
+	 *
+	 * @param description What the operation does.
+	 * @param task The operation, cancelled by the cancel button.
+	 */
+	void taskStarted(String description, Future<?> task) {
+		this.runningTasks.add(task);
+		this.taskLabel.setText(description);
+		this.taskProgressBar.setIndeterminate(true);
+		if (!this.taskPanel.isVisible()) {
+			this.taskPanelTimer.restart();
+		}
+	}
+
+	/**
+	 * Show how far along the latest operation is. Call on the event dispatch thread.
+	 *
+	 * @param done The work done so far.
+	 * @param total The work to do in all, or a negative number if unknown.
+	 */
+	void taskProgressed(long done, long total) {
+		if (total <= 0L) {
+			return;
+		}
+		this.taskProgressBar.setIndeterminate(false);
+		this.taskProgressBar.setValue((int) (100L * done / total));
 	}
 
+	/**
+	 * Forget finished operations, hiding the panel once none are running. Call on the event dispatch thread.
+	 */
+	void taskEnded() {
+		for (Iterator<Future<?>> tasks = this.runningTasks.iterator(); tasks.hasNext();) {
+			if (tasks.next().isDone()) {
+				tasks.remove();
+			}
+		}
+		if (this.runningTasks.isEmpty()) {
+			this.taskPanelTimer.stop();
+			this.taskPanel.setVisible(false);
+			this.revalidate();
+		}
+	}
+
+	private void cancelTasks() {
+		for (Future<?> task : new ArrayList<>(this.runningTasks)) {
+			task.cancel(false); // file transfers stop at their next buffer; the I/O thread is never interrupted.
+		}
+	}
+
+	private void completeCommand() {
+		if (this.digitalSafe.isLocked()) {
+			return;
+		}
+		String contextString = this.tabbedPane1.getTitleAt(this.tabbedPane1.getSelectedIndex());
+		try {
+			this.commandField.setText(Commands.complete(this.commandField.getText(), Context.valueOf(contextString)));
+		} catch (PassphraseExpiredException ex) {
+			Logger.getLogger(MainFrame.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
+			this.passphrasePanel.setVisible(true);
+		}
+	}
+
+	/**
+	 * Report a failed safe operation, asking for the passphrase again if it expired.
+	 *
+	 * @param cause What the operation threw.
+	 */
+	void operationFailed(Throwable cause) {
+		if (cause instanceof CancellationException) {
+			Logger.getLogger(MainFrame.class.getName()).log(Level.INFO, "Cancelled.");
+			return;
+		}
+		Logger.getLogger(MainFrame.class.getName()).log(Level.SEVERE, cause.getLocalizedMessage(), cause);
+		if (cause instanceof PassphraseExpiredException || cause instanceof InvalidPassphraseException) {
+			this.passphrasePanel.setVisible(true);
+		}
+	}
+
+	/**
+	 * Lock the safe on the I/O thread, after the operations already submitted, and show the passphrase panel once it
+	 * is locked. Locking commits pending changes, so it doesn't run on the event dispatch thread. It isn't shown as a
+	 * running task, so cancelling tasks can't leave the safe unlocked behind the passphrase panel.
+	 */
 	public final void lock() {
-		this.digitalSafe.lock();
+		this.digitalSafeAsync.lock(new DigitalSafeAsync.Callback<Void>() {
+			@Override
+			public void completed(Void result) {
+				showLocked();
+			}
+
+			@Override
+			public void failed(Throwable cause) {
+				operationFailed(cause);
+				showLocked();
+			}
+		});
+	}
+
+	private void showLocked() {
 		this.passphrasePanel.setVisible(true);
 		this.tabbedPane1.setVisible(false);
 		this.commandPanel.setVisible(false);
@@ -270,12 +454,22 @@ public class MainFrame extends javax.swing.JFrame {
 			return;
 		}
 		this.passphraseField.setText("");
-		try {
-			this.digitalSafe.setPassphrase(new String(passphraseChars));
-			unlock();
-		} catch (InvalidPassphraseException ex) {
-			Logger.getLogger(MainFrame.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
-		}
+		taskStarted("Unlocking", this.digitalSafeAsync.setPassphrase(new String(passphraseChars), new DigitalSafeAsync.Callback<Void>() {
+			@Override
+			public void completed(Void result) {
+				taskEnded();
+				unlock();
+			}
+
+			@Override
+			public void failed(Throwable cause) {
+				taskEnded();
+				if (cause instanceof CancellationException) {
+					MainFrame.this.digitalSafeAsync.lock(null); // key derivation can't stop midway, so lock after it.
+				}
+				operationFailed(cause);
+			}
+		}));
     }//GEN-LAST:event_passphraseFieldActionPerformed
 
     private void commandFieldActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_commandFieldActionPerformed
@@ -284,12 +478,7 @@ public class MainFrame extends javax.swing.JFrame {
 		Context context = Context.valueOf(contextString);
 		this.commandField.setText("");
 		if (!digitalSafe.isLocked()) { //executing commands on a locked safe will just throw exceptions.
-			try {
-				Commands.execute(command, context);
-			} catch (PassphraseExpiredException ex) {
-				Logger.getLogger(MainFrame.class.getName()).log(Level.SEVERE, ex.getLocalizedMessage(), ex);
-				this.passphrasePanel.setVisible(true);
-			}
+			Commands.execute(command, context);
 		} else {
 			this.passphrasePanel.setVisible(true);
 		}
@@ -305,7 +494,7 @@ public class MainFrame extends javax.swing.JFrame {
 		this.filesPanel.repaint();
 	}
 
-	synchronized void setNotesPanel(NotePanel notePanel) {
+	synchronized void setNotesPanel(JPanel notePanel) {
 		this.notesPanel.removeAll();
 		if (notePanel != null) {
 			notePanel.setVisible(true);
@@ -324,7 +513,7 @@ public class MainFrame extends javax.swing.JFrame {
 		return null;
 	}
 
-	synchronized void setPasswordNotesPanel(PasswordNotePanel passwordNotePanel) {
+	synchronized void setPasswordNotesPanel(JPanel passwordNotePanel) {
 		this.passwordsPanel.removeAll();
 		if (passwordNotePanel != null) {
 			passwordNotePanel.setVisible(true);
@@ -0,0 +1,132 @@
+package com.analyticobjects.utility;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Decodes records written by BinaryWriter. Reads past the end of the input, or malformed lengths and integers, throw
+ * IOException rather than returning garbage.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public final class BinaryReader {
+
+	private final byte[] buffer;
+	private final int limit;
+	private int position;
+
+	/**
+	 * @param bytes The encoded bytes.
+	 */
+	public BinaryReader(byte[] bytes) {
+		this(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * @param bytes The encoded bytes.
+	 * @param offset The first byte to read.
+	 * @param length The number of bytes to read.
+	 */
+	public BinaryReader(byte[] bytes, int offset, int length) {
+		this.buffer = bytes;
+		this.position = offset;
+		this.limit = offset + length;
+	}
+
+	private void require(int bytes) throws IOException {
+		if (bytes < 0 || this.limit - this.position < bytes) {
+			throw new EOFException("Unexpected end of encoded data.");
+		}
+	}
+
+	public int readByte() throws IOException {
+		require(1);
+		return this.buffer[this.position++] & 0xff;
+	}
+
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	public Boolean readNullableBoolean() throws IOException {
+		int b = readByte();
+		return (b == 0) ? null : Boolean.valueOf(b == 2);
+	}
+
+	public long readVarLong() throws IOException {
+		long value = 0L;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = readByte();
+			value |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable length integer.");
+	}
+
+	public int readVarInt() throws IOException {
+		long value = readVarLong();
+		if (value > 0xffffffffL) {
+			throw new IOException("Variable length integer out of range.");
+		}
+		return (int) value;
+	}
+
+	public long readSignedVarLong() throws IOException {
+		long value = readVarLong();
+		return (value >>> 1) ^ -(value & 1L);
+	}
+
+	public long readLong() throws IOException {
+		require(8);
+		long value = 0L;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | (this.buffer[this.position++] & 0xffL);
+		}
+		return value;
+	}
+
+	public byte[] readBytes() throws IOException {
+		int length = readVarInt() - 1;
+		if (length == -1) {
+			return null;
+		}
+		require(length);
+		byte[] bytes = Arrays.copyOfRange(this.buffer, this.position, this.position + length);
+		this.position += length;
+		return bytes;
+	}
+
+	public String readString() throws IOException {
+		int length = readVarInt() - 1;
+		if (length == -1) {
+			return null;
+		}
+		require(length);
+		String string = new String(this.buffer, this.position, length, StandardCharsets.UTF_8);
+		this.position += length;
+		return string;
+	}
+
+	public Date readDate() throws IOException {
+		return readBoolean() ? new Date(readSignedVarLong()) : null;
+	}
+
+	public UUID readUUID() throws IOException {
+		return readBoolean() ? new UUID(readLong(), readLong()) : null;
+	}
+
+	/**
+	 * @return The number of bytes left to read.
+	 */
+	public int remaining() {
+		return this.limit - this.position;
+	}
+
+}
@@ -0,0 +1,163 @@
+package com.analyticobjects.utility;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * A compact binary encoder for hand written record formats. Integers are written as variable length quantities (7
+ * bits per byte, low bits first), so small values take one byte; signed values are zigzag encoded first. Strings are
+ * length prefixed UTF-8. Nothing about types is written, the reader has to know the layout. Pair with BinaryReader.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public final class BinaryWriter {
+
+	private static final int INITIAL_CAPACITY = 256;
+	private byte[] buffer;
+	private int size;
+
+	public BinaryWriter() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * @param initialCapacity Initial buffer size in bytes.
+	 */
+	public BinaryWriter(int initialCapacity) {
+		this.buffer = new byte[Math.max(16, initialCapacity)];
+		this.size = 0;
+	}
+
+	private void ensureCapacity(int additionalBytes) {
+		int required = this.size + additionalBytes;
+		if (required > this.buffer.length) {
+			this.buffer = Arrays.copyOf(this.buffer, Math.max(required, this.buffer.length * 2));
+		}
+	}
+
+	public void writeByte(int b) {
+		ensureCapacity(1);
+		this.buffer[this.size++] = (byte) b;
+	}
+
+	public void writeBoolean(boolean b) {
+		writeByte(b ? 1 : 0);
+	}
+
+	/**
+	 * Write a Boolean which may be null, in one byte.
+	 *
+	 * @param b A Boolean or null.
+	 */
+	public void writeNullableBoolean(Boolean b) {
+		writeByte((b == null) ? 0 : (b ? 2 : 1));
+	}
+
+	/**
+	 * Write a non negative integer in 1 to 10 bytes; negative values take the full 10.
+	 *
+	 * @param value The value to write.
+	 */
+	public void writeVarLong(long value) {
+		ensureCapacity(10);
+		long remaining = value;
+		while ((remaining & ~0x7fL) != 0L) {
+			this.buffer[this.size++] = (byte) ((remaining & 0x7f) | 0x80);
+			remaining >>>= 7;
+		}
+		this.buffer[this.size++] = (byte) remaining;
+	}
+
+	public void writeVarInt(int value) {
+		writeVarLong(value & 0xffffffffL);
+	}
+
+	/**
+	 * Write a signed integer, zigzag encoded so small negative values are short too.
+	 *
+	 * @param value The value to write.
+	 */
+	public void writeSignedVarLong(long value) {
+		writeVarLong((value << 1) ^ (value >> 63));
+	}
+
+	/**
+	 * Write a fixed width 8 byte big endian integer, for values with no small bias such as random ids.
+	 *
+	 * @param value The value to write.
+	 */
+	public void writeLong(long value) {
+		ensureCapacity(8);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			this.buffer[this.size++] = (byte) (value >>> shift);
+		}
+	}
+
+	/**
+	 * Write a length prefixed byte array, which may be null.
+	 *
+	 * @param bytes The bytes to write.
+	 */
+	public void writeBytes(byte[] bytes) {
+		if (bytes == null) {
+			writeVarInt(0);
+			return;
+		}
+		writeVarInt(bytes.length + 1);
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, this.buffer, this.size, bytes.length);
+		this.size += bytes.length;
+	}
+
+	/**
+	 * Write a length prefixed UTF-8 string, which may be null.
+	 *
+	 * @param string The string to write.
+	 */
+	public void writeString(String string) {
+		writeBytes((string == null) ? null : string.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Write a date, which may be null, as signed milliseconds since the epoch.
+	 *
+	 * @param date The date to write.
+	 */
+	public void writeDate(Date date) {
+		writeBoolean(date != null);
+		if (date != null) {
+			writeSignedVarLong(date.getTime());
+		}
+	}
+
+	/**
+	 * Write a UUID, which may be null.
+	 *
+	 * @param uuid The UUID to write.
+	 */
+	public void writeUUID(UUID uuid) {
+		writeBoolean(uuid != null);
+		if (uuid != null) {
+			writeLong(uuid.getMostSignificantBits());
+			writeLong(uuid.getLeastSignificantBits());
+		}
+	}
+
+	/**
+	 * @return The number of bytes written.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return A copy of the bytes written.
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(this.buffer, this.size);
+	}
+
+}
@@ -7,6 +7,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.file.Path;
@@ -167,6 +168,55 @@ public class ByteUtility {
 		return output.toByteArray();
 	}
 
+	/**
+	 * Copy all bytes from an input stream to an output stream through a fixed size buffer.
+	 *
+	 * @param inputStream Any input stream of bytes.
+	 * @param outputStream An output stream to pump data into.
+	 * @return The number of bytes copied.
+	 * @throws IOException
+	 */
+	public static long transfer(InputStream inputStream, OutputStream outputStream) throws IOException {
+		byte[] buffer = new byte[131072];
+		int bytesRead;
+		long totalBytes = 0L;
+		while ((bytesRead = inputStream.read(buffer)) != -1) {
+			outputStream.write(buffer, 0, bytesRead);
+			totalBytes += bytesRead;
+		}
+		return totalBytes;
+	}
+
+	/**
+	 * Copy all bytes from an input stream to an output stream, reporting progress after each buffer. Stops before the
+	 * next buffer if a CancellableProgressListener is cancelled, or if the thread is interrupted.
+	 *
+	 * @param inputStream Any input stream of bytes.
+	 * @param outputStream An output stream to pump data into.
+	 * @param totalBytes The number of bytes expected, or -1 if unknown.
+	 * @param progressListener Told the bytes copied so far.
+	 * @return The number of bytes copied.
+	 * @throws InterruptedIOException If cancelled or the thread was interrupted.
+	 * @throws IOException
+	 */
+	public static long transfer(InputStream inputStream, OutputStream outputStream, long totalBytes, ProgressListener progressListener) throws IOException {
+		byte[] buffer = new byte[131072];
+		int bytesRead;
+		long bytesCopied = 0L;
+		while ((bytesRead = inputStream.read(buffer)) != -1) {
+			if (Thread.currentThread().isInterrupted()) {
+				throw new InterruptedIOException("Transfer interrupted after " + bytesCopied + " bytes.");
+			}
+			if ((progressListener instanceof CancellableProgressListener) && ((CancellableProgressListener) progressListener).isCancelled()) {
+				throw new InterruptedIOException("Transfer cancelled after " + bytesCopied + " bytes.");
+			}
+			outputStream.write(buffer, 0, bytesRead);
+			bytesCopied += bytesRead;
+			progressListener.progressed(bytesCopied, totalBytes);
+		}
+		return bytesCopied;
+	}
+
 	/**
 	 * Write a byte array to a uri with buffering.
 	 *
@@ -0,0 +1,17 @@
+package com.analyticobjects.utility;
+
+/**
+ * A progress listener that can also ask the operation reporting to it to stop. Long operations check it between
+ * steps, so they can be cancelled without interrupting the thread running them; an interrupt during FileChannel I/O
+ * closes the channel for good.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public interface CancellableProgressListener extends ProgressListener {
+
+	/**
+	 * @return True if the operation should stop at its next step.
+	 */
+	boolean isCancelled();
+}
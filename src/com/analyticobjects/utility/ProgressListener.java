@@ -0,0 +1,16 @@
+package com.analyticobjects.utility;
+
+/**
+ * Told how far along a long running operation is.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public interface ProgressListener {
+
+	/**
+	 * @param done The work done so far, e.g. bytes copied.
+	 * @param total The work to do in all, or a negative number if unknown.
+	 */
+	void progressed(long done, long total);
+}
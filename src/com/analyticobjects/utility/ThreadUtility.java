@@ -2,6 +2,8 @@ package com.analyticobjects.utility;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A utility class for threads.
@@ -20,4 +22,33 @@ public class ThreadUtility {
 		return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
 	}
 	
+	/**
+	 * Create new executor with a daemon thread for each processor core, so idle workers don't keep the vm alive.
+	 *
+	 * @param threadNamePrefix A prefix for naming the worker threads.
+	 * @return A new executor with a daemon thread for each processor core.
+	 */
+	public static ExecutorService allAvailableProcessors(String threadNamePrefix) {
+		return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), daemonThreadFactory(threadNamePrefix));
+	}
+	
+	/**
+	 * A thread factory for named daemon threads.
+	 *
+	 * @param threadNamePrefix A prefix for naming the threads.
+	 * @return A thread factory for named daemon threads.
+	 */
+	public static ThreadFactory daemonThreadFactory(final String threadNamePrefix) {
+		return new ThreadFactory() {
+			private final AtomicInteger threadCount = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, threadNamePrefix + "-" + this.threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+	
 }
@@ -0,0 +1,236 @@
+package com.analyticobjects.digitalsafe.containers;
+
+import com.analyticobjects.digitalsafe.exceptions.PassphraseExpiredException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for DigitalSafeAsync.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public class DigitalSafeAsyncTest {
+
+	private Path dbPath;
+	private DigitalSafe digitalSafe;
+	private DigitalSafeAsync digitalSafeAsync;
+
+	public DigitalSafeAsyncTest() {
+	}
+
+	@BeforeClass
+	public static void setUpClass() {
+	}
+
+	@AfterClass
+	public static void tearDownClass() {
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		this.dbPath = Files.createTempFile("DigitalSafeAsyncTest", ".safe");
+		Files.delete(this.dbPath);
+		this.digitalSafe = new DigitalSafe(this.dbPath);
+		this.digitalSafeAsync = new DigitalSafeAsync(this.digitalSafe);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		this.digitalSafe.lock();
+		Files.deleteIfExists(this.dbPath);
+		Files.deleteIfExists(this.dbPath.resolveSibling(this.dbPath.getFileName() + ".journal"));
+	}
+
+	@Test
+	public void testOperationsRunInOrder() throws Exception {
+		System.out.println("testOperationsRunInOrder::");
+		this.digitalSafeAsync.setPassphrase("TEST_PASSPHRASE", null);
+		this.digitalSafeAsync.putNote(new Note("Async", "Saved off the caller's thread."), null);
+		final CountDownLatch delivered = new CountDownLatch(1);
+		final AtomicReference<Note> callbackNote = new AtomicReference<>();
+		Future<Note> loaded = this.digitalSafeAsync.getNote("async", new DigitalSafeAsync.Callback<Note>() {
+			@Override
+			public void completed(Note result) {
+				callbackNote.set(result);
+				delivered.countDown();
+			}
+
+			@Override
+			public void failed(Throwable cause) {
+				delivered.countDown();
+			}
+		});
+		assertEquals("Saved off the caller's thread.", loaded.get(30, TimeUnit.SECONDS).getMessage());
+		assertTrue(delivered.await(30, TimeUnit.SECONDS));
+		assertEquals("Saved off the caller's thread.", callbackNote.get().getMessage());
+	}
+
+	@Test
+	public void testFailureDelivered() throws Exception {
+		System.out.println("testFailureDelivered::");
+		final CountDownLatch delivered = new CountDownLatch(1);
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		this.digitalSafeAsync.getNote("locked", new DigitalSafeAsync.Callback<Note>() {
+			@Override
+			public void completed(Note result) {
+				delivered.countDown();
+			}
+
+			@Override
+			public void failed(Throwable cause) {
+				failure.set(cause);
+				delivered.countDown();
+			}
+		});
+		assertTrue(delivered.await(30, TimeUnit.SECONDS));
+		assertTrue(failure.get() instanceof PassphraseExpiredException);
+	}
+
+	@Test
+	public void testFileProgressAndCancellation() throws Exception {
+		System.out.println("testFileProgressAndCancellation::");
+		Path sourcePath = Files.createTempFile("DigitalSafeAsyncTest", ".bin");
+		try {
+			final byte[] content = new byte[4 * 1024 * 1024];
+			new Random(42L).nextBytes(content);
+			Files.write(sourcePath, content);
+			this.digitalSafeAsync.setPassphrase("TEST_PASSPHRASE", null);
+			final AtomicLong lastDone = new AtomicLong();
+			Future<Void> stored = this.digitalSafeAsync.putFile(sourcePath.toFile(), new TestCallback<Void>() {
+				@Override
+				public void progressed(long done, long total) {
+					lastDone.set(done);
+					assertEquals(content.length, total);
+				}
+			});
+			stored.get(60, TimeUnit.SECONDS);
+			assertEquals(content.length, lastDone.get());
+			assertEquals(1, this.digitalSafeAsync.listFiles(null).get(30, TimeUnit.SECONDS).size());
+
+			assertTrue(this.digitalSafeAsync.deleteFile(sourcePath.toFile().getName(), null).get(30, TimeUnit.SECONDS));
+			final AtomicReference<Future<Void>> cancelled = new AtomicReference<>();
+			final AtomicReference<Throwable> failure = new AtomicReference<>();
+			final CountDownLatch submitted = new CountDownLatch(1);
+			cancelled.set(this.digitalSafeAsync.putFile(sourcePath.toFile(), new TestCallback<Void>() {
+				@Override
+				public void progressed(long done, long total) {
+					try {
+						submitted.await();
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+					cancelled.get().cancel(true); // from the I/O thread itself, so the next buffer stops the transfer.
+				}
+
+				@Override
+				public void failed(Throwable cause) {
+					failure.set(cause);
+				}
+			}));
+			submitted.countDown();
+			assertTrue(this.digitalSafeAsync.listFiles(null).get(30, TimeUnit.SECONDS).isEmpty());
+			assertTrue(cancelled.get().isCancelled());
+			assertTrue(failure.get() instanceof CancellationException);
+		} finally {
+			Files.deleteIfExists(sourcePath);
+		}
+	}
+
+	@Test
+	public void testCancelFromAnotherThread() throws Exception {
+		System.out.println("testCancelFromAnotherThread::");
+		Path cancelledPath = Files.createTempFile("DigitalSafeAsyncTest", ".bin");
+		Path storedPath = Files.createTempFile("DigitalSafeAsyncTest", ".bin");
+		try {
+			Random random = new Random(17L);
+			byte[] cancelledContent = new byte[16 * 1024 * 1024];
+			random.nextBytes(cancelledContent);
+			Files.write(cancelledPath, cancelledContent);
+			byte[] storedContent = new byte[1024 * 1024 + 7];
+			random.nextBytes(storedContent);
+			Files.write(storedPath, storedContent);
+			this.digitalSafeAsync.setPassphrase("TEST_PASSPHRASE", null).get(60, TimeUnit.SECONDS);
+			final CountDownLatch started = new CountDownLatch(1);
+			final CountDownLatch cancelledLatch = new CountDownLatch(1);
+			final AtomicReference<Boolean> interrupted = new AtomicReference<>();
+			Future<Void> cancelled = this.digitalSafeAsync.putFile(cancelledPath.toFile(), new TestCallback<Void>() {
+				@Override
+				public void progressed(long done, long total) {
+					if (interrupted.get() != null) {
+						return;
+					}
+					started.countDown();
+					try {
+						cancelledLatch.await();
+						interrupted.set(Thread.currentThread().isInterrupted());
+					} catch (InterruptedException ex) {
+						interrupted.set(true);
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			assertTrue(started.await(60, TimeUnit.SECONDS));
+			cancelled.cancel(true); // from this thread, while the I/O thread is in the middle of the transfer.
+			cancelledLatch.countDown();
+			assertTrue(cancelled.isCancelled());
+			this.digitalSafeAsync.putFile(storedPath.toFile(), null).get(60, TimeUnit.SECONDS);
+			assertFalse("An interrupt during storage I/O would close the safe file.", interrupted.get());
+			this.digitalSafeAsync.lock(null).get(60, TimeUnit.SECONDS);
+
+			DigitalSafe reopenedSafe = new DigitalSafe(this.dbPath);
+			try {
+				reopenedSafe.setPassphrase("TEST_PASSPHRASE");
+				List<String[]> files = reopenedSafe.listFiles();
+				assertEquals(1, files.size());
+				assertTrue(files.get(0)[0].startsWith(storedPath.toFile().getName() + ", "));
+				ByteBuffer readContent = ByteBuffer.allocate(storedContent.length);
+				try (SeekableByteChannel fileChannel = reopenedSafe.openFile(storedPath.toFile().getName().toLowerCase())) {
+					while (readContent.hasRemaining() && fileChannel.read(readContent) >= 0) {
+					}
+				}
+				assertArrayEquals(storedContent, readContent.array());
+			} finally {
+				reopenedSafe.lock();
+			}
+		} finally {
+			Files.deleteIfExists(cancelledPath);
+			Files.deleteIfExists(storedPath);
+		}
+	}
+
+	/**
+	 * A progress callback doing nothing unless overridden.
+	 */
+	private static class TestCallback<V> implements DigitalSafeAsync.ProgressCallback<V> {
+
+		@Override
+		public void completed(V result) {
+		}
+
+		@Override
+		public void failed(Throwable cause) {
+		}
+
+		@Override
+		public void progressed(long done, long total) {
+		}
+	}
+
+}
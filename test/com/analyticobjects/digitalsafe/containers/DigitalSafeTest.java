@@ -0,0 +1,148 @@
+package com.analyticobjects.digitalsafe.containers;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for DigitalSafe.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public class DigitalSafeTest {
+
+	private Path dbPath;
+	private Path filePath;
+	private DigitalSafe digitalSafe;
+
+	public DigitalSafeTest() {
+	}
+
+	@BeforeClass
+	public static void setUpClass() {
+	}
+
+	@AfterClass
+	public static void tearDownClass() {
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		this.dbPath = Files.createTempFile("DigitalSafeTest", ".safe");
+		Files.delete(this.dbPath);
+		this.filePath = Files.createTempFile("DigitalSafeTest", ".txt");
+		this.digitalSafe = new DigitalSafe(this.dbPath);
+		this.digitalSafe.setPassphrase("TEST_PASSPHRASE");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		this.digitalSafe.lock();
+		Files.deleteIfExists(this.dbPath);
+		Files.deleteIfExists(this.dbPath.resolveSibling(this.dbPath.getFileName() + ".journal"));
+		Files.deleteIfExists(this.filePath);
+	}
+
+	private void reopen() throws Exception {
+		this.digitalSafe.lock();
+		this.digitalSafe = new DigitalSafe(this.dbPath);
+		this.digitalSafe.setPassphrase("TEST_PASSPHRASE");
+	}
+
+	private String readFile(String fileName) throws Exception {
+		try (SeekableByteChannel channel = this.digitalSafe.openFile(fileName)) {
+			ByteBuffer content = ByteBuffer.allocate((int) channel.size());
+			while (content.hasRemaining() && channel.read(content) >= 0) {
+			}
+			return new String(content.array(), StandardCharsets.UTF_8);
+		}
+	}
+
+	@Test
+	public void testNoteSavedAgain() throws Exception {
+		System.out.println("testNoteSavedAgain::");
+		Note original = new Note("Alpha", "oldword");
+		original.tagWithTagString("oldtag");
+		this.digitalSafe.putNote(original);
+		Note edited = new Note("Alpha", "newword"); // the editor saves a new instance.
+		edited.tagWithTagString("newtag");
+		this.digitalSafe.putNote(edited);
+		assertTrue(this.digitalSafe.search("oldword").isEmpty());
+		assertEquals("newword", this.digitalSafe.search("newword").get(0).getMessage());
+		assertTrue(this.digitalSafe.getNotesTagged("oldtag").isEmpty());
+		reopen();
+		assertTrue(this.digitalSafe.search("oldword").isEmpty());
+		assertEquals(1, this.digitalSafe.search("alpha").size());
+		assertTrue(this.digitalSafe.deleteNote("Alpha"));
+		assertNull(this.digitalSafe.getNote("alpha"));
+		assertTrue(this.digitalSafe.search("newword").isEmpty());
+		reopen();
+		assertTrue(this.digitalSafe.search("alpha").isEmpty());
+		assertFalse(this.digitalSafe.deleteNote("Alpha"));
+	}
+
+	@Test
+	public void testBatchAllOrNothing() throws Exception {
+		System.out.println("testBatchAllOrNothing::");
+		this.digitalSafe.putNote(new Note("Kept", "before"));
+		this.digitalSafe.putNote(new Note("Deleted", "before"));
+		DigitalSafe.Batch batch = this.digitalSafe.beginBatch();
+		batch.putNote(new Note("First", "one"));
+		batch.putNote(new Note("Kept", "after"));
+		batch.deleteNote("Deleted");
+		batch.putNote(new Note(null, "bad"));
+		try {
+			batch.commit();
+			fail("A note without a title should fail the batch.");
+		} catch (NullPointerException ex) {
+			// expected.
+		}
+		assertNull(this.digitalSafe.getNote("first"));
+		assertEquals("before", this.digitalSafe.getNote("kept").getMessage());
+		assertEquals("before", this.digitalSafe.getNote("deleted").getMessage());
+		assertTrue(this.digitalSafe.search("one").isEmpty());
+		assertTrue(this.digitalSafe.search("after").isEmpty());
+		assertEquals(2, this.digitalSafe.search("before").size());
+		reopen();
+		assertNull(this.digitalSafe.getNote("first"));
+		assertEquals("before", this.digitalSafe.getNote("kept").getMessage());
+		assertEquals("before", this.digitalSafe.getNote("deleted").getMessage());
+		batch = this.digitalSafe.beginBatch();
+		batch.putNote(new Note("First", "one"));
+		batch.deleteNote("Deleted");
+		batch.commit();
+		reopen();
+		assertEquals("one", this.digitalSafe.getNote("first").getMessage());
+		assertNull(this.digitalSafe.getNote("deleted"));
+	}
+
+	@Test
+	public void testFileStoredAgain() throws Exception {
+		System.out.println("testFileStoredAgain::");
+		String fileName = this.filePath.getFileName().toString().toLowerCase();
+		Files.write(this.filePath, "first version".getBytes(StandardCharsets.UTF_8));
+		this.digitalSafe.putFile(this.filePath.toFile());
+		Files.write(this.filePath, "second version".getBytes(StandardCharsets.UTF_8));
+		this.digitalSafe.putFile(this.filePath.toFile());
+		assertEquals(1, this.digitalSafe.listFiles().size());
+		assertEquals("second version", readFile(fileName));
+		reopen();
+		assertEquals(1, this.digitalSafe.listFiles().size());
+		assertEquals("second version", readFile(fileName));
+		assertTrue(this.digitalSafe.deleteFile(fileName));
+		assertTrue(this.digitalSafe.listFiles().isEmpty());
+		reopen();
+		assertTrue(this.digitalSafe.listFiles().isEmpty());
+		assertNull(this.digitalSafe.openFile(fileName));
+	}
+
+}
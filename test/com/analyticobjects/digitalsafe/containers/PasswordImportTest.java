@@ -0,0 +1,103 @@
+package com.analyticobjects.digitalsafe.containers;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for PasswordImport and batched imports into a DigitalSafe.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public class PasswordImportTest {
+
+	private Path dbPath;
+	private Path csvPath;
+
+	public PasswordImportTest() {
+	}
+
+	@BeforeClass
+	public static void setUpClass() {
+	}
+
+	@AfterClass
+	public static void tearDownClass() {
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		this.dbPath = Files.createTempFile("PasswordImportTest", ".safe");
+		Files.delete(this.dbPath);
+		this.csvPath = Files.createTempFile("PasswordImportTest", ".csv");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(this.dbPath);
+		Files.deleteIfExists(this.dbPath.resolveSibling(this.dbPath.getFileName() + ".journal"));
+		Files.deleteIfExists(this.csvPath);
+	}
+
+	@Test
+	public void testReadCsv() throws Exception {
+		System.out.println("testReadCsv::");
+		String csv = "name,url,username,password,extra,grouping\r\n"
+			+ "Bank,https://bank.example.com/login,joel,\"p4ss,\"\"w0rd\",\"first line\nsecond line\",Finance\r\n"
+			+ ",https://mail.example.com/,joel@example.com,secret,,\n"
+			+ "\n"
+			+ "Short row,,,hunter2";
+		List<PasswordNote> passwordNotes = PasswordImport.readCsv(new StringReader(csv));
+		assertEquals(3, passwordNotes.size());
+		PasswordNote bank = passwordNotes.get(0);
+		assertEquals("Bank", bank.getTitle());
+		assertEquals("p4ss,\"w0rd", bank.getPassword());
+		assertEquals("joel", bank.getUserName());
+		assertEquals("first line\nsecond line", bank.getMessage());
+		assertEquals("bank.example.com", bank.getDomain());
+		assertEquals("https://mail.example.com/", passwordNotes.get(1).getTitle());
+		assertEquals("hunter2", passwordNotes.get(2).getPassword());
+		assertEquals("", passwordNotes.get(2).getUserName());
+	}
+
+	@Test
+	public void testImportCommitsOnce() throws Exception {
+		System.out.println("testImportCommitsOnce::");
+		StringBuilder csv = new StringBuilder("title,login_uri,login_username,login_password\n");
+		for (int i = 0; i < 2000; i++) {
+			csv.append("Login ").append(i).append(",https://site").append(i % 50).append(".example.com/,user")
+				.append(i).append(",p4ssw0rd").append(i).append('\n');
+		}
+		Files.write(this.csvPath, csv.toString().getBytes(StandardCharsets.UTF_8));
+		DigitalSafe digitalSafe = new DigitalSafe(this.dbPath);
+		digitalSafe.setPassphrase("TEST_PASSPHRASE");
+		assertEquals(2000, digitalSafe.importPasswordNotes(this.csvPath));
+		assertEquals("p4ssw0rd1234", digitalSafe.getPasswordNote("login 1234").getPassword());
+		assertEquals(40, digitalSafe.getPasswordNotesForDomain("site7.example.com").size());
+		digitalSafe.lock();
+		digitalSafe.setPassphrase("TEST_PASSPHRASE");
+		assertEquals("user1999", digitalSafe.getPasswordNote("login 1999").getUserName());
+
+		DigitalSafe.Batch batch = digitalSafe.beginBatch();
+		batch.putNote(new Note("Discarded", "Never committed."));
+		batch.discard();
+		batch.putNote(new Note("Kept", "Committed."));
+		batch.deletePasswordNote("Login 0");
+		assertEquals(2, batch.size());
+		batch.commit();
+		assertNull(digitalSafe.getNote("discarded"));
+		assertEquals("Committed.", digitalSafe.getNote("kept").getMessage());
+		assertNull(digitalSafe.getPasswordNote("login 0"));
+		digitalSafe.lock();
+	}
+
+}
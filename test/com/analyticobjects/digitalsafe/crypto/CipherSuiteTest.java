@@ -0,0 +1,90 @@
+package com.analyticobjects.digitalsafe.crypto;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import javax.crypto.AEADBadTagException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for CipherSuite.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public class CipherSuiteTest {
+
+	private Passphrase passphrase;
+
+	public CipherSuiteTest() {
+	}
+
+	@BeforeClass
+	public static void setUpClass() {
+	}
+
+	@AfterClass
+	public static void tearDownClass() {
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		this.passphrase = new Passphrase("TEST_PASSPHRASE");
+	}
+
+	@After
+	public void tearDown() {
+		this.passphrase.clear();
+	}
+
+	@Test
+	public void testEncrypt() throws Exception {
+		System.out.println("testEncrypt::");
+		Random random = new Random(7L);
+		for (CipherSuite suite : new CipherSuite[]{CipherSuite.TRIPLE_AES, CipherSuite.AES_GCM}) {
+			for (int length : new int[]{0, 1, 15, 16, 17, 4096, 100000}) {
+				byte[] inputBytes = new byte[length];
+				random.nextBytes(inputBytes);
+				byte[] encryptedBytes = suite.encrypt(this.passphrase, inputBytes);
+				assertEquals(suite, CipherSuite.of(ByteBuffer.wrap(encryptedBytes)));
+				assertArrayEquals(inputBytes, suite.decrypt(this.passphrase, null, ByteBuffer.wrap(encryptedBytes)));
+				assertArrayEquals(inputBytes, CipherSuite.decryptAny(this.passphrase, ByteBuffer.wrap(encryptedBytes)));
+			}
+		}
+		byte[] legacyBytes = TripleAES.encrypt(this.passphrase, "Written before suites.".getBytes(StandardCharsets.UTF_8));
+		assertEquals("Written before suites.", new String(CipherSuite.decryptAny(this.passphrase, ByteBuffer.wrap(legacyBytes)), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testAuthentication() throws Exception {
+		System.out.println("testAuthentication::");
+		byte[] inputBytes = "Authenticated message.".getBytes(StandardCharsets.UTF_8);
+		byte[] associatedData = "NOTES".getBytes(StandardCharsets.UTF_8);
+		byte[] encryptedBytes = CipherSuite.AES_GCM.encrypt(this.passphrase, associatedData, inputBytes);
+		assertArrayEquals(inputBytes, CipherSuite.decryptAny(this.passphrase, associatedData, ByteBuffer.wrap(encryptedBytes)));
+		assertFalse("Equal plaintexts should not encrypt equally.", ByteBuffer.wrap(encryptedBytes).equals(ByteBuffer.wrap(CipherSuite.AES_GCM.encrypt(this.passphrase, associatedData, inputBytes))));
+		try {
+			CipherSuite.AES_GCM.decrypt(this.passphrase, "FILES".getBytes(StandardCharsets.UTF_8), ByteBuffer.wrap(encryptedBytes));
+			fail("Decrypt should fail with other associated data.");
+		} catch (AEADBadTagException ex) {
+			// expected.
+		}
+		for (int i = 0; i < encryptedBytes.length; i++) {
+			byte[] tamperedBytes = encryptedBytes.clone();
+			tamperedBytes[i] ^= 0x01;
+			assertTrue("Changed byte " + i + " undetected.", CipherSuite.decryptAny(this.passphrase, associatedData, ByteBuffer.wrap(tamperedBytes)) == null);
+		}
+		Passphrase otherPassphrase = new Passphrase("OTHER_PASSPHRASE");
+		try {
+			assertNull(CipherSuite.decryptAny(otherPassphrase, associatedData, ByteBuffer.wrap(encryptedBytes)));
+		} finally {
+			otherPassphrase.clear();
+		}
+	}
+
+}
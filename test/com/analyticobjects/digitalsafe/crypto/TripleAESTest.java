@@ -1,8 +1,17 @@
 package com.analyticobjects.digitalsafe.crypto;
 
+import com.analyticobjects.digitalsafe.exceptions.PassphraseExpiredException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.crypto.ShortBufferException;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -50,6 +59,7 @@ public class TripleAESTest {
 		List<String> testMessages = new LinkedList<>();
 		testMessages.add("");
 		testMessages.add("Short test message.");
+		testMessages.add("0123456789ABCDEF"); // exactly one AES block.
 		String aTestMessage = "This is a test message from the emergency broadcasting system.\n";
 		aTestMessage += "This is only a test. If this were not a test, emergency information would\n";
 		aTestMessage += "follow. This concludes the test of the emergency broadcasting system.";
@@ -63,6 +73,139 @@ public class TripleAESTest {
 			assertArrayEquals(inputBytes, result);
 		}
 	}
-	
-	
+
+	@Test
+	public void testEncryptAfterClear() throws Exception {
+		System.out.println("testEncryptAfterClear::");
+		Passphrase passphrase = new Passphrase("TEST_PASSPHRASE");
+		byte[] inputBytes = "Short test message.".getBytes();
+		byte[] encryptedBytes = TripleAES.encrypt(passphrase, inputBytes);
+		passphrase.clear();
+		try {
+			TripleAES.decrypt(passphrase, encryptedBytes);
+			fail("Decrypt should fail once the passphrase is cleared.");
+		} catch (PassphraseExpiredException ex) {
+			// expected, cached keys are wiped with the passphrase.
+		}
+		passphrase.setPassphrase("TEST_PASSPHRASE");
+		assertArrayEquals(inputBytes, TripleAES.decrypt(passphrase, encryptedBytes));
+	}
+
+	@Test
+	public void testScratchReleased() throws Exception {
+		System.out.println("testScratchReleased::");
+		Passphrase passphrase = new Passphrase("TEST_PASSPHRASE");
+		Random random = new Random(5L);
+		for (int length : new int[]{1000, 2 * (1 << 20) + 5, 1000}) { // the large record is past the retained buffers.
+			byte[] inputBytes = new byte[length];
+			random.nextBytes(inputBytes);
+			byte[] encryptedBytes = TripleAES.encrypt(passphrase, inputBytes);
+			ByteBuffer decrypted = ByteBuffer.allocate(length);
+			assertEquals(length, TripleAES.decrypt(passphrase, ByteBuffer.wrap(encryptedBytes), decrypted));
+			assertArrayEquals(inputBytes, decrypted.array());
+			Passphrase otherPassphrase = new Passphrase("OTHER_PASSPHRASE");
+			otherPassphrase.clear(); // releases every thread's working buffers.
+			assertArrayEquals(inputBytes, TripleAES.decrypt(passphrase, encryptedBytes));
+		}
+	}
+
+	@Test
+	public void testPooledCiphers() throws Exception {
+		System.out.println("testPooledCiphers::");
+		final Passphrase passphrase = new Passphrase("TEST_PASSPHRASE");
+		final Passphrase otherPassphrase = new Passphrase("OTHER_PASSPHRASE");
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Integer>> results = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				final int thread = t;
+				results.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						int checked = 0;
+						for (int i = 0; i < 500; i++) { // alternate keys, nonces and modes on each thread's ciphers.
+							byte[] inputBytes = ("Note " + thread + "/" + i).getBytes();
+							byte[] nonce = (i % 2 == 0) ? null : UUID.randomUUID().toString().substring(0, TripleAES.NONCE_SIZE).getBytes();
+							Passphrase keyPassphrase = (i % 3 == 0) ? otherPassphrase : passphrase;
+							byte[] encryptedBytes = TripleAES.encrypt(keyPassphrase, nonce, inputBytes);
+							assertArrayEquals(inputBytes, TripleAES.decrypt(keyPassphrase, nonce, encryptedBytes));
+							checked++;
+						}
+						return checked;
+					}
+				}));
+			}
+			for (Future<Integer> result : results) {
+				assertEquals(500, result.get().intValue());
+			}
+		} finally {
+			executor.shutdown();
+			otherPassphrase.clear();
+		}
+		byte[] inputBytes = "Short test message.".getBytes();
+		byte[] encryptedBytes = TripleAES.encrypt(passphrase, inputBytes);
+		otherPassphrase.setPassphrase("OTHER_PASSPHRASE");
+		otherPassphrase.clear(); // releases the pooled ciphers of every thread.
+		assertArrayEquals(inputBytes, TripleAES.decrypt(passphrase, encryptedBytes));
+	}
+
+	@Test
+	public void testBufferEncrypt() throws Exception {
+		System.out.println("testBufferEncrypt::");
+		Passphrase passphrase = new Passphrase("TEST_PASSPHRASE");
+		Random random = new Random(3L);
+		byte[] nonce = new byte[TripleAES.NONCE_SIZE];
+		random.nextBytes(nonce);
+		for (boolean direct : new boolean[]{false, true}) {
+			ByteBuffer source = direct ? ByteBuffer.allocateDirect(70000) : ByteBuffer.allocate(70000);
+			ByteBuffer encrypted = direct ? ByteBuffer.allocateDirect(70100) : ByteBuffer.allocate(70100);
+			ByteBuffer decrypted = direct ? ByteBuffer.allocateDirect(70100) : ByteBuffer.allocate(70100);
+			for (int length : new int[]{1, 15, 16, 17, 4096, 70000}) {
+				byte[] inputBytes = new byte[length];
+				random.nextBytes(inputBytes);
+				source.clear();
+				source.put(inputBytes).flip();
+				encrypted.clear();
+				encrypted.position(3); // not at the start of the buffer.
+				int encryptedSize = TripleAES.encrypt(passphrase, nonce, source, encrypted);
+				assertEquals(TripleAES.encryptedSize(length), encryptedSize);
+				assertEquals(3 + encryptedSize, encrypted.position());
+				assertFalse(source.hasRemaining());
+				encrypted.flip().position(3);
+				byte[] encryptedBytes = new byte[encryptedSize];
+				encrypted.duplicate().get(encryptedBytes);
+				assertArrayEquals("Same format as the array encrypt.", TripleAES.encrypt(passphrase, nonce, inputBytes), encryptedBytes);
+				decrypted.clear();
+				assertEquals(length, TripleAES.decrypt(passphrase, nonce, encrypted, decrypted));
+				decrypted.flip();
+				byte[] decryptedBytes = new byte[decrypted.remaining()];
+				decrypted.get(decryptedBytes);
+				assertArrayEquals(inputBytes, decryptedBytes);
+			}
+			source.clear();
+			source.limit(100);
+			encrypted.clear();
+			encrypted.limit(TripleAES.encryptedSize(100) - 1);
+			try {
+				TripleAES.encrypt(passphrase, source, encrypted);
+				fail("Encrypt should fail without room for the encrypted data.");
+			} catch (ShortBufferException ex) {
+				// expected.
+			}
+			encrypted.clear();
+			TripleAES.encrypt(passphrase, source, encrypted);
+			encrypted.flip();
+			decrypted.clear();
+			Passphrase otherPassphrase = new Passphrase("OTHER_PASSPHRASE");
+			try {
+				assertEquals(-1, TripleAES.decrypt(otherPassphrase, encrypted, decrypted));
+			} finally {
+				otherPassphrase.clear();
+			}
+			assertEquals("Positions are kept on failure.", 0, encrypted.position());
+			assertEquals(0, decrypted.position());
+			assertEquals(100, TripleAES.decrypt(passphrase, encrypted, decrypted));
+		}
+	}
+
 }
@@ -0,0 +1,145 @@
+package com.analyticobjects.digitalsafe.database;
+
+import com.analyticobjects.digitalsafe.crypto.CipherSuite;
+import com.analyticobjects.digitalsafe.crypto.Passphrase;
+import com.analyticobjects.utility.ByteUtility;
+import com.analyticobjects.utility.ThreadUtility;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for EncryptedChunkOutputStream and EncryptedChunkInputStream.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public class EncryptedChunkStreamTest {
+
+	private static final int CHUNK_SIZE = 64;
+	private Path logPath;
+	private Path sourcePath;
+	private Passphrase passphrase;
+	private SegmentLogStorage storage;
+	private ExecutorService executor;
+
+	public EncryptedChunkStreamTest() {
+	}
+
+	@BeforeClass
+	public static void setUpClass() {
+	}
+
+	@AfterClass
+	public static void tearDownClass() {
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		this.logPath = Files.createTempFile("EncryptedChunkStreamTest", ".safe");
+		this.sourcePath = Files.createTempFile("EncryptedChunkStreamTest", ".txt");
+		this.passphrase = new Passphrase("TEST_PASSPHRASE");
+		this.storage = new SegmentLogStorage(this.logPath, this.passphrase);
+		this.executor = ThreadUtility.allAvailableProcessors("EncryptedChunkStreamTest");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		this.executor.shutdownNow();
+		this.storage.close();
+		this.passphrase.clear();
+		Files.deleteIfExists(this.logPath);
+		Files.deleteIfExists(this.sourcePath);
+	}
+
+	private FileTableEntry write(byte[] content) throws IOException {
+		FileTableEntry fileTableEntry = new FileTableEntry(this.sourcePath, "");
+		try (OutputStream out = new EncryptedChunkOutputStream(this.storage, CipherSuite.AES_GCM, this.passphrase, fileTableEntry, CHUNK_SIZE, this.executor, 3)) {
+			out.write(content);
+		}
+		this.storage.commit();
+		return fileTableEntry;
+	}
+
+	private byte[] read(FileTableEntry fileTableEntry) throws IOException {
+		try (InputStream in = new EncryptedChunkInputStream(this.storage, this.passphrase, fileTableEntry, this.executor, 3)) {
+			return ByteUtility.readFully(in);
+		}
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		System.out.println("testRoundTrip::");
+		Random random = new Random(42L);
+		int[] sizes = {0, 1, CHUNK_SIZE - 1, CHUNK_SIZE, CHUNK_SIZE + 1, 10 * CHUNK_SIZE + 17};
+		for (int size : sizes) {
+			byte[] content = new byte[size];
+			random.nextBytes(content);
+			FileTableEntry fileTableEntry = write(content);
+			assertEquals(size, fileTableEntry.getSizeInBytes());
+			assertEquals((size + CHUNK_SIZE - 1) / CHUNK_SIZE, fileTableEntry.getChunkCount());
+			assertArrayEquals(content, read(fileTableEntry));
+		}
+	}
+
+	@Test
+	public void testSeekableRead() throws Exception {
+		System.out.println("testSeekableRead::");
+		byte[] content = new byte[10 * CHUNK_SIZE + 17];
+		new Random(7L).nextBytes(content);
+		FileTableEntry fileTableEntry = write(content);
+		try (SeekableByteChannel channel = new EncryptedFileChannel(this.storage, this.passphrase, fileTableEntry)) {
+			assertEquals(content.length, channel.size());
+			ByteBuffer range = ByteBuffer.allocate(CHUNK_SIZE + 10);
+			channel.position(3 * CHUNK_SIZE - 5);
+			assertEquals(range.capacity(), channel.read(range));
+			assertArrayEquals(Arrays.copyOfRange(content, 3 * CHUNK_SIZE - 5, 4 * CHUNK_SIZE + 5), range.array());
+			ByteBuffer tail = ByteBuffer.allocate(100);
+			channel.position(content.length - 7);
+			assertEquals(7, channel.read(tail));
+			assertEquals(-1, channel.read(tail));
+		}
+	}
+
+	@Test
+	public void testAbortDiscardsStagedChunks() throws Exception {
+		System.out.println("testAbortDiscardsStagedChunks::");
+		FileTableEntry fileTableEntry = new FileTableEntry(this.sourcePath, "");
+		try (EncryptedChunkOutputStream out = new EncryptedChunkOutputStream(this.storage, CipherSuite.AES_GCM, this.passphrase, fileTableEntry, CHUNK_SIZE, this.executor, 3)) {
+			out.write(new byte[10 * CHUNK_SIZE]);
+			out.abort();
+		}
+		this.storage.put("other", new byte[1]);
+		this.storage.commit();
+		assertEquals(1, this.storage.keys().size());
+		assertFalse(fileTableEntry.isChunked());
+	}
+
+	@Test
+	public void testSwappedChunksRejected() throws Exception {
+		System.out.println("testSwappedChunksRejected::");
+		FileTableEntry fileTableEntry = write(new byte[3 * CHUNK_SIZE]);
+		this.storage.put(fileTableEntry.getChunkKey(0), this.storage.read(fileTableEntry.getChunkKey(1)));
+		this.storage.commit();
+		try {
+			read(fileTableEntry);
+			fail("A chunk stored under the wrong key should fail authentication.");
+		} catch (IOException ex) {
+			// expected.
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+package com.analyticobjects.digitalsafe.database;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for KeyTrie.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public class KeyTrieTest {
+
+	private KeyTrie keyTrie;
+
+	public KeyTrieTest() {
+	}
+
+	@BeforeClass
+	public static void setUpClass() {
+	}
+
+	@AfterClass
+	public static void tearDownClass() {
+	}
+
+	@Before
+	public void setUp() {
+		this.keyTrie = new KeyTrie();
+		for (String key : new String[]{"gmail", "gmail.password", "github", "bank", "banking", "band"}) {
+			this.keyTrie.add(key);
+		}
+	}
+
+	@After
+	public void tearDown() {
+	}
+
+	@Test
+	public void testComplete() {
+		System.out.println("testComplete::");
+		assertEquals(Arrays.asList("github", "gmail", "gmail.password"), this.keyTrie.complete("g", 10));
+		assertEquals(Arrays.asList("band", "bank"), this.keyTrie.complete("ban", 2));
+		assertTrue(this.keyTrie.complete("x", 10).isEmpty());
+		assertTrue(this.keyTrie.remove("bank"));
+		assertFalse(this.keyTrie.remove("bank"));
+		assertEquals(Arrays.asList("band", "banking"), this.keyTrie.complete("ban", 10));
+		assertEquals(5, this.keyTrie.size());
+	}
+
+	@Test
+	public void testFindWithin() {
+		System.out.println("testFindWithin::");
+		assertEquals(Arrays.asList("gmail"), this.keyTrie.findWithin("gmial", 2, 10));
+		assertEquals(Arrays.asList("band", "bank"), this.keyTrie.findWithin("banf", 1, 10));
+		assertEquals(Arrays.asList("bank"), this.keyTrie.findWithin("bank", 0, 10));
+		assertTrue(this.keyTrie.findWithin("zzzz", 1, 10).isEmpty());
+	}
+
+	@Test
+	public void testManyKeys() {
+		System.out.println("testManyKeys::");
+		KeyTrie manyKeys = new KeyTrie();
+		for (int i = 0; i < 100000; i++) {
+			manyKeys.add("note number " + i);
+		}
+		for (int warmup = 0; warmup < 200; warmup++) {
+			manyKeys.complete("note number " + warmup, 20);
+			manyKeys.findWithin("note nmuber " + warmup, 2, 20);
+		}
+		long start = System.nanoTime();
+		List<String> completions = null;
+		List<String> nearMisses = null;
+		for (int i = 0; i < 100; i++) {
+			completions = manyKeys.complete("note number 4242", 20);
+			nearMisses = manyKeys.findWithin("note nmuber 4242", 2, 20);
+		}
+		double millis = (System.nanoTime() - start) / 1e6 / 100;
+		System.out.println(String.format("complete and find within 2 over 100000 keys: %.3f ms", millis));
+		assertEquals(11, completions.size());
+		assertTrue(nearMisses.contains("note number 4242"));
+		assertTrue(millis < 5.0);
+	}
+
+}
@@ -0,0 +1,96 @@
+package com.analyticobjects.digitalsafe.database;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for LongKeyMap and StringLongMap.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public class LongKeyMapTest {
+
+	public LongKeyMapTest() {
+	}
+
+	@BeforeClass
+	public static void setUpClass() {
+	}
+
+	@AfterClass
+	public static void tearDownClass() {
+	}
+
+	@Before
+	public void setUp() {
+	}
+
+	@After
+	public void tearDown() {
+	}
+
+	@Test
+	public void testAgainstHashMap() {
+		System.out.println("testAgainstHashMap::");
+		LongKeyMap<String> longKeyMap = new LongKeyMap<>();
+		Map<Long, String> expected = new HashMap<>();
+		Random random = new Random(42L);
+		for (int i = 0; i < 200000; i++) {
+			long key = random.nextInt(5000);
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(key), longKeyMap.remove(key));
+			} else {
+				String value = "v" + i;
+				assertEquals(expected.put(key, value), longKeyMap.put(key, value));
+			}
+		}
+		assertEquals(expected.size(), longKeyMap.size());
+		for (long key = 0; key < 5000; key++) {
+			assertEquals(expected.get(key), longKeyMap.get(key));
+		}
+		long[] keys = longKeyMap.keys();
+		assertEquals(expected.size(), keys.length);
+		for (int i = 1; i < keys.length; i++) {
+			assertTrue(keys[i - 1] < keys[i]);
+		}
+		List<String> values = longKeyMap.values();
+		assertEquals(expected.get(keys[0]), values.get(0));
+	}
+
+	@Test
+	public void testStringLongMap() {
+		System.out.println("testStringLongMap::");
+		StringLongMap stringLongMap = new StringLongMap();
+		Map<String, Long> expected = new HashMap<>();
+		Random random = new Random(7L);
+		for (int i = 0; i < 200000; i++) {
+			String key = "key " + random.nextInt(5000);
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(key) != null, stringLongMap.remove(key));
+			} else {
+				stringLongMap.put(key, i);
+				expected.put(key, (long) i);
+			}
+		}
+		assertEquals(expected.size(), stringLongMap.size());
+		for (int i = 0; i < 5000; i++) {
+			String key = "key " + i;
+			assertEquals(expected.containsKey(key), stringLongMap.containsKey(key));
+			assertEquals(expected.containsKey(key) ? expected.get(key) : -1L, stringLongMap.get(key, -1L));
+		}
+		List<String> keys = stringLongMap.keys();
+		for (int i = 1; i < keys.size(); i++) {
+			assertTrue(keys.get(i - 1).compareTo(keys.get(i)) < 0);
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+package com.analyticobjects.digitalsafe.database;
+
+import com.analyticobjects.digitalsafe.containers.Note;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for MapTable.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public class MapTableTest {
+
+	private static final int WRITERS = 8;
+	private static final int PUTS_PER_WRITER = 5000;
+
+	public MapTableTest() {
+	}
+
+	@BeforeClass
+	public static void setUpClass() {
+	}
+
+	@AfterClass
+	public static void tearDownClass() {
+	}
+
+	@Before
+	public void setUp() {
+	}
+
+	@After
+	public void tearDown() {
+	}
+
+	@Test
+	public void testConcurrentPutsGetDistinctIds() throws Exception {
+		System.out.println("testConcurrentPutsGetDistinctIds::");
+		final IndexedMapTable<Note> notes = new IndexedMapTable<>(new MapTable<Note>("NOTES"));
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] writers = new Thread[WRITERS];
+		for (int w = 0; w < WRITERS; w++) {
+			final int writer = w;
+			writers[w] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException ex) {
+						return;
+					}
+					for (int i = 0; i < PUTS_PER_WRITER; i++) {
+						notes.putEntry(new Note("writer " + writer + " note " + i, "concurrent"));
+					}
+				}
+			});
+			writers[w].start();
+		}
+		start.countDown();
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		List<Note> all = notes.getAll();
+		assertEquals(WRITERS * PUTS_PER_WRITER, all.size());
+		Set<Long> ids = new HashSet<>();
+		for (Note note : all) {
+			assertTrue(ids.add(note.getId()));
+		}
+		assertEquals((long) WRITERS * PUTS_PER_WRITER, notes.getBackingMapTable().getLastId());
+		assertEquals(WRITERS * PUTS_PER_WRITER, notes.search("concurrent").size());
+		assertNotNull(notes.getEntry("writer 3 note 42"));
+	}
+
+	@Test
+	public void testExplicitIdAdvancesSequence() {
+		System.out.println("testExplicitIdAdvancesSequence::");
+		MapTable<Note> notes = new MapTable<>("NOTES");
+		Note peerNote = new Note("from a peer", "synced");
+		peerNote.setId(41L);
+		notes.putEntry(peerNote);
+		Note note = new Note("local", "new");
+		notes.putEntry(note);
+		assertEquals(Long.valueOf(42L), note.getId());
+	}
+
+}
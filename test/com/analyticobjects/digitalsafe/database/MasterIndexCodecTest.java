@@ -0,0 +1,154 @@
+package com.analyticobjects.digitalsafe.database;
+
+import com.analyticobjects.digitalsafe.containers.DigitalSafe;
+import com.analyticobjects.digitalsafe.containers.Note;
+import com.analyticobjects.digitalsafe.containers.PasswordNote;
+import com.analyticobjects.digitalsafe.net.Peer;
+import com.analyticobjects.utility.SerializationUtility;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for MasterIndexCodec.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public class MasterIndexCodecTest {
+
+	private Path sourcePath;
+
+	public MasterIndexCodecTest() {
+	}
+
+	@BeforeClass
+	public static void setUpClass() {
+		DigitalSafe.registerEntryTypes();
+	}
+
+	@AfterClass
+	public static void tearDownClass() {
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		this.sourcePath = Files.createTempFile("MasterIndexCodecTest", ".txt");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(this.sourcePath);
+	}
+
+	private static MasterIndex masterIndex(int noteCount) {
+		MasterIndex masterIndex = new MasterIndex();
+		IndexedMapTable<Note> notes = new IndexedMapTable<>(new MapTable<Note>("NOTES"));
+		IndexedMapTable<PasswordNote> passwords = new IndexedMapTable<>(new MapTable<PasswordNote>("PASSWORDS"));
+		for (int i = 0; i < noteCount; i++) {
+			Note note = new Note("Note " + i, "A message for note number " + i + ", with a little more text.");
+			note.tagWithTagString("tag" + (i % 10) + ", common");
+			notes.putEntry(note);
+			PasswordNote passwordNote = new PasswordNote("Login " + i, "p4ssw0rd" + i);
+			passwordNote.setUserName("user" + i);
+			passwordNote.setUrl("https://example.com/" + i);
+			passwords.putEntry(passwordNote);
+		}
+		masterIndex.putIndexedMapTable(notes);
+		masterIndex.putIndexedMapTable(passwords);
+		masterIndex.putIndexedMapTable(new IndexedMapTable<>(new MapTable<Peer>("PEERS")));
+		masterIndex.putMapTable(new MapTable<Note>("PLAIN"));
+		masterIndex.incrementCommitCount();
+		return masterIndex;
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		System.out.println("testRoundTrip::");
+		MasterIndex masterIndex = masterIndex(3);
+		FileTable files = new FileTable("FILES");
+		FileTableEntry fileTableEntry = new FileTableEntry(this.sourcePath, "attached");
+		fileTableEntry.setChunks(1 << 20, 3L, 2500000L);
+		fileTableEntry.detachSource();
+		files.putEntry(fileTableEntry);
+		masterIndex.putFileTable(files);
+		Peer peer = new Peer();
+		peer.initSelf();
+		masterIndex.getIndexedMapTable("PEERS").putEntry(peer);
+
+		byte[] encoded = MasterIndexCodec.encode(masterIndex);
+		assertTrue(MasterIndexCodec.isEncoded(encoded));
+		MasterIndex decoded = MasterIndexCodec.decode(encoded);
+		assertArrayEquals(encoded, MasterIndexCodec.encode(decoded));
+		assertEquals(1L, decoded.getCommitCount());
+
+		IndexedMapTable<Note> notes = decoded.getIndexedMapTable("NOTES");
+		Note note = notes.getEntry("note 1");
+		assertEquals("Note 1", note.getTitle());
+		IndexedMapTable<Note> originalNotes = masterIndex.getIndexedMapTable("NOTES");
+		assertEquals(originalNotes.getEntry("note 1").getCreateTime(), note.getCreateTime());
+		assertTrue(note.getTags().contains("common"));
+		IndexedMapTable<PasswordNote> passwords = decoded.getIndexedMapTable("PASSWORDS");
+		PasswordNote passwordNote = passwords.getEntry("login 2");
+		assertEquals("p4ssw0rd2", passwordNote.getPassword());
+		assertEquals("user2", passwordNote.getUserName());
+		assertNotNull(passwordNote.getExpirationTime());
+
+		FileTable decodedFiles = decoded.getFileTable("FILES");
+		assertEquals(files.getCrypticName(), decodedFiles.getCrypticName());
+		FileTableEntry decodedEntry = decodedFiles.getEntry(fileTableEntry.getIndexId());
+		assertEquals(fileTableEntry.getFileNameHash(), decodedEntry.getFileNameHash());
+		assertEquals(3L, decodedEntry.getChunkCount());
+		assertEquals(fileTableEntry.getChunkKey(2), decodedEntry.getChunkKey(2));
+		assertFalse(decodedEntry.isSourceAttached());
+
+		IndexedMapTable<Peer> peers = decoded.getIndexedMapTable("PEERS");
+		Peer decodedPeer = peers.getEntry(peer.getIndexId());
+		assertEquals(peer.getDHTKey(), decodedPeer.getDHTKey());
+		assertEquals(peer.getPublicKey(), decodedPeer.getPublicKey());
+		assertEquals(Boolean.TRUE, decodedPeer.isSelf());
+		assertNotNull(decoded.getMapTable("PLAIN"));
+	}
+
+	@Test
+	public void testIdSequenceRoundTrip() throws Exception {
+		System.out.println("testIdSequenceRoundTrip::");
+		MasterIndex masterIndex = masterIndex(3);
+		IndexedMapTable<Note> notes = masterIndex.getIndexedMapTable("NOTES");
+		notes.getBackingMapTable().advanceIdSequence(10L); // as if ids 4 to 10 were handed out and their entries gone.
+		MasterIndex decoded = MasterIndexCodec.decode(MasterIndexCodec.encode(masterIndex));
+		IndexedMapTable<Note> decodedNotes = decoded.getIndexedMapTable("NOTES");
+		Note note = new Note("Note 11", "After the gap.");
+		decodedNotes.putEntry(note);
+		assertEquals(Long.valueOf(11L), note.getId());
+	}
+
+	@Test
+	public void testRejectsTruncated() throws Exception {
+		System.out.println("testRejectsTruncated::");
+		byte[] encoded = MasterIndexCodec.encode(masterIndex(2));
+		try {
+			MasterIndexCodec.decode(Arrays.copyOf(encoded, encoded.length - 3));
+			fail("A truncated master index should not decode.");
+		} catch (IOException ex) {
+			// expected.
+		}
+		assertFalse(MasterIndexCodec.isEncoded(SerializationUtility.deflate(masterIndex(1))));
+	}
+
+	@Test
+	public void testEncodedSize() throws Exception {
+		System.out.println("testEncodedSize::");
+		MasterIndex masterIndex = masterIndex(5000);
+		byte[] encoded = MasterIndexCodec.encode(masterIndex);
+		assertTrue(encoded.length < SerializationUtility.deflate(masterIndex).length);
+	}
+
+}
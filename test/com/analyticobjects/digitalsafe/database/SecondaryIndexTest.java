@@ -0,0 +1,147 @@
+package com.analyticobjects.digitalsafe.database;
+
+import com.analyticobjects.digitalsafe.containers.Note;
+import com.analyticobjects.digitalsafe.containers.PasswordNote;
+import com.analyticobjects.utility.TimeUtility;
+import java.util.Date;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the IndexedMapTable secondary indexes.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public class SecondaryIndexTest {
+
+	private IndexedMapTable<PasswordNote> passwords;
+
+	public SecondaryIndexTest() {
+	}
+
+	@BeforeClass
+	public static void setUpClass() {
+	}
+
+	@AfterClass
+	public static void tearDownClass() {
+	}
+
+	@Before
+	public void setUp() {
+		this.passwords = new IndexedMapTable<>(new MapTable<PasswordNote>("PASSWORDS"));
+		for (int i = 0; i < 10; i++) {
+			PasswordNote passwordNote = new PasswordNote("Login " + i, "p4ssw0rd" + i);
+			passwordNote.setUrl((i % 2 == 0) ? "https://www.Example.com/login?next=" + i : "mail.example.org:8443");
+			passwordNote.setUserName("User" + (i % 3));
+			passwordNote.tagWithTagString((i < 5) ? "Work" : "home");
+			this.passwords.putEntry(passwordNote);
+		}
+		this.passwords.addSecondaryIndex(Note.tagIndex());
+		this.passwords.addSecondaryIndex(PasswordNote.domainIndex());
+		this.passwords.addSecondaryIndex(PasswordNote.userNameIndex());
+		this.passwords.addSecondaryIndex(PasswordNote.expirationIndex());
+	}
+
+	@After
+	public void tearDown() {
+	}
+
+	@Test
+	public void testFindBy() {
+		System.out.println("testFindBy::");
+		assertEquals(5, this.passwords.findBy(PasswordNote.DOMAIN_INDEX, "example.com").size());
+		assertEquals(5, this.passwords.findBy(PasswordNote.DOMAIN_INDEX, "mail.example.org").size());
+		assertEquals(4, this.passwords.findBy(PasswordNote.USER_NAME_INDEX, "user0").size());
+		assertEquals(5, this.passwords.findBy(Note.TAG_INDEX, "work").size());
+		assertEquals(0, this.passwords.findBy(Note.TAG_INDEX, "nothing").size());
+		try {
+			this.passwords.findBy("missing", "key");
+			fail("An unknown index should be rejected.");
+		} catch (IllegalArgumentException ex) {
+			// expected.
+		}
+	}
+
+	@Test
+	public void testMaintainedOnPut() {
+		System.out.println("testMaintainedOnPut::");
+		PasswordNote moved = this.passwords.findBy(PasswordNote.DOMAIN_INDEX, "example.com").get(0);
+		moved.setUrl("http://bank.example.net/");
+		this.passwords.putEntry(moved); // modified in place, so the index must remember its old keys.
+		assertEquals(4, this.passwords.findBy(PasswordNote.DOMAIN_INDEX, "example.com").size());
+		assertEquals(moved, this.passwords.findBy(PasswordNote.DOMAIN_INDEX, "bank.example.net").get(0));
+		this.passwords.putEntry(new PasswordNote("New", "secret"));
+		assertEquals(11, this.passwords.findRange(PasswordNote.EXPIRATION_INDEX, null, null).size());
+	}
+
+	@Test
+	public void testMaintainedOnRemove() {
+		System.out.println("testMaintainedOnRemove::");
+		PasswordNote removed = this.passwords.findBy(PasswordNote.DOMAIN_INDEX, "example.com").get(0);
+		assertEquals(removed, this.passwords.removeEntry(removed.getIndexId()));
+		assertNull(this.passwords.removeEntry(removed.getId()));
+		assertNull(this.passwords.getEntry(removed.getIndexId()));
+		assertEquals(4, this.passwords.findBy(PasswordNote.DOMAIN_INDEX, "example.com").size());
+		assertFalse(this.passwords.completeIndexId(removed.getIndexId(), 10).contains(removed.getIndexId()));
+		assertEquals(9, this.passwords.findRange(PasswordNote.EXPIRATION_INDEX, null, null).size());
+	}
+
+	@Test
+	public void testReplacedByNewInstance() {
+		System.out.println("testReplacedByNewInstance::");
+		PasswordNote original = this.passwords.getEntry("login 3");
+		original.setMessage("oldword");
+		original.tagWithTagString("oldtag");
+		this.passwords.putEntry(original);
+		PasswordNote edited = new PasswordNote("Login 3", "p4ssw0rd3"); // as saved again from the editor.
+		edited.setMessage("newword");
+		edited.tagWithTagString("newtag");
+		this.passwords.putEntry(edited);
+		assertEquals(original.getId(), edited.getId());
+		assertEquals(10, this.passwords.getAll().size());
+		assertSame(edited, this.passwords.getEntry("login 3"));
+		assertTrue(this.passwords.search("oldword").isEmpty());
+		assertSame(edited, this.passwords.search("newword").get(0));
+		assertTrue(this.passwords.findBy(Note.TAG_INDEX, "oldtag").isEmpty());
+		assertSame(edited, this.passwords.findBy(Note.TAG_INDEX, "newtag").get(0));
+		this.passwords.getEntry("login 5").setMessage("displacedword");
+		this.passwords.putEntry(this.passwords.getEntry("login 5"));
+		PasswordNote renamed = new PasswordNote("Login 5", "p4ssw0rd4"); // e.g. a journaled rename of login 4.
+		renamed.setId(this.passwords.getEntry("login 4").getId());
+		this.passwords.putEntry(renamed);
+		assertEquals(9, this.passwords.getAll().size());
+		assertSame(renamed, this.passwords.getEntry("login 5"));
+		assertNull(this.passwords.getEntry("login 4"));
+		assertTrue(this.passwords.search("displacedword").isEmpty());
+		assertSame(edited, this.passwords.removeEntry("login 3"));
+		assertTrue(this.passwords.search("newword").isEmpty());
+		assertTrue(this.passwords.findBy(Note.TAG_INDEX, "newtag").isEmpty());
+		assertEquals(8, this.passwords.getAll().size());
+	}
+
+	@Test
+	public void testFindRange() throws Exception {
+		System.out.println("testFindRange::");
+		Date now = new Date();
+		assertEquals(0, this.passwords.findRange(PasswordNote.EXPIRATION_INDEX, null, TimeUtility.addDays(now, 7)).size());
+		List<PasswordNote> expiring = this.passwords.findRange(PasswordNote.EXPIRATION_INDEX, null, TimeUtility.addDays(now, 365));
+		assertEquals(10, expiring.size());
+		for (int i = 1; i < expiring.size(); i++) {
+			assertFalse(expiring.get(i).getExpirationTime().before(expiring.get(i - 1).getExpirationTime()));
+		}
+		try {
+			this.passwords.findRange(PasswordNote.DOMAIN_INDEX, "a", "z");
+			fail("A hash index can't answer range queries.");
+		} catch (IllegalArgumentException ex) {
+			// expected.
+		}
+	}
+
+}
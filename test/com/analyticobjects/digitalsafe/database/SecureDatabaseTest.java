@@ -0,0 +1,412 @@
+package com.analyticobjects.digitalsafe.database;
+
+import com.analyticobjects.digitalsafe.containers.DigitalSafe;
+import com.analyticobjects.digitalsafe.containers.Note;
+import com.analyticobjects.digitalsafe.containers.PasswordNote;
+import com.analyticobjects.digitalsafe.crypto.CipherSuite;
+import com.analyticobjects.digitalsafe.crypto.Passphrase;
+import com.analyticobjects.utility.CancellableProgressListener;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for SecureDatabase.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public class SecureDatabaseTest {
+
+	private Path dbPath;
+	private SecureDatabase secureDatabase;
+
+	public SecureDatabaseTest() {
+	}
+
+	@BeforeClass
+	public static void setUpClass() {
+		DigitalSafe.registerEntryTypes();
+	}
+
+	@AfterClass
+	public static void tearDownClass() {
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		this.dbPath = Files.createTempFile("SecureDatabaseTest", ".safe");
+		Files.delete(this.dbPath);
+		this.secureDatabase = new SecureDatabase(this.dbPath);
+		this.secureDatabase.setPassphrase("TEST_PASSPHRASE");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		this.secureDatabase.lock();
+		Files.deleteIfExists(this.dbPath);
+		Files.deleteIfExists(journalPath());
+	}
+
+	private Path journalPath() {
+		return this.dbPath.resolveSibling(this.dbPath.getFileName() + ".journal");
+	}
+
+	@Test
+	public void testCommitStoresOnlyChangedTables() throws Exception {
+		System.out.println("testCommitStoresOnlyChangedTables::");
+		MasterIndex masterIndex = new MasterIndex();
+		IndexedMapTable<Note> notes = new IndexedMapTable<>(new MapTable<Note>("NOTES"));
+		IndexedMapTable<PasswordNote> passwords = new IndexedMapTable<>(new MapTable<PasswordNote>("PASSWORDS"));
+		for (int i = 0; i < 2000; i++) {
+			passwords.putEntry(new PasswordNote("Login " + i, "p4ssw0rd" + i));
+		}
+		masterIndex.putIndexedMapTable(notes);
+		masterIndex.putIndexedMapTable(passwords);
+		masterIndex.putFileTable(new FileTable("FILES"));
+		this.secureDatabase.commitMasterIndex(masterIndex);
+		assertFalse(notes.getBackingMapTable().isDirty());
+		assertFalse(passwords.getBackingMapTable().isDirty());
+
+		long sizeBefore = Files.size(this.dbPath);
+		notes.putEntry(new Note("Title", "Message"));
+		assertTrue(notes.getBackingMapTable().isDirty());
+		assertFalse(passwords.getBackingMapTable().isDirty());
+		this.secureDatabase.commitMasterIndex(masterIndex);
+		long growth = Files.size(this.dbPath) - sizeBefore;
+		assertTrue("Unchanged tables should not be rewritten: " + growth, growth < MasterIndexCodec.encodeTable(passwords).length);
+
+		this.secureDatabase.lock();
+		this.secureDatabase.setPassphrase("TEST_PASSPHRASE");
+		MasterIndex reloaded = this.secureDatabase.getMasterIndex();
+		IndexedMapTable<Note> reloadedNotes = reloaded.getIndexedMapTable("NOTES");
+		IndexedMapTable<PasswordNote> reloadedPasswords = reloaded.getIndexedMapTable("PASSWORDS");
+		assertEquals("Message", reloadedNotes.getEntry("title").getMessage());
+		assertEquals("p4ssw0rd1999", reloadedPasswords.getEntry("login 1999").getPassword());
+		assertEquals(2000, reloadedPasswords.getAll().size());
+		assertFalse(reloadedNotes.getBackingMapTable().isDirty());
+		assertNotNull(reloaded.getFileTable("FILES"));
+	}
+
+	@Test
+	public void testRemovedFileReclaimedByCompaction() throws Exception {
+		System.out.println("testRemovedFileReclaimedByCompaction::");
+		Path sourcePath = Files.createTempFile("SecureDatabaseTest", ".bin");
+		try {
+			byte[] content = new byte[6 * SecureDatabase.FILE_CHUNK_SIZE];
+			new Random(42L).nextBytes(content);
+			Files.write(sourcePath, content);
+			MasterIndex masterIndex = new MasterIndex();
+			IndexedMapTable<Note> notes = new IndexedMapTable<>(new MapTable<Note>("NOTES"));
+			notes.putEntry(new Note("Kept", "Still here after compaction."));
+			notes.putEntry(new Note("Deleted", "Gone."));
+			FileTable files = new FileTable("FILES");
+			FileTableEntry fileTableEntry = new FileTableEntry(sourcePath, "");
+			files.putEntry(fileTableEntry);
+			masterIndex.putIndexedMapTable(notes);
+			masterIndex.putFileTable(files);
+			this.secureDatabase.commitMasterIndex(masterIndex);
+			assertTrue(Files.size(this.dbPath) > content.length);
+
+			assertNotNull(notes.removeEntry("deleted"));
+			assertNull(notes.getEntry("deleted"));
+			assertNotNull(files.removeEntry(fileTableEntry.getIndexId()));
+			this.secureDatabase.commitMasterIndex(masterIndex);
+			this.secureDatabase.compactStorage().get(); // waits for any compaction the commit started too.
+			assertTrue("Removed file contents should be reclaimed.", Files.size(this.dbPath) < SecureDatabase.FILE_CHUNK_SIZE);
+
+			this.secureDatabase.lock();
+			this.secureDatabase.setPassphrase("TEST_PASSPHRASE");
+			MasterIndex reloaded = this.secureDatabase.getMasterIndex();
+			IndexedMapTable<Note> reloadedNotes = reloaded.getIndexedMapTable("NOTES");
+			assertEquals("Still here after compaction.", reloadedNotes.getEntry("kept").getMessage());
+			assertNull(reloadedNotes.getEntry("deleted"));
+			assertTrue(reloaded.getFileTable("FILES").getAll().isEmpty());
+			try {
+				this.secureDatabase.loadFile(fileTableEntry);
+				fail("The contents of a removed file should be gone.");
+			} catch (IOException ex) {
+				// expected.
+			}
+		} finally {
+			Files.deleteIfExists(sourcePath);
+		}
+	}
+
+	@Test
+	public void testCancelledReplaceKeepsStoredFile() throws Exception {
+		System.out.println("testCancelledReplaceKeepsStoredFile::");
+		Path sourcePath = Files.createTempFile("SecureDatabaseTest", ".bin");
+		try {
+			byte[] content = new byte[3 * SecureDatabase.FILE_CHUNK_SIZE];
+			new Random(5L).nextBytes(content);
+			Files.write(sourcePath, content);
+			MasterIndex masterIndex = new MasterIndex();
+			FileTable files = new FileTable("FILES");
+			FileTableEntry stored = new FileTableEntry(sourcePath, "");
+			files.putEntry(stored);
+			masterIndex.putFileTable(files);
+			this.secureDatabase.commitMasterIndex(masterIndex);
+
+			Files.write(sourcePath, new byte[8 * SecureDatabase.FILE_CHUNK_SIZE]);
+			FileTableEntry replacement = new FileTableEntry(sourcePath, "");
+			files.putEntry(replacement);
+			this.secureDatabase.commitMasterIndex(masterIndex, new CancellableProgressListener() {
+				private long progress;
+
+				@Override
+				public void progressed(long done, long total) {
+					this.progress = done;
+				}
+
+				@Override
+				public boolean isCancelled() {
+					return this.progress >= 5 * SecureDatabase.FILE_CHUNK_SIZE; // some chunks are staged by now.
+				}
+			});
+			assertTrue(replacement.isSourceAttached());
+			files.removeEntry(replacement.getId());
+			files.putEntry(stored); // as a batch puts back the file a cancelled store replaced.
+			this.secureDatabase.commitMasterIndex(masterIndex);
+			assertArrayEquals(content, this.secureDatabase.loadFile(stored));
+
+			this.secureDatabase.lock();
+			try (SegmentLogStorage storage = new SegmentLogStorage(this.dbPath, new Passphrase("TEST_PASSPHRASE"))) {
+				for (String key : storage.keys()) {
+					assertFalse("No chunk of the cancelled store should be live: " + key, key.startsWith(replacement.getFileNameHash()));
+				}
+				assertTrue(storage.contains(stored.getChunkKey(2)));
+			}
+			this.secureDatabase.setPassphrase("TEST_PASSPHRASE");
+			FileTableEntry reloaded = this.secureDatabase.getMasterIndex().getFileTable("FILES").getEntry(stored.getIndexId());
+			assertEquals(stored.getFileNameHash(), reloaded.getFileNameHash());
+			assertArrayEquals(content, this.secureDatabase.loadFile(reloaded));
+			try {
+				this.secureDatabase.openFileOutputStream(reloaded);
+				fail("Stored contents should not be written again.");
+			} catch (IOException ex) {
+				// expected.
+			}
+		} finally {
+			Files.deleteIfExists(sourcePath);
+		}
+	}
+
+	@Test
+	public void testCipherSuiteKeptPerSafe() throws Exception {
+		System.out.println("testCipherSuiteKeptPerSafe::");
+		assertEquals(CipherSuite.preferred(), this.secureDatabase.getCipherSuite());
+		this.secureDatabase.setCipherSuite(CipherSuite.TRIPLE_AES);
+		MasterIndex masterIndex = new MasterIndex();
+		IndexedMapTable<Note> notes = new IndexedMapTable<>(new MapTable<Note>("NOTES"));
+		notes.putEntry(new Note("Legacy", "Three passes."));
+		IndexedMapTable<PasswordNote> passwords = new IndexedMapTable<>(new MapTable<PasswordNote>("PASSWORDS"));
+		passwords.putEntry(new PasswordNote("Untouched", "p4ssw0rd"));
+		masterIndex.putIndexedMapTable(notes);
+		masterIndex.putIndexedMapTable(passwords);
+		this.secureDatabase.commitMasterIndex(masterIndex);
+		this.secureDatabase.lock();
+
+		SecureDatabase reopened = new SecureDatabase(this.dbPath);
+		reopened.setPassphrase("TEST_PASSPHRASE");
+		try {
+			assertEquals(CipherSuite.TRIPLE_AES, reopened.getCipherSuite());
+			reopened.setCipherSuite(CipherSuite.AES_GCM);
+			MasterIndex reopenedIndex = reopened.getMasterIndex();
+			reopenedIndex.getIndexedMapTable("NOTES").putEntry(new Note("Sealed", "One pass."));
+			reopened.commitMasterIndex(reopenedIndex);
+		} finally {
+			reopened.lock();
+		}
+
+		this.secureDatabase = new SecureDatabase(this.dbPath);
+		this.secureDatabase.setPassphrase("TEST_PASSPHRASE");
+		assertEquals(CipherSuite.AES_GCM, this.secureDatabase.getCipherSuite());
+		IndexedMapTable<Note> reloadedNotes = this.secureDatabase.getMasterIndex().getIndexedMapTable("NOTES");
+		assertEquals("Three passes.", reloadedNotes.getEntry("legacy").getMessage());
+		assertEquals("One pass.", reloadedNotes.getEntry("sealed").getMessage());
+		IndexedMapTable<PasswordNote> reloadedPasswords = this.secureDatabase.getMasterIndex().getIndexedMapTable("PASSWORDS");
+		assertEquals("p4ssw0rd", reloadedPasswords.getEntry("untouched").getPassword()); // still 3-AES, never rewritten.
+	}
+
+	@Test
+	public void testReencryptionResumed() throws Exception {
+		System.out.println("testReencryptionResumed::");
+		Path sourcePath = Files.createTempFile("SecureDatabaseTest", ".bin");
+		try {
+			byte[] content = new byte[10 * SecureDatabase.FILE_CHUNK_SIZE + 12345];
+			new Random(23L).nextBytes(content);
+			Files.write(sourcePath, content);
+			this.secureDatabase.setCipherSuite(CipherSuite.TRIPLE_AES);
+			MasterIndex masterIndex = new MasterIndex();
+			IndexedMapTable<Note> notes = new IndexedMapTable<>(new MapTable<Note>("NOTES"));
+			notes.putEntry(new Note("Kept", "Re-encrypted with its table."));
+			masterIndex.putIndexedMapTable(notes);
+			FileTable files = new FileTable("FILES");
+			FileTableEntry fileTableEntry = new FileTableEntry(sourcePath, "");
+			files.putEntry(fileTableEntry);
+			masterIndex.putFileTable(files);
+			this.secureDatabase.commitMasterIndex(masterIndex);
+
+			Future<Integer> interrupted;
+			synchronized (this.secureDatabase) { // locked before the first batch, as by a crash part way through.
+				interrupted = this.secureDatabase.reencrypt(CipherSuite.AES_GCM);
+				this.secureDatabase.lock();
+			}
+			assertEquals(0, (int) interrupted.get());
+
+			this.secureDatabase.setPassphrase("TEST_PASSPHRASE");
+			Future<Integer> resumed = this.secureDatabase.getReencryption();
+			assertTrue("Unlocking should resume re-encryption.", resumed != interrupted);
+			assertEquals(fileTableEntry.getChunkCount(), (long) resumed.get());
+			assertEquals(CipherSuite.AES_GCM, this.secureDatabase.getCipherSuite());
+			FileTableEntry reloadedEntry = this.secureDatabase.getMasterIndex().getFileTable("FILES").getAll().get(0);
+			assertArrayEquals(content, this.secureDatabase.loadFile(reloadedEntry));
+			this.secureDatabase.lock();
+
+			try (SegmentLogStorage storage = new SegmentLogStorage(this.dbPath, new Passphrase("TEST_PASSPHRASE"))) {
+				for (String key : storage.keys()) {
+					if (!key.equals(SafeHeader.RECORD_KEY)) {
+						assertEquals(key, CipherSuite.AES_GCM, CipherSuite.of(storage.readBuffer(key)));
+					}
+				}
+			}
+			this.secureDatabase = new SecureDatabase(this.dbPath);
+			this.secureDatabase.setPassphrase("TEST_PASSPHRASE");
+			assertNull("Nothing left to resume.", this.secureDatabase.getReencryption());
+			IndexedMapTable<Note> reloadedNotes = this.secureDatabase.getMasterIndex().getIndexedMapTable("NOTES");
+			assertEquals("Re-encrypted with its table.", reloadedNotes.getEntry("kept").getMessage());
+		} finally {
+			Files.deleteIfExists(sourcePath);
+		}
+	}
+
+	@Test
+	public void testSafeHeaderAuthenticated() throws Exception {
+		System.out.println("testSafeHeaderAuthenticated::");
+		Passphrase passphrase = new Passphrase("TEST_PASSPHRASE");
+		Passphrase otherPassphrase = new Passphrase("OTHER_PASSPHRASE");
+		try {
+			byte[] header = new SafeHeader(CipherSuite.AES_GCM, true).encode(passphrase);
+			assertEquals(new SafeHeader(CipherSuite.AES_GCM, true), SafeHeader.decode(ByteBuffer.wrap(header), passphrase));
+			for (Passphrase decodingPassphrase : new Passphrase[]{passphrase, otherPassphrase}) {
+				byte[] tamperedHeader = header.clone();
+				if (decodingPassphrase == passphrase) {
+					tamperedHeader[15] = CipherSuite.TRIPLE_AES.getId(); // a downgrade.
+				}
+				try {
+					SafeHeader.decode(ByteBuffer.wrap(tamperedHeader), decodingPassphrase);
+					fail("A changed header or other passphrase should fail authentication.");
+				} catch (IOException ex) {
+					// expected.
+				}
+			}
+		} finally {
+			passphrase.clear();
+			otherPassphrase.clear();
+		}
+	}
+
+	@Test
+	public void testJournaledChangesReplayed() throws Exception {
+		System.out.println("testJournaledChangesReplayed::");
+		MasterIndex masterIndex = new MasterIndex();
+		IndexedMapTable<Note> notes = new IndexedMapTable<>(new MapTable<Note>("NOTES"));
+		Note deleted = new Note("Deleted", "Gone.");
+		notes.putEntry(deleted);
+		masterIndex.putIndexedMapTable(notes);
+		this.secureDatabase.commitMasterIndex(masterIndex);
+		long sizeBefore = Files.size(this.dbPath);
+
+		Note added = new Note("Added", "Journaled.");
+		notes.putEntry(added);
+		notes.removeEntry(deleted.getId());
+		this.secureDatabase.commitChanges(masterIndex, Arrays.asList(TableChange.put("NOTES", added), TableChange.remove("NOTES", deleted.getId())));
+		assertEquals("Journaled changes should not store tables.", sizeBefore, Files.size(this.dbPath));
+		assertTrue(Files.size(journalPath()) > 0L);
+
+		// A second database opening the same files sees what a restart after a crash before the checkpoint would.
+		SecureDatabase restarted = new SecureDatabase(this.dbPath);
+		restarted.setPassphrase("TEST_PASSPHRASE");
+		try {
+			IndexedMapTable<Note> replayedNotes = restarted.getMasterIndex().getIndexedMapTable("NOTES");
+			assertEquals("Journaled.", replayedNotes.getEntry("added").getMessage());
+			assertNull(replayedNotes.getEntry("deleted"));
+			assertTrue(restarted.getMasterIndex().getIndexedMapTable("NOTES").getBackingMapTable().getLastId() >= added.getId());
+		} finally {
+			restarted.lock(); // checkpoints the replayed changes.
+		}
+		assertTrue(Files.size(this.dbPath) > sizeBefore);
+
+		this.secureDatabase.lock();
+		Files.delete(journalPath());
+		this.secureDatabase.setPassphrase("TEST_PASSPHRASE");
+		IndexedMapTable<Note> checkpointedNotes = this.secureDatabase.getMasterIndex().getIndexedMapTable("NOTES");
+		assertEquals("Journaled.", checkpointedNotes.getEntry("added").getMessage());
+		assertNull(checkpointedNotes.getEntry("deleted"));
+	}
+
+	@Test
+	public void testConcurrentCommitsGrouped() throws Exception {
+		System.out.println("testConcurrentCommitsGrouped::");
+		final MasterIndex masterIndex = new MasterIndex();
+		final IndexedMapTable<Note> notes = new IndexedMapTable<>(new MapTable<Note>("NOTES"));
+		masterIndex.putIndexedMapTable(notes);
+		this.secureDatabase.commitMasterIndex(masterIndex);
+		final int threadCount = 8;
+		final int commitsPerThread = 25;
+		ExecutorService writers = Executors.newFixedThreadPool(threadCount);
+		List<Future<Void>> results = new ArrayList<>();
+		long start = System.nanoTime();
+		for (int t = 0; t < threadCount; t++) {
+			final int thread = t;
+			results.add(writers.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					for (int i = 0; i < commitsPerThread; i++) {
+						Note note = new Note("Writer " + thread + " note " + i, "Message " + i);
+						Future<Void> commit;
+						synchronized (SecureDatabaseTest.this.secureDatabase) {
+							notes.putEntry(note);
+							commit = SecureDatabaseTest.this.secureDatabase.submitChanges(masterIndex, Collections.singletonList(TableChange.put("NOTES", note)));
+						}
+						SecureDatabaseTest.this.secureDatabase.awaitCommit(commit);
+					}
+					return null;
+				}
+			}));
+		}
+		for (Future<Void> result : results) {
+			result.get();
+		}
+		writers.shutdown();
+		int groupCount = this.secureDatabase.getCommitGroupCount();
+		System.out.println(String.format("%d commits from %d threads in %d groups, %.1f ms", threadCount * commitsPerThread, threadCount, groupCount, (System.nanoTime() - start) / 1e6));
+		assertTrue("Concurrent commits should share groups: " + groupCount, groupCount < threadCount * commitsPerThread);
+
+		SecureDatabase restarted = new SecureDatabase(this.dbPath);
+		restarted.setPassphrase("TEST_PASSPHRASE");
+		try {
+			assertEquals(threadCount * commitsPerThread, restarted.getMasterIndex().getIndexedMapTable("NOTES").getAll().size());
+		} finally {
+			restarted.lock();
+		}
+	}
+
+}
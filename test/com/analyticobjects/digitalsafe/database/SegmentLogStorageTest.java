@@ -0,0 +1,215 @@
+package com.analyticobjects.digitalsafe.database;
+
+import com.analyticobjects.digitalsafe.crypto.Passphrase;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for SegmentLogStorage.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public class SegmentLogStorageTest {
+
+	private Path logPath;
+	private Passphrase passphrase;
+
+	public SegmentLogStorageTest() {
+	}
+
+	@BeforeClass
+	public static void setUpClass() {
+	}
+
+	@AfterClass
+	public static void tearDownClass() {
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		this.logPath = Files.createTempFile("SegmentLogStorageTest", ".safe");
+		this.passphrase = new Passphrase("TEST_PASSPHRASE");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		this.passphrase.clear();
+		Files.deleteIfExists(this.logPath);
+	}
+
+	@Test
+	public void testPutCommitRead() throws Exception {
+		System.out.println("testPutCommitRead::");
+		try (SegmentLogStorage storage = new SegmentLogStorage(this.logPath, this.passphrase)) {
+			assertTrue(storage.isEmpty());
+			storage.put("a", "first".getBytes());
+			assertNull(storage.read("a"));
+			storage.commit();
+			storage.put("a", "second".getBytes());
+			storage.put("b", new byte[0]);
+			storage.commit();
+			assertArrayEquals("second".getBytes(), storage.read("a"));
+			assertArrayEquals(new byte[0], storage.read("b"));
+		}
+		try (SegmentLogStorage storage = new SegmentLogStorage(this.logPath, this.passphrase)) {
+			assertEquals(2, storage.keys().size());
+			assertArrayEquals("second".getBytes(), storage.read("a"));
+		}
+	}
+
+	@Test
+	public void testDiscard() throws Exception {
+		System.out.println("testDiscard::");
+		try (SegmentLogStorage storage = new SegmentLogStorage(this.logPath, this.passphrase)) {
+			storage.put("kept", "committed".getBytes());
+			storage.commit();
+			storage.put("kept", "staged".getBytes());
+			storage.put("discarded", "staged".getBytes());
+			storage.remove("kept");
+			storage.put("other", "other".getBytes());
+			storage.discard("kept");
+			storage.discard("discarded");
+			storage.discard("missing");
+			storage.commit();
+			assertArrayEquals("committed".getBytes(), storage.read("kept"));
+			assertFalse(storage.contains("discarded"));
+			assertArrayEquals("other".getBytes(), storage.read("other"));
+		}
+		try (SegmentLogStorage storage = new SegmentLogStorage(this.logPath, this.passphrase)) { // scanned again.
+			assertEquals(2, storage.keys().size());
+			assertArrayEquals("committed".getBytes(), storage.read("kept"));
+			assertFalse(storage.contains("discarded"));
+		}
+	}
+
+	@Test
+	public void testRemoveAndCompact() throws Exception {
+		System.out.println("testRemoveAndCompact::");
+		try (SegmentLogStorage storage = new SegmentLogStorage(this.logPath, this.passphrase)) {
+			storage.put("kept", "kept".getBytes());
+			storage.put("removed", new byte[200000]);
+			storage.commit();
+			ByteBuffer kept = storage.readBuffer("kept");
+			storage.remove("removed");
+			assertNotNull(storage.read("removed"));
+			storage.commit();
+			assertNull(storage.read("removed"));
+			assertFalse(storage.contains("removed"));
+			assertTrue(storage.garbageRatio() > 0.9);
+			storage.put("staged", "staged".getBytes());
+			long sizeBefore = storage.size();
+			assertTrue(storage.compact());
+			assertTrue(storage.size() < sizeBefore / 10);
+			assertEquals(ByteBuffer.wrap("kept".getBytes()), kept); // mapped before compaction, still readable.
+			assertArrayEquals("kept".getBytes(), storage.read("kept"));
+			assertNull(storage.read("staged"));
+			storage.commit();
+			assertArrayEquals("staged".getBytes(), storage.read("staged"));
+		}
+		try (SegmentLogStorage storage = new SegmentLogStorage(this.logPath, this.passphrase)) {
+			assertEquals(2, storage.keys().size());
+			assertFalse(storage.contains("removed"));
+			assertArrayEquals("kept".getBytes(), storage.read("kept"));
+			assertEquals(Files.size(this.logPath), storage.size());
+		}
+	}
+
+	@Test
+	public void testReadBufferAsLogGrows() throws Exception {
+		System.out.println("testReadBufferAsLogGrows::");
+		try (SegmentLogStorage storage = new SegmentLogStorage(this.logPath, this.passphrase)) {
+			storage.put("a", "first".getBytes());
+			storage.commit();
+			ByteBuffer first = storage.readBuffer("a");
+			assertEquals(ByteBuffer.wrap("first".getBytes()), first);
+			assertTrue(first.isReadOnly());
+			storage.put("b", new byte[100000]);
+			storage.commit();
+			assertEquals(100000, storage.readBuffer("b").remaining());
+			assertEquals(ByteBuffer.wrap("first".getBytes()), storage.readBuffer("a"));
+			assertNull(storage.readBuffer("c"));
+		}
+	}
+
+	@Test
+	public void testReadBufferAfterClear() throws Exception {
+		System.out.println("testReadBufferAfterClear::");
+		try (SegmentLogStorage storage = new SegmentLogStorage(this.logPath, this.passphrase)) {
+			storage.put("a", "first".getBytes());
+			storage.put("b", new byte[100000]);
+			storage.commit();
+			ByteBuffer first = storage.readBuffer("a");
+			ByteBuffer second = storage.readBuffer("b");
+			storage.put("staged", "staged".getBytes());
+			storage.clear();
+			assertEquals(ByteBuffer.wrap("first".getBytes()), first); // mapped before clearing, still readable.
+			assertEquals(ByteBuffer.wrap(new byte[100000]), second);
+			assertTrue(storage.isEmpty());
+			assertNull(storage.readBuffer("a"));
+			assertEquals(SegmentLogStorage.HEADER_SIZE, storage.size());
+			storage.commit();
+			assertTrue(storage.isEmpty());
+			storage.put("c", "third".getBytes());
+			storage.commit();
+			assertEquals(ByteBuffer.wrap("third".getBytes()), storage.readBuffer("c"));
+		}
+		try (SegmentLogStorage storage = new SegmentLogStorage(this.logPath, this.passphrase)) {
+			assertEquals(1, storage.keys().size());
+			assertArrayEquals("third".getBytes(), storage.read("c"));
+			assertEquals(Files.size(this.logPath), storage.size());
+		}
+	}
+
+	@Test
+	public void testUncommittedTailDiscarded() throws Exception {
+		System.out.println("testUncommittedTailDiscarded::");
+		long committedSize;
+		try (SegmentLogStorage storage = new SegmentLogStorage(this.logPath, this.passphrase)) {
+			storage.put("a", "committed".getBytes());
+			storage.commit();
+			committedSize = storage.size();
+			storage.put("b", "never committed".getBytes());
+		}
+		try (RandomAccessFile file = new RandomAccessFile(this.logPath.toFile(), "rw")) {
+			file.seek(file.length());
+			file.write(new byte[]{1, 0, 9}); // a torn record header.
+		}
+		try (SegmentLogStorage storage = new SegmentLogStorage(this.logPath, this.passphrase)) {
+			assertEquals(committedSize, storage.size());
+			assertFalse(storage.contains("b"));
+			assertArrayEquals("committed".getBytes(), storage.read("a"));
+		}
+	}
+
+	@Test
+	public void testReopenFromCheckpoint() throws Exception {
+		System.out.println("testReopenFromCheckpoint::");
+		try (SegmentLogStorage storage = new SegmentLogStorage(this.logPath, this.passphrase)) {
+			for (int i = 0; i < 100; i++) {
+				storage.put("key" + (i % 10), Integer.toString(i).getBytes());
+				storage.commit();
+			}
+		}
+		Passphrase otherPassphrase = new Passphrase("OTHER_PASSPHRASE");
+		try (SegmentLogStorage storage = new SegmentLogStorage(this.logPath, otherPassphrase)) {
+			// the checkpoint can't be decrypted, so the full log is scanned instead.
+			assertArrayEquals("99".getBytes(), storage.read("key9"));
+		}
+		try (SegmentLogStorage storage = new SegmentLogStorage(this.logPath, this.passphrase)) {
+			assertEquals(10, storage.keys().size());
+			assertArrayEquals("95".getBytes(), storage.read("key5"));
+		}
+		otherPassphrase.clear();
+	}
+
+}
@@ -0,0 +1,132 @@
+package com.analyticobjects.digitalsafe.database;
+
+import com.analyticobjects.digitalsafe.containers.DigitalSafe;
+import com.analyticobjects.digitalsafe.containers.Note;
+import com.analyticobjects.digitalsafe.containers.PasswordNote;
+import com.analyticobjects.utility.BinaryReader;
+import com.analyticobjects.utility.BinaryWriter;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for TextIndex and IndexedMapTable.search.
+ *
+ * @author Joel Bondurant
+ * @since 2013.11
+ */
+public class TextIndexTest {
+
+	public TextIndexTest() {
+	}
+
+	@BeforeClass
+	public static void setUpClass() {
+		DigitalSafe.registerEntryTypes();
+	}
+
+	@AfterClass
+	public static void tearDownClass() {
+	}
+
+	@Before
+	public void setUp() {
+	}
+
+	@After
+	public void tearDown() {
+	}
+
+	@Test
+	public void testSearch() {
+		System.out.println("testSearch::");
+		IndexedMapTable<Note> notes = new IndexedMapTable<>(new MapTable<Note>("NOTES"));
+		Note groceries = new Note("Groceries", "Milk, eggs and BREAD.");
+		groceries.tagWithTagString("home, weekly");
+		notes.putEntry(groceries);
+		notes.putEntry(new Note("Bank", "Branch opens at 9, bring bread money."));
+		assertEquals(2, notes.search("bread").size());
+		assertEquals(1, notes.search("Weekly bread").size());
+		assertEquals(0, notes.search("bread fish").size());
+		assertEquals(0, notes.search("  ").size());
+
+		groceries.setMessage("Fish.");
+		notes.putEntry(groceries);
+		assertEquals(1, notes.search("bread").size());
+		assertEquals("Groceries", notes.search("fish home").get(0).getTitle());
+
+		IndexedMapTable<PasswordNote> passwords = new IndexedMapTable<>(new MapTable<PasswordNote>("PASSWORDS"));
+		PasswordNote passwordNote = new PasswordNote("Mail", "hunter2");
+		passwordNote.setUserName("joel");
+		passwords.putEntry(passwordNote);
+		assertEquals(1, passwords.search("joel").size());
+		assertEquals("Passwords must not be indexed.", 0, passwords.search("hunter2").size());
+	}
+
+	@Test
+	public void testSearchAfterSavedAgain() {
+		System.out.println("testSearchAfterSavedAgain::");
+		IndexedMapTable<Note> notes = new IndexedMapTable<>(new MapTable<Note>("NOTES"));
+		notes.putEntry(new Note("Alpha", "oldword shared"));
+		notes.putEntry(new Note("Beta", "shared"));
+		notes.putEntry(new Note("ALPHA", "newword shared")); // a new instance, as the note editor saves.
+		assertEquals(0, notes.search("oldword").size());
+		assertEquals("newword shared", notes.search("newword").get(0).getMessage());
+		assertEquals(2, notes.search("shared").size());
+		assertEquals(1, notes.search("alpha").size());
+		notes.removeEntry("alpha");
+		assertEquals(0, notes.search("newword").size());
+		assertEquals(1, notes.search("shared").size());
+	}
+
+	@Test
+	public void testEncodeDecode() throws Exception {
+		System.out.println("testEncodeDecode::");
+		TextIndex textIndex = new TextIndex();
+		textIndex.put(3L, "alpha beta");
+		textIndex.put(1L, "beta gamma");
+		textIndex.put(7L, "beta");
+		BinaryWriter out = new BinaryWriter(64);
+		textIndex.encode(out);
+		byte[] bytes = out.toByteArray();
+		TextIndex decoded = TextIndex.decode(new BinaryReader(bytes, 0, bytes.length));
+		assertArrayEquals(new long[]{1L, 3L, 7L}, decoded.search("beta"));
+		decoded.put(3L, "gamma");
+		assertArrayEquals(new long[]{1L, 3L}, decoded.search("gamma"));
+		assertEquals(0, decoded.search("alpha").length);
+		assertEquals(2, decoded.termCount());
+	}
+
+	@Test
+	public void testSearchManyNotes() throws Exception {
+		System.out.println("testSearchManyNotes::");
+		IndexedMapTable<Note> notes = new IndexedMapTable<>(new MapTable<Note>("NOTES"));
+		int noteCount = 100000;
+		for (int i = 0; i < noteCount; i++) {
+			Note note = new Note("Note " + i, "Message " + i + " about topic" + (i % 1000) + " and subject" + (i % 7));
+			note.tagWithTagString("tag" + (i % 100));
+			notes.putEntry(note);
+		}
+		MasterIndex masterIndex = new MasterIndex();
+		masterIndex.putIndexedMapTable(notes);
+		IndexedMapTable<Note> decoded = MasterIndexCodec.decode(MasterIndexCodec.encode(masterIndex)).getIndexedMapTable("NOTES");
+		for (int warmup = 0; warmup < 100; warmup++) {
+			decoded.search("tag" + (warmup % 100) + " topic" + warmup);
+		}
+		long start = System.nanoTime();
+		List<Note> matches = null;
+		for (int i = 0; i < 100; i++) {
+			matches = decoded.search("tag42 topic42");
+		}
+		double millis = (System.nanoTime() - start) / 1e6 / 100;
+		System.out.println(String.format("search over %d notes: %d matches, %.3f ms", noteCount, matches.size(), millis));
+		assertEquals(noteCount / 1000, matches.size());
+		assertEquals(noteCount / 7 + 1, decoded.search("subject0").size());
+		assertTrue(millis < 50.0);
+	}
+
+}